@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.mb.integration.common.clients.operations.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.text.MessageFormat;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares building the inbuilt text payload of published messages with {@link MessageFormat},
+ * as the publisher does without message templates, and with a {@link PublishMessageTemplate}.
+ * Each invocation builds the payload of the next message number of a publisher thread. Run with
+ * "-prof gc" to also report the bytes allocated per payload:
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec -Dbenchmark.args="PublishMessageTemplateBenchmark -prof gc"
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class PublishMessageTemplateBenchmark {
+    /**
+     * The ID of the publishing thread in the payloads.
+     */
+    private long threadID;
+
+    /**
+     * The number of the next message.
+     */
+    private long sentMessageCount;
+
+    /**
+     * The template of the publishing thread.
+     */
+    private PublishMessageTemplate template;
+
+    /**
+     * Creates the template and checks that it builds the same payload as {@link MessageFormat} for
+     * numbers without grouping separators.
+     */
+    @Setup
+    public void setUp() {
+        threadID = Thread.currentThread().getId();
+        template = new PublishMessageTemplate(threadID);
+        String expected = MessageFormat.format(AndesClientConstants.PUBLISH_MESSAGE_FORMAT, 999L, threadID);
+        if (!expected.equals(template.getPayload(999L))) {
+            throw new IllegalStateException("The template does not build the payload " + expected);
+        }
+    }
+
+    @Benchmark
+    public String messageFormat() {
+        return MessageFormat.format(AndesClientConstants.PUBLISH_MESSAGE_FORMAT, sentMessageCount++, threadID);
+    }
+
+    @Benchmark
+    public String template() {
+        return template.getPayload(sentMessageCount++);
+    }
+}
@@ -26,6 +26,9 @@ import org.wso2.mb.integration.common.clients.configurations.AndesJMSPublisherCl
 import org.wso2.mb.integration.common.clients.exceptions.AndesClientException;
 import org.wso2.mb.integration.common.clients.operations.utils.AndesClientOutputParser;
 import org.wso2.mb.integration.common.clients.operations.utils.AndesClientUtils;
+import org.wso2.mb.integration.common.clients.operations.utils.ClientMetrics;
+import org.wso2.mb.integration.common.clients.operations.utils.LatencyHistogram;
+import org.wso2.mb.integration.common.clients.operations.utils.MessageCountLatch;
 
 import javax.jms.JMSException;
 import javax.naming.NamingException;
@@ -46,6 +49,11 @@ public class AndesClient {
      */
     private static Logger log = Logger.getLogger(AndesClient.class);
 
+    /**
+     * The time to wait for consumers on the thread pool to stop, in milliseconds.
+     */
+    private static final long CONSUMER_SHUTDOWN_TIMEOUT_MILLIS = 30000L;
+
     /**
      * The delay between starting publishers or consumers
      */
@@ -61,6 +69,22 @@ public class AndesClient {
      */
     List<AndesJMSPublisher> publishers = new ArrayList<>();
 
+    /**
+     * The thread pool shared by synchronous consumers, null if each consumer has its own thread.
+     */
+    private JMSConsumerExecutor consumerExecutor;
+
+    /**
+     * Counts the messages processed by all consumers, waking up threads waiting for them.
+     */
+    private final MessageCountLatch receivedMessageLatch = new MessageCountLatch();
+
+    /**
+     * The initial contexts and looked up objects shared by the consumers and publishers of the
+     * client, cleared when the client is stopped.
+     */
+    private final JNDIContextCache contextCache = new JNDIContextCache();
+
     /**
      * Creates a single consumer or publisher based on the configuration passed
      *
@@ -97,27 +121,69 @@ public class AndesClient {
             if (config instanceof AndesJMSConsumerClientConfiguration) {
                 AndesClientUtils.initializeReceivedMessagesPrintWriter(((AndesJMSConsumerClientConfiguration) config)
                                                                        .getFilePathToWriteReceivedMessages());
+                AndesClientUtils.initializeReceivedMessageRecordWriter(((AndesJMSConsumerClientConfiguration) config)
+                                                                       .getFilePathToWriteReceivedMessageRecords());
             }
 
             if (config instanceof AndesJMSPublisherClientConfiguration) {
                 AndesClientUtils.initializePublishedPrintWriter(((AndesJMSPublisherClientConfiguration) config).getFilePathToWritePublishedMessages());
             }
 
+            // Consumers share connections and sessions when configured to
+            JMSSessionMultiplexer sessionMultiplexer = null;
+            if (config instanceof AndesJMSConsumerClientConfiguration && createConsumersAndProducers) {
+                sessionMultiplexer = createSessionMultiplexer((AndesJMSConsumerClientConfiguration) config);
+                AndesJMSConsumerClientConfiguration consumerConfig = (AndesJMSConsumerClientConfiguration) config;
+                if (!consumerConfig.isAsync() && 0 < consumerConfig.getConsumerThreadPoolSize()) {
+                    consumerExecutor = new JMSConsumerExecutor(consumerConfig.getConsumerThreadPoolSize());
+                }
+            }
+
             for (int i = 0; i < numberOfThreads; i++) {
                 if (config instanceof AndesJMSConsumerClientConfiguration) {
-                    consumers
-                            .add(new AndesJMSConsumer((AndesJMSConsumerClientConfiguration) config, createConsumersAndProducers));
+                    AndesJMSConsumer consumer =
+                            new AndesJMSConsumer((AndesJMSConsumerClientConfiguration) config,
+                                                 createConsumersAndProducers, sessionMultiplexer,
+                                                 consumerExecutor, contextCache);
+                    consumer.setReceivedMessageLatch(receivedMessageLatch);
+                    consumers.add(consumer);
                 } else if (config instanceof AndesJMSPublisherClientConfiguration) {
                     publishers
-                            .add(new AndesJMSPublisher((AndesJMSPublisherClientConfiguration) config, createConsumersAndProducers));
+                            .add(new AndesJMSPublisher((AndesJMSPublisherClientConfiguration) config, createConsumersAndProducers,
+                                                       contextCache));
                 }
             }
+
+            if (null != sessionMultiplexer) {
+                log.info("Created " + numberOfThreads + " consumers on " + sessionMultiplexer
+                        .getSessionCount() + " sessions and " + sessionMultiplexer
+                        .getConnectionCount() + " connections");
+            }
         } else {
             throw new AndesClientException("The amount of subscribers cannot be less than 1. " +
                                            "Value entered is " + Integer.toString(numberOfThreads));
         }
     }
 
+    /**
+     * Creates a multiplexer for consumers sharing connections and sessions.
+     *
+     * @param config The consumer configuration.
+     * @return The multiplexer, or null if each consumer has its own connection and session.
+     * @throws AndesClientException Thrown when sessions are shared by synchronous consumers.
+     */
+    private JMSSessionMultiplexer createSessionMultiplexer(AndesJMSConsumerClientConfiguration config)
+            throws AndesClientException {
+        if (1 == config.getSessionsPerConnection() && 1 == config.getConsumersPerSession()) {
+            return null;
+        }
+        if (1 < config.getConsumersPerSession() && !config.isAsync()) {
+            throw new AndesClientException("Consumers can only share sessions when reading " +
+                                           "messages asynchronously.");
+        }
+        return new JMSSessionMultiplexer(config);
+    }
+
     /**
      * Starts up the consumer(s) or publisher(s) to consume or publish messages.
      *
@@ -153,8 +219,44 @@ public class AndesClient {
         for (AndesJMSPublisher publisher : publishers) {
             publisher.stopClient();
         }
+        if (null != consumerExecutor) {
+            // Waiting for the consumers to be closed on the thread pool
+            consumerExecutor.shutdown(CONSUMER_SHUTDOWN_TIMEOUT_MILLIS);
+        }
+        contextCache.clear();
 
         log.info("TPS:" + this.getConsumerTPS() + " AverageLatency:" + this.getAverageLatency());
+        if (!consumers.isEmpty()) {
+            log.info("Latency " + this.getLatencyHistogram());
+            LatencyHistogram acknowledgeLatencyHistogram = this.getAcknowledgeLatencyHistogram();
+            if (0 < acknowledgeLatencyHistogram.getCount()) {
+                log.info("Acknowledge latency " + acknowledgeLatencyHistogram);
+            }
+            LatencyHistogram commitLatencyHistogram = this.getCommitLatencyHistogram();
+            if (0 < commitLatencyHistogram.getCount()) {
+                log.info("Commit latency " + commitLatencyHistogram);
+            }
+        }
+
+        // Writing the messages and statistics recorded so far to their files
+        AndesClientUtils.flushPrintWriters();
+    }
+
+    /**
+     * Waits until the consumers of the client receive the expected number of messages, or until
+     * they receive no message for the idle timeout. Waiting threads are woken up by the consumers,
+     * so the wait ends as soon as either happens.
+     *
+     * @param expectedMessageCount The number of messages to wait for, or {@link Long#MAX_VALUE}
+     *                             to wait until no more messages are received.
+     * @param idleTimeoutNanos     The time in nanoseconds without receiving messages after which
+     *                             waiting stops.
+     * @return true if the expected number of messages was received, false otherwise.
+     * @throws InterruptedException Thrown when the waiting thread is interrupted.
+     */
+    public boolean awaitReceivedMessages(long expectedMessageCount, long idleTimeoutNanos)
+            throws InterruptedException {
+        return receivedMessageLatch.await(expectedMessageCount, idleTimeoutNanos);
     }
 
     /**
@@ -171,29 +273,87 @@ public class AndesClient {
     }
 
     /**
-     * Gets the average transactions per second for consumer(s).
+     * Gets the transactions per second of all consumers together, calculated from the total
+     * received message count between the first and the last message received by any consumer.
      *
-     * @return The average TPS.
+     * @return The aggregate TPS.
      */
     public double getConsumerTPS() {
-        double tps = 0L;
-        for (AndesJMSConsumer consumer : consumers) {
-            tps = tps + consumer.getConsumerTPS();
-        }
-        return tps / consumers.size();
+        return ClientMetrics.snapshot(getConsumerMetrics()).getTPS();
     }
 
     /**
-     * Gets the average latency for consumer(s).
+     * Gets the average latency of the messages received by all consumers.
      *
      * @return The average latency.
      */
     public double getAverageLatency() {
-        double averageLatency = 0L;
+        return ClientMetrics.snapshot(getConsumerMetrics()).getAverageLatency();
+    }
+
+    /**
+     * Gets the transactions per second of all consumers together over the last complete seconds.
+     *
+     * @param seconds The length of the window in seconds, at most
+     *                {@link ClientMetrics#WINDOW_SECONDS} - 1.
+     * @return The aggregate TPS in the window.
+     */
+    public double getConsumerWindowTPS(int seconds) {
+        return ClientMetrics.getWindowTPS(seconds, getConsumerMetrics());
+    }
+
+    /**
+     * Gets the metrics of each consumer, from which per consumer and aggregate figures can be
+     * read.
+     *
+     * @return The consumer metrics.
+     */
+    public List<ClientMetrics> getConsumerMetrics() {
+        List<ClientMetrics> consumerMetrics = new ArrayList<>(consumers.size());
+        for (AndesJMSConsumer consumer : consumers) {
+            consumerMetrics.add(consumer.getMetrics());
+        }
+        return consumerMetrics;
+    }
+
+    /**
+     * Gets the latencies of the messages received by all consumers of the client. Percentiles of
+     * the latencies can be read from the returned histogram.
+     *
+     * @return A histogram merging the latency histograms of all consumers.
+     */
+    public LatencyHistogram getLatencyHistogram() {
+        LatencyHistogram latencyHistogram = new LatencyHistogram();
         for (AndesJMSConsumer consumer : consumers) {
-            averageLatency = averageLatency + consumer.getAverageLatency();
+            latencyHistogram.add(consumer.getLatencyHistogram());
         }
-        return averageLatency / consumers.size();
+        return latencyHistogram;
+    }
+
+    /**
+     * Gets the time taken by the acknowledgements of all consumers in the client.
+     *
+     * @return A histogram combining the acknowledgement latencies of all consumers.
+     */
+    public LatencyHistogram getAcknowledgeLatencyHistogram() {
+        LatencyHistogram acknowledgeLatencyHistogram = new LatencyHistogram();
+        for (AndesJMSConsumer consumer : consumers) {
+            acknowledgeLatencyHistogram.add(consumer.getAcknowledgeLatencyHistogram());
+        }
+        return acknowledgeLatencyHistogram;
+    }
+
+    /**
+     * Gets the time taken by the commits of all consumers in the client.
+     *
+     * @return A histogram combining the commit latencies of all consumers.
+     */
+    public LatencyHistogram getCommitLatencyHistogram() {
+        LatencyHistogram commitLatencyHistogram = new LatencyHistogram();
+        for (AndesJMSConsumer consumer : consumers) {
+            commitLatencyHistogram.add(consumer.getCommitLatencyHistogram());
+        }
+        return commitLatencyHistogram;
     }
 
     /**
@@ -210,21 +370,43 @@ public class AndesClient {
     }
 
     /**
-     * Gets the average transactions per seconds for publisher(s). Suppressing "UnusedDeclaration"
-     * as the client acts as an service.
+     * Gets the transactions per second of all publishers together, calculated from the total sent
+     * message count between the first and the last message sent by any publisher. Suppressing
+     * "UnusedDeclaration" as the client acts as an service.
      * Suppressing "UnusedDeclaration" as currently it is not being used within product-mb test
      * cases. But the client can be exported so that any other use can use the client for publishing
      * and subscribing messages.
      *
-     * @return the average transactions per seconds.
+     * @return the aggregate transactions per seconds.
      */
     @SuppressWarnings("UnusedDeclaration")
     public double getPublisherTPS() {
-        double tps = 0L;
+        return ClientMetrics.snapshot(getPublisherMetrics()).getTPS();
+    }
+
+    /**
+     * Gets the transactions per second of all publishers together over the last complete seconds.
+     *
+     * @param seconds The length of the window in seconds, at most
+     *                {@link ClientMetrics#WINDOW_SECONDS} - 1.
+     * @return The aggregate TPS in the window.
+     */
+    public double getPublisherWindowTPS(int seconds) {
+        return ClientMetrics.getWindowTPS(seconds, getPublisherMetrics());
+    }
+
+    /**
+     * Gets the metrics of each publisher, from which per publisher and aggregate figures can be
+     * read.
+     *
+     * @return The publisher metrics.
+     */
+    public List<ClientMetrics> getPublisherMetrics() {
+        List<ClientMetrics> publisherMetrics = new ArrayList<>(publishers.size());
         for (AndesJMSPublisher publisher : publishers) {
-            tps = tps + publisher.getPublisherTPS();
+            publisherMetrics.add(publisher.getMetrics());
         }
-        return tps / publishers.size();
+        return publisherMetrics;
     }
 
     /**
@@ -237,10 +419,7 @@ public class AndesClient {
     public Map<Long, Integer> checkIfMessagesAreDuplicated()
             throws IOException {
         if (!consumers.isEmpty()) {
-            AndesClientUtils.flushPrintWriters();
-            AndesClientOutputParser andesClientOutputParser =
-                    new AndesClientOutputParser(consumers.get(0).getConfig()
-                                                        .getFilePathToWriteReceivedMessages());
+            AndesClientOutputParser andesClientOutputParser = createOutputParser();
             return andesClientOutputParser.getDuplicatedMessages();
         } else {
             return null;
@@ -257,9 +436,7 @@ public class AndesClient {
     public boolean checkIfMessagesAreInOrder()
             throws IOException {
         if (!consumers.isEmpty()) {
-            AndesClientOutputParser andesClientOutputParser =
-                    new AndesClientOutputParser(consumers.get(0).getConfig()
-                                                        .getFilePathToWriteReceivedMessages());
+            AndesClientOutputParser andesClientOutputParser = createOutputParser();
             return andesClientOutputParser.checkIfMessagesAreInOrder();
         } else {
             return false;
@@ -276,9 +453,7 @@ public class AndesClient {
     public boolean transactedOperation(long operationOccurredIndex)
             throws IOException {
         if (0 < consumers.size()) {
-            AndesClientOutputParser andesClientOutputParser =
-                    new AndesClientOutputParser(consumers.get(0).getConfig()
-                                                        .getFilePathToWriteReceivedMessages());
+            AndesClientOutputParser andesClientOutputParser = createOutputParser();
             return andesClientOutputParser.transactedOperations(operationOccurredIndex);
         } else {
             return false;
@@ -296,9 +471,7 @@ public class AndesClient {
     public boolean checkIfTransactedRollbackPreservesOrder(long messagesPerRollback)
             throws IOException {
         if (0 < consumers.size()) {
-            AndesClientOutputParser andesClientOutputParser =
-                    new AndesClientOutputParser(consumers.get(0).getConfig()
-                                                        .getFilePathToWriteReceivedMessages());
+            AndesClientOutputParser andesClientOutputParser = createOutputParser();
             return andesClientOutputParser.checkIfTransactedRollbackPreservesOrder(messagesPerRollback);
         } else {
             return false;
@@ -314,15 +487,31 @@ public class AndesClient {
     public long getTotalNumberOfDuplicates()
             throws IOException {
         if (0 < consumers.size()) {
-            AndesClientOutputParser andesClientOutputParser =
-                    new AndesClientOutputParser(consumers.get(0).getConfig()
-                                                        .getFilePathToWriteReceivedMessages());
+            AndesClientOutputParser andesClientOutputParser = createOutputParser();
             return andesClientOutputParser.numberDuplicatedMessages();
         } else {
             return -1L;
         }
     }
 
+    /**
+     * Creates a parser for the messages received by the first consumer. The binary records of
+     * the received messages are parsed when the consumer writes them, otherwise the received
+     * messages text file. Everything recorded so far is flushed to the files first.
+     *
+     * @return The parser.
+     * @throws IOException Thrown when the file is either missing or corrupted.
+     */
+    private AndesClientOutputParser createOutputParser() throws IOException {
+        AndesClientUtils.flushPrintWriters();
+        AndesJMSConsumerClientConfiguration consumerConfig = consumers.get(0).getConfig();
+        if (null != consumerConfig.getFilePathToWriteReceivedMessageRecords()) {
+            return new AndesClientOutputParser(consumerConfig.getFilePathToWriteReceivedMessageRecords());
+        } else {
+            return new AndesClientOutputParser(consumerConfig.getFilePathToWriteReceivedMessages());
+        }
+    }
+
     /**
      * Sets the starting delay when starting publishers or consumers.
      *
@@ -31,6 +31,10 @@ import java.util.Properties;
 /**
  * The base class for JMS publishers and consumers. This class creates the initial context which
  * is required in creating the publishers and consumers.
+ * <p/>
+ * Initial contexts and the connection factories and destinations looked up from them are kept in
+ * a {@link JNDIContextCache}, so that clients with the same connection string and destination
+ * share them instead of each creating its own.
  */
 public abstract class AndesJMSBase {
     /**
@@ -38,26 +42,62 @@ public abstract class AndesJMSBase {
      */
     protected final AndesJMSClientConfiguration jmsConfig;
 
+    /**
+     * The cache the initial context and the looked up objects are shared through.
+     */
+    private final JNDIContextCache contextCache;
+
     /**
      * The initial context used for creating the publishers and consumers.
      */
     private InitialContext initialContext;
 
     /**
-     * Creates the initial context.
+     * The key of the initial context in the cache.
+     */
+    private final String initialContextKey;
+
+    /**
+     * Creates the initial context in a cache of its own.
      *
      * @param config The configuration.
      * @throws NamingException
      */
     protected AndesJMSBase(AndesJMSClientConfiguration config) throws NamingException {
+        this(config, new JNDIContextCache());
+    }
+
+    /**
+     * Creates the initial context, or gets it from the cache.
+     *
+     * @param config       The configuration.
+     * @param contextCache The cache shared by the publishers and consumers of a client.
+     * @throws NamingException
+     */
+    protected AndesJMSBase(AndesJMSClientConfiguration config, JNDIContextCache contextCache)
+            throws NamingException {
         this.jmsConfig = config;
+        this.contextCache = contextCache;
 
+        initialContextKey = jmsConfig.getConnectionString() + "|" + jmsConfig.getExchangeType()
+                .getType() + "|" + jmsConfig.getDestinationName();
         Properties properties = new Properties();
         properties.put(Context.INITIAL_CONTEXT_FACTORY, AndesClientConstants.ANDES_ICF);
         properties.put(AndesClientConstants.CF_NAME_PREFIX + AndesClientConstants.CF_NAME, jmsConfig.getConnectionString());
         properties.put(jmsConfig.getExchangeType().getType() + "." + jmsConfig.getDestinationName(), jmsConfig.getDestinationName());
+        initialContext = contextCache.getInitialContext(initialContextKey, properties);
+    }
 
-        initialContext = new InitialContext(properties);
+    /**
+     * Looks up a connection factory or destination from the initial context. Looked up objects
+     * are cached and shared by all clients using the same initial context.
+     *
+     * @param name The name of the object.
+     * @return The object.
+     * @throws NamingException Thrown when the name cannot be looked up.
+     */
+    protected Object lookup(String name) throws NamingException {
+        return contextCache.lookup(initialContextKey, initialContext, name);
     }
 
     /**
@@ -22,8 +22,11 @@ import org.wso2.mb.integration.common.clients.configurations.AndesJMSConsumerCli
 import org.wso2.mb.integration.common.clients.exceptions.AndesClientException;
 import org.wso2.mb.integration.common.clients.operations.utils.AndesClientConstants;
 import org.wso2.mb.integration.common.clients.operations.utils.AndesClientUtils;
+import org.wso2.mb.integration.common.clients.operations.utils.ClientMetrics;
 import org.wso2.mb.integration.common.clients.operations.utils.ExchangeType;
 import org.wso2.mb.integration.common.clients.operations.utils.JMSDeliveryStatus;
+import org.wso2.mb.integration.common.clients.operations.utils.LatencyHistogram;
+import org.wso2.mb.integration.common.clients.operations.utils.MessageCountLatch;
 
 import javax.jms.Connection;
 import javax.jms.JMSException;
@@ -44,6 +47,10 @@ import javax.jms.TopicSession;
 import javax.jms.TopicSubscriber;
 import javax.naming.NamingException;
 import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
@@ -57,31 +64,74 @@ public class AndesJMSConsumer extends AndesJMSBase
      */
     private static Logger log = Logger.getLogger(AndesJMSConsumer.class);
 
+    /**
+     * The time given to the consumer to be un-subscribed before it is stopped, in milliseconds.
+     */
+    private static final long UN_SUBSCRIBE_WAIT_MILLIS = 1000L;
+
     /**
      * The configuration for the consumer
      */
     private final AndesJMSConsumerClientConfiguration consumerConfig;
 
     /**
-     * Timestamp for the first message consumed
+     * The amount of messages received by the the consumer
      */
-    private long firstMessageConsumedTimestamp;
+    private AtomicLong receivedMessageCount;
 
     /**
-     * Timestamp of the last message consumes
+     * The consumed timestamps and the addition of the time differences between the timestamp at
+     * which each message got published and the timestamp at which it got consumed. Recorded from
+     * the thread the messages are delivered on and read by other threads.
      */
-    private long lastMessageConsumedTimestamp;
+    private final ClientMetrics metrics = new ClientMetrics();
 
     /**
-     * The amount of messages received by the the consumer
+     * The latencies of the consumed messages. Latencies are measured from the nano time stamp set
+     * by the publisher, or from the JMS timestamp for messages sent by other publishers.
      */
-    private AtomicLong receivedMessageCount;
+    private final LatencyHistogram latencyHistogram = new LatencyHistogram();
+
+    /**
+     * The time taken by each acknowledgement of received messages.
+     */
+    private final LatencyHistogram acknowledgeLatencyHistogram = new LatencyHistogram();
+
+    /**
+     * The time taken by each commit of the session.
+     */
+    private final LatencyHistogram commitLatencyHistogram = new LatencyHistogram();
+
+    /**
+     * The last received message which is not yet acknowledged, null if all received messages are
+     * acknowledged. Acknowledging it acknowledges all messages received before it on the session.
+     */
+    private Message unacknowledgedMessage;
 
     /**
-     * The addition of the time differences between the timestamp at which it got published and the
-     * timestamp at which it got consumed for each message consumed.
+     * The nano time at which the oldest unacknowledged message was received.
      */
-    private long totalLatency;
+    private long unacknowledgedSinceNanoTime;
+
+    /**
+     * The number of messages received since the session was last committed or rolled back.
+     */
+    private long uncommittedMessageCount;
+
+    /**
+     * The nano time at which the oldest uncommitted message was received.
+     */
+    private long uncommittedSinceNanoTime;
+
+    /**
+     * The number of acknowledgements made, used to sample the acknowledgements which are logged.
+     */
+    private long acknowledgementCount;
+
+    /**
+     * The number of commits made, used to sample the commits which are logged.
+     */
+    private long commitCount;
 
     /**
      * The JMS connection used to create the JMS sessions
@@ -98,6 +148,47 @@ public class AndesJMSConsumer extends AndesJMSBase
      */
     private MessageConsumer receiver;
 
+    /**
+     * The multiplexer the connection and session are shared through, null if the consumer has
+     * its own connection and session.
+     */
+    private final JMSSessionMultiplexer sessionMultiplexer;
+
+    /**
+     * The shared session the receiver is created on, null if the consumer has its own session.
+     */
+    private JMSSessionMultiplexer.SharedSession sharedSession;
+
+    /**
+     * The thread pool the consumer reads messages, stops and un-subscribes on, null if it uses
+     * threads of its own.
+     */
+    private final JMSConsumerExecutor consumerExecutor;
+
+    /**
+     * The latch the processed messages are counted in, null if they are not counted.
+     */
+    private volatile MessageCountLatch receivedMessageLatch;
+
+    /**
+     * The timer completing the time bounded batches of asynchronous consumers when no further
+     * messages arrive, created when first needed.
+     */
+    private static ScheduledExecutorService batchDeadlineTimer;
+
+    /**
+     * The lock asynchronous consumers process messages and complete due batches while holding.
+     * Consumers sharing a session share the lock, so that the session is never acknowledged or
+     * committed by the timer while it delivers a message.
+     */
+    private final Object batchLock;
+
+    /**
+     * Whether a check completing the due batches is scheduled on the timer. Guarded by the batch
+     * lock.
+     */
+    private boolean batchDeadlineScheduled;
+
     /**
      * Creates a new JMS consumer with a given configuration.
      *
@@ -108,11 +199,71 @@ public class AndesJMSConsumer extends AndesJMSBase
      */
     public AndesJMSConsumer(AndesJMSConsumerClientConfiguration config, boolean createConsumer)
             throws NamingException, JMSException {
-        super(config);
+        this(config, createConsumer, null);
+    }
+
+    /**
+     * Creates a new JMS consumer with a given configuration, sharing its connection and session
+     * with other consumers.
+     *
+     * @param config             The configuration.
+     * @param createConsumer     Creates the connection, session and receiver.
+     * @param sessionMultiplexer The multiplexer to get a shared connection and session from, or
+     *                           null to create a connection and session for the consumer.
+     * @throws NamingException
+     * @throws JMSException
+     */
+    public AndesJMSConsumer(AndesJMSConsumerClientConfiguration config, boolean createConsumer,
+                            JMSSessionMultiplexer sessionMultiplexer)
+            throws NamingException, JMSException {
+        this(config, createConsumer, sessionMultiplexer, null);
+    }
+
+    /**
+     * Creates a new JMS consumer with a given configuration, sharing its connection and session
+     * and the threads it runs on with other consumers.
+     *
+     * @param config             The configuration.
+     * @param createConsumer     Creates the connection, session and receiver.
+     * @param sessionMultiplexer The multiplexer to get a shared connection and session from, or
+     *                           null to create a connection and session for the consumer.
+     * @param consumerExecutor   The thread pool to read messages on when reading synchronously,
+     *                           or null to start a thread for the consumer.
+     * @throws NamingException
+     * @throws JMSException
+     */
+    public AndesJMSConsumer(AndesJMSConsumerClientConfiguration config, boolean createConsumer,
+                            JMSSessionMultiplexer sessionMultiplexer,
+                            JMSConsumerExecutor consumerExecutor)
+            throws NamingException, JMSException {
+        this(config, createConsumer, sessionMultiplexer, consumerExecutor, new JNDIContextCache());
+    }
+
+    /**
+     * Creates a new JMS consumer with a given configuration, sharing its connection and session,
+     * the threads it runs on and its initial context with other consumers.
+     *
+     * @param config             The configuration.
+     * @param createConsumer     Creates the connection, session and receiver.
+     * @param sessionMultiplexer The multiplexer to get a shared connection and session from, or
+     *                           null to create a connection and session for the consumer.
+     * @param consumerExecutor   The thread pool to read messages on when reading synchronously,
+     *                           or null to start a thread for the consumer.
+     * @param contextCache       The cache of the initial contexts of the client.
+     * @throws NamingException
+     * @throws JMSException
+     */
+    public AndesJMSConsumer(AndesJMSConsumerClientConfiguration config, boolean createConsumer,
+                            JMSSessionMultiplexer sessionMultiplexer,
+                            JMSConsumerExecutor consumerExecutor, JNDIContextCache contextCache)
+            throws NamingException, JMSException {
+        super(config, contextCache);
         receivedMessageCount = new AtomicLong(0);
 
         // Sets the configuration
         this.consumerConfig = config;
+        this.sessionMultiplexer = sessionMultiplexer;
+        this.consumerExecutor = consumerExecutor;
 
         if (createConsumer) {
             if (ExchangeType.QUEUE == this.consumerConfig.getExchangeType()) {
@@ -122,6 +273,7 @@ public class AndesJMSConsumer extends AndesJMSBase
                 this.createTopicConnection();
             }
         }
+        this.batchLock = (null != sharedSession) ? sharedSession : new Object();
     }
 
     /**
@@ -132,25 +284,30 @@ public class AndesJMSConsumer extends AndesJMSBase
      */
     private void createTopicConnection() throws NamingException, JMSException {
         // Creates a topic connection, sessions and receiver
-        TopicConnectionFactory connFactory = (TopicConnectionFactory) super.getInitialContext()
-                .lookup(AndesClientConstants.CF_NAME);
-        TopicConnection topicConnection = connFactory.createTopicConnection();
-        topicConnection.setClientID(this.consumerConfig.getSubscriptionID());
-        topicConnection.start();
+        TopicConnectionFactory connFactory = (TopicConnectionFactory) lookup(AndesClientConstants.CF_NAME);
         TopicSession topicSession;
-        // Sets acknowledgement mode
-        if (TopicSession.SESSION_TRANSACTED == this.consumerConfig.getAcknowledgeMode().getType()) {
-            topicSession = topicConnection
-                    .createTopicSession(true, this.consumerConfig.getAcknowledgeMode().getType());
+        if (null != sessionMultiplexer) {
+            sharedSession = sessionMultiplexer.acquireSession(connFactory);
+            connection = sharedSession.getConnection();
+            topicSession = (TopicSession) sharedSession.getSession();
         } else {
-            topicSession = topicConnection
-                    .createTopicSession(false, this.consumerConfig.getAcknowledgeMode().getType());
+            TopicConnection topicConnection = connFactory.createTopicConnection();
+            topicConnection.setClientID(this.consumerConfig.getSubscriptionID());
+            topicConnection.start();
+            // Sets acknowledgement mode
+            if (TopicSession.SESSION_TRANSACTED == this.consumerConfig.getAcknowledgeMode().getType()) {
+                topicSession = topicConnection
+                        .createTopicSession(true, this.consumerConfig.getAcknowledgeMode().getType());
+            } else {
+                topicSession = topicConnection
+                        .createTopicSession(false, this.consumerConfig.getAcknowledgeMode().getType());
+            }
+            connection = topicConnection;
         }
 
         Topic topic =
-                (Topic) super.getInitialContext().lookup(this.consumerConfig.getDestinationName());
+                (Topic) lookup(this.consumerConfig.getDestinationName());
 
-        connection = topicConnection;
         session = topicSession;
         // If topic is durable
         if (this.consumerConfig.isDurable()) {
@@ -181,24 +338,29 @@ public class AndesJMSConsumer extends AndesJMSBase
      */
     private void createQueueConnection() throws NamingException, JMSException {
         // Creates a queue connection, sessions and receiver
-        QueueConnectionFactory connFactory = (QueueConnectionFactory) super.getInitialContext()
-                .lookup(AndesClientConstants.CF_NAME);
-        QueueConnection queueConnection = connFactory.createQueueConnection();
-        queueConnection.start();
+        QueueConnectionFactory connFactory = (QueueConnectionFactory) lookup(AndesClientConstants.CF_NAME);
         QueueSession queueSession;
-
-        // Sets acknowledgement mode
-        if (QueueSession.SESSION_TRANSACTED == this.consumerConfig.getAcknowledgeMode().getType()) {
-            queueSession = queueConnection
-                    .createQueueSession(true, this.consumerConfig.getAcknowledgeMode().getType());
+        if (null != sessionMultiplexer) {
+            sharedSession = sessionMultiplexer.acquireSession(connFactory);
+            connection = sharedSession.getConnection();
+            queueSession = (QueueSession) sharedSession.getSession();
         } else {
-            queueSession = queueConnection
-                    .createQueueSession(false, this.consumerConfig.getAcknowledgeMode().getType());
+            QueueConnection queueConnection = connFactory.createQueueConnection();
+            queueConnection.start();
+
+            // Sets acknowledgement mode
+            if (QueueSession.SESSION_TRANSACTED == this.consumerConfig.getAcknowledgeMode().getType()) {
+                queueSession = queueConnection
+                        .createQueueSession(true, this.consumerConfig.getAcknowledgeMode().getType());
+            } else {
+                queueSession = queueConnection
+                        .createQueueSession(false, this.consumerConfig.getAcknowledgeMode().getType());
+            }
+            connection = queueConnection;
         }
 
         Queue queue =
-                (Queue) super.getInitialContext().lookup(this.consumerConfig.getDestinationName());
-        connection = queueConnection;
+                (Queue) lookup(this.consumerConfig.getDestinationName());
         session = queueSession;
 
         // If selectors exists
@@ -219,6 +381,9 @@ public class AndesJMSConsumer extends AndesJMSBase
             if (this.consumerConfig.isAsync()) {
                 // Use an asynchronous message listener
                 receiver.setMessageListener(this);
+            } else if (null != consumerExecutor) {
+                // Polls for messages on the shared thread pool
+                consumerExecutor.execute(new ReceiveTask());
             } else {
                 // Uses a thread to listen to messages
                 Thread consumerThread = new Thread(this);
@@ -237,65 +402,27 @@ public class AndesJMSConsumer extends AndesJMSBase
         /**
          * Using a separate thread as stopping the consumer on "onMessage" thread is not allowed.
          */
-        new Thread(new Runnable() {
+        runInBackground(new Runnable() {
             @Override
             public void run() {
-                if (null != connection && null != session && null != receiver) {
-                    try {
-                        log.info("Closing Consumer");
-                        if (ExchangeType.TOPIC == consumerConfig.getExchangeType()) {
-                            if (null != receiver) {
-                                TopicSubscriber topicSubscriber = (TopicSubscriber) receiver;
-                                topicSubscriber.close();
-                            }
-
-                            if (null != session) {
-                                TopicSession topicSession = (TopicSession) session;
-                                topicSession.close();
-                            }
-
-                            if (null != connection) {
-                                TopicConnection topicConnection = (TopicConnection) connection;
-                                topicConnection.close();
-                            }
-                        } else if (ExchangeType.QUEUE == consumerConfig.getExchangeType()) {
-                            if (null != receiver) {
-                                QueueReceiver queueReceiver = (QueueReceiver) receiver;
-                                queueReceiver.close();
-                            }
-
-                            if (null != session) {
-                                QueueSession queueSession = (QueueSession) session;
-                                queueSession.close();
-                            }
-
-                            if (null != connection) {
-                                QueueConnection queueConnection = (QueueConnection) connection;
-                                queueConnection.stop();
-                                queueConnection.close();
-                            }
-                        }
-
-                        receiver = null;
-                        session = null;
-                        connection = null;
-
-                        log.info("Consumer Closed");
-
-                    } catch (JMSException e) {
-                        log.error("Error in stopping client.", e);
-                        throw new RuntimeException("Error in stopping client.", e);
-                    }
-                }
+                stopClientSync();
             }
-        }).start();
+        });
     }
 
-    public void stopClientSync(){
+    /**
+     * Closes the receiver, session and connection of the consumer on the calling thread. A shared
+     * session and connection are closed once all consumers sharing them are closed.
+     */
+    public synchronized void stopClientSync(){
         if (null != connection && null != session && null != receiver) {
             try {
                 log.info("Closing Consumer");
-                if (ExchangeType.TOPIC == consumerConfig.getExchangeType()) {
+                if (null != sharedSession) {
+                    receiver.close();
+                    sessionMultiplexer.releaseSession(sharedSession);
+                    sharedSession = null;
+                } else if (ExchangeType.TOPIC == consumerConfig.getExchangeType()) {
                     if (null != receiver) {
                         TopicSubscriber topicSubscriber = (TopicSubscriber) receiver;
                         topicSubscriber.close();
@@ -351,7 +478,7 @@ public class AndesJMSConsumer extends AndesJMSBase
         /**
          * Using a separate thread as un-subscribing the consumer on "onMessage" thread is not allowed.
          */
-        new Thread(new Runnable() {
+        runInBackground(new Runnable() {
             @Override
             public void run() {
                 if (null != connection && null != session && null != receiver) {
@@ -374,7 +501,21 @@ public class AndesJMSConsumer extends AndesJMSBase
                     throw new RuntimeException("The connection, session and message receiver is not assigned.", andesClientException);
                 }
             }
-        }).start();
+        });
+    }
+
+    /**
+     * Runs a task on the consumer thread pool, or on a new thread if the consumer has no thread
+     * pool. If the pool is already shut down, the task is run on the calling thread.
+     *
+     * @param task The task.
+     */
+    private void runInBackground(Runnable task) {
+        if (null == consumerExecutor) {
+            new Thread(task).start();
+        } else if (!consumerExecutor.execute(task)) {
+            task.run();
+        }
     }
 
     /**
@@ -385,7 +526,23 @@ public class AndesJMSConsumer extends AndesJMSBase
         try {
             boolean interrupted = false;
             while (true) {
-                Message message = this.receiver.receive();
+                long waitNanos = nanosUntilNextDueBatch(System.nanoTime());
+                Message message;
+                if (Long.MAX_VALUE == waitNanos) {
+                    message = this.receiver.receive();
+                } else {
+                    // Waits no longer than the time bound of the pending batches, as a zero
+                    // timeout waits forever
+                    long waitMillis = TimeUnit.NANOSECONDS.toMillis(waitNanos) + 1;
+                    long startNanoTime = System.nanoTime();
+                    message = this.receiver.receive(waitMillis);
+                    if (null == message && System.nanoTime() - startNanoTime >= TimeUnit.MILLISECONDS
+                            .toNanos(waitMillis)) {
+                        // Acknowledges and commits messages whose time bound passed while waiting
+                        completeDueBatches(System.nanoTime());
+                        continue;
+                    }
+                }
 
                 // We assume message receiving was interrupted if we receive null
                 if (null == message) {
@@ -407,13 +564,92 @@ public class AndesJMSConsumer extends AndesJMSBase
         }
     }
 
+    /**
+     * Reads messages of a synchronous consumer in turns on the consumer thread pool. Each turn
+     * processes the messages available without blocking, up to a limit, and schedules the next
+     * turn. The receiver is only used while holding the lock of the consumer, so that it is never
+     * closed in the middle of a turn.
+     */
+    private class ReceiveTask implements Runnable {
+        /**
+         * The wait before the next turn if no messages are available.
+         */
+        private long idleWaitMicros = JMSConsumerExecutor.MIN_IDLE_WAIT_MICROS;
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void run() {
+            int receivedMessages = 0;
+            boolean completed = false;
+            long waitMillis = 0L;
+            try {
+                synchronized (AndesJMSConsumer.this) {
+                    if (null == receiver) {
+                        // The consumer was stopped
+                        return;
+                    }
+                    while (receivedMessages < JMSConsumerExecutor.MESSAGES_PER_TURN) {
+                        Message message = receiver.receiveNoWait();
+                        if (null == message) {
+                            break;
+                        }
+                        receivedMessages++;
+                        completed = handleReceivedMessage(message);
+                        waitMillis = getWaitAfterMessageMillis(completed);
+                        if (completed || 0 < waitMillis) {
+                            break;
+                        }
+                    }
+                    if (!completed && null != receiver) {
+                        // Acknowledges and commits messages whose time bound passed while idle
+                        completeDueBatches(System.nanoTime());
+                    }
+                }
+            } catch (JMSException e) {
+                log.error("Error while receiving messages ", e);
+                return;
+            } catch (IOException e) {
+                log.error("Error while writing message to file", e);
+                return;
+            }
+
+            if (completed) {
+                // Stops the consumer once it is un-subscribed, without holding a pool thread
+                // while waiting
+                if (0 == waitMillis || !consumerExecutor.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        stopClientSync();
+                    }
+                }, TimeUnit.MILLISECONDS.toMicros(waitMillis))) {
+                    stopClientSync();
+                }
+            } else if (0 < waitMillis) {
+                // Delays reading of messages without holding a pool thread while waiting
+                idleWaitMicros = JMSConsumerExecutor.MIN_IDLE_WAIT_MICROS;
+                consumerExecutor.schedule(this, TimeUnit.MILLISECONDS.toMicros(waitMillis));
+            } else if (0 < receivedMessages) {
+                idleWaitMicros = JMSConsumerExecutor.MIN_IDLE_WAIT_MICROS;
+                consumerExecutor.execute(this);
+            } else {
+                consumerExecutor.schedule(this, idleWaitMicros);
+                idleWaitMicros = Math.min(2 * idleWaitMicros, JMSConsumerExecutor.MAX_IDLE_WAIT_MICROS);
+            }
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public void onMessage(Message message) {
         try {
-            boolean success = this.processReceivedMessage(message);
+            boolean success;
+            synchronized (batchLock) {
+                success = this.processReceivedMessage(message);
+            }
             if(success) {
                 stopClient();
             }
@@ -426,30 +662,65 @@ public class AndesJMSConsumer extends AndesJMSBase
         }
     }
 
+    /**
+     * Processes a received message and then waits as {@link #getWaitAfterMessageMillis(boolean)}
+     * requires, on the thread the message is received on.
+     *
+     * @param message The {@link javax.jms.Message} to process.
+     * @return true if client is stopped or un-subscribed, false otherwise.
+     * @throws JMSException
+     * @throws IOException
+     */
+    private boolean processReceivedMessage(Message message)
+            throws JMSException, IOException {
+        boolean completed = handleReceivedMessage(message);
+        AndesClientUtils.sleepForInterval(getWaitAfterMessageMillis(completed));
+        return completed;
+    }
+
+    /**
+     * Gets the time to wait after a message is processed. Once the consumer un-subscribes, it
+     * waits till it is un-subscribed so that no messages will be read. Otherwise it waits for the
+     * running delay before reading the next message.
+     *
+     * @param completed Whether processing the message stopped or un-subscribed the client.
+     * @return The time to wait in milliseconds, 0 to not wait.
+     */
+    private long getWaitAfterMessageMillis(boolean completed) {
+        if (completed) {
+            return this.receivedMessageCount.get() >= consumerConfig.getUnSubscribeAfterEachMessageCount()
+                   ? UN_SUBSCRIBE_WAIT_MILLIS : 0L;
+        }
+        return Math.max(0L, consumerConfig.getRunningDelay());
+    }
+
     /**
      * Processes the received messages. The processing includes the following actions. 1.
      * Calculation of transactions per second. 2. Calculation of  average latency for messages. 3.
      * Message detail logging 4. Writes messages to a file. 5. Writes statistics to a file. 6.
-     * Closing and un-subscribing of client.
+     * Closing and un-subscribing of client. Does not wait, the callers wait as
+     * {@link #getWaitAfterMessageMillis(boolean)} requires.
      *
      * @param message The {@link javax.jms.Message} to publish.
      * @return true if client is stopped or un-subscribed, false otherwise.
      * @throws JMSException
      * @throws IOException
      */
-    private boolean processReceivedMessage(Message message)
+    private boolean handleReceivedMessage(Message message)
             throws JMSException, IOException {
         if (null != message) {
+            long receivedNanoTime = System.nanoTime();
             long threadID = Thread.currentThread().getId();
-            // Calculating total latency
+            // Calculating total latency and setting timestamps for TPS calculation
             long currentTimeStamp = System.currentTimeMillis();
-            this.totalLatency = this.totalLatency + (currentTimeStamp - message.getJMSTimestamp());
-            // Setting timestamps for TPS calculation
-            if (0 == this.firstMessageConsumedTimestamp) {
-                this.firstMessageConsumedTimestamp = currentTimeStamp;
+            this.metrics.record(currentTimeStamp, currentTimeStamp - message.getJMSTimestamp());
+            // Recording the latency of the message
+            if (message.propertyExists(AndesClientConstants.PUBLISH_NANO_TIME_PROPERTY)) {
+                this.latencyHistogram.recordNanos(receivedNanoTime - message
+                        .getLongProperty(AndesClientConstants.PUBLISH_NANO_TIME_PROPERTY));
+            } else {
+                this.latencyHistogram.recordMicros((currentTimeStamp - message.getJMSTimestamp()) * 1000L);
             }
-            this.lastMessageConsumedTimestamp = currentTimeStamp;
-
             // Incrementing message received count
             this.receivedMessageCount.incrementAndGet();
             JMSDeliveryStatus deliveryStatus;
@@ -487,51 +758,234 @@ public class AndesJMSConsumer extends AndesJMSBase
                             .writeReceivedMessagesToFile(textMessage.getText(), this.consumerConfig
                                     .getFilePathToWriteReceivedMessages());
                 }
+                // Writes the received message records
+                if (null != this.consumerConfig.getFilePathToWriteReceivedMessageRecords()) {
+                    AndesClientUtils.writeReceivedMessageRecordToFile(
+                            textMessage.getText(), JMSDeliveryStatus.REDELIVERED == deliveryStatus,
+                            receivedNanoTime, this.consumerConfig.getFilePathToWriteReceivedMessageRecords());
+                }
             }
 
             // Acknowledges messages
-            if (0 == this.receivedMessageCount.get() % this.consumerConfig
-                    .getAcknowledgeAfterEachMessageCount()) {
-                if (Session.CLIENT_ACKNOWLEDGE == session.getAcknowledgeMode()) {
-                    message.acknowledge();
-                    log.info("Acknowledging message : " + message.getJMSMessageID());
+            if (Session.CLIENT_ACKNOWLEDGE == session.getAcknowledgeMode()) {
+                if (null == this.unacknowledgedMessage) {
+                    this.unacknowledgedSinceNanoTime = receivedNanoTime;
+                }
+                this.unacknowledgedMessage = message;
+                if (0 == this.receivedMessageCount.get() % this.consumerConfig
+                        .getAcknowledgeAfterEachMessageCount() || isDue(this.unacknowledgedSinceNanoTime,
+                        receivedNanoTime, this.consumerConfig.getAcknowledgeAfterEachMicros())) {
+                    acknowledgeMessages();
                 }
             }
 
+            if (session.getTransacted()) {
+                if (0 == this.uncommittedMessageCount) {
+                    this.uncommittedSinceNanoTime = receivedNanoTime;
+                }
+                this.uncommittedMessageCount++;
+            }
             if (0 == this.receivedMessageCount.get() % consumerConfig
-                    .getCommitAfterEachMessageCount()) {
+                    .getCommitAfterEachMessageCount() || (0 < this.uncommittedMessageCount && isDue(
+                    this.uncommittedSinceNanoTime, receivedNanoTime, consumerConfig.getCommitAfterEachMicros()))) {
                 // Committing session
-                session.commit();
-                log.info("Committed session");
+                commitSession();
             } else if (0 == this.receivedMessageCount.get() % consumerConfig
                     .getRollbackAfterEachMessageCount()) {
                 // Roll-backing session
                 session.rollback();
+                this.uncommittedMessageCount = 0;
                 log.info("Roll-backed session");
             }
 
+            if (this.consumerConfig.isAsync()) {
+                // Completes the batches once their time bound passes even if no message follows
+                scheduleBatchDeadline(receivedNanoTime);
+            }
+
+            // Counting the message once it is processed, so that waiting threads see its effects
+            MessageCountLatch messageLatch = this.receivedMessageLatch;
+            if (null != messageLatch) {
+                messageLatch.messageReceived(receivedNanoTime);
+            }
+
             if (this.receivedMessageCount.get() >= consumerConfig
                     .getUnSubscribeAfterEachMessageCount()) {
                 // Un-Subscribing consumer
                 unSubscribe(true);
-                // Waiting till consumer is un-subscribed so that no messages will be read.
-                AndesClientUtils.sleepForInterval(1000L);
                 return true;
             } else if (this.receivedMessageCount.get() >= consumerConfig
                     .getMaximumMessagesToReceived()) {
                 return true;
             }
+        }
+        return false;
+    }
+
+    /**
+     * Acknowledges and commits the received messages whose time bound has passed. Used to
+     * complete a batch when no further messages are received to trigger it.
+     *
+     * @param nanoTime The current nano time.
+     * @throws JMSException
+     */
+    private void completeDueBatches(long nanoTime) throws JMSException {
+        if (null != this.unacknowledgedMessage && isDue(this.unacknowledgedSinceNanoTime, nanoTime,
+                this.consumerConfig.getAcknowledgeAfterEachMicros())) {
+            acknowledgeMessages();
+        }
+        if (0 < this.uncommittedMessageCount && isDue(this.uncommittedSinceNanoTime, nanoTime,
+                this.consumerConfig.getCommitAfterEachMicros())) {
+            commitSession();
+        }
+    }
+
+    /**
+     * Gets the time left until the time bound of the earliest pending batch passes.
+     *
+     * @param nanoTime The current nano time.
+     * @return The nano seconds left, 0 if a batch is due or {@link Long#MAX_VALUE} if no pending
+     * batch has a time bound.
+     */
+    private long nanosUntilNextDueBatch(long nanoTime) {
+        long nanos = Long.MAX_VALUE;
+        if (null != this.unacknowledgedMessage) {
+            nanos = Math.min(nanos, nanosUntilDue(this.unacknowledgedSinceNanoTime, nanoTime,
+                    this.consumerConfig.getAcknowledgeAfterEachMicros()));
+        }
+        if (0 < this.uncommittedMessageCount) {
+            nanos = Math.min(nanos, nanosUntilDue(this.uncommittedSinceNanoTime, nanoTime,
+                    this.consumerConfig.getCommitAfterEachMicros()));
+        }
+        return nanos;
+    }
+
+    /**
+     * Gets the time left until the time bound of a batch passes.
+     *
+     * @param sinceNanoTime The nano time at which the oldest message of the batch was received.
+     * @param nanoTime      The current nano time.
+     * @param boundMicros   The time bound in microseconds.
+     * @return The nano seconds left, 0 if the batch is due or {@link Long#MAX_VALUE} if the batch
+     * has no time bound.
+     */
+    private static long nanosUntilDue(long sinceNanoTime, long nanoTime, long boundMicros) {
+        long boundNanos = TimeUnit.MICROSECONDS.toNanos(boundMicros);
+        if (Long.MAX_VALUE == boundNanos) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0L, boundNanos - (nanoTime - sinceNanoTime));
+    }
+
+    /**
+     * Schedules a check completing the due batches of an asynchronous consumer on the timer, if
+     * a pending batch has a time bound and no check is scheduled yet. Called while holding the
+     * batch lock.
+     *
+     * @param nanoTime The current nano time.
+     */
+    private void scheduleBatchDeadline(long nanoTime) {
+        if (!this.batchDeadlineScheduled) {
+            long delayNanos = nanosUntilNextDueBatch(nanoTime);
+            if (Long.MAX_VALUE != delayNanos) {
+                this.batchDeadlineScheduled = true;
+                getBatchDeadlineTimer().schedule(new BatchDeadlineTask(), delayNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
 
-            // Delaying reading of messages
-            if (0 < consumerConfig.getRunningDelay()) {
-                try {
-                    Thread.sleep(consumerConfig.getRunningDelay());
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
+    /**
+     * Gets the timer completing the time bounded batches of asynchronous consumers, creating it
+     * when first called.
+     *
+     * @return The timer.
+     */
+    private static synchronized ScheduledExecutorService getBatchDeadlineTimer() {
+        if (null == batchDeadlineTimer) {
+            batchDeadlineTimer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "AndesJMSConsumer-batch-deadline");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return batchDeadlineTimer;
+    }
+
+    /**
+     * Completes the due batches of an asynchronous consumer when no message arrived to trigger
+     * them, and schedules the next check while a batch with a time bound is pending.
+     */
+    private class BatchDeadlineTask implements Runnable {
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void run() {
+            try {
+                synchronized (batchLock) {
+                    batchDeadlineScheduled = false;
+                    if (null == receiver) {
+                        // The consumer was stopped
+                        return;
+                    }
+                    long nanoTime = System.nanoTime();
+                    completeDueBatches(nanoTime);
+                    scheduleBatchDeadline(nanoTime);
                 }
+            } catch (JMSException e) {
+                log.error("Error while completing time bounded batches", e);
             }
         }
-        return false;
+    }
+
+    /**
+     * Checks whether the time bound of a batch has passed.
+     *
+     * @param sinceNanoTime The nano time at which the oldest message of the batch was received.
+     * @param nanoTime      The current nano time.
+     * @param boundMicros   The time bound in microseconds.
+     * @return true if the batch is older than the time bound, false otherwise.
+     */
+    private static boolean isDue(long sinceNanoTime, long nanoTime, long boundMicros) {
+        return nanoTime - sinceNanoTime >= TimeUnit.MICROSECONDS.toNanos(boundMicros);
+    }
+
+    /**
+     * Acknowledges all messages received so far and records the time taken. Only every
+     * prints-per-message-count acknowledgement is logged.
+     *
+     * @throws JMSException
+     */
+    private void acknowledgeMessages() throws JMSException {
+        Message message = this.unacknowledgedMessage;
+        long startNanoTime = System.nanoTime();
+        message.acknowledge();
+        this.acknowledgeLatencyHistogram.recordNanos(System.nanoTime() - startNanoTime);
+        this.unacknowledgedMessage = null;
+        this.acknowledgementCount++;
+        if (0 == this.acknowledgementCount % this.consumerConfig.getPrintsPerMessageCount()) {
+            log.info("Acknowledging message : " + message.getJMSMessageID());
+        }
+    }
+
+    /**
+     * Commits the session and records the time taken. Only every prints-per-message-count commit
+     * is logged.
+     *
+     * @throws JMSException
+     */
+    private void commitSession() throws JMSException {
+        long startNanoTime = System.nanoTime();
+        session.commit();
+        this.commitLatencyHistogram.recordNanos(System.nanoTime() - startNanoTime);
+        this.uncommittedMessageCount = 0;
+        this.commitCount++;
+        if (0 == this.commitCount % this.consumerConfig.getPrintsPerMessageCount()) {
+            log.info("Committed session");
+        }
     }
 
     /**
@@ -549,12 +1003,7 @@ public class AndesJMSConsumer extends AndesJMSBase
      * @return The consumer transactions per seconds.
      */
     public double getConsumerTPS() {
-        if (0 == this.lastMessageConsumedTimestamp - this.firstMessageConsumedTimestamp) {
-            return this.receivedMessageCount.doubleValue() / (1D / 1000);
-        } else {
-            return this.receivedMessageCount
-                           .doubleValue() / (((double) (this.lastMessageConsumedTimestamp - this.firstMessageConsumedTimestamp)) / 1000D);
-        }
+        return this.metrics.snapshot().getTPS();
     }
 
     /**
@@ -563,12 +1012,59 @@ public class AndesJMSConsumer extends AndesJMSBase
      * @return The average latency.
      */
     public double getAverageLatency() {
-        if (0 == this.receivedMessageCount.doubleValue()) {
+        ClientMetrics.Snapshot snapshot = this.metrics.snapshot();
+        if (0 == snapshot.getCount()) {
             log.warn("No messages were received to calculate average latency.");
-            return 0D;
-        } else {
-            return (((double) this.totalLatency) / 1000D) / this.receivedMessageCount.doubleValue();
         }
+        return snapshot.getAverageLatency();
+    }
+
+    /**
+     * Gets the consumed message count, timestamps and latencies of the consumer.
+     *
+     * @return The consumer metrics.
+     */
+    public ClientMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * Gets the histogram of the latencies of the messages received by the consumer.
+     *
+     * @return The latency histogram.
+     */
+    public LatencyHistogram getLatencyHistogram() {
+        return this.latencyHistogram;
+    }
+
+    /**
+     * Sets the latch the messages processed by the consumer are counted in. Should be set before
+     * the consumer is started.
+     *
+     * @param receivedMessageLatch The latch, or null to not count messages.
+     */
+    public void setReceivedMessageLatch(MessageCountLatch receivedMessageLatch) {
+        this.receivedMessageLatch = receivedMessageLatch;
+    }
+
+    /**
+     * Gets the histogram of the time taken by the acknowledgements of the consumer. The time is
+     * measured separately from the latencies of the received messages.
+     *
+     * @return The acknowledgement latency histogram.
+     */
+    public LatencyHistogram getAcknowledgeLatencyHistogram() {
+        return this.acknowledgeLatencyHistogram;
+    }
+
+    /**
+     * Gets the histogram of the time taken by the commits of the consumer. The time is measured
+     * separately from the latencies of the received messages.
+     *
+     * @return The commit latency histogram.
+     */
+    public LatencyHistogram getCommitLatencyHistogram() {
+        return this.commitLatencyHistogram;
     }
 
     /**
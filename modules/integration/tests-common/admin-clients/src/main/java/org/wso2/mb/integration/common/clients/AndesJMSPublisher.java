@@ -24,7 +24,11 @@ import org.wso2.mb.integration.common.clients.configurations.JMSHeaderPropertyTy
 import org.wso2.mb.integration.common.clients.exceptions.AndesClientException;
 import org.wso2.mb.integration.common.clients.operations.utils.AndesClientConstants;
 import org.wso2.mb.integration.common.clients.operations.utils.AndesClientUtils;
+import org.wso2.mb.integration.common.clients.operations.utils.ClientMetrics;
 import org.wso2.mb.integration.common.clients.operations.utils.JMSMessageType;
+import org.wso2.mb.integration.common.clients.operations.utils.LatencyHistogram;
+import org.wso2.mb.integration.common.clients.operations.utils.PublishMessageTemplate;
+import org.wso2.mb.integration.common.clients.operations.utils.PublishPacer;
 
 import javax.jms.Connection;
 import javax.jms.ConnectionFactory;
@@ -58,19 +62,15 @@ public class AndesJMSPublisher extends AndesJMSBase implements Runnable {
     private AndesJMSPublisherClientConfiguration publisherConfig;
 
     /**
-     * The amount of messages sent by the publisher
+     * The amount of messages sent by the publisher. Only updated by the publishing thread, other
+     * threads read the count from {@link #metrics}.
      */
     private long sentMessageCount;
 
     /**
-     * The timestamp at which the first message was published
+     * The sent message count and publish timestamps used for the TPS calculation
      */
-    private long firstMessagePublishTimestamp;
-
-    /**
-     * The timestamp at which the last message was published
-     */
-    private long lastMessagePublishTimestamp;
+    private final ClientMetrics metrics = new ClientMetrics();
 
     /**
      * The connection which is used to create the JMS session
@@ -92,6 +92,12 @@ public class AndesJMSPublisher extends AndesJMSBase implements Runnable {
      */
     private String messageContentFromFile = null;
 
+    /**
+     * How late each message was sent compared to its intended send time when publishing at a
+     * configured rate.
+     */
+    private final LatencyHistogram sendLagHistogram = new LatencyHistogram();
+
     /**
      * Creates a new JMS publisher with a given configuration.
      *
@@ -102,15 +108,30 @@ public class AndesJMSPublisher extends AndesJMSBase implements Runnable {
      */
     public AndesJMSPublisher(AndesJMSPublisherClientConfiguration config, boolean createPublisher)
             throws NamingException, JMSException {
-        super(config);
+        this(config, createPublisher, new JNDIContextCache());
+    }
+
+    /**
+     * Creates a new JMS publisher with a given configuration, sharing its initial context with
+     * other publishers.
+     *
+     * @param config          The configuration
+     * @param createPublisher Creates connection, session and sender.
+     * @param contextCache    The cache of the initial contexts of the client.
+     * @throws NamingException
+     * @throws JMSException
+     */
+    public AndesJMSPublisher(AndesJMSPublisherClientConfiguration config, boolean createPublisher,
+                             JNDIContextCache contextCache)
+            throws NamingException, JMSException {
+        super(config, contextCache);
 
         // Sets the configuration
         this.publisherConfig = config;
 
         // Creates a JMS connection, sessions and sender
         if (createPublisher) {
-            ConnectionFactory connFactory = (ConnectionFactory) super.getInitialContext()
-                    .lookup(AndesClientConstants.CF_NAME);
+            ConnectionFactory connFactory = (ConnectionFactory) lookup(AndesClientConstants.CF_NAME);
             connection = connFactory.createConnection();
             connection.start();
             if(config.isTransactionalSession()) {
@@ -119,8 +140,7 @@ public class AndesJMSPublisher extends AndesJMSBase implements Runnable {
                 this.session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
             }
 
-            Destination destination = (Destination) super.getInitialContext()
-                    .lookup(this.publisherConfig.getDestinationName());
+            Destination destination = (Destination) lookup(this.publisherConfig.getDestinationName());
             this.sender = this.session.createProducer(destination);
         }
     }
@@ -198,11 +218,44 @@ public class AndesJMSPublisher extends AndesJMSBase implements Runnable {
         try {
             Message message = null;
             long threadID = Thread.currentThread().getId();
+
+            // Publishing in open loop mode when a rate is configured
+            PublishPacer pacer = null;
+            if (null != this.publisherConfig.getPublishRateProfile()) {
+                pacer = new PublishPacer(this.publisherConfig.getPublishRateProfile());
+                pacer.start();
+            }
+
+            // In template mode the message is built once and sent again with its number updated
+            Message templateMessage = null;
+            PublishMessageTemplate payloadTemplate = null;
+            if (this.publisherConfig.isMessageTemplateEnabled()) {
+                payloadTemplate = new PublishMessageTemplate(threadID);
+            }
+            boolean readFromFile = null != this.publisherConfig.getReadMessagesFromFilePath();
+
             while (this.sentMessageCount < this.publisherConfig.getNumberOfMessagesToSend()) {
+                // The time the message is meant to be sent at, from which its latency is measured
+                long intendedSendTime;
+                if (null != pacer) {
+                    intendedSendTime = pacer.awaitNextSendTime();
+                } else {
+                    intendedSendTime = System.nanoTime();
+                }
+
                 // Creating a JMS message
-                if (JMSMessageType.TEXT == this.publisherConfig.getJMSMessageType()) {
-                    if (null != this.publisherConfig.getReadMessagesFromFilePath()) {
+                if (null != templateMessage) {
+                    message = templateMessage;
+                    if (!readFromFile && message instanceof TextMessage) {
+                        ((TextMessage) message)
+                                .setText(payloadTemplate.getPayload(this.sentMessageCount));
+                    }
+                } else if (JMSMessageType.TEXT == this.publisherConfig.getJMSMessageType()) {
+                    if (readFromFile) {
                         message = this.session.createTextMessage(this.messageContentFromFile);
+                    } else if (null != payloadTemplate) {
+                        message = this.session.createTextMessage(
+                                payloadTemplate.getPayload(this.sentMessageCount));
                     } else {
                         message = this.session.createTextMessage(MessageFormat
                              .format(AndesClientConstants.PUBLISH_MESSAGE_FORMAT, this.sentMessageCount, threadID));
@@ -211,7 +264,7 @@ public class AndesJMSPublisher extends AndesJMSBase implements Runnable {
                     message = this.session.createBytesMessage();
                 } else if (JMSMessageType.MAP == this.publisherConfig.getJMSMessageType()) {
                     MapMessage mapMessage = this.session.createMapMessage();
-                    if (null != this.publisherConfig.getReadMessagesFromFilePath()) {
+                    if (readFromFile) {
                         String[] entries = this.messageContentFromFile.split(System.getProperty("line.separator"));
                         for (int i = 0; i < entries.length; i++) {
                             mapMessage.setString("key" + i, entries[i]);
@@ -224,18 +277,30 @@ public class AndesJMSPublisher extends AndesJMSBase implements Runnable {
                     message = this.session.createStreamMessage();
                 }
 
-                //set JMS message type
-                String jmsType = publisherConfig.getJMSType();
-                if(message!= null && null != jmsType && !jmsType.isEmpty()) {
-                    message.setJMSType(jmsType);
-                }
+                if (message != templateMessage) {
+                    //set JMS message type
+                    String jmsType = publisherConfig.getJMSType();
+                    if(message!= null && null != jmsType && !jmsType.isEmpty()) {
+                        message.setJMSType(jmsType);
+                    }
 
-                //set JMS header properties
-                setMessageProperties(message);
+                    //set JMS header properties
+                    setMessageProperties(message);
+
+                    if (null != payloadTemplate) {
+                        templateMessage = message;
+                    }
+                }
 
                 if (null != message) {
+                    // Time stamping the message for consumers to measure its latency
+                    message.setLongProperty(AndesClientConstants.PUBLISH_NANO_TIME_PROPERTY,
+                                            intendedSendTime);
                     this.sender.send(message, DeliveryMode.PERSISTENT, 0, this.publisherConfig
                             .getJMSMessageExpiryTime());
+                    if (null != pacer) {
+                        sendLagHistogram.recordNanos(System.nanoTime() - intendedSendTime);
+                    }
                     // need to commit if transactional
                     if(getConfig().isTransactionalSession()) {
                         session.commit();
@@ -249,15 +314,11 @@ public class AndesJMSPublisher extends AndesJMSBase implements Runnable {
 
                     // TPS calculation
                     long currentTimeStamp = System.currentTimeMillis();
-                    if (0 == this.firstMessagePublishTimestamp) {
-                        this.firstMessagePublishTimestamp = currentTimeStamp;
-                    }
-
-                    this.lastMessagePublishTimestamp = currentTimeStamp;
+                    this.metrics.record(currentTimeStamp);
                     if (0 == this.sentMessageCount % this.publisherConfig
                                                                 .getPrintsPerMessageCount()) {
                         // Logging the sent message details.
-                        if (null != this.publisherConfig.getReadMessagesFromFilePath()) {
+                        if (readFromFile) {
                             log.info("[SEND]" + " (FROM FILE) ThreadID:" +
                                      threadID + " Destination(" + this.publisherConfig
                                     .getExchangeType().getType() + "):" +
@@ -285,8 +346,8 @@ public class AndesJMSPublisher extends AndesJMSBase implements Runnable {
                                         .getFilePathToWriteStatistics());
                     }
 
-                    // Delaying the publishing of messages
-                    if (0 < this.publisherConfig.getRunningDelay()) {
+                    // Delaying the publishing of messages, unless paced by the publish rate
+                    if (null == pacer && 0 < this.publisherConfig.getRunningDelay()) {
                         try {
                             Thread.sleep(this.publisherConfig.getRunningDelay());
                         } catch (InterruptedException e) {
@@ -296,6 +357,9 @@ public class AndesJMSPublisher extends AndesJMSBase implements Runnable {
                 }
             }
 
+            if (null != pacer) {
+                log.info("Send lag ThreadID:" + threadID + " " + sendLagHistogram);
+            }
             this.stopClient();
         } catch (JMSException e) {
             throw new RuntimeException("Error while publishing messages", e);
@@ -355,7 +419,7 @@ public class AndesJMSPublisher extends AndesJMSBase implements Runnable {
      * @return The published message count.
      */
     public long getSentMessageCount() {
-        return this.sentMessageCount;
+        return this.metrics.getCount();
     }
 
     /**
@@ -364,11 +428,26 @@ public class AndesJMSPublisher extends AndesJMSBase implements Runnable {
      * @return The transactions per second.
      */
     public double getPublisherTPS() {
-        if (0 == this.lastMessagePublishTimestamp - this.firstMessagePublishTimestamp) {
-            return ((double) this.sentMessageCount) / (1D / 1000);
-        } else {
-            return ((double) this.sentMessageCount) / (((double) (this.lastMessagePublishTimestamp - this.firstMessagePublishTimestamp)) / 1000);
-        }
+        return this.metrics.snapshot().getTPS();
+    }
+
+    /**
+     * Gets the sent message count and publish timestamps of the publisher.
+     *
+     * @return The publisher metrics.
+     */
+    public ClientMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * Gets how late messages were sent compared to their intended send time. Only recorded when
+     * publishing at a configured rate.
+     *
+     * @return The send lag histogram.
+     */
+    public LatencyHistogram getSendLagHistogram() {
+        return sendLagHistogram;
     }
 
     /**
@@ -18,13 +18,26 @@
 
 package org.wso2.mb.integration.common.clients;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.eclipse.paho.client.mqttv3.MqttClientPersistence;
 import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
 import org.eclipse.paho.client.mqttv3.MqttException;
 import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.MqttPersistenceException;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
 import org.eclipse.paho.client.mqttv3.persist.MqttDefaultFilePersistence;
 import org.wso2.mb.integration.common.clients.operations.mqtt.callback.CallbackHandler;
+import org.wso2.mb.integration.common.clients.operations.mqtt.callback.PayloadHeader;
+import org.wso2.mb.integration.common.clients.operations.mqtt.persistence.SharedLogPersistence;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.List;
 
 /**
@@ -36,6 +49,8 @@ import java.util.List;
  */
 public abstract class AndesMQTTClient implements Runnable {
 
+    private static final Log log = LogFactory.getLog(AndesMQTTClient.class);
+
     /**
      * The MQTT callback handler which handles message arrival, delivery complete and connection loss requests.
      */
@@ -73,12 +88,27 @@ public abstract class AndesMQTTClient implements Runnable {
      */
     protected final boolean retain;
 
+    /**
+     * Whether a {@link PayloadHeader} is put in front of the payload of each published message
+     */
+    protected final boolean payloadHeaderEnabled;
+
+    /**
+     * The id written to the payload header of published messages, -1 if payload headers are not enabled
+     */
+    protected final int publisherId;
+
     /**
      * Store messages until server fetches them.
+     * The store is selected by the {@link PersistenceMode} of the configuration.
+     */
+    protected final MqttClientPersistence dataStore;
+
+    /**
+     * The directory of a file persistence store, null for other stores.
      * Need a random value on this path to ensure that the same persistence store is not used by two clients.
      */
-    protected final MqttDefaultFilePersistence dataStore =
-            new MqttDefaultFilePersistence(System.getProperty("java.io.tmpdir") + File.separator + Math.random());
+    private final File persistenceDirectory;
 
     /**
      * Create a mqtt client initializing mqtt options.
@@ -100,6 +130,19 @@ public abstract class AndesMQTTClient implements Runnable {
         this.topic = topic;
         this.qos = qos;
         this.retain = configuration.isRetain();
+        this.payloadHeaderEnabled = configuration.isPayloadHeaderEnabled();
+        this.publisherId = payloadHeaderEnabled ? PayloadHeader.nextPublisherId() : -1;
+
+        if (PersistenceMode.MEMORY == configuration.getPersistenceMode()) {
+            persistenceDirectory = null;
+            dataStore = new MemoryPersistence();
+        } else if (PersistenceMode.SHARED_LOG == configuration.getPersistenceMode()) {
+            persistenceDirectory = null;
+            dataStore = new SharedLogPersistence();
+        } else {
+            persistenceDirectory = new File(System.getProperty("java.io.tmpdir") + File.separator + Math.random());
+            dataStore = new MqttDefaultFilePersistence(persistenceDirectory.getAbsolutePath());
+        }
 
         // Construct the connection options object that contains connection parameters
         // such as cleanSession and LWT
@@ -126,6 +169,26 @@ public abstract class AndesMQTTClient implements Runnable {
      */
     protected abstract void publish(byte[] payload, int noOfMessages) throws MqttException;
 
+    /**
+     * Create a message to publish. If payload headers are enabled, each message needs a payload of its own,
+     * starting with a header holding its sequence number and the current time.
+     *
+     * @param payload        Data to send
+     * @param sequenceNumber Sequence number of the message within this publisher
+     * @return The message
+     */
+    protected MqttMessage createMessage(byte[] payload, long sequenceNumber) {
+        MqttMessage message;
+        if (payloadHeaderEnabled) {
+            message = new MqttMessage(PayloadHeader.prepend(publisherId, sequenceNumber, payload));
+        } else {
+            message = new MqttMessage(payload);
+        }
+        message.setQos(qos.getValue());
+        message.setRetained(retain);
+        return message;
+    }
+
     /**
      * Subscribe to the requested topic
      * The {@link QualityOfService} specified is the maximum level that messages will be sent to the client at.
@@ -197,6 +260,53 @@ public abstract class AndesMQTTClient implements Runnable {
      */
     public abstract void disconnect() throws MqttException;
 
+    /**
+     * Release the persistence store of the client, deleting the messages it holds and the directory of a file
+     * persistence store. Call once the client is disconnected and will not be used again.
+     */
+    public void closePersistence() {
+        try {
+            dataStore.close();
+        } catch (MqttPersistenceException e) {
+            // The store was not opened, or was closed already
+            log.debug("Persistence store of client " + mqttClientID + " is not open", e);
+        }
+
+        if (null != persistenceDirectory && persistenceDirectory.exists()) {
+            try {
+                deleteDirectory(persistenceDirectory.toPath());
+            } catch (IOException e) {
+                log.warn("Error deleting persistence directory " + persistenceDirectory + " of client "
+                         + mqttClientID, e);
+            }
+        }
+    }
+
+    /**
+     * Delete a directory and everything in it.
+     *
+     * @param directory The directory
+     * @throws IOException if a file cannot be deleted
+     */
+    private static void deleteDirectory(Path directory) throws IOException {
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                if (null != e) {
+                    throw e;
+                }
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
     /**
      * Connect a mqtt client to the server with given options.
      *
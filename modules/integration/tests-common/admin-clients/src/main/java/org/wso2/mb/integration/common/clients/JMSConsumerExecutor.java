@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.mb.integration.common.clients;
+
+import org.apache.log4j.Logger;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A bounded pool of threads shared by the synchronous consumers of a client, so that the number of
+ * threads does not grow with the number of consumers.
+ * <p/>
+ * Instead of blocking a thread in {@link javax.jms.MessageConsumer#receive()}, each consumer
+ * polls its receiver in short turns on the pool. A consumer which found messages is polled again
+ * right away, while an idle consumer is polled again after a wait that grows up to
+ * {@link #MAX_IDLE_WAIT_MICROS}. Stopping and un-subscribing consumers also runs on the pool
+ * instead of on throwaway threads.
+ */
+public class JMSConsumerExecutor {
+    /**
+     * The logger used in logging information, warnings, errors and etc.
+     */
+    private static Logger log = Logger.getLogger(JMSConsumerExecutor.class);
+
+    /**
+     * The first wait before polling an idle consumer again.
+     */
+    public static final long MIN_IDLE_WAIT_MICROS = 500L;
+
+    /**
+     * The longest wait before polling an idle consumer again.
+     */
+    public static final long MAX_IDLE_WAIT_MICROS = 50000L;
+
+    /**
+     * The number of messages a consumer processes in one turn before it lets other consumers run.
+     */
+    public static final int MESSAGES_PER_TURN = 100;
+
+    private final ScheduledThreadPoolExecutor executor;
+
+    /**
+     * Creates a pool with a given number of threads.
+     *
+     * @param threads The number of threads.
+     */
+    public JMSConsumerExecutor(int threads) {
+        executor = new ScheduledThreadPoolExecutor(threads, new ThreadFactory() {
+            private final AtomicInteger threadCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "AndesJMSConsumer-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        // Polls of idle consumers are dropped on shut down, consumers being stopped run to the end
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    }
+
+    /**
+     * Runs a task on the pool as soon as a thread is free.
+     *
+     * @param task The task.
+     * @return true if the task is run, false if the pool is shut down.
+     */
+    public boolean execute(Runnable task) {
+        try {
+            executor.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Runs a task on the pool after a delay.
+     *
+     * @param task        The task.
+     * @param delayMicros The delay in microseconds.
+     * @return true if the task is scheduled, false if the pool is shut down.
+     */
+    public boolean schedule(Runnable task, long delayMicros) {
+        try {
+            executor.schedule(task, delayMicros, TimeUnit.MICROSECONDS);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Whether the pool is shut down.
+     *
+     * @return true if the pool is shut down, false otherwise.
+     */
+    public boolean isShutdown() {
+        return executor.isShutdown();
+    }
+
+    /**
+     * Shuts down the pool. Tasks which are running or waiting to run, such as consumers being
+     * stopped, are completed, and pending polls of idle consumers are dropped.
+     *
+     * @param timeoutMillis The time to wait for the tasks to complete in milliseconds, after which
+     *                      the pool threads are interrupted.
+     */
+    public void shutdown(long timeoutMillis) {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                log.warn("Consumer tasks did not complete within " + timeoutMillis + "ms. " +
+                         "Interrupting the consumer threads.");
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
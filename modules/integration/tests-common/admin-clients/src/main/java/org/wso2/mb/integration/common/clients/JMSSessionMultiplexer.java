@@ -0,0 +1,249 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.mb.integration.common.clients;
+
+import org.apache.log4j.Logger;
+import org.wso2.mb.integration.common.clients.configurations.AndesJMSConsumerClientConfiguration;
+import org.wso2.mb.integration.common.clients.operations.utils.ExchangeType;
+
+import javax.jms.Connection;
+import javax.jms.JMSException;
+import javax.jms.QueueConnection;
+import javax.jms.QueueConnectionFactory;
+import javax.jms.Session;
+import javax.jms.TopicConnection;
+import javax.jms.TopicConnectionFactory;
+
+/**
+ * Hands out connections and sessions shared by the consumers of a client. Consumers are assigned
+ * to a session until it has the configured number of consumers, and sessions to a connection
+ * until it has the configured number of sessions, after which new ones are created. A session is
+ * closed once all of its consumers released it, and a connection once all of its sessions are
+ * closed.
+ */
+public class JMSSessionMultiplexer {
+    /**
+     * The logger used in logging information, warnings, errors and etc.
+     */
+    private static Logger log = Logger.getLogger(JMSSessionMultiplexer.class);
+
+    /**
+     * The configuration of the consumers sharing the sessions.
+     */
+    private final AndesJMSConsumerClientConfiguration consumerConfig;
+
+    /**
+     * The connection new sessions are created on.
+     */
+    private SharedConnection currentConnection;
+
+    /**
+     * The session new consumers are assigned to.
+     */
+    private SharedSession currentSession;
+
+    /**
+     * The number of connections created.
+     */
+    private int connectionCount;
+
+    /**
+     * The number of sessions created.
+     */
+    private int sessionCount;
+
+    /**
+     * Creates a multiplexer for consumers with a given configuration.
+     *
+     * @param consumerConfig The configuration of the consumers.
+     */
+    public JMSSessionMultiplexer(AndesJMSConsumerClientConfiguration consumerConfig) {
+        this.consumerConfig = consumerConfig;
+    }
+
+    /**
+     * Assigns a consumer to a session, creating a new session or connection if the current ones
+     * are fully assigned. The session must be released once the consumer is closed.
+     *
+     * @param connectionFactory The queue or topic connection factory to create connections with.
+     * @return The session, along with its connection.
+     * @throws JMSException Thrown when creating the connection or session.
+     */
+    public synchronized SharedSession acquireSession(Object connectionFactory) throws JMSException {
+        if (null == currentSession ||
+            currentSession.assignedConsumers >= consumerConfig.getConsumersPerSession()) {
+            if (null == currentConnection ||
+                currentConnection.assignedSessions >= consumerConfig.getSessionsPerConnection()) {
+                currentConnection = new SharedConnection(createConnection(connectionFactory));
+                connectionCount++;
+            }
+            currentSession = new SharedSession(currentConnection,
+                                               createSession(currentConnection.connection));
+            currentConnection.assignedSessions++;
+            currentConnection.openSessions++;
+            sessionCount++;
+        }
+        currentSession.assignedConsumers++;
+        currentSession.activeConsumers++;
+        return currentSession;
+    }
+
+    /**
+     * Releases a session once a consumer on it is closed. The session is closed when all of its
+     * consumers are closed, and its connection when all of the sessions on it are closed.
+     *
+     * @param sharedSession The session.
+     * @throws JMSException Thrown when closing the session or connection.
+     */
+    public synchronized void releaseSession(SharedSession sharedSession) throws JMSException {
+        sharedSession.activeConsumers--;
+        if (0 < sharedSession.activeConsumers) {
+            return;
+        }
+        if (currentSession == sharedSession) {
+            currentSession = null;
+        }
+        SharedConnection sharedConnection = sharedSession.sharedConnection;
+        try {
+            sharedSession.session.close();
+        } finally {
+            sharedConnection.openSessions--;
+            if (0 == sharedConnection.openSessions) {
+                if (currentConnection == sharedConnection) {
+                    currentConnection = null;
+                }
+                sharedConnection.connection.stop();
+                sharedConnection.connection.close();
+                log.info("Shared connection closed");
+            }
+        }
+    }
+
+    /**
+     * Gets the number of connections created.
+     *
+     * @return The number of connections.
+     */
+    public synchronized int getConnectionCount() {
+        return connectionCount;
+    }
+
+    /**
+     * Gets the number of sessions created.
+     *
+     * @return The number of sessions.
+     */
+    public synchronized int getSessionCount() {
+        return sessionCount;
+    }
+
+    /**
+     * Creates and starts a queue or topic connection, depending on the exchange type.
+     */
+    private Connection createConnection(Object connectionFactory) throws JMSException {
+        if (ExchangeType.TOPIC == consumerConfig.getExchangeType()) {
+            TopicConnection topicConnection =
+                    ((TopicConnectionFactory) connectionFactory).createTopicConnection();
+            topicConnection.setClientID(consumerConfig.getSubscriptionID());
+            topicConnection.start();
+            return topicConnection;
+        } else {
+            QueueConnection queueConnection =
+                    ((QueueConnectionFactory) connectionFactory).createQueueConnection();
+            queueConnection.start();
+            return queueConnection;
+        }
+    }
+
+    /**
+     * Creates a queue or topic session with the configured acknowledge mode.
+     */
+    private Session createSession(Connection connection) throws JMSException {
+        int acknowledgeMode = consumerConfig.getAcknowledgeMode().getType();
+        boolean transacted = Session.SESSION_TRANSACTED == acknowledgeMode;
+        if (ExchangeType.TOPIC == consumerConfig.getExchangeType()) {
+            return ((TopicConnection) connection).createTopicSession(transacted, acknowledgeMode);
+        } else {
+            return ((QueueConnection) connection).createQueueSession(transacted, acknowledgeMode);
+        }
+    }
+
+    /**
+     * A connection shared by several sessions.
+     */
+    private static class SharedConnection {
+        private final Connection connection;
+
+        /**
+         * The number of sessions assigned to the connection.
+         */
+        private int assignedSessions;
+
+        /**
+         * The number of sessions of the connection which are not closed.
+         */
+        private int openSessions;
+
+        private SharedConnection(Connection connection) {
+            this.connection = connection;
+        }
+    }
+
+    /**
+     * A session shared by several consumers.
+     */
+    public static class SharedSession {
+        private final SharedConnection sharedConnection;
+
+        private final Session session;
+
+        /**
+         * The number of consumers assigned to the session.
+         */
+        private int assignedConsumers;
+
+        /**
+         * The number of consumers of the session which are not closed.
+         */
+        private int activeConsumers;
+
+        private SharedSession(SharedConnection sharedConnection, Session session) {
+            this.sharedConnection = sharedConnection;
+            this.session = session;
+        }
+
+        /**
+         * Gets the connection of the session.
+         *
+         * @return The connection.
+         */
+        public Connection getConnection() {
+            return sharedConnection.connection;
+        }
+
+        /**
+         * Gets the session.
+         *
+         * @return The session.
+         */
+        public Session getSession() {
+            return session;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.mb.integration.common.clients;
+
+import org.apache.log4j.Logger;
+
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Caches the initial contexts of the JMS publishers and consumers of a client, and the connection
+ * factories and destinations looked up from them, so that publishers and consumers with the same
+ * connection string and destination share them instead of each creating its own. The cache is
+ * created by the client and cleared when the client is stopped.
+ */
+public class JNDIContextCache {
+    /**
+     * The logger used in logging information, warnings, errors and etc.
+     */
+    private static Logger log = Logger.getLogger(JNDIContextCache.class);
+
+    /**
+     * Initial contexts by the connection string, exchange type and destination they are created
+     * for.
+     */
+    private final ConcurrentMap<String, InitialContext> initialContexts =
+            new ConcurrentHashMap<String, InitialContext>();
+
+    /**
+     * Objects looked up from the cached initial contexts, by the key of the context and the name
+     * of the object.
+     */
+    private final ConcurrentMap<String, Object> lookedUpObjects =
+            new ConcurrentHashMap<String, Object>();
+
+    /**
+     * Gets the initial context cached for a key, creating it if there is none.
+     *
+     * @param key        The key of the initial context.
+     * @param properties The environment to create the initial context with.
+     * @return The initial context.
+     * @throws NamingException Thrown when the initial context cannot be created.
+     */
+    public InitialContext getInitialContext(String key, Properties properties)
+            throws NamingException {
+        InitialContext initialContext = initialContexts.get(key);
+        if (null == initialContext) {
+            InitialContext createdContext = new InitialContext(properties);
+            initialContext = initialContexts.putIfAbsent(key, createdContext);
+            if (null == initialContext) {
+                initialContext = createdContext;
+            }
+        }
+        return initialContext;
+    }
+
+    /**
+     * Looks up a connection factory or destination from an initial context of the cache, or gets
+     * it from the cache if it was already looked up.
+     *
+     * @param key            The key of the initial context.
+     * @param initialContext The initial context.
+     * @param name           The name of the object.
+     * @return The object.
+     * @throws NamingException Thrown when the name cannot be looked up.
+     */
+    public Object lookup(String key, InitialContext initialContext, String name)
+            throws NamingException {
+        String objectKey = key + "|" + name;
+        Object object = lookedUpObjects.get(objectKey);
+        if (null == object) {
+            synchronized (initialContext) {
+                object = initialContext.lookup(name);
+            }
+            Object cachedObject = lookedUpObjects.putIfAbsent(objectKey, object);
+            if (null != cachedObject) {
+                object = cachedObject;
+            }
+        }
+        return object;
+    }
+
+    /**
+     * Closes the cached initial contexts and removes them along with the looked up objects.
+     * Connections already created from the looked up connection factories are not affected.
+     */
+    public void clear() {
+        lookedUpObjects.clear();
+        for (InitialContext initialContext : initialContexts.values()) {
+            try {
+                initialContext.close();
+            } catch (NamingException e) {
+                log.warn("Error while closing initial context.", e);
+            }
+        }
+        initialContexts.clear();
+    }
+}
@@ -67,6 +67,54 @@ public class MQTTClientConnectionConfiguration {
      */
     private boolean cleanSession = false;
 
+    /**
+     * Where the clients store messages they have not completed delivering.
+     * Defaults to a file persistence directory per client.
+     */
+    private PersistenceMode persistenceMode = PersistenceMode.FILE;
+
+    /**
+     * The maximum number of messages an asynchronous publisher has in flight, waiting for their delivery to
+     * complete. The MQTT client accepts at most {@link MQTTConstants#MAX_INFLIGHT_QOS_MESSAGES} QoS 1 and QoS 2
+     * messages in flight, so larger values only apply to QoS 0. 0 when not configured, in which case QoS 1 and
+     * QoS 2 publishers keep the most the MQTT client accepts in flight and QoS 0 publishers are not limited.
+     */
+    private int maxInFlightMessages = 0;
+
+    /**
+     * Whether publishers put a header holding their id, a sequence number and the publishing time in front of the
+     * payload of each message, from which subscribers measure latency and detect missing and duplicate messages.
+     */
+    private boolean payloadHeaderEnabled = false;
+
+    public boolean isPayloadHeaderEnabled() {
+        return payloadHeaderEnabled;
+    }
+
+    public void setPayloadHeaderEnabled(boolean payloadHeaderEnabled) {
+        this.payloadHeaderEnabled = payloadHeaderEnabled;
+    }
+
+    public int getMaxInFlightMessages() {
+        return maxInFlightMessages;
+    }
+
+    public void setMaxInFlightMessages(int maxInFlightMessages) {
+        if (0 >= maxInFlightMessages) {
+            throw new IllegalArgumentException("Maximum in flight messages should be positive, but was "
+                                               + maxInFlightMessages);
+        }
+        this.maxInFlightMessages = maxInFlightMessages;
+    }
+
+    public PersistenceMode getPersistenceMode() {
+        return persistenceMode;
+    }
+
+    public void setPersistenceMode(PersistenceMode persistenceMode) {
+        this.persistenceMode = persistenceMode;
+    }
+
     public boolean isCleanSession() {
         return cleanSession;
     }
@@ -24,12 +24,20 @@ import org.apache.commons.logging.LogFactory;
 import org.eclipse.paho.client.mqttv3.MqttException;
 import org.eclipse.paho.client.mqttv3.MqttMessage;
 import org.wso2.carbon.automation.engine.context.AutomationContext;
+import org.wso2.mb.integration.common.clients.operations.mqtt.async.AndesMQTTAsyncClient;
 import org.wso2.mb.integration.common.clients.operations.mqtt.async.MQTTAsyncPublisherClient;
 import org.wso2.mb.integration.common.clients.operations.mqtt.async.MQTTAsyncSubscriberClient;
 import org.wso2.mb.integration.common.clients.operations.mqtt.blocking.MQTTBlockingPublisherClient;
 import org.wso2.mb.integration.common.clients.operations.mqtt.blocking.MQTTBlockingSubscriberClient;
+import org.wso2.mb.integration.common.clients.operations.mqtt.callback.CallbackHandler;
+import org.wso2.mb.integration.common.clients.operations.mqtt.callback.CaptureMode;
+import org.wso2.mb.integration.common.clients.operations.mqtt.swarm.MQTTSwarm;
+import org.wso2.mb.integration.common.clients.operations.utils.ClientMetrics;
+import org.wso2.mb.integration.common.clients.operations.utils.LatencyHistogram;
+import org.wso2.mb.integration.common.clients.operations.utils.MessageCountLatch;
 
 import javax.xml.xpath.XPathExpressionException;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
@@ -54,6 +62,11 @@ public class MQTTClientEngine {
      */
     private final List<AndesMQTTClient> subscriberList = new ArrayList<AndesMQTTClient>();
 
+    /**
+     * Keep all the subscriber swarms created through the engine
+     */
+    private final List<MQTTSwarm> swarmList = new ArrayList<MQTTSwarm>();
+
     /**
      * Subscriber client thread executor, executes runnable subscribers
      */
@@ -66,7 +79,22 @@ public class MQTTClientEngine {
 
     private final Log log = LogFactory.getLog(MQTTClientEngine.class);
 
-    private static final int MILLISECONDS_TO_A_SECOND = 1000;
+    /**
+     * Time without receiving messages after which all messages are considered received
+     */
+    private static final long MESSAGE_IDLE_TIMEOUT_SECONDS = 10;
+
+    /**
+     * Shortest and longest interval between checks whether subscribers have subscribed
+     */
+    private static final long MIN_SUBSCRIBE_CHECK_INTERVAL_MILLIS = 10;
+    private static final long MAX_SUBSCRIBE_CHECK_INTERVAL_MILLIS = 1000;
+
+    /**
+     * Length of the random prefix of swarm client ids, leaving room for the index of the session within the 23
+     * characters of a MQTT 3.1 client id
+     */
+    private static final int SWARM_CLIENT_ID_PREFIX_LENGTH = 8;
 
     /**
      * The executor service to invoke scheduled jobs
@@ -79,14 +107,9 @@ public class MQTTClientEngine {
     private ScheduledFuture tpsPublisherSchedule;
 
     /**
-     * The received message count there was when the previous TPS calculation happened
-     */
-    private int previousReceivedMessageCount;
-
-    /**
-     * The sent message count there was when the previous TPS calculation happened
+     * Counts the messages received by all subscribers, waking up threads waiting for them
      */
-    private int previousSentMessageCount;
+    private final MessageCountLatch receivedMessageLatch = new MessageCountLatch();
 
     /**
      * Initialises the client engine attaching a disconnect hook to close all the opened connection.
@@ -134,25 +157,7 @@ public class MQTTClientEngine {
     public void createSubscriberConnection(MQTTClientConnectionConfiguration configuration,
                                            String topicName, QualityOfService qos,
                                            boolean saveMessages, ClientMode clientMode) throws MqttException {
-
-        AndesMQTTClient mqttClient;
-
-        if (ClientMode.ASYNC == clientMode) {
-            mqttClient = new MQTTAsyncSubscriberClient(configuration, generateClientID(), topicName, qos, saveMessages);
-            subscriberList.add(mqttClient);
-            clientControlSubscriptionThreads.execute(mqttClient);
-        } else if (ClientMode.BLOCKING == clientMode) {
-            mqttClient = new MQTTBlockingSubscriberClient(configuration, generateClientID(), topicName, qos,
-                    saveMessages);
-            subscriberList.add(mqttClient);
-            mqttClient.run();
-        } else {
-            // Using else since only the above two scenarios are handled. If a new client mode is included,
-            // handle it before this
-            throw new MqttException(new Throwable("Unidentified clientMode : " + clientMode));
-        }
-
-
+        createSubscriber(configuration, topicName, qos, saveMessages, clientMode, generateClientID());
         waitForSubscribersToSubscribe();
     }
 
@@ -170,16 +175,77 @@ public class MQTTClientEngine {
                                            String topicName, QualityOfService qos,
                                            boolean saveMessages, ClientMode clientMode, String clientID) throws
             MqttException {
+        createSubscriber(configuration, topicName, qos, saveMessages, clientMode, clientID);
+        waitForSubscribersToSubscribe();
+    }
+
+    /**
+     * Create a given number of subscribers which keep only part of the receiving messages. Use when a large number
+     * of messages is expected, but some of them need to be validated.
+     *
+     * @param configuration   MQTT configurations for the subscribers
+     * @param topicName       Topic to subscribe to
+     * @param qos             Quality of Service
+     * @param noOfSubscribers Number of subscriber connections to create
+     * @param captureMode     What each subscriber keeps of the receiving messages
+     * @param captureSize     Number of messages kept by each subscriber, or the expected number of messages when
+     *                        only sequence IDs are kept
+     * @param clientMode      Client connection mode
+     * @throws MqttException
+     */
+    public void createSubscriberConnection(MQTTClientConnectionConfiguration configuration, String topicName,
+                                           QualityOfService qos, int noOfSubscribers, CaptureMode captureMode,
+                                           int captureSize, ClientMode clientMode) throws MqttException {
+        for (int i = 0; i < noOfSubscribers; i++) {
+            createSubscriber(configuration, topicName, qos, new CallbackHandler(captureMode, captureSize),
+                    clientMode, generateClientID());
+        }
+        waitForSubscribersToSubscribe();
+    }
+
+    /**
+     * Create a MQTT subscriber without waiting for it to subscribe.
+     *
+     * @param configuration MQTT configurations for the subscriber
+     * @param topicName     Topic to subscribe to
+     * @param qos           Quality of Service
+     * @param saveMessages  Save receiving messages
+     * @param clientMode    Client connection mode
+     * @param clientID      Unique identifier for the client hosting the subscription
+     * @throws MqttException
+     */
+    private void createSubscriber(MQTTClientConnectionConfiguration configuration, String topicName,
+                                  QualityOfService qos, boolean saveMessages, ClientMode clientMode,
+                                  String clientID) throws MqttException {
+        createSubscriber(configuration, topicName, qos, new CallbackHandler(saveMessages), clientMode, clientID);
+    }
+
+    /**
+     * Create a MQTT subscriber with a given callback handler without waiting for it to subscribe.
+     *
+     * @param configuration   MQTT configurations for the subscriber
+     * @param topicName       Topic to subscribe to
+     * @param qos             Quality of Service
+     * @param callbackHandler Callback handler counting and capturing receiving messages
+     * @param clientMode      Client connection mode
+     * @param clientID        Unique identifier for the client hosting the subscription
+     * @throws MqttException
+     */
+    private void createSubscriber(MQTTClientConnectionConfiguration configuration, String topicName,
+                                  QualityOfService qos, CallbackHandler callbackHandler, ClientMode clientMode,
+                                  String clientID) throws MqttException {
 
         AndesMQTTClient mqttClient;
 
         if (ClientMode.ASYNC == clientMode) {
-            mqttClient = new MQTTAsyncSubscriberClient(configuration, clientID, topicName, qos, saveMessages);
+            mqttClient = new MQTTAsyncSubscriberClient(configuration, clientID, topicName, qos, callbackHandler);
+            mqttClient.getCallbackHandler().setReceivedMessageLatch(receivedMessageLatch);
             subscriberList.add(mqttClient);
             clientControlSubscriptionThreads.execute(mqttClient);
         } else if (ClientMode.BLOCKING == clientMode) {
             mqttClient = new MQTTBlockingSubscriberClient(configuration, clientID, topicName, qos,
-                    saveMessages);
+                    callbackHandler);
+            mqttClient.getCallbackHandler().setReceivedMessageLatch(receivedMessageLatch);
             subscriberList.add(mqttClient);
             mqttClient.run();
         } else {
@@ -187,9 +253,6 @@ public class MQTTClientEngine {
             // handle it before this
             throw new MqttException(new Throwable("Unidentified clientMode : " + clientMode));
         }
-
-
-        waitForSubscribersToSubscribe();
     }
 
     /**
@@ -208,8 +271,9 @@ public class MQTTClientEngine {
                                            throws MqttException, XPathExpressionException {
         MQTTClientConnectionConfiguration configurations = getConfigurations(automationContext);
         for (int i = 0; i < noOfSubscribers; i++) {
-            createSubscriberConnection(configurations, topicName, qos, saveMessages, clientMode);
+            createSubscriber(configurations, topicName, qos, saveMessages, clientMode, generateClientID());
         }
+        waitForSubscribersToSubscribe();
     }
     
     
@@ -229,24 +293,69 @@ public class MQTTClientEngine {
                                            MQTTClientConnectionConfiguration configuration) throws MqttException {
         
         for (int i = 0; i < noOfSubscribers; i++) {
-            createSubscriberConnection(configuration, topicName, qos, saveMessages, clientMode);
+            createSubscriber(configuration, topicName, qos, saveMessages, clientMode, generateClientID());
         }
+        waitForSubscribersToSubscribe();
     }
     
     
+    /**
+     * Create a swarm of subscribers simulating a fleet of devices, all subscribing to the same topic.
+     * Use to load a broker with a large number of connections, which the Paho based subscribers cannot reach since
+     * each of them needs several threads and a persistence directory of its own.
+     * <p/>
+     * Swarm sessions are served by a few event loop threads, keep their state in memory and connect concurrently.
+     * Messages received by the swarm are included in the received message count and TPS of the engine.
+     *
+     * @param configuration         MQTT configurations for the subscribers
+     * @param topicName             Topic to subscribe to
+     * @param qos                   Quality of Service
+     * @param noOfSubscribers       Number of subscriber sessions to create
+     * @param eventLoopThreads      Number of threads serving the sessions
+     * @param maxInFlightHandshakes Maximum number of sessions connecting and subscribing at the same time
+     * @return The swarm, once every session has subscribed or failed
+     * @throws MqttException if the swarm cannot be started
+     */
+    public MQTTSwarm createSubscriberSwarm(MQTTClientConnectionConfiguration configuration, String topicName,
+                                           QualityOfService qos, int noOfSubscribers, int eventLoopThreads,
+                                           int maxInFlightHandshakes) throws MqttException {
+        try {
+            MQTTSwarm swarm = new MQTTSwarm(configuration, topicName, qos, eventLoopThreads, maxInFlightHandshakes);
+            swarm.setReceivedMessageLatch(receivedMessageLatch);
+            swarmList.add(swarm);
+            // Client ids are a short random prefix followed by the index of the session
+            String clientIdPrefix = RandomStringUtils.randomAlphanumeric(SWARM_CLIENT_ID_PREFIX_LENGTH);
+            int subscribed = swarm.connect(clientIdPrefix, noOfSubscribers);
+            if (subscribed < noOfSubscribers) {
+                log.warn((noOfSubscribers - subscribed) + " swarm subscribers failed to subscribe to " + topicName);
+            }
+            return swarm;
+        } catch (IOException e) {
+            throw new MqttException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MqttException(e);
+        }
+    }
+
     /**
      * Wait until all the subscriber are subscribed to the topics and ready to receive messages.
      * Before creating publishers, this should be called otherwise while subscribers are being subscribed publishers
      * will start to publish and those messages will be lost.
      */
     private void waitForSubscribersToSubscribe() {
+        // Checks again soon at first, backing off to a second, so that fast subscriptions are not held up
+        long waitMillis = MIN_SUBSCRIBE_CHECK_INTERVAL_MILLIS;
         while (!isAllSubscribersSubscribed()) {
             try {
-                TimeUnit.SECONDS.sleep(1L);
+                TimeUnit.MILLISECONDS.sleep(waitMillis);
             } catch (InterruptedException e) {
                 log.error("Error waiting until subscribers subscribe to topics.", e);
             }
-            log.info("Waiting for subscribers to create connection");
+            if (MAX_SUBSCRIBE_CHECK_INTERVAL_MILLIS == waitMillis) {
+                log.info("Waiting for subscribers to create connection");
+            }
+            waitMillis = Math.min(2 * waitMillis, MAX_SUBSCRIBE_CHECK_INTERVAL_MILLIS);
         }
     }
 
@@ -414,6 +523,10 @@ public class MQTTClientEngine {
             count = count + subscriber.getReceivedMessageCount();
         }
 
+        for (MQTTSwarm swarm : swarmList) {
+            count = count + (int) swarm.getReceivedMessageCount();
+        }
+
         return count;
     }
 
@@ -432,6 +545,95 @@ public class MQTTClientEngine {
         return count;
     }
 
+    /**
+     * Get the round trip times of the messages sent by all asynchronous publishers, from publishing until the
+     * delivery completed.
+     *
+     * @return Publish latency histogram of all asynchronous publishers
+     */
+    public LatencyHistogram getPublishLatencyHistogram() {
+        LatencyHistogram publishLatencyHistogram = new LatencyHistogram();
+
+        for (AndesMQTTClient publisher : publisherList) {
+            if (publisher instanceof AndesMQTTAsyncClient) {
+                publishLatencyHistogram.add(((AndesMQTTAsyncClient) publisher).getPublishLatencyHistogram());
+            }
+        }
+
+        return publishLatencyHistogram;
+    }
+
+    /**
+     * Get the time from publishing to receiving of the messages received by all subscribers, for messages sent
+     * with a payload header.
+     *
+     * @return End to end latency histogram of all subscribers
+     */
+    public LatencyHistogram getEndToEndLatencyHistogram() {
+        LatencyHistogram endToEndLatencyHistogram = new LatencyHistogram();
+
+        for (AndesMQTTClient subscriber : subscriberList) {
+            if (null != subscriber.getCallbackHandler()) {
+                endToEndLatencyHistogram.add(subscriber.getCallbackHandler().getEndToEndLatencyHistogram());
+            }
+        }
+
+        return endToEndLatencyHistogram;
+    }
+
+    /**
+     * Get the number of messages sent with a payload header which subscribers did not receive, although they
+     * received a later message of the same publisher.
+     *
+     * @return Missing message count of all subscribers
+     */
+    public long getMissingMessageCount() {
+        long count = 0;
+
+        for (AndesMQTTClient subscriber : subscriberList) {
+            if (null != subscriber.getCallbackHandler()) {
+                count = count + subscriber.getCallbackHandler().getSequenceTracker().getMissingCount();
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Get the number of messages sent with a payload header which subscribers received more than once.
+     *
+     * @return Duplicate message count of all subscribers
+     */
+    public long getDuplicateMessageCount() {
+        long count = 0;
+
+        for (AndesMQTTClient subscriber : subscriberList) {
+            if (null != subscriber.getCallbackHandler()) {
+                count = count + subscriber.getCallbackHandler().getSequenceTracker().getDuplicateCount();
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Get the number of messages sent with a payload header which subscribers received after a later message of
+     * the same publisher.
+     *
+     * @return Out of order message count of all subscribers
+     */
+    public long getOutOfOrderMessageCount() {
+        long count = 0;
+
+        for (AndesMQTTClient subscriber : subscriberList) {
+            if (null != subscriber.getCallbackHandler()) {
+                count = count + subscriber.getCallbackHandler().getSequenceTracker().getOutOfOrderCount();
+            }
+        }
+
+        return count;
+    }
+
     /**
      * Get all the subscribers.
      * Use if needed to directly handle subscribers.
@@ -470,26 +672,17 @@ public class MQTTClientEngine {
      * Use in test cases before doing assertions so message send/receive will be completed before assertions
      * but needs the clients to be connected for further cases.
      * <p/>
-     * Detect all the messages are received by checking message count in each 10 second iterations.
-     * If message count doesn't change in two consecutive rounds it will be decided that all the messages that the
-     * server has sent is received.
+     * All the messages are considered received once no message is received for 10 seconds. Subscribers wake up
+     * the waiting thread as messages arrive, so the wait ends as soon as the 10 seconds pass after the last message.
      * <p/>
-     * If no messages are received, will lookout for 20 seconds for message and return.
+     * If no messages are received, will lookout for 10 seconds for message and return.
      */
     public void waitUntilAllMessageReceived() {
-        int previousMessageCount = 0;
-        int currentMessageCount = -1;
-
-        // Check each 10 second if new messages have been received, if not disconnect clients.
-        // If no message are received this will wait for 20 seconds before shutting down clients.
-        while (currentMessageCount != previousMessageCount) {
-            try {
-                TimeUnit.SECONDS.sleep(10);
-            } catch (InterruptedException e) {
-                log.error("Error waiting for receiving messages.", e);
-            }
-            previousMessageCount = currentMessageCount;
-            currentMessageCount = getReceivedMessageCount();
+        try {
+            receivedMessageLatch.await(Long.MAX_VALUE, TimeUnit.SECONDS.toNanos(MESSAGE_IDLE_TIMEOUT_SECONDS));
+        } catch (InterruptedException e) {
+            log.error("Error waiting for receiving messages.", e);
+            Thread.currentThread().interrupt();
         }
     }
 
@@ -499,7 +692,8 @@ public class MQTTClientEngine {
      * assertions.
      * <p/>
      * This method will exit regardless of the number of messages received if maximum wait time
-     * is reached.
+     * is reached. Subscribers wake up the waiting thread as messages arrive, so it exits as soon as the expected
+     * number of messages is received.
      *
      * @param expectedNumberOfMessages expected number of messages to be received by subscriber.
      * @param maxWaitTime              maximum wait time in milliseconds before stop waiting for messages.
@@ -507,39 +701,91 @@ public class MQTTClientEngine {
      */
     public void waitUntilExpectedNumberOfMessagesReceived(int expectedNumberOfMessages,
                                                           long maxWaitTime) throws MqttException {
+        try {
+            if (receivedMessageLatch.await(expectedNumberOfMessages, Long.MAX_VALUE,
+                                           TimeUnit.MILLISECONDS.toNanos(maxWaitTime))) {
+                log.info("Expected message count received by subscriber.");
+            }
+        } catch (InterruptedException e) {
+            log.error("Error waiting for receiving messages.", e);
+            Thread.currentThread().interrupt();
+        }
+    }
 
-        // max system wait time
-        long maxWaitSystemTime = System.currentTimeMillis() + maxWaitTime;
+    /**
+     * Get the receiving TPS of all subscribers together, calculated from the total received message count between
+     * the first and the last message received by any subscriber.
+     *
+     * @return Receiving transactions per second
+     */
+    public double getReceiveTPS() {
+        return ClientMetrics.snapshot(getReceivedMetrics()).getTPS();
+    }
 
-        // this loop will exit if system time is larger or equal than maximum system wait time.
-        while (System.currentTimeMillis() <= maxWaitSystemTime) {
-            try {
+    /**
+     * Get the receiving TPS of all subscribers together over the last complete seconds.
+     *
+     * @param seconds Length of the window in seconds, at most {@link ClientMetrics#WINDOW_SECONDS} - 1
+     * @return Receiving transactions per second in the window
+     */
+    public double getReceiveWindowTPS(int seconds) {
+        return ClientMetrics.getWindowTPS(seconds, getReceivedMetrics());
+    }
 
-                TimeUnit.MILLISECONDS.sleep(2000L);
+    /**
+     * Get the sending TPS of all publishers together, calculated from the total delivered message count between
+     * the first and the last delivery of any publisher.
+     *
+     * @return Sending transactions per second
+     */
+    public double getSendTPS() {
+        return ClientMetrics.snapshot(getSentMetrics()).getTPS();
+    }
 
-            } catch (InterruptedException e) {
-                log.error("Error waiting for receiving messages.", e);
-            }
+    /**
+     * Get the sending TPS of all publishers together over the last complete seconds.
+     *
+     * @param seconds Length of the window in seconds, at most {@link ClientMetrics#WINDOW_SECONDS} - 1
+     * @return Sending transactions per second in the window
+     */
+    public double getSendWindowTPS(int seconds) {
+        return ClientMetrics.getWindowTPS(seconds, getSentMetrics());
+    }
 
-            // if expected number of messages received by the subscriber it will break the loop.
-            // without waiting further.
-            if (expectedNumberOfMessages <= getReceivedMessageCount()) {
-                log.info("Expected message count received by subscriber.");
-                break;
+    /**
+     * Get the receiving metrics of each subscriber.
+     *
+     * @return Received message metrics of the subscribers
+     */
+    public List<ClientMetrics> getReceivedMetrics() {
+        List<ClientMetrics> receivedMetrics = new ArrayList<ClientMetrics>();
+        for (AndesMQTTClient subscriber : subscriberList) {
+            if (null != subscriber.getCallbackHandler()) {
+                receivedMetrics.add(subscriber.getCallbackHandler().getReceivedMetrics());
             }
+        }
 
+        for (MQTTSwarm swarm : swarmList) {
+            receivedMetrics.addAll(swarm.getReceivedMetrics());
         }
 
+        return receivedMetrics;
     }
 
     /**
-     * Calculate the TPS for the last (messageCount) messages.
+     * Get the sending metrics of each publisher.
      *
-     * @param timeDiffMillis Time took in milliseconds to receive (messageCount) messages.
-     * @return Transactions Per Second
+     * @return Sent message metrics of the publishers
      */
-    private double calculateTPS(long timeDiffMillis, int messageCount) {
-        return ((double) messageCount) / ((double) timeDiffMillis / MILLISECONDS_TO_A_SECOND);
+    public List<ClientMetrics> getSentMetrics() {
+        List<ClientMetrics> sentMetrics = new ArrayList<ClientMetrics>();
+        for (AndesMQTTClient publisher : publisherList) {
+            if (null != publisher.getCallbackHandler()) {
+                sentMetrics.add(publisher.getCallbackHandler().getSentMetrics());
+            }
+        }
+
+        return sentMetrics;
     }
 
     /**
@@ -551,24 +797,20 @@ public class MQTTClientEngine {
         tpsPublisherSchedule = scheduleExecutor.scheduleAtFixedRate(new Runnable() {
             @Override
             public void run() {
-                int currentReceivedMessageCount = getReceivedMessageCount();
-                int currentSentMessageCount = getSentMessageCount();
-
-                if (currentReceivedMessageCount != previousReceivedMessageCount) {
-                    double receiveTPS = calculateTPS(scheduleTimeInSeconds * MILLISECONDS_TO_A_SECOND,
-                            currentReceivedMessageCount - previousReceivedMessageCount);
+                double receiveTPS = getReceiveWindowTPS(scheduleTimeInSeconds);
+                if (0 < receiveTPS) {
                     log.info("Message Receiving TPS for the last " + scheduleTimeInSeconds + " seconds : " +
                             receiveTPS);
-
-                    previousReceivedMessageCount = currentReceivedMessageCount;
                 }
 
-                if (currentSentMessageCount != previousSentMessageCount) {
-                    double sentTPS = calculateTPS(scheduleTimeInSeconds * MILLISECONDS_TO_A_SECOND,
-                            currentSentMessageCount - previousSentMessageCount);
+                double sentTPS = getSendWindowTPS(scheduleTimeInSeconds);
+                if (0 < sentTPS) {
                     log.info("Message Sending TPS for the last " + scheduleTimeInSeconds + " seconds : " + sentTPS);
+                }
 
-                    previousSentMessageCount = currentSentMessageCount;
+                LatencyHistogram endToEndLatencyHistogram = getEndToEndLatencyHistogram();
+                if (0 < receiveTPS && 0 < endToEndLatencyHistogram.getCount()) {
+                    log.info("End to end latency : " + endToEndLatencyHistogram);
                 }
             }
         }, 0, scheduleTimeInSeconds, TimeUnit.SECONDS);
@@ -590,6 +832,35 @@ public class MQTTClientEngine {
             publisherClient.disconnect();
         }
 
+        for (AndesMQTTClient subscriberClient : subscriberList) {
+            subscriberClient.closePersistence();
+        }
+
+        for (AndesMQTTClient publisherClient : publisherList) {
+            publisherClient.closePersistence();
+        }
+
+        for (MQTTSwarm swarm : swarmList) {
+            try {
+                swarm.shutdown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new MqttException(e);
+            }
+        }
+
+        LatencyHistogram publishLatencyHistogram = getPublishLatencyHistogram();
+        if (0 < publishLatencyHistogram.getCount()) {
+            log.info("Publish round trip latency : " + publishLatencyHistogram);
+        }
+
+        LatencyHistogram endToEndLatencyHistogram = getEndToEndLatencyHistogram();
+        if (0 < endToEndLatencyHistogram.getCount()) {
+            log.info("End to end latency : " + endToEndLatencyHistogram);
+            log.info("Missing messages : " + getMissingMessageCount() + ", duplicate messages : "
+                     + getDuplicateMessageCount() + ", out of order messages : " + getOutOfOrderMessageCount());
+        }
+
         tpsPublisherSchedule.cancel(true);
         scheduleExecutor.shutdown();
     }
@@ -44,4 +44,10 @@ public class MQTTConstants {
      * Timeout for an MQTT client to connect to the broker.
      */
     public static final long CLIENT_CONNECT_TIMEOUT = 1000;
+
+    /**
+     * Maximum number of QoS 1 and QoS 2 messages the MQTT client keeps in flight, which it does not allow to be
+     * changed.
+     */
+    public static final int MAX_INFLIGHT_QOS_MESSAGES = 10;
 }
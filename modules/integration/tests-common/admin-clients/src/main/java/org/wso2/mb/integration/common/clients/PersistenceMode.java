@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ *   WSO2 Inc. licenses this file to you under the Apache License,
+ *   Version 2.0 (the "License"); you may not use this file except
+ *   in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ */
+
+package org.wso2.mb.integration.common.clients;
+
+/**
+ * Where MQTT clients store the QoS 1 and QoS 2 messages they have not completed delivering.
+ */
+public enum PersistenceMode {
+
+    /**
+     * Each client stores each message in a file of its own directory under java.io.tmpdir. A file is created and
+     * deleted for every message, which makes the disk a bottleneck under load.
+     */
+    FILE,
+
+    /**
+     * Each client keeps its messages in memory. Messages are lost when the JVM stops, which does not matter to
+     * clients that are never restarted from their persisted state.
+     */
+    MEMORY,
+
+    /**
+     * All clients in the JVM append their messages to a single shared memory-mapped log, whose segments are
+     * deleted once all messages written to them are delivered.
+     */
+    SHARED_LOG
+
+}
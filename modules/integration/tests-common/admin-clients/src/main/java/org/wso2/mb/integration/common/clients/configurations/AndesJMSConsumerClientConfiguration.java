@@ -55,11 +55,28 @@ public class AndesJMSConsumerClientConfiguration extends AndesJMSClientConfigura
      */
     private long acknowledgeAfterEachMessageCount = Long.MAX_VALUE;
 
+    /**
+     * The time in microseconds after which received messages are acknowledged, even if the
+     * acknowledge message count is not reached.
+     */
+    private long acknowledgeAfterEachMicros = Long.MAX_VALUE;
+
+    /**
+     * The time in microseconds after which received messages are committed, even if the commit
+     * message count is not reached.
+     */
+    private long commitAfterEachMicros = Long.MAX_VALUE;
+
     /**
      * The file path to write received messages.
      */
     private String filePathToWriteReceivedMessages = null;
 
+    /**
+     * The file path to write fixed width binary records of the received messages.
+     */
+    private String filePathToWriteReceivedMessageRecords = null;
+
     /**
      * Maximum messages to receiver.
      */
@@ -92,6 +109,22 @@ public class AndesJMSConsumerClientConfiguration extends AndesJMSClientConfigura
      */
     private String selectors = null;
 
+    /**
+     * The number of sessions created on each connection when consumers share connections.
+     */
+    private int sessionsPerConnection = 1;
+
+    /**
+     * The number of consumers created on each session when consumers share sessions.
+     */
+    private int consumersPerSession = 1;
+
+    /**
+     * The number of threads shared by the synchronous consumers of a client. 0 if each consumer
+     * has a thread of its own.
+     */
+    private int consumerThreadPoolSize = 0;
+
     /**
      * Creates a consumer configuration with default values.
      */
@@ -205,13 +238,19 @@ public class AndesJMSConsumerClientConfiguration extends AndesJMSClientConfigura
             this.rollbackAfterEachMessageCount = config.getLong("base.consumer.rollbackAfterEachMessageCount", Long.MAX_VALUE);
             this.commitAfterEachMessageCount = config.getLong("base.consumer.commitAfterEachMessageCount", Long.MAX_VALUE);
             this.acknowledgeAfterEachMessageCount = config.getLong("base.consumer.acknowledgeAfterEachMessageCount", Long.MAX_VALUE);
+            this.acknowledgeAfterEachMicros = config.getLong("base.consumer.acknowledgeAfterEachMicros", Long.MAX_VALUE);
+            this.commitAfterEachMicros = config.getLong("base.consumer.commitAfterEachMicros", Long.MAX_VALUE);
             this.filePathToWriteReceivedMessages = config.getString("base.consumer.filePathToWriteReceivedMessages", null);
+            this.filePathToWriteReceivedMessageRecords = config.getString("base.consumer.filePathToWriteReceivedMessageRecords", null);
             this.maximumMessagesToReceived = config.getLong("base.consumer.maximumMessagesToReceived", Long.MAX_VALUE);
             this.subscriptionID = config.getString("base.consumer.subscriptionID", null);
             this.durable = config.getBoolean("base.consumer.durable", false);
             this.async = config.getBoolean("base.consumer.async", true);
             this.selectors = config.getString("base.consumer.selectors", null);
             this.acknowledgeMode = JMSAcknowledgeMode.valueOf(config.getString("base.consumer.acknowledgeMode", "AUTO_ACKNOWLEDGE"));
+            this.setSessionsPerConnection(config.getInt("base.consumer.sessionsPerConnection", 1));
+            this.setConsumersPerSession(config.getInt("base.consumer.consumersPerSession", 1));
+            this.setConsumerThreadPoolSize(config.getInt("base.consumer.consumerThreadPoolSize", 0));
         } catch (ConfigurationException e) {
             throw new AndesClientConfigurationException("Error in reading xml configuration file. Make sure the file exists.", e);
         } catch (IllegalArgumentException e) {
@@ -356,6 +395,60 @@ public class AndesJMSConsumerClientConfiguration extends AndesJMSClientConfigura
         }
     }
 
+    /**
+     * Gets the time after which received messages are acknowledged.
+     *
+     * @return The time in microseconds.
+     */
+    public long getAcknowledgeAfterEachMicros() {
+        return acknowledgeAfterEachMicros;
+    }
+
+    /**
+     * Sets the time after which received messages are acknowledged when using client
+     * acknowledgement. Messages are acknowledged when either the acknowledge message count is
+     * reached or the oldest unacknowledged message was received this long ago. The time is
+     * checked as messages are received, and by consumers on a shared thread pool while idle.
+     *
+     * @param acknowledgeAfterEachMicros The time in microseconds.
+     * @throws AndesClientConfigurationException Thrown when the value is not greater than 0.
+     */
+    public void setAcknowledgeAfterEachMicros(long acknowledgeAfterEachMicros)
+            throws AndesClientConfigurationException {
+        if (0 < acknowledgeAfterEachMicros) {
+            this.acknowledgeAfterEachMicros = acknowledgeAfterEachMicros;
+        } else {
+            throw new AndesClientConfigurationException("Value cannot be less than 0");
+        }
+    }
+
+    /**
+     * Gets the time after which received messages are committed.
+     *
+     * @return The time in microseconds.
+     */
+    public long getCommitAfterEachMicros() {
+        return commitAfterEachMicros;
+    }
+
+    /**
+     * Sets the time after which received messages are committed when using a transacted
+     * session. Messages are committed when either the commit message count is reached or the
+     * oldest uncommitted message was received this long ago. The time is checked as messages
+     * are received, and by consumers on a shared thread pool while idle.
+     *
+     * @param commitAfterEachMicros The time in microseconds.
+     * @throws AndesClientConfigurationException Thrown when the value is not greater than 0.
+     */
+    public void setCommitAfterEachMicros(long commitAfterEachMicros)
+            throws AndesClientConfigurationException {
+        if (0 < commitAfterEachMicros) {
+            this.commitAfterEachMicros = commitAfterEachMicros;
+        } else {
+            throw new AndesClientConfigurationException("Value cannot be less than 0");
+        }
+    }
+
     /**
      * Gets the file path where the received messages should be written to,
      *
@@ -375,6 +468,30 @@ public class AndesJMSConsumerClientConfiguration extends AndesJMSClientConfigura
         this.filePathToWriteReceivedMessages = filePathToWriteReceivedMessages;
     }
 
+    /**
+     * Gets the file path where binary records of the received messages should be written to.
+     *
+     * @return The file path, or null if no records are written.
+     */
+    public String getFilePathToWriteReceivedMessageRecords() {
+        return filePathToWriteReceivedMessageRecords;
+    }
+
+    /**
+     * Sets the file path where binary records of the received messages should be written to. Each
+     * record holds the message number, the publisher thread ID, whether the message was
+     * redelivered and the time it was received. When set, the message checks of the client read
+     * these records instead of the received messages text file, which is much faster for large
+     * numbers of messages.
+     *
+     * @param filePathToWriteReceivedMessageRecords The file path where the records should be
+     *                                              written to.
+     */
+    public void setFilePathToWriteReceivedMessageRecords(
+            String filePathToWriteReceivedMessageRecords) {
+        this.filePathToWriteReceivedMessageRecords = filePathToWriteReceivedMessageRecords;
+    }
+
     /**
      * Gets the maximum number of messages to received.
      *
@@ -522,6 +639,86 @@ public class AndesJMSConsumerClientConfiguration extends AndesJMSClientConfigura
         this.selectors = selectors;
     }
 
+    /**
+     * Gets the number of sessions created on each connection.
+     *
+     * @return The number of sessions per connection.
+     */
+    public int getSessionsPerConnection() {
+        return sessionsPerConnection;
+    }
+
+    /**
+     * Sets the number of sessions created on each connection. Consumers of a client share
+     * connections when this or the number of consumers per session is greater than 1, which allows
+     * a client to simulate thousands of consumers with a fraction of the connections.
+     *
+     * @param sessionsPerConnection The number of sessions per connection.
+     * @throws AndesClientConfigurationException Thrown when the value is less than 1.
+     */
+    public void setSessionsPerConnection(int sessionsPerConnection)
+            throws AndesClientConfigurationException {
+        if (0 < sessionsPerConnection) {
+            this.sessionsPerConnection = sessionsPerConnection;
+        } else {
+            throw new AndesClientConfigurationException("Sessions per connection cannot be less than 1");
+        }
+    }
+
+    /**
+     * Gets the number of consumers created on each session.
+     *
+     * @return The number of consumers per session.
+     */
+    public int getConsumersPerSession() {
+        return consumersPerSession;
+    }
+
+    /**
+     * Sets the number of consumers created on each session. Messages of all consumers of a
+     * session are delivered one after the other by the session, so consumers can only share
+     * sessions when reading messages asynchronously. Acknowledging, committing and rolling back
+     * applies to all consumers of the session.
+     *
+     * @param consumersPerSession The number of consumers per session.
+     * @throws AndesClientConfigurationException Thrown when the value is less than 1.
+     */
+    public void setConsumersPerSession(int consumersPerSession)
+            throws AndesClientConfigurationException {
+        if (0 < consumersPerSession) {
+            this.consumersPerSession = consumersPerSession;
+        } else {
+            throw new AndesClientConfigurationException("Consumers per session cannot be less than 1");
+        }
+    }
+
+    /**
+     * Gets the number of threads shared by the synchronous consumers of a client.
+     *
+     * @return The number of threads, 0 if each consumer has a thread of its own.
+     */
+    public int getConsumerThreadPoolSize() {
+        return consumerThreadPoolSize;
+    }
+
+    /**
+     * Sets the number of threads shared by the synchronous consumers of a client. Consumers then
+     * poll for messages in turns on a thread pool of this size, and are stopped and un-subscribed
+     * on it, instead of each having threads of its own. This keeps the number of threads fixed
+     * when simulating large numbers of consumers. Not used by asynchronous consumers.
+     *
+     * @param consumerThreadPoolSize The number of threads, or 0 for a thread per consumer.
+     * @throws AndesClientConfigurationException Thrown when the value is less than 0.
+     */
+    public void setConsumerThreadPoolSize(int consumerThreadPoolSize)
+            throws AndesClientConfigurationException {
+        if (0 <= consumerThreadPoolSize) {
+            this.consumerThreadPoolSize = consumerThreadPoolSize;
+        } else {
+            throw new AndesClientConfigurationException("Consumer thread pool size cannot be less than 0");
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -532,13 +729,19 @@ public class AndesJMSConsumerClientConfiguration extends AndesJMSClientConfigura
                "RollbackAfterEachMessageCount=" + this.rollbackAfterEachMessageCount + "\n" +
                "CommitAfterEachMessageCount=" + this.commitAfterEachMessageCount + "\n" +
                "AcknowledgeAfterEachMessageCount=" + this.acknowledgeAfterEachMessageCount + "\n" +
+               "AcknowledgeAfterEachMicros=" + this.acknowledgeAfterEachMicros + "\n" +
+               "CommitAfterEachMicros=" + this.commitAfterEachMicros + "\n" +
                "FilePathToWriteReceivedMessages=" + this.filePathToWriteReceivedMessages + "\n" +
+               "FilePathToWriteReceivedMessageRecords=" + this.filePathToWriteReceivedMessageRecords + "\n" +
                "MaximumMessagesToReceived=" + this.maximumMessagesToReceived + "\n" +
                "SubscriptionID=" + this.subscriptionID + "\n" +
                "Durable=" + this.durable + "\n" +
                "AcknowledgeMode=" + this.acknowledgeMode + "\n" +
                "Async=" + this.async + "\n" +
-               "Selectors=" + this.selectors + "\n";
+               "Selectors=" + this.selectors + "\n" +
+               "SessionsPerConnection=" + this.sessionsPerConnection + "\n" +
+               "ConsumersPerSession=" + this.consumersPerSession + "\n" +
+               "ConsumerThreadPoolSize=" + this.consumerThreadPoolSize + "\n";
     }
 
     /**
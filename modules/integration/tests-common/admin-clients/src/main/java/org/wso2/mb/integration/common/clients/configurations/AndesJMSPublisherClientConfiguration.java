@@ -74,6 +74,18 @@ public class AndesJMSPublisherClientConfiguration extends AndesJMSClientConfigur
      */
     private String JMSType;
 
+    /**
+     * The rate at which messages are published in open loop mode. When null, each message is
+     * published once the previous one has been sent, followed by the running delay.
+     */
+    private PublishRateProfile publishRateProfile = null;
+
+    /**
+     * Whether the message, its JMS type and its header properties are built once and the same
+     * message is sent again with only its message number updated.
+     */
+    private boolean messageTemplateEnabled = false;
+
     /**
      * Creates a connection string with default properties.
      */
@@ -194,6 +206,11 @@ public class AndesJMSPublisherClientConfiguration extends AndesJMSClientConfigur
             jmsMessageType = JMSMessageType.valueOf(config.getString("base.publisher.jmsMessageType", "TEXT"));
             filePathToWritePublishedMessages = config.getString("base.publisher.filePathToWritePublishedMessages", null);
             JMSHeaderProperties = new ArrayList<JMSHeaderProperty>(5);
+            messageTemplateEnabled = config.getBoolean("base.publisher.messageTemplate", false);
+            double publishRate = config.getDouble("base.publisher.publishRate", 0D);
+            if (0D < publishRate) {
+                publishRateProfile = PublishRateProfile.constant(publishRate);
+            }
         } catch (ConfigurationException e) {
             throw new AndesClientConfigurationException("Error in reading xml configuration file. Make sure the file exists.", e);
         } catch (IllegalArgumentException e) {
@@ -385,6 +402,57 @@ public class AndesJMSPublisherClientConfiguration extends AndesJMSClientConfigur
         }
     }
 
+    /**
+     * Gets the rate at which messages are published in open loop mode.
+     *
+     * @return The rate profile, or null if messages are published one after the other.
+     */
+    public PublishRateProfile getPublishRateProfile() {
+        return publishRateProfile;
+    }
+
+    /**
+     * Sets the rate at which messages are published. Each message is then published at its
+     * intended time according to the profile, whether or not earlier sends were delayed, and the
+     * running delay is ignored. The rate applies to each publisher of a client separately.
+     *
+     * @param publishRateProfile The rate profile, or null to publish messages one after the other.
+     */
+    public void setPublishRateProfile(PublishRateProfile publishRateProfile) {
+        this.publishRateProfile = publishRateProfile;
+    }
+
+    /**
+     * Sets a constant rate at which messages are published in open loop mode.
+     *
+     * @param messagesPerSecond The number of messages per second per publisher. May be fractional.
+     * @throws AndesClientConfigurationException Thrown when the rate is not greater than 0.
+     */
+    public void setPublishRate(double messagesPerSecond) throws AndesClientConfigurationException {
+        this.publishRateProfile = PublishRateProfile.constant(messagesPerSecond);
+    }
+
+    /**
+     * Whether the published message is built once and reused for every send.
+     *
+     * @return true if message templates are used, false otherwise.
+     */
+    public boolean isMessageTemplateEnabled() {
+        return messageTemplateEnabled;
+    }
+
+    /**
+     * Sets whether the published message is built once, along with its JMS type and header
+     * properties, and sent again for every message with only the message number in the inbuilt
+     * text payload updated. This removes the per message formatting and property handling from
+     * the publisher when publishing at high rates.
+     *
+     * @param messageTemplateEnabled true to use message templates, false to build every message.
+     */
+    public void setMessageTemplateEnabled(boolean messageTemplateEnabled) {
+        this.messageTemplateEnabled = messageTemplateEnabled;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -394,7 +462,9 @@ public class AndesJMSPublisherClientConfiguration extends AndesJMSClientConfigur
                "ReadMessagesFromFilePath=" + this.readMessagesFromFilePath + "\n" +
                "JmsMessageType=" + this.jmsMessageType + "\n" +
                "NumberOfMessagesToSend=" + this.numberOfMessagesToSend + "\n" +
-               "JmsMessageExpiryTime=" + this.jmsMessageExpiryTime + "\n";
+               "JmsMessageExpiryTime=" + this.jmsMessageExpiryTime + "\n" +
+               "PublishRateProfile=" + this.publishRateProfile + "\n" +
+               "MessageTemplateEnabled=" + this.messageTemplateEnabled + "\n";
     }
 
     /**
@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.mb.integration.common.clients.configurations;
+
+import org.wso2.mb.integration.common.clients.exceptions.AndesClientConfigurationException;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The rate at which a publisher sends messages over the time since it started, used to publish in
+ * open loop mode. Rates are in messages per second per publisher and may be fractional, such as
+ * 0.5 for a message every two seconds.
+ */
+public class PublishRateProfile {
+    /**
+     * The shape of the rate over time.
+     */
+    private enum Shape {
+        CONSTANT, RAMP, STEPS, SPIKE
+    }
+
+    private final Shape shape;
+
+    /**
+     * The rates of the profile. The constant rate, the start and end rate of a ramp, the rate of
+     * each step or the base and spike rate of a spike.
+     */
+    private final double[] rates;
+
+    /**
+     * The duration of the ramp, of each step or of the spike in nanoseconds.
+     */
+    private final long durationNanos;
+
+    /**
+     * The time after the start at which the spike starts in nanoseconds.
+     */
+    private final long startNanos;
+
+    private PublishRateProfile(Shape shape, double[] rates, long durationNanos, long startNanos)
+            throws AndesClientConfigurationException {
+        for (double rate : rates) {
+            if (!(0D < rate) || Double.isInfinite(rate)) {
+                throw new AndesClientConfigurationException("The publish rate must be greater than 0. " +
+                                                            "Value entered is " + rate);
+            }
+        }
+        if (0L > durationNanos || 0L > startNanos) {
+            throw new AndesClientConfigurationException("The durations of a publish rate profile " +
+                                                        "cannot be less than 0");
+        }
+        this.shape = shape;
+        this.rates = rates;
+        this.durationNanos = durationNanos;
+        this.startNanos = startNanos;
+    }
+
+    /**
+     * Creates a profile publishing at a constant rate.
+     *
+     * @param messagesPerSecond The rate.
+     * @return The profile.
+     * @throws AndesClientConfigurationException Thrown when the rate is not greater than 0.
+     */
+    public static PublishRateProfile constant(double messagesPerSecond)
+            throws AndesClientConfigurationException {
+        return new PublishRateProfile(Shape.CONSTANT, new double[]{messagesPerSecond}, 0L, 0L);
+    }
+
+    /**
+     * Creates a profile changing the rate linearly from a start rate to an end rate, and then
+     * publishing at the end rate.
+     *
+     * @param startRate          The rate when the publisher starts.
+     * @param endRate            The rate at the end of the ramp.
+     * @param rampDurationMillis The duration of the ramp in milliseconds.
+     * @return The profile.
+     * @throws AndesClientConfigurationException Thrown when a rate is not greater than 0.
+     */
+    public static PublishRateProfile ramp(double startRate, double endRate, long rampDurationMillis)
+            throws AndesClientConfigurationException {
+        return new PublishRateProfile(Shape.RAMP, new double[]{startRate, endRate},
+                                      TimeUnit.MILLISECONDS.toNanos(rampDurationMillis), 0L);
+    }
+
+    /**
+     * Creates a profile publishing at each of the given rates in turn for the same duration, and
+     * then at the last rate.
+     *
+     * @param stepDurationMillis The duration of each step in milliseconds.
+     * @param rates              The rate of each step.
+     * @return The profile.
+     * @throws AndesClientConfigurationException Thrown when no rate is given or a rate is not
+     *                                           greater than 0.
+     */
+    public static PublishRateProfile steps(long stepDurationMillis, double... rates)
+            throws AndesClientConfigurationException {
+        if (0 == rates.length) {
+            throw new AndesClientConfigurationException("A stepped publish rate needs at least one rate");
+        }
+        return new PublishRateProfile(Shape.STEPS, rates.clone(),
+                                      TimeUnit.MILLISECONDS.toNanos(stepDurationMillis), 0L);
+    }
+
+    /**
+     * Creates a profile publishing at a base rate, except during a spike.
+     *
+     * @param baseRate            The rate outside of the spike.
+     * @param spikeRate           The rate during the spike.
+     * @param spikeStartMillis    The time after the start of the publisher at which the spike
+     *                            starts in milliseconds.
+     * @param spikeDurationMillis The duration of the spike in milliseconds.
+     * @return The profile.
+     * @throws AndesClientConfigurationException Thrown when a rate is not greater than 0.
+     */
+    public static PublishRateProfile spike(double baseRate, double spikeRate, long spikeStartMillis,
+                                           long spikeDurationMillis)
+            throws AndesClientConfigurationException {
+        return new PublishRateProfile(Shape.SPIKE, new double[]{baseRate, spikeRate},
+                                      TimeUnit.MILLISECONDS.toNanos(spikeDurationMillis),
+                                      TimeUnit.MILLISECONDS.toNanos(spikeStartMillis));
+    }
+
+    /**
+     * Gets the rate at a given time after the publisher started.
+     *
+     * @param elapsedNanos The nanoseconds elapsed since the publisher started.
+     * @return The rate in messages per second.
+     */
+    public double getRate(long elapsedNanos) {
+        switch (shape) {
+            case RAMP:
+                if (elapsedNanos >= durationNanos) {
+                    return rates[1];
+                }
+                return rates[0] + (rates[1] - rates[0]) * elapsedNanos / durationNanos;
+            case STEPS:
+                if (0L == durationNanos) {
+                    return rates[rates.length - 1];
+                }
+                return rates[(int) Math.min(rates.length - 1, elapsedNanos / durationNanos)];
+            case SPIKE:
+                if (elapsedNanos >= startNanos && elapsedNanos < startNanos + durationNanos) {
+                    return rates[1];
+                }
+                return rates[0];
+            default:
+                return rates[0];
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return shape + Arrays.toString(rates) + " msg/s";
+    }
+}
@@ -21,11 +21,17 @@ package org.wso2.mb.integration.common.clients.operations.mqtt.async;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.eclipse.paho.client.mqttv3.*;
+import org.wso2.mb.integration.common.clients.MQTTConstants;
 import org.wso2.mb.integration.common.clients.QualityOfService;
 import org.wso2.mb.integration.common.clients.AndesMQTTClient;
 import org.wso2.mb.integration.common.clients.MQTTClientConnectionConfiguration;
 import org.wso2.mb.integration.common.clients.operations.mqtt.blocking.AndesMQTTBlockingClient;
 import org.wso2.mb.integration.common.clients.operations.mqtt.callback.CallbackHandler;
+import org.wso2.mb.integration.common.clients.operations.utils.LatencyHistogram;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Asynchronous publish/subscribe MQTT client.
@@ -39,6 +45,46 @@ public abstract class AndesMQTTAsyncClient extends AndesMQTTClient {
     // Basic asynchronous mqtt client
     protected MqttAsyncClient mqttClient;
 
+    /**
+     * Bounds the number of published messages waiting for their delivery to complete.
+     */
+    private final Semaphore inFlightWindow;
+
+    /**
+     * The number of messages the in flight window holds.
+     */
+    private final int maxInFlightMessages;
+
+    /**
+     * Time from publishing a message until its delivery completes, which is the PUBACK round trip for QoS 1 and
+     * the PUBCOMP round trip for QoS 2.
+     */
+    private final LatencyHistogram publishLatencyHistogram = new LatencyHistogram();
+
+    /**
+     * The number of published messages whose delivery failed.
+     */
+    private final AtomicInteger failedMessageCount = new AtomicInteger();
+
+    /**
+     * Completes the in flight messages, recording their round trip time. The user context of a message is the
+     * nano time it was published at.
+     */
+    private final IMqttActionListener deliveryListener = new IMqttActionListener() {
+        @Override
+        public void onSuccess(IMqttToken token) {
+            publishLatencyHistogram.recordNanos(System.nanoTime() - (Long) token.getUserContext());
+            inFlightWindow.release();
+        }
+
+        @Override
+        public void onFailure(IMqttToken token, Throwable throwable) {
+            failedMessageCount.incrementAndGet();
+            log.warn("Delivery failed for a message published by " + mqttClientID + " to " + topic, throwable);
+            inFlightWindow.release();
+        }
+    };
+
     /**
      * Create a mqtt client initializing mqtt options.
      *
@@ -53,6 +99,22 @@ public abstract class AndesMQTTAsyncClient extends AndesMQTTClient {
                                 QualityOfService qos, CallbackHandler callbackHandler) throws MqttException {
         super(configuration, clientID, topic, qos, callbackHandler);
 
+        int configuredMaxInFlightMessages = configuration.getMaxInFlightMessages();
+        if (QualityOfService.MOST_ONCE == qos) {
+            // QoS 0 deliveries complete once written, so the window only limits them when configured to
+            maxInFlightMessages = 0 < configuredMaxInFlightMessages ? configuredMaxInFlightMessages
+                                                                    : Integer.MAX_VALUE;
+        } else if (0 == configuredMaxInFlightMessages) {
+            maxInFlightMessages = MQTTConstants.MAX_INFLIGHT_QOS_MESSAGES;
+        } else if (configuredMaxInFlightMessages > MQTTConstants.MAX_INFLIGHT_QOS_MESSAGES) {
+            log.warn("Limiting messages in flight of " + clientID + " to " + MQTTConstants.MAX_INFLIGHT_QOS_MESSAGES
+                     + ", the most the MQTT client allows for qos " + qos);
+            maxInFlightMessages = MQTTConstants.MAX_INFLIGHT_QOS_MESSAGES;
+        } else {
+            maxInFlightMessages = configuredMaxInFlightMessages;
+        }
+        inFlightWindow = new Semaphore(maxInFlightMessages);
+
         // Construct MQTT client
         mqttClient = new MqttAsyncClient(this.brokerUrl, clientID, dataStore);
 
@@ -64,6 +126,8 @@ public abstract class AndesMQTTAsyncClient extends AndesMQTTClient {
 
     /**
      * Publish message to broker using mqtt asynchronously.
+     * Messages are pipelined, keeping up to the maximum number of in flight messages waiting for their delivery to
+     * complete. Returns once the delivery of all messages completed.
      *
      * @param payload      Data to send
      * @param noOfMessages Number of message to send
@@ -75,18 +139,75 @@ public abstract class AndesMQTTAsyncClient extends AndesMQTTClient {
         if (null != payload) {
 
             // Create and configure message
-            MqttMessage message = new MqttMessage(payload);
-            message.setQos(qos.getValue());
-            message.setRetained(retain);
-
-            for (int i = 0; i < noOfMessages; i++) {
-                // Send message to server, control is either returned or blocked until it has been delivered to the
-                // server depending on the MqttClient type (Blocking/Async)meeting the specified quality of service.
-                mqttClient.publish(topic, message);
+            MqttMessage message = createMessage(payload, 0);
+
+            try {
+                for (int i = 0; i < noOfMessages; i++) {
+                    // Wait for a slot in the window, which is returned once the delivery of the message completes
+                    inFlightWindow.acquire();
+                    if (payloadHeaderEnabled && 0 < i) {
+                        message = createMessage(payload, i);
+                    }
+                    publishInWindow(message);
+                }
+
+                // Every slot is returned once all deliveries have completed
+                inFlightWindow.acquire(maxInFlightMessages);
+                inFlightWindow.release(maxInFlightMessages);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new MqttException(e);
+            }
+
+            if (0 < failedMessageCount.get()) {
+                log.warn("Delivery failed for " + failedMessageCount.get() + " messages published by "
+                         + mqttClientID);
+            }
+        }
+    }
+
+    /**
+     * Publish a message holding a slot of the in flight window. The slot is returned when the delivery of the
+     * message completes, or if it cannot be published.
+     *
+     * @param message The message to publish
+     * @throws MqttException
+     * @throws InterruptedException if interrupted while waiting for the client to accept the message
+     */
+    private void publishInWindow(MqttMessage message) throws MqttException, InterruptedException {
+        while (true) {
+            try {
+                mqttClient.publish(topic, message, System.nanoTime(), deliveryListener);
+                return;
+            } catch (MqttException e) {
+                if (MqttException.REASON_CODE_MAX_INFLIGHT != e.getReasonCode()) {
+                    inFlightWindow.release();
+                    throw e;
+                }
+                // The client has not yet counted a completed delivery out, which it does shortly
+                TimeUnit.MILLISECONDS.sleep(1L);
             }
         }
     }
 
+    /**
+     * Get the round trip times of the published messages, from publishing until the delivery completed.
+     *
+     * @return Publish latency histogram
+     */
+    public LatencyHistogram getPublishLatencyHistogram() {
+        return publishLatencyHistogram;
+    }
+
+    /**
+     * Get the number of published messages whose delivery failed.
+     *
+     * @return Failed message count
+     */
+    public int getFailedMessageCount() {
+        return failedMessageCount.get();
+    }
+
     /**
      * Subscribe to a topic in an asynchronous manner.
      *
@@ -75,11 +75,12 @@ public abstract class AndesMQTTBlockingClient extends AndesMQTTClient {
         if (null != payload) {
 
             // Create and configure message
-            MqttMessage message = new MqttMessage(payload);
-            message.setQos(qos.getValue());
-            message.setRetained(retain);
+            MqttMessage message = createMessage(payload, 0);
 
             for (int i = 0; i < noOfMessages; i++) {
+                if (payloadHeaderEnabled && 0 < i) {
+                    message = createMessage(payload, i);
+                }
                 // Send message to server, control is either returned or blocked until it has been delivered to the
                 // server depending on the MqttClient type (Blocking/Async)meeting the specified quality of service.
                 mqttClient.publish(topic, message);
@@ -50,7 +50,23 @@ public class MQTTBlockingSubscriberClient extends AndesMQTTBlockingClient {
      */
     public MQTTBlockingSubscriberClient(MQTTClientConnectionConfiguration configuration, String clientID, String topic,
                                         QualityOfService qos, boolean saveMessages) throws MqttException {
-        super(configuration, clientID, topic, qos, new CallbackHandler(saveMessages));
+        this(configuration, clientID, topic, qos, new CallbackHandler(saveMessages));
+    }
+
+    /**
+     * Initialize subscribing to mqtt with a given callback handler. Use this to choose what the handler keeps of
+     * the receiving messages.
+     *
+     * @param configuration   MQTT configurations
+     * @param clientID        Unique mqtt client Id
+     * @param topic           Topic to subscribe to
+     * @param qos             Quality of Service
+     * @param callbackHandler Callback handler counting and capturing receiving messages
+     * @throws MqttException
+     */
+    public MQTTBlockingSubscriberClient(MQTTClientConnectionConfiguration configuration, String clientID, String topic,
+                                        QualityOfService qos, CallbackHandler callbackHandler) throws MqttException {
+        super(configuration, clientID, topic, qos, callbackHandler);
     }
 
     /**
@@ -24,34 +24,127 @@ import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
 import org.eclipse.paho.client.mqttv3.MqttCallback;
 import org.eclipse.paho.client.mqttv3.MqttMessage;
 import org.wso2.mb.integration.common.clients.MQTTConstants;
+import org.wso2.mb.integration.common.clients.operations.utils.ClientMetrics;
+import org.wso2.mb.integration.common.clients.operations.utils.LatencyHistogram;
+import org.wso2.mb.integration.common.clients.operations.utils.MessageCountLatch;
+import org.wso2.mb.integration.common.clients.operations.utils.StripedCounter;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * Callback handler to handle message arrival, delivery complete and connection lost.
  * Keeps track of sent/received message counts.
+ * <p/>
+ * Counts are thread safe. Received messages are only kept as the {@link CaptureMode} requires, so that handling
+ * a message does not allocate unless messages are captured.
  */
 public class CallbackHandler implements MqttCallback {
 
     private final Log log = LogFactory.getLog(CallbackHandler.class);
 
-    private boolean saveMessages = false;
+    /**
+     * Reads the sequence number of the {@link PayloadHeader} when the payload starts with one, otherwise the sequence
+     * ID from the first 8 bytes of the payload, in big-endian order.
+     */
+    public static final SequenceIdReader PAYLOAD_PREFIX_SEQUENCE_ID_READER = new SequenceIdReader() {
+        @Override
+        public long readSequenceId(byte[] payload) {
+            if (PayloadHeader.isPresent(payload)) {
+                return PayloadHeader.readSequenceNumber(payload);
+            }
+            if (payload.length < 8) {
+                return -1L;
+            }
+            long sequenceId = 0L;
+            for (int i = 0; i < 8; i++) {
+                sequenceId = (sequenceId << 8) | (payload[i] & 0xFF);
+            }
+            return sequenceId;
+        }
+    };
+
+    /**
+     * Capture size used when none is given.
+     */
+    private static final int DEFAULT_CAPTURE_SIZE = 1000;
+
+    private final CaptureMode captureMode;
+
+    /**
+     * The number of messages or sequence IDs kept by {@link CaptureMode#LAST} and {@link CaptureMode#SAMPLE}, and
+     * the initial capacity of the sequence IDs of {@link CaptureMode#DIGEST}.
+     */
+    private final int captureSize;
+
+    /**
+     * All received messages, for {@link CaptureMode#ALL}.
+     */
+    private final List<MqttMessage> receivedMessages = Collections.synchronizedList(new ArrayList<MqttMessage>());
+
+    /**
+     * Captured messages, for {@link CaptureMode#LAST} and {@link CaptureMode#SAMPLE}.
+     */
+    private final AtomicReferenceArray<MqttMessage> capturedMessages;
+
+    /**
+     * The number of messages offered to the captured messages.
+     */
+    private final AtomicLong capturedMessageCount = new AtomicLong();
+
+    /**
+     * Sequence IDs of the received messages in arrival order, for {@link CaptureMode#DIGEST}. Guarded by the lock
+     * of the handler.
+     */
+    private long[] sequenceIds;
+
+    private int sequenceIdCount;
+
+    private SequenceIdReader sequenceIdReader = PAYLOAD_PREFIX_SEQUENCE_ID_READER;
+
+    private final StripedCounter receivedMessageCount = new StripedCounter();
+    private final StripedCounter sentMessageCount = new StripedCounter();
 
-    private final List<MqttMessage> receivedMessages = new ArrayList<MqttMessage>();
-    private int receivedMessageCount;
-    private int sentMessageCount;
+    /**
+     * Timestamps of the received messages, used to calculate the receiving TPS.
+     */
+    private final ClientMetrics receivedMetrics = new ClientMetrics();
+
+    /**
+     * Timestamps of the delivered messages, used to calculate the sending TPS.
+     */
+    private final ClientMetrics sentMetrics = new ClientMetrics();
+
+    /**
+     * Time from publishing to receiving the messages with a {@link PayloadHeader}.
+     */
+    private final LatencyHistogram endToEndLatencyHistogram = new LatencyHistogram();
+
+    /**
+     * Sequence numbers of the messages with a {@link PayloadHeader}, by publisher.
+     */
+    private final SequenceTracker sequenceTracker = new SequenceTracker();
+
+    /**
+     * Saves the topic name for which the last message received if messages are captured.
+     */
+    volatile String lastTopicReceived;
 
     /**
-     * Saves the topic name for which the last message received if saveMessages is set to true.
+     * The latch received messages are counted in, null if they are not counted.
      */
-    String lastTopicReceived;
+    private volatile MessageCountLatch receivedMessageLatch;
 
     /**
      * Default constructor. Use this if you do not care about receiving message are saved or not.
      */
     public CallbackHandler() {
-
+        this(CaptureMode.NONE, DEFAULT_CAPTURE_SIZE);
     }
 
     /**
@@ -63,7 +156,41 @@ public class CallbackHandler implements MqttCallback {
      * @param saveReceivingMessages Save receiving message
      */
     public CallbackHandler(boolean saveReceivingMessages) {
-        this.saveMessages = saveReceivingMessages;
+        this(saveReceivingMessages ? CaptureMode.ALL : CaptureMode.NONE, DEFAULT_CAPTURE_SIZE);
+    }
+
+    /**
+     * Set what is kept of the receiving messages while initializing. Use this when a large number of messages are
+     * expected, but some of them need to be validated.
+     *
+     * @param captureMode What to keep of the receiving messages
+     * @param captureSize Number of messages kept by {@link CaptureMode#LAST} and {@link CaptureMode#SAMPLE}, or
+     *                    the expected number of messages for {@link CaptureMode#DIGEST}
+     */
+    public CallbackHandler(CaptureMode captureMode, int captureSize) {
+        if (0 >= captureSize) {
+            throw new IllegalArgumentException("Capture size should be positive, but was " + captureSize);
+        }
+        this.captureMode = captureMode;
+        this.captureSize = captureSize;
+        if (CaptureMode.LAST == captureMode || CaptureMode.SAMPLE == captureMode) {
+            capturedMessages = new AtomicReferenceArray<MqttMessage>(captureSize);
+        } else {
+            capturedMessages = null;
+        }
+        if (CaptureMode.DIGEST == captureMode) {
+            sequenceIds = new long[captureSize];
+        }
+    }
+
+    /**
+     * Set how sequence IDs are read from the payload for {@link CaptureMode#DIGEST}. Set it before subscribing.
+     * By default the sequence ID is read from the first 8 bytes of the payload.
+     *
+     * @param sequenceIdReader Reads the sequence ID from a payload
+     */
+    public void setSequenceIdReader(SequenceIdReader sequenceIdReader) {
+        this.sequenceIdReader = sequenceIdReader;
     }
 
     /**
@@ -72,7 +199,17 @@ public class CallbackHandler implements MqttCallback {
      * @return Received message count
      */
     public int getReceivedMessageCount() {
-        return receivedMessageCount;
+        return (int) receivedMessageCount.sum();
+    }
+
+    /**
+     * Set the latch received messages are counted in, so that threads waiting for messages are woken up as they
+     * arrive. Set it before subscribing.
+     *
+     * @param receivedMessageLatch The latch, or null to not count messages
+     */
+    public void setReceivedMessageLatch(MessageCountLatch receivedMessageLatch) {
+        this.receivedMessageLatch = receivedMessageLatch;
     }
 
     /**
@@ -88,7 +225,8 @@ public class CallbackHandler implements MqttCallback {
 
     /**
      * Handle a receiving message from a server.
-     * The receiving message count will be updated. If save message flag is up, the received message will be saved.
+     * The receiving message count will be updated, and the message captured as the capture mode requires. If the
+     * payload starts with a {@link PayloadHeader}, the end to end latency and sequence number are recorded.
      *
      * @param topic       Topic message received from
      * @param mqttMessage The mqtt message received
@@ -97,15 +235,30 @@ public class CallbackHandler implements MqttCallback {
     @Override
     public void messageArrived(String topic, MqttMessage mqttMessage) throws Exception {
         if (null != mqttMessage) {
-            if (saveMessages) {
-                receivedMessages.add(mqttMessage);
+            byte[] payload = mqttMessage.getPayload();
+            if (PayloadHeader.isPresent(payload)) {
+                endToEndLatencyHistogram.recordNanos(System.nanoTime() - PayloadHeader.readNanoTime(payload));
+                sequenceTracker.record(PayloadHeader.readPublisherId(payload),
+                        PayloadHeader.readSequenceNumber(payload));
+            }
+
+            if (CaptureMode.NONE != captureMode) {
+                capture(mqttMessage);
                 lastTopicReceived = topic;
-                log.info("Message arrived on " + topic + " : " + mqttMessage.toString());
+                if (log.isDebugEnabled()) {
+                    log.debug("Message arrived on " + topic + " : " + mqttMessage.toString());
+                }
             }
 
-            incrementReceivedMessageCount();
-            int receivedMessageCount = getReceivedMessageCount();
+            receivedMessageCount.increment();
+            receivedMetrics.record(System.currentTimeMillis());
 
+            MessageCountLatch messageLatch = receivedMessageLatch;
+            if (null != messageLatch) {
+                messageLatch.messageReceived(System.nanoTime());
+            }
+
+            int receivedMessageCount = getReceivedMessageCount();
             if (receivedMessageCount % MQTTConstants.MESSAGE_PRINT_LIMIT == 0) {
                 log.info(receivedMessageCount + " messages received.");
             }
@@ -116,6 +269,48 @@ public class CallbackHandler implements MqttCallback {
 
     }
 
+    /**
+     * Keep a received message, or its sequence ID, as the capture mode requires.
+     *
+     * @param mqttMessage The received message
+     */
+    private void capture(MqttMessage mqttMessage) {
+        switch (captureMode) {
+            case ALL:
+                receivedMessages.add(mqttMessage);
+                break;
+            case LAST:
+                long index = capturedMessageCount.getAndIncrement();
+                capturedMessages.set((int) (index % captureSize), mqttMessage);
+                break;
+            case SAMPLE:
+                // Reservoir sampling, so that each message received so far is kept with the same probability
+                long offered = capturedMessageCount.getAndIncrement();
+                if (offered < captureSize) {
+                    capturedMessages.set((int) offered, mqttMessage);
+                } else {
+                    long slot = ThreadLocalRandom.current().nextLong(offered + 1);
+                    if (slot < captureSize) {
+                        capturedMessages.set((int) slot, mqttMessage);
+                    }
+                }
+                break;
+            case DIGEST:
+                addSequenceId(sequenceIdReader.readSequenceId(mqttMessage.getPayload()));
+                break;
+            default:
+                break;
+        }
+    }
+
+    private synchronized void addSequenceId(long sequenceId) {
+        if (sequenceIdCount == sequenceIds.length) {
+            sequenceIds = Arrays.copyOf(sequenceIds, 2 * sequenceIds.length);
+        }
+        sequenceIds[sequenceIdCount] = sequenceId;
+        sequenceIdCount++;
+    }
+
     /**
      * Handle delivery complete ack.
      *
@@ -123,40 +318,50 @@ public class CallbackHandler implements MqttCallback {
      */
     @Override
     public void deliveryComplete(IMqttDeliveryToken iMqttDeliveryToken) {
-        incrementSentMessageCount();
+        sentMessageCount.increment();
+        sentMetrics.record(System.currentTimeMillis());
 
         int sentMessageCount = getSentMessageCount();
 
         if (sentMessageCount % MQTTConstants.MESSAGE_PRINT_LIMIT == 0) {
-            log.info(sentMessageCount + " messages received.");
+            log.info(sentMessageCount + " messages delivered.");
         }
     }
 
     /**
-     * Increment the receiving message count.
-     * Use this instead of just incrementing so if threads are involved this method can be used to handle concurrency
-     * issues.
+     * Retrieve the received messages. This will return a non empty value only if messages are captured, in which
+     * case it holds all messages, the last messages in arrival order or a sample of them.
+     *
+     * @return Received messages
      */
-    private void incrementReceivedMessageCount() {
-        receivedMessageCount++;
-    }
+    public List<MqttMessage> getReceivedMessages() {
+        if (null == capturedMessages) {
+            return receivedMessages;
+        }
 
-    /**
-     * Increment the sent message count.
-     * Use this instead of just incrementing so if threads are involved this method can be used to handle concurrency
-     * issues.
-     */
-    private void incrementSentMessageCount() {
-        sentMessageCount++;
+        List<MqttMessage> messages = new ArrayList<MqttMessage>(captureSize);
+        // Start from the oldest message of the ring buffer, which is where the next message is written
+        int start = CaptureMode.LAST == captureMode ? (int) (capturedMessageCount.get() % captureSize) : 0;
+        for (int i = 0; i < captureSize; i++) {
+            MqttMessage message = capturedMessages.get((start + i) % captureSize);
+            if (null != message) {
+                messages.add(message);
+            }
+        }
+        return messages;
     }
 
     /**
-     * Retrieve the received messages. This will return a non empty value only if saveMessages flag is set.
+     * Retrieve the sequence IDs of the received messages in arrival order. This will return a non empty value only
+     * for {@link CaptureMode#DIGEST}.
      *
-     * @return Received messages
+     * @return Sequence IDs, negative for messages without one
      */
-    public List<MqttMessage> getReceivedMessages() {
-        return receivedMessages;
+    public synchronized long[] getReceivedSequenceIds() {
+        if (null == sequenceIds) {
+            return new long[0];
+        }
+        return Arrays.copyOf(sequenceIds, sequenceIdCount);
     }
 
     /**
@@ -165,10 +370,47 @@ public class CallbackHandler implements MqttCallback {
      * @return Sent message count
      */
     public int getSentMessageCount() {
-        return sentMessageCount;
+        return (int) sentMessageCount.sum();
     }
 
 
+    /**
+     * Get the timestamps of the received messages, from which the receiving TPS can be read.
+     *
+     * @return Received message metrics
+     */
+    public ClientMetrics getReceivedMetrics() {
+        return receivedMetrics;
+    }
+
+    /**
+     * Get the timestamps of the delivered messages, from which the sending TPS can be read.
+     *
+     * @return Sent message metrics
+     */
+    public ClientMetrics getSentMetrics() {
+        return sentMetrics;
+    }
+
+    /**
+     * Get the time from publishing to receiving the messages whose payload starts with a {@link PayloadHeader}.
+     *
+     * @return End to end latency histogram
+     */
+    public LatencyHistogram getEndToEndLatencyHistogram() {
+        return endToEndLatencyHistogram;
+    }
+
+    /**
+     * Get the sequence numbers of the messages whose payload starts with a {@link PayloadHeader}, from which
+     * missing, duplicate and out of order messages can be read.
+     *
+     * @return Sequence tracker of the received messages
+     */
+    public SequenceTracker getSequenceTracker() {
+        return sequenceTracker;
+    }
+
     public String getLastTopicReceived() {
         return lastTopicReceived;
     }
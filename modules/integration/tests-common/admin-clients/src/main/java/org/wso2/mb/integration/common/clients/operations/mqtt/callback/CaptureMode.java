@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.mb.integration.common.clients.operations.mqtt.callback;
+
+/**
+ * What a {@link CallbackHandler} keeps of the messages it receives, besides counting them.
+ */
+public enum CaptureMode {
+
+    /**
+     * Only count received messages.
+     */
+    NONE,
+
+    /**
+     * Keep every received message. Do not use when a large number of messages are expected.
+     */
+    ALL,
+
+    /**
+     * Keep the last messages received, up to the capture size, in a ring buffer.
+     */
+    LAST,
+
+    /**
+     * Keep a uniform random sample of the received messages, up to the capture size.
+     */
+    SAMPLE,
+
+    /**
+     * Keep only the sequence ID read from the payload of each received message, in a primitive array, so that
+     * missing and duplicate messages can be verified without holding the messages.
+     */
+    DIGEST
+
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.mb.integration.common.clients.operations.mqtt.callback;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A fixed size header publishers can put in front of the payload of each message, holding the id of the
+ * publisher, the sequence number of the message and the nano time it was published at. Subscribers read it in
+ * place from the received payload to measure the end to end latency and to detect missing, duplicate and out of
+ * order messages of each publisher.
+ * <p/>
+ * Nano times are only comparable within a JVM, so latencies are only meaningful when the publishers and
+ * subscribers run in the same JVM, as they do in the test clients.
+ */
+public final class PayloadHeader {
+
+    /**
+     * The length of the header in bytes.
+     */
+    public static final int LENGTH = 24;
+
+    /**
+     * Marks a payload starting with a header, "MBH1".
+     */
+    private static final int MAGIC = 0x4D424831;
+
+    private static final int PUBLISHER_ID_OFFSET = 4;
+    private static final int SEQUENCE_NUMBER_OFFSET = 8;
+    private static final int NANO_TIME_OFFSET = 16;
+
+    /**
+     * Source of the ids of the publishers in the JVM.
+     */
+    private static final AtomicInteger publisherIds = new AtomicInteger();
+
+    private PayloadHeader() {
+    }
+
+    /**
+     * Get an id for a new publisher, unique within the JVM. Ids are assigned from 0 upwards.
+     *
+     * @return The publisher id
+     */
+    public static int nextPublisherId() {
+        return publisherIds.getAndIncrement();
+    }
+
+    /**
+     * Create a payload holding a header followed by the given content.
+     *
+     * @param publisherId    Id of the publisher
+     * @param sequenceNumber Sequence number of the message within the publisher
+     * @param content        The content following the header
+     * @return The payload
+     */
+    public static byte[] prepend(int publisherId, long sequenceNumber, byte[] content) {
+        byte[] payload = new byte[LENGTH + content.length];
+        writeInt(payload, 0, MAGIC);
+        writeInt(payload, PUBLISHER_ID_OFFSET, publisherId);
+        writeLong(payload, SEQUENCE_NUMBER_OFFSET, sequenceNumber);
+        writeLong(payload, NANO_TIME_OFFSET, System.nanoTime());
+        System.arraycopy(content, 0, payload, LENGTH, content.length);
+        return payload;
+    }
+
+    /**
+     * Check whether a payload starts with a header.
+     *
+     * @param payload The payload
+     * @return True if the payload has a header
+     */
+    public static boolean isPresent(byte[] payload) {
+        return null != payload && payload.length >= LENGTH && MAGIC == readInt(payload, 0);
+    }
+
+    /**
+     * @param payload A payload with a header
+     * @return The id of the publisher of the message
+     */
+    public static int readPublisherId(byte[] payload) {
+        return readInt(payload, PUBLISHER_ID_OFFSET);
+    }
+
+    /**
+     * @param payload A payload with a header
+     * @return The sequence number of the message within its publisher
+     */
+    public static long readSequenceNumber(byte[] payload) {
+        return readLong(payload, SEQUENCE_NUMBER_OFFSET);
+    }
+
+    /**
+     * @param payload A payload with a header
+     * @return The nano time the message was published at
+     */
+    public static long readNanoTime(byte[] payload) {
+        return readLong(payload, NANO_TIME_OFFSET);
+    }
+
+    private static void writeInt(byte[] bytes, int offset, int value) {
+        for (int i = 3; i >= 0; i--) {
+            bytes[offset + i] = (byte) value;
+            value = value >>> 8;
+        }
+    }
+
+    private static void writeLong(byte[] bytes, int offset, long value) {
+        for (int i = 7; i >= 0; i--) {
+            bytes[offset + i] = (byte) value;
+            value = value >>> 8;
+        }
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            value = (value << 8) | (bytes[offset + i] & 0xFF);
+        }
+        return value;
+    }
+
+    private static long readLong(byte[] bytes, int offset) {
+        long value = 0L;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (bytes[offset + i] & 0xFF);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.mb.integration.common.clients.operations.mqtt.callback;
+
+/**
+ * Reads the sequence ID a publisher wrote into the payload of a message, for {@link CaptureMode#DIGEST}.
+ */
+public interface SequenceIdReader {
+
+    /**
+     * Read the sequence ID of a message. Called from the MQTT callback thread for every received message, so it
+     * should not allocate.
+     *
+     * @param payload The payload of the message
+     * @return The sequence ID, or a negative value if the payload has none
+     */
+    long readSequenceId(byte[] payload);
+
+}
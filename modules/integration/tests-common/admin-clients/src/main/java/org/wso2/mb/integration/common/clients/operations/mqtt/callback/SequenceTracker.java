@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.mb.integration.common.clients.operations.mqtt.callback;
+
+import java.util.Arrays;
+
+/**
+ * Tracks the sequence numbers of the messages a subscriber received from each publisher, to detect missing,
+ * duplicate and out of order messages.
+ * <p/>
+ * The sequence numbers received from a publisher are kept in a bit set, which only grows when a publisher or a
+ * sequence number beyond the current capacity shows up, so that recording a message does not allocate.
+ */
+public class SequenceTracker {
+
+    /**
+     * Initial number of sequence numbers each publisher has room for.
+     */
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * Received sequence numbers by publisher id, null for publishers nothing was received from.
+     */
+    private long[][] receivedSequenceNumbers = new long[0][];
+
+    /**
+     * Highest sequence number received by publisher id.
+     */
+    private long[] highestSequenceNumbers = new long[0];
+
+    /**
+     * Number of distinct sequence numbers received by publisher id.
+     */
+    private long[] distinctCounts = new long[0];
+
+    private long duplicateCount;
+
+    private long outOfOrderCount;
+
+    /**
+     * Record the sequence number of a received message.
+     *
+     * @param publisherId    Id of the publisher of the message
+     * @param sequenceNumber Sequence number of the message within its publisher
+     */
+    public synchronized void record(int publisherId, long sequenceNumber) {
+        if (0 > publisherId || 0L > sequenceNumber || sequenceNumber >= (long) Integer.MAX_VALUE * Long.SIZE) {
+            // Not written by a publisher of this JVM
+            return;
+        }
+        long[] received = receivedSequenceNumbers(publisherId, sequenceNumber);
+        int word = (int) (sequenceNumber / Long.SIZE);
+        long bit = 1L << (sequenceNumber % Long.SIZE);
+
+        if (0L != (received[word] & bit)) {
+            duplicateCount++;
+        } else {
+            received[word] = received[word] | bit;
+            distinctCounts[publisherId]++;
+            if (sequenceNumber < highestSequenceNumbers[publisherId]) {
+                outOfOrderCount++;
+            } else {
+                highestSequenceNumbers[publisherId] = sequenceNumber;
+            }
+        }
+    }
+
+    /**
+     * Get the bit set of a publisher, growing it to hold a sequence number.
+     */
+    private long[] receivedSequenceNumbers(int publisherId, long sequenceNumber) {
+        if (publisherId >= receivedSequenceNumbers.length) {
+            int publishers = Math.max(publisherId + 1, 2 * receivedSequenceNumbers.length);
+            receivedSequenceNumbers = Arrays.copyOf(receivedSequenceNumbers, publishers);
+            highestSequenceNumbers = Arrays.copyOf(highestSequenceNumbers, publishers);
+            distinctCounts = Arrays.copyOf(distinctCounts, publishers);
+        }
+
+        long[] received = receivedSequenceNumbers[publisherId];
+        int words = (int) (sequenceNumber / Long.SIZE) + 1;
+        if (null == received) {
+            received = new long[Math.max(words, INITIAL_CAPACITY / Long.SIZE)];
+            receivedSequenceNumbers[publisherId] = received;
+        } else if (words > received.length) {
+            received = Arrays.copyOf(received, Math.max(words, 2 * received.length));
+            receivedSequenceNumbers[publisherId] = received;
+        }
+        return received;
+    }
+
+    /**
+     * Get the number of messages not received, counting for each publisher the sequence numbers up to the highest
+     * received one which were not received.
+     *
+     * @return Missing message count
+     */
+    public synchronized long getMissingCount() {
+        long missingCount = 0L;
+        for (int i = 0; i < receivedSequenceNumbers.length; i++) {
+            if (null != receivedSequenceNumbers[i]) {
+                missingCount = missingCount + highestSequenceNumbers[i] + 1 - distinctCounts[i];
+            }
+        }
+        return missingCount;
+    }
+
+    /**
+     * Get the number of messages received more than once.
+     *
+     * @return Duplicate message count
+     */
+    public synchronized long getDuplicateCount() {
+        return duplicateCount;
+    }
+
+    /**
+     * Get the number of messages received after a message the same publisher sent later.
+     *
+     * @return Out of order message count
+     */
+    public synchronized long getOutOfOrderCount() {
+        return outOfOrderCount;
+    }
+
+    /**
+     * Get the number of publishers messages were received from.
+     *
+     * @return Publisher count
+     */
+    public synchronized int getPublisherCount() {
+        int publisherCount = 0;
+        for (long[] received : receivedSequenceNumbers) {
+            if (null != received) {
+                publisherCount++;
+            }
+        }
+        return publisherCount;
+    }
+}
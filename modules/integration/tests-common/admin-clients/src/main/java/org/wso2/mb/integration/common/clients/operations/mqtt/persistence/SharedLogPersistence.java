@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.mb.integration.common.clients.operations.mqtt.persistence;
+
+import org.eclipse.paho.client.mqttv3.MqttClientPersistence;
+import org.eclipse.paho.client.mqttv3.MqttPersistable;
+import org.eclipse.paho.client.mqttv3.MqttPersistenceException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * MQTT client persistence storing the messages of a client in the log shared by all clients in the JVM, instead of
+ * a file per message. Only the locations of the messages of the client are kept in memory.
+ * <p/>
+ * Messages do not survive the JVM, since the log is deleted once the last client using it is closed.
+ */
+public class SharedLogPersistence implements MqttClientPersistence {
+
+    /**
+     * The shared log, null while the persistence is not open
+     */
+    private SharedPersistenceLog persistenceLog;
+
+    /**
+     * Locations of the messages of the client in the log, by key
+     */
+    private final Map<String, SharedPersistenceLog.Record> records =
+            new HashMap<String, SharedPersistenceLog.Record>();
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void open(String clientId, String serverURI) throws MqttPersistenceException {
+        if (null == persistenceLog) {
+            persistenceLog = SharedPersistenceLog.acquire();
+        }
+    }
+
+    /**
+     * Remove the messages of the client from the log and stop using it.
+     */
+    @Override
+    public synchronized void close() throws MqttPersistenceException {
+        if (null != persistenceLog) {
+            clear();
+            persistenceLog.release();
+            persistenceLog = null;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void put(String key, MqttPersistable persistable) throws MqttPersistenceException {
+        checkIsOpen();
+        int payloadLength = null == persistable.getPayloadBytes() ? 0 : persistable.getPayloadLength();
+        SharedPersistenceLog.Record record = persistenceLog.append(
+                persistable.getHeaderBytes(), persistable.getHeaderOffset(), persistable.getHeaderLength(),
+                persistable.getPayloadBytes(), persistable.getPayloadOffset(), payloadLength);
+        SharedPersistenceLog.Record replaced = records.put(key, record);
+        if (null != replaced) {
+            persistenceLog.free(replaced);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized MqttPersistable get(String key) throws MqttPersistenceException {
+        checkIsOpen();
+        SharedPersistenceLog.Record record = records.get(key);
+        if (null == record) {
+            return null;
+        }
+        byte[] header = new byte[record.getHeaderLength()];
+        byte[] payload = new byte[record.getPayloadLength()];
+        persistenceLog.read(record, header, payload);
+        return new PersistedMessage(header, payload);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void remove(String key) throws MqttPersistenceException {
+        checkIsOpen();
+        SharedPersistenceLog.Record record = records.remove(key);
+        if (null != record) {
+            persistenceLog.free(record);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized Enumeration keys() throws MqttPersistenceException {
+        checkIsOpen();
+        return Collections.enumeration(new ArrayList<String>(records.keySet()));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void clear() throws MqttPersistenceException {
+        checkIsOpen();
+        for (SharedPersistenceLog.Record record : records.values()) {
+            persistenceLog.free(record);
+        }
+        records.clear();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized boolean containsKey(String key) throws MqttPersistenceException {
+        checkIsOpen();
+        return records.containsKey(key);
+    }
+
+    private void checkIsOpen() throws MqttPersistenceException {
+        if (null == persistenceLog) {
+            throw new MqttPersistenceException();
+        }
+    }
+
+    /**
+     * A message read back from the log.
+     */
+    private static final class PersistedMessage implements MqttPersistable {
+
+        private final byte[] header;
+
+        private final byte[] payload;
+
+        private PersistedMessage(byte[] header, byte[] payload) {
+            this.header = header;
+            this.payload = payload;
+        }
+
+        @Override
+        public byte[] getHeaderBytes() {
+            return header;
+        }
+
+        @Override
+        public int getHeaderLength() {
+            return header.length;
+        }
+
+        @Override
+        public int getHeaderOffset() {
+            return 0;
+        }
+
+        @Override
+        public byte[] getPayloadBytes() {
+            return payload;
+        }
+
+        @Override
+        public int getPayloadLength() {
+            return payload.length;
+        }
+
+        @Override
+        public int getPayloadOffset() {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,288 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.mb.integration.common.clients.operations.mqtt.persistence;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.eclipse.paho.client.mqttv3.MqttPersistenceException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+
+/**
+ * A log of persisted MQTT messages shared by all clients in the JVM using {@link SharedLogPersistence}.
+ * <p/>
+ * Messages are appended to memory-mapped segment files, so persisting a message copies it into the page cache
+ * instead of creating and deleting a file. Each segment counts the messages written to it which are still
+ * persisted. A full segment is deleted once all of them are removed, while the segment being appended to is
+ * reused from its start, so that a log whose clients keep few messages in flight stays in a single segment. The log
+ * is opened by the first client using it, and its directory is deleted when the last one is closed.
+ */
+final class SharedPersistenceLog {
+
+    private static final Log log = LogFactory.getLog(SharedPersistenceLog.class);
+
+    /**
+     * Size of a segment file. Larger messages get a segment of their own.
+     */
+    private static final int SEGMENT_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * Prefix of the directory the log is created in under java.io.tmpdir
+     */
+    private static final String DIRECTORY_PREFIX = "mqtt-shared-persistence-";
+
+    /**
+     * The open log, null if no client uses it
+     */
+    private static SharedPersistenceLog instance;
+
+    /**
+     * Number of clients using the open log
+     */
+    private static int referenceCount;
+
+    private final File directory;
+
+    /**
+     * The segment messages are appended to
+     */
+    private Segment currentSegment;
+
+    private int segmentCount;
+
+    private SharedPersistenceLog(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Get the shared log, opening it if no client uses it. Each call must be matched by a call to
+     * {@link #release()}.
+     *
+     * @return The log
+     * @throws MqttPersistenceException if the directory of the log cannot be created
+     */
+    static synchronized SharedPersistenceLog acquire() throws MqttPersistenceException {
+        if (null == instance) {
+            try {
+                instance = new SharedPersistenceLog(Files.createTempDirectory(DIRECTORY_PREFIX).toFile());
+            } catch (IOException e) {
+                throw new MqttPersistenceException(e);
+            }
+            log.info("Opened shared MQTT persistence log at " + instance.directory);
+        }
+        referenceCount++;
+        return instance;
+    }
+
+    /**
+     * Stop using the log. The log and all messages in it are deleted once no client uses it.
+     */
+    void release() {
+        synchronized (SharedPersistenceLog.class) {
+            referenceCount--;
+            if (0 == referenceCount && this == instance) {
+                instance = null;
+                delete();
+            }
+        }
+    }
+
+    /**
+     * Append a message to the log.
+     *
+     * @param header        Array holding the header of the message
+     * @param headerOffset  Offset of the header in its array
+     * @param headerLength  Length of the header
+     * @param payload       Array holding the payload of the message, null if it has none
+     * @param payloadOffset Offset of the payload in its array
+     * @param payloadLength Length of the payload
+     * @return The location of the message in the log
+     * @throws MqttPersistenceException if a segment file cannot be created
+     */
+    synchronized Record append(byte[] header, int headerOffset, int headerLength, byte[] payload,
+                               int payloadOffset, int payloadLength) throws MqttPersistenceException {
+        int length = headerLength + payloadLength;
+        if (null == currentSegment || currentSegment.remaining() < length) {
+            if (null != currentSegment) {
+                seal(currentSegment);
+            }
+            currentSegment = createSegment(Math.max(SEGMENT_SIZE, length));
+        }
+
+        Segment segment = currentSegment;
+        int offset = segment.position;
+        segment.buffer.position(offset);
+        segment.buffer.put(header, headerOffset, headerLength);
+        if (0 < payloadLength) {
+            segment.buffer.put(payload, payloadOffset, payloadLength);
+        }
+        segment.position = offset + length;
+        segment.liveRecords++;
+        return new Record(segment, offset, headerLength, payloadLength);
+    }
+
+    /**
+     * Copy the header and payload of a message out of the log.
+     *
+     * @param record  The location of the message
+     * @param header  Array to copy the header to
+     * @param payload Array to copy the payload to
+     */
+    synchronized void read(Record record, byte[] header, byte[] payload) {
+        ByteBuffer buffer = record.segment.buffer;
+        buffer.position(record.offset);
+        buffer.get(header, 0, record.headerLength);
+        buffer.get(payload, 0, record.payloadLength);
+    }
+
+    /**
+     * Remove a message from the log, deleting its segment if no other message in it is still persisted.
+     *
+     * @param record The location of the message
+     */
+    synchronized void free(Record record) {
+        Segment segment = record.segment;
+        segment.liveRecords--;
+        if (0 == segment.liveRecords) {
+            if (segment == currentSegment) {
+                // Nothing in the segment is needed any more, so it is appended to from its start again
+                segment.position = 0;
+            } else {
+                deleteSegment(segment);
+            }
+        }
+    }
+
+    /**
+     * Stop appending to a full segment, deleting it if all its messages are removed already.
+     */
+    private void seal(Segment segment) {
+        if (0 == segment.liveRecords) {
+            deleteSegment(segment);
+        }
+    }
+
+    private Segment createSegment(int size) throws MqttPersistenceException {
+        File file = new File(directory, "segment-" + segmentCount++);
+        RandomAccessFile segmentFile = null;
+        try {
+            segmentFile = new RandomAccessFile(file, "rw");
+            // The mapping remains valid once the file is closed
+            MappedByteBuffer buffer = segmentFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            return new Segment(file, buffer);
+        } catch (IOException e) {
+            throw new MqttPersistenceException(e);
+        } finally {
+            if (null != segmentFile) {
+                try {
+                    segmentFile.close();
+                } catch (IOException e) {
+                    log.warn("Error closing persistence segment file " + file, e);
+                }
+            }
+        }
+    }
+
+    private void deleteSegment(Segment segment) {
+        if (!segment.file.delete()) {
+            // Mapped files cannot be deleted on some platforms until the mapping is garbage collected
+            segment.file.deleteOnExit();
+        }
+    }
+
+    private synchronized void delete() {
+        File[] segmentFiles = directory.listFiles();
+        if (null != segmentFiles) {
+            for (File segmentFile : segmentFiles) {
+                if (!segmentFile.delete()) {
+                    segmentFile.deleteOnExit();
+                }
+            }
+        }
+        currentSegment = null;
+        if (!directory.delete()) {
+            directory.deleteOnExit();
+        }
+        log.info("Deleted shared MQTT persistence log at " + directory);
+    }
+
+    /**
+     * A memory-mapped file messages are appended to.
+     */
+    private static final class Segment {
+
+        private final File file;
+
+        private final MappedByteBuffer buffer;
+
+        /**
+         * Position the next message is appended at
+         */
+        private int position;
+
+        /**
+         * Number of messages in the segment which are still persisted
+         */
+        private int liveRecords;
+
+        private Segment(File file, MappedByteBuffer buffer) {
+            this.file = file;
+            this.buffer = buffer;
+        }
+
+        private int remaining() {
+            return buffer.capacity() - position;
+        }
+    }
+
+    /**
+     * The location of a message in the log.
+     */
+    static final class Record {
+
+        private final Segment segment;
+
+        private final int offset;
+
+        private final int headerLength;
+
+        private final int payloadLength;
+
+        private Record(Segment segment, int offset, int headerLength, int payloadLength) {
+            this.segment = segment;
+            this.offset = offset;
+            this.headerLength = headerLength;
+            this.payloadLength = payloadLength;
+        }
+
+        int getHeaderLength() {
+            return headerLength;
+        }
+
+        int getPayloadLength() {
+            return payloadLength;
+        }
+    }
+}
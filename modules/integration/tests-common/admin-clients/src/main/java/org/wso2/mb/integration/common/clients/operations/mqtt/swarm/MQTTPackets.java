@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.mb.integration.common.clients.operations.mqtt.swarm;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Encodes and decodes the MQTT 3.1.1 packets used by swarm sessions. Only the packets a
+ * subscribing client needs are supported.
+ */
+final class MQTTPackets {
+
+    static final int CONNECT = 1;
+    static final int CONNACK = 2;
+    static final int PUBLISH = 3;
+    static final int PUBACK = 4;
+    static final int PUBREC = 5;
+    static final int PUBREL = 6;
+    static final int PUBCOMP = 7;
+    static final int SUBSCRIBE = 8;
+    static final int SUBACK = 9;
+    static final int PINGREQ = 12;
+    static final int PINGRESP = 13;
+    static final int DISCONNECT = 14;
+
+    /**
+     * Return code of a SUBACK for a subscription the broker refused
+     */
+    static final int SUBACK_FAILURE = 0x80;
+
+    /**
+     * Bytes needed to hold the fixed header of any packet
+     */
+    static final int MAX_FIXED_HEADER_LENGTH = 5;
+
+    /**
+     * Returned by {@link #readRemainingLength(ByteBuffer, int)} when more bytes are needed
+     */
+    static final int INCOMPLETE = -1;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final byte[] PROTOCOL_NAME = "MQTT".getBytes(UTF8);
+    private static final int PROTOCOL_LEVEL = 4;
+
+    private static final int CLEAN_SESSION_FLAG = 0x02;
+    private static final int PASSWORD_FLAG = 0x40;
+    private static final int USER_NAME_FLAG = 0x80;
+
+    private MQTTPackets() {
+    }
+
+    /**
+     * Encode a CONNECT packet.
+     *
+     * @param clientId         Client identifier
+     * @param userName         User name, or null
+     * @param password         Password, or null
+     * @param cleanSession     Clean session flag
+     * @param keepAliveSeconds Keep alive interval in seconds
+     * @return The packet
+     */
+    static ByteBuffer connect(String clientId, String userName, String password, boolean cleanSession,
+                              int keepAliveSeconds) {
+        byte[] clientIdBytes = clientId.getBytes(UTF8);
+        byte[] userNameBytes = null == userName ? null : userName.getBytes(UTF8);
+        byte[] passwordBytes = null == password ? null : password.getBytes(UTF8);
+
+        int flags = cleanSession ? CLEAN_SESSION_FLAG : 0;
+        int remainingLength = 2 + PROTOCOL_NAME.length + 1 + 1 + 2 + 2 + clientIdBytes.length;
+        if (null != userNameBytes) {
+            flags = flags | USER_NAME_FLAG;
+            remainingLength = remainingLength + 2 + userNameBytes.length;
+            if (null != passwordBytes) {
+                flags = flags | PASSWORD_FLAG;
+                remainingLength = remainingLength + 2 + passwordBytes.length;
+            }
+        }
+
+        ByteBuffer packet = ByteBuffer.allocate(MAX_FIXED_HEADER_LENGTH + remainingLength);
+        packet.put((byte) (CONNECT << 4));
+        writeRemainingLength(packet, remainingLength);
+        writeString(packet, PROTOCOL_NAME);
+        packet.put((byte) PROTOCOL_LEVEL);
+        packet.put((byte) flags);
+        packet.putShort((short) keepAliveSeconds);
+        writeString(packet, clientIdBytes);
+        if (null != userNameBytes) {
+            writeString(packet, userNameBytes);
+            if (null != passwordBytes) {
+                writeString(packet, passwordBytes);
+            }
+        }
+        packet.flip();
+        return packet;
+    }
+
+    /**
+     * Encode a SUBSCRIBE packet for a single topic.
+     *
+     * @param packetId Packet identifier
+     * @param topic    Topic filter
+     * @param qos      Requested quality of service
+     * @return The packet
+     */
+    static ByteBuffer subscribe(int packetId, String topic, int qos) {
+        byte[] topicBytes = topic.getBytes(UTF8);
+        int remainingLength = 2 + 2 + topicBytes.length + 1;
+        ByteBuffer packet = ByteBuffer.allocate(MAX_FIXED_HEADER_LENGTH + remainingLength);
+        packet.put((byte) (SUBSCRIBE << 4 | 0x02));
+        writeRemainingLength(packet, remainingLength);
+        packet.putShort((short) packetId);
+        writeString(packet, topicBytes);
+        packet.put((byte) qos);
+        packet.flip();
+        return packet;
+    }
+
+    /**
+     * Write a PUBACK, PUBREC, PUBREL or PUBCOMP packet.
+     *
+     * @param packet   Buffer to write to
+     * @param type     Packet type
+     * @param packetId Packet identifier
+     */
+    static void writeAcknowledgement(ByteBuffer packet, int type, int packetId) {
+        packet.put((byte) (type << 4 | (PUBREL == type ? 0x02 : 0)));
+        packet.put((byte) 2);
+        packet.putShort((short) packetId);
+    }
+
+    /**
+     * Write a packet without variable header and payload, such as PINGREQ and DISCONNECT.
+     *
+     * @param packet Buffer to write to
+     * @param type   Packet type
+     */
+    static void writeEmptyPacket(ByteBuffer packet, int type) {
+        packet.put((byte) (type << 4));
+        packet.put((byte) 0);
+    }
+
+    /**
+     * Read the remaining length of a packet whose first byte is at the given position.
+     *
+     * @param buffer   Buffer holding received bytes
+     * @param position Position of the first byte of the packet
+     * @return The remaining length, or {@link #INCOMPLETE} if the buffer does not hold all of its bytes. The number
+     * of bytes used to encode it is given by {@link #remainingLengthSize(int)}.
+     */
+    static int readRemainingLength(ByteBuffer buffer, int position) {
+        int value = 0;
+        int multiplier = 1;
+        for (int index = position + 1; index < buffer.limit(); index++) {
+            int encoded = buffer.get(index) & 0xFF;
+            value = value + (encoded & 0x7F) * multiplier;
+            if (0 == (encoded & 0x80)) {
+                return value;
+            }
+            multiplier = multiplier * 128;
+            if (index - position == 4) {
+                throw new IllegalStateException("Malformed remaining length");
+            }
+        }
+        return INCOMPLETE;
+    }
+
+    /**
+     * @param remainingLength A remaining length
+     * @return The number of bytes the remaining length is encoded in
+     */
+    static int remainingLengthSize(int remainingLength) {
+        int size = 1;
+        while (remainingLength >= 128) {
+            remainingLength = remainingLength / 128;
+            size++;
+        }
+        return size;
+    }
+
+    private static void writeRemainingLength(ByteBuffer packet, int remainingLength) {
+        do {
+            int encoded = remainingLength % 128;
+            remainingLength = remainingLength / 128;
+            if (remainingLength > 0) {
+                encoded = encoded | 0x80;
+            }
+            packet.put((byte) encoded);
+        } while (remainingLength > 0);
+    }
+
+    private static void writeString(ByteBuffer packet, byte[] value) {
+        packet.putShort((short) value.length);
+        packet.put(value);
+    }
+}
@@ -0,0 +1,318 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.mb.integration.common.clients.operations.mqtt.swarm;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.mb.integration.common.clients.MQTTClientConnectionConfiguration;
+import org.wso2.mb.integration.common.clients.QualityOfService;
+import org.wso2.mb.integration.common.clients.operations.utils.ClientMetrics;
+import org.wso2.mb.integration.common.clients.operations.utils.MessageCountLatch;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A swarm of MQTT subscriber sessions simulating a fleet of devices, all subscribing to the same topic.
+ * <p/>
+ * Unlike the Paho based clients, which use several threads and a persistence directory per client, the sessions of
+ * a swarm are served by a small number of event loop threads and keep their state in memory only. Sessions connect
+ * and subscribe concurrently, with the number of handshakes in progress bounded by a window, so that a single JVM
+ * can hold hundreds of thousands of connections to a broker.
+ * <p/>
+ * Sessions acknowledge the messages they receive at the quality of service they are delivered with, and only count
+ * them. Only plain TCP connections are supported.
+ */
+public class MQTTSwarm {
+
+    private static final Log log = LogFactory.getLog(MQTTSwarm.class);
+
+    /**
+     * Keep alive interval of the sessions
+     */
+    private static final long KEEP_ALIVE_MILLIS = 60000L;
+
+    /**
+     * Time a session may take to connect and subscribe before it is failed
+     */
+    private static final long HANDSHAKE_TIMEOUT_MILLIS = 60000L;
+
+    /**
+     * Time to wait for each event loop to disconnect its sessions on shutdown
+     */
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 30000L;
+
+    /**
+     * Log progress on each this many subscribed sessions
+     */
+    private static final int PROGRESS_LOG_INTERVAL = 10000;
+
+    private final InetSocketAddress brokerAddress;
+
+    private final String userName;
+
+    private final String password;
+
+    private final boolean cleanSession;
+
+    private final String topic;
+
+    private final QualityOfService qos;
+
+    private final SwarmEventLoop[] eventLoops;
+
+    /**
+     * Bounds the number of sessions connecting or subscribing at the same time
+     */
+    private final Semaphore handshakeWindow;
+
+    private final int maxInFlightHandshakes;
+
+    private final AtomicInteger sessionCount = new AtomicInteger();
+    private final AtomicInteger connectedCount = new AtomicInteger();
+    private final AtomicInteger subscribedCount = new AtomicInteger();
+    private final AtomicInteger failedCount = new AtomicInteger();
+
+    /**
+     * Counts the received messages, waking up threads waiting for them. Null if they are not counted.
+     */
+    private volatile MessageCountLatch receivedMessageLatch;
+
+    /**
+     * Create a swarm and start its event loops.
+     *
+     * @param configuration         MQTT configurations of the broker to connect to
+     * @param topic                 Topic all sessions subscribe to
+     * @param qos                   Quality of service of the subscriptions
+     * @param eventLoopThreads      Number of threads serving the sessions
+     * @param maxInFlightHandshakes Maximum number of sessions connecting or subscribing at the same time
+     * @throws IOException if the selectors of the event loops cannot be opened
+     */
+    public MQTTSwarm(MQTTClientConnectionConfiguration configuration, String topic, QualityOfService qos,
+                     int eventLoopThreads, int maxInFlightHandshakes) throws IOException {
+        if (!"tcp".equals(configuration.getBrokerProtocol())) {
+            throw new IllegalArgumentException("Swarm sessions only support tcp connections, not "
+                                               + configuration.getBrokerProtocol());
+        }
+        this.brokerAddress = new InetSocketAddress(configuration.getBrokerHost(),
+                                                   Integer.parseInt(configuration.getBrokerPort()));
+        this.userName = configuration.getBrokerUserName();
+        this.password = configuration.getBrokerPassword();
+        this.cleanSession = configuration.isCleanSession();
+        this.topic = topic;
+        this.qos = qos;
+        this.maxInFlightHandshakes = maxInFlightHandshakes;
+        this.handshakeWindow = new Semaphore(maxInFlightHandshakes);
+
+        eventLoops = new SwarmEventLoop[eventLoopThreads];
+        for (int i = 0; i < eventLoopThreads; i++) {
+            eventLoops[i] = new SwarmEventLoop(this, "mqtt-swarm-" + i);
+        }
+        for (SwarmEventLoop eventLoop : eventLoops) {
+            eventLoop.start();
+        }
+    }
+
+    /**
+     * Set the latch the received messages are counted in. Set it before connecting sessions.
+     *
+     * @param receivedMessageLatch The latch, or null to not count messages
+     */
+    public void setReceivedMessageLatch(MessageCountLatch receivedMessageLatch) {
+        this.receivedMessageLatch = receivedMessageLatch;
+    }
+
+    /**
+     * Connect sessions and subscribe them to the topic of the swarm. Connections are opened as fast as the
+     * handshake window allows, and the method returns once every session has subscribed or failed. Sessions of a
+     * swarm should be connected from one thread at a time.
+     *
+     * @param clientIdPrefix Prefix of the client ids of the sessions, followed by the index of the session. Keep the
+     *                       ids within the 23 characters allowed by MQTT 3.1 brokers.
+     * @param sessions       Number of sessions to connect
+     * @return The number of sessions which subscribed
+     * @throws InterruptedException if interrupted while waiting for the handshakes
+     */
+    public int connect(String clientIdPrefix, int sessions) throws InterruptedException {
+        int subscribedBefore = subscribedCount.get();
+        long startTime = System.currentTimeMillis();
+        for (int i = 0; i < sessions; i++) {
+            handshakeWindow.acquire();
+            String clientId = clientIdPrefix + Integer.toString(sessionCount.getAndIncrement(), Character.MAX_RADIX);
+            SwarmEventLoop eventLoop = eventLoops[i % eventLoops.length];
+            SocketChannel channel = null;
+            try {
+                channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                channel.connect(brokerAddress);
+                eventLoop.register(new SwarmSession(this, eventLoop, clientId, channel));
+            } catch (IOException e) {
+                closeQuietly(channel);
+                sessionFailed(clientId, SwarmSession.State.CONNECTING, "Error opening connection", e);
+            }
+        }
+
+        // Every permit is returned once all handshakes have completed or failed
+        handshakeWindow.acquire(maxInFlightHandshakes);
+        handshakeWindow.release(maxInFlightHandshakes);
+
+        int subscribed = subscribedCount.get() - subscribedBefore;
+        log.info(subscribed + " of " + sessions + " swarm sessions subscribed to " + topic + " in "
+                 + (System.currentTimeMillis() - startTime) + " ms");
+        return subscribed;
+    }
+
+    /**
+     * Disconnect all sessions and stop the event loops.
+     *
+     * @throws InterruptedException if interrupted while waiting for the event loops to stop
+     */
+    public void shutdown() throws InterruptedException {
+        for (SwarmEventLoop eventLoop : eventLoops) {
+            eventLoop.shutdown(SHUTDOWN_TIMEOUT_MILLIS);
+        }
+        log.info("Swarm disconnected. Sessions : " + sessionCount.get() + ", subscribed : " + subscribedCount.get()
+                 + ", failed : " + failedCount.get() + ", received messages : " + getReceivedMessageCount());
+    }
+
+    /**
+     * @return The number of sessions created
+     */
+    public int getSessionCount() {
+        return sessionCount.get();
+    }
+
+    /**
+     * @return The number of sessions whose connection was accepted
+     */
+    public int getConnectedCount() {
+        return connectedCount.get();
+    }
+
+    /**
+     * @return The number of sessions which subscribed
+     */
+    public int getSubscribedCount() {
+        return subscribedCount.get();
+    }
+
+    /**
+     * @return The number of sessions which failed to connect or subscribe, or lost their connection
+     */
+    public int getFailedCount() {
+        return failedCount.get();
+    }
+
+    /**
+     * @return The number of messages received by all sessions
+     */
+    public long getReceivedMessageCount() {
+        return ClientMetrics.snapshot(getReceivedMetrics()).getCount();
+    }
+
+    /**
+     * Get the timestamps of the received messages of each event loop, from which the receiving TPS can be read.
+     *
+     * @return Received message metrics of the event loops
+     */
+    public List<ClientMetrics> getReceivedMetrics() {
+        List<ClientMetrics> receivedMetrics = new ArrayList<ClientMetrics>(eventLoops.length);
+        for (SwarmEventLoop eventLoop : eventLoops) {
+            receivedMetrics.add(eventLoop.getReceivedMetrics());
+        }
+        return receivedMetrics;
+    }
+
+    String getUserName() {
+        return userName;
+    }
+
+    String getPassword() {
+        return password;
+    }
+
+    boolean isCleanSession() {
+        return cleanSession;
+    }
+
+    String getTopic() {
+        return topic;
+    }
+
+    QualityOfService getQos() {
+        return qos;
+    }
+
+    long getKeepAliveMillis() {
+        return KEEP_ALIVE_MILLIS;
+    }
+
+    long getHandshakeTimeoutMillis() {
+        return HANDSHAKE_TIMEOUT_MILLIS;
+    }
+
+    void sessionConnected() {
+        connectedCount.incrementAndGet();
+    }
+
+    void sessionSubscribed() {
+        int subscribed = subscribedCount.incrementAndGet();
+        handshakeWindow.release();
+        if (0 == subscribed % PROGRESS_LOG_INTERVAL) {
+            log.info(subscribed + " swarm sessions subscribed");
+        }
+    }
+
+    void sessionFailed(String clientId, SwarmSession.State state, String reason, Exception e) {
+        failedCount.incrementAndGet();
+        if (SwarmSession.State.SUBSCRIBED != state) {
+            // The handshake ended without subscribing
+            handshakeWindow.release();
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Swarm session " + clientId + " failed : " + reason, e);
+        } else if (null != e) {
+            log.warn("Swarm session " + clientId + " failed : " + reason + " : " + e.getMessage());
+        } else {
+            log.warn("Swarm session " + clientId + " failed : " + reason);
+        }
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        if (null != channel) {
+            try {
+                channel.close();
+            } catch (IOException ignore) {
+                // The connection failed already
+            }
+        }
+    }
+
+    void messageReceived() {
+        MessageCountLatch messageLatch = receivedMessageLatch;
+        if (null != messageLatch) {
+            messageLatch.messageReceived(System.nanoTime());
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.mb.integration.common.clients.operations.mqtt.swarm;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.mb.integration.common.clients.operations.utils.ClientMetrics;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A thread serving the sessions of a swarm registered with it through a single selector.
+ */
+class SwarmEventLoop implements Runnable {
+
+    private static final Log log = LogFactory.getLog(SwarmEventLoop.class);
+
+    /**
+     * Maximum time to wait for ready channels, so that sessions are ticked about once a second
+     */
+    private static final long SELECT_TIMEOUT_MILLIS = 1000L;
+
+    /**
+     * Size of the buffer all sessions of the loop read into
+     */
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Size of the buffer small packets are encoded into before they are written
+     */
+    private static final int PACKET_BUFFER_SIZE = 16;
+
+    private final MQTTSwarm swarm;
+
+    private final Selector selector;
+
+    private final Thread thread;
+
+    /**
+     * Sessions waiting to be registered with the selector
+     */
+    private final Queue<SwarmSession> registrations = new ConcurrentLinkedQueue<SwarmSession>();
+
+    /**
+     * Sessions registered with the loop, only used by its thread
+     */
+    private final List<SwarmSession> sessions = new ArrayList<SwarmSession>();
+
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+
+    private final ByteBuffer packetBuffer = ByteBuffer.allocate(PACKET_BUFFER_SIZE);
+
+    /**
+     * Timestamps of the messages received by the sessions of the loop. Only updated by the thread of the loop.
+     */
+    private final ClientMetrics receivedMetrics = new ClientMetrics();
+
+    private volatile boolean running = true;
+
+    SwarmEventLoop(MQTTSwarm swarm, String name) throws IOException {
+        this.swarm = swarm;
+        this.selector = Selector.open();
+        this.thread = new Thread(this, name);
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    /**
+     * Hand a connecting session to the loop. May be called from any thread.
+     *
+     * @param session The session
+     */
+    void register(SwarmSession session) {
+        registrations.add(session);
+        selector.wakeup();
+    }
+
+    ClientMetrics getReceivedMetrics() {
+        return receivedMetrics;
+    }
+
+    /**
+     * @return The shared buffer sessions read into, cleared
+     */
+    ByteBuffer readBuffer() {
+        return readBuffer;
+    }
+
+    /**
+     * @return The shared buffer small packets are encoded into, cleared
+     */
+    ByteBuffer packetBuffer() {
+        packetBuffer.clear();
+        return packetBuffer;
+    }
+
+    /**
+     * Count a message received by a session of the loop.
+     */
+    void messageReceived() {
+        receivedMetrics.record(System.currentTimeMillis());
+        swarm.messageReceived();
+    }
+
+    @Override
+    public void run() {
+        long lastTickTime = System.currentTimeMillis();
+        while (running) {
+            try {
+                selector.select(SELECT_TIMEOUT_MILLIS);
+            } catch (IOException e) {
+                log.error("Error selecting ready swarm connections", e);
+                break;
+            }
+            registerSessions();
+
+            Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
+            while (selectedKeys.hasNext()) {
+                SelectionKey key = selectedKeys.next();
+                selectedKeys.remove();
+                if (key.isValid()) {
+                    ((SwarmSession) key.attachment()).handle();
+                }
+            }
+
+            long now = System.currentTimeMillis();
+            if (now - lastTickTime >= SELECT_TIMEOUT_MILLIS) {
+                tick(now);
+                lastTickTime = now;
+            }
+        }
+        closeSessions();
+    }
+
+    /**
+     * Stop the loop, disconnecting its sessions, and wait for its thread to end.
+     *
+     * @param timeoutMillis Maximum time to wait in milliseconds
+     * @throws InterruptedException if interrupted while waiting
+     */
+    void shutdown(long timeoutMillis) throws InterruptedException {
+        running = false;
+        selector.wakeup();
+        thread.join(timeoutMillis);
+    }
+
+    private void registerSessions() {
+        SwarmSession session = registrations.poll();
+        while (null != session) {
+            try {
+                session.registered(session.getChannel().register(selector, 0, session));
+                sessions.add(session);
+            } catch (IOException e) {
+                session.fail("Error registering connection", e);
+            }
+            session = registrations.poll();
+        }
+    }
+
+    /**
+     * Tick all sessions, dropping the closed ones.
+     */
+    private void tick(long now) {
+        int open = 0;
+        for (int i = 0; i < sessions.size(); i++) {
+            SwarmSession session = sessions.get(i);
+            session.tick(now);
+            if (SwarmSession.State.CLOSED != session.getState()) {
+                sessions.set(open, session);
+                open++;
+            }
+        }
+        sessions.subList(open, sessions.size()).clear();
+    }
+
+    private void closeSessions() {
+        registerSessions();
+        for (SwarmSession session : sessions) {
+            session.disconnect();
+        }
+        sessions.clear();
+        try {
+            selector.close();
+        } catch (IOException e) {
+            log.warn("Error closing swarm selector", e);
+        }
+    }
+}
@@ -0,0 +1,357 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.mb.integration.common.clients.operations.mqtt.swarm;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+/**
+ * A single MQTT subscriber connection of a swarm. A session connects, subscribes to one topic and acknowledges the
+ * messages it receives. All its state is only used by the thread of its event loop, and it keeps no buffers while
+ * it has nothing partially read or written, so that a swarm can hold a very large number of sessions.
+ */
+class SwarmSession {
+
+    /**
+     * Packet identifier of the only subscription of a session
+     */
+    private static final int SUBSCRIBE_PACKET_ID = 1;
+
+    /**
+     * Initial size of the buffer holding a partially received packet
+     */
+    private static final int INITIAL_READ_BUFFER_SIZE = 256;
+
+    enum State {
+        CONNECTING, AWAITING_CONNACK, AWAITING_SUBACK, SUBSCRIBED, CLOSED
+    }
+
+    private final MQTTSwarm swarm;
+
+    private final SwarmEventLoop eventLoop;
+
+    private final String clientId;
+
+    private final SocketChannel channel;
+
+    private SelectionKey key;
+
+    private State state = State.CONNECTING;
+
+    /**
+     * Bytes of a partially received packet, null if none
+     */
+    private ByteBuffer readBuffer;
+
+    /**
+     * Bytes not yet written to the socket, null if none
+     */
+    private ByteBuffer writeBuffer;
+
+    /**
+     * Time the session started connecting, used to time out the handshake
+     */
+    private final long startTime;
+
+    /**
+     * Time a packet was last written, used to decide when to ping
+     */
+    private long lastWriteTime;
+
+    SwarmSession(MQTTSwarm swarm, SwarmEventLoop eventLoop, String clientId, SocketChannel channel) {
+        this.swarm = swarm;
+        this.eventLoop = eventLoop;
+        this.clientId = clientId;
+        this.channel = channel;
+        this.startTime = System.currentTimeMillis();
+    }
+
+    String getClientId() {
+        return clientId;
+    }
+
+    State getState() {
+        return state;
+    }
+
+    SocketChannel getChannel() {
+        return channel;
+    }
+
+    /**
+     * Called by the event loop once the channel is registered with its selector.
+     *
+     * @param key The selection key of the channel
+     * @throws IOException if the connection cannot be completed
+     */
+    void registered(SelectionKey key) throws IOException {
+        this.key = key;
+        if (channel.isConnected()) {
+            connected();
+        } else {
+            key.interestOps(SelectionKey.OP_CONNECT);
+        }
+    }
+
+    /**
+     * Handle a ready channel.
+     */
+    void handle() {
+        try {
+            if (key.isConnectable() && channel.finishConnect()) {
+                connected();
+            }
+            if (key.isValid() && key.isWritable()) {
+                flush();
+            }
+            if (key.isValid() && key.isReadable()) {
+                read();
+            }
+        } catch (IOException e) {
+            fail("Connection error", e);
+        } catch (RuntimeException e) {
+            fail("Protocol error", e);
+        }
+    }
+
+    /**
+     * Called by the event loop about once a second. Fails sessions whose handshake takes too long and pings the
+     * broker to keep idle sessions alive.
+     *
+     * @param now The current time in milliseconds
+     */
+    void tick(long now) {
+        if (State.SUBSCRIBED == state) {
+            if (now - lastWriteTime >= swarm.getKeepAliveMillis() / 2) {
+                ByteBuffer packet = eventLoop.packetBuffer();
+                MQTTPackets.writeEmptyPacket(packet, MQTTPackets.PINGREQ);
+                packet.flip();
+                send(packet);
+            }
+        } else if (State.CLOSED != state && now - startTime >= swarm.getHandshakeTimeoutMillis()) {
+            fail("Timed out in state " + state, null);
+        }
+    }
+
+    /**
+     * Send a DISCONNECT packet and close the connection.
+     */
+    void disconnect() {
+        if (State.SUBSCRIBED == state) {
+            ByteBuffer packet = eventLoop.packetBuffer();
+            MQTTPackets.writeEmptyPacket(packet, MQTTPackets.DISCONNECT);
+            packet.flip();
+            send(packet);
+        }
+        close();
+    }
+
+    private void connected() throws IOException {
+        key.interestOps(SelectionKey.OP_READ);
+        state = State.AWAITING_CONNACK;
+        send(MQTTPackets.connect(clientId, swarm.getUserName(), swarm.getPassword(), swarm.isCleanSession(),
+                                 (int) (swarm.getKeepAliveMillis() / 1000)));
+    }
+
+    private void read() throws IOException {
+        ByteBuffer buffer = null == readBuffer ? eventLoop.readBuffer() : readBuffer;
+        try {
+            int read = channel.read(buffer);
+            if (read < 0) {
+                fail("Connection closed by the broker", null);
+                return;
+            }
+            buffer.flip();
+            while (State.CLOSED != state) {
+                int start = buffer.position();
+                if (buffer.remaining() < 2) {
+                    break;
+                }
+                int remainingLength = MQTTPackets.readRemainingLength(buffer, start);
+                if (MQTTPackets.INCOMPLETE == remainingLength) {
+                    break;
+                }
+                int headerLength = 1 + MQTTPackets.remainingLengthSize(remainingLength);
+                if (buffer.remaining() < headerLength + remainingLength) {
+                    break;
+                }
+                int type = (buffer.get(start) & 0xFF) >>> 4;
+                int flags = buffer.get(start) & 0x0F;
+                buffer.position(start + headerLength);
+                handlePacket(type, flags, buffer, remainingLength);
+                buffer.position(start + headerLength + remainingLength);
+            }
+            keepUnreadBytes(buffer);
+        } finally {
+            // The shared read buffer of the event loop is returned empty even if reading fails
+            if (buffer != readBuffer) {
+                buffer.clear();
+            }
+        }
+    }
+
+    /**
+     * Keep the bytes of a partially received packet in a buffer of the session. The shared read buffer of the event
+     * loop is cleared by the caller.
+     */
+    private void keepUnreadBytes(ByteBuffer buffer) {
+        if (!buffer.hasRemaining() || State.CLOSED == state) {
+            readBuffer = null;
+        } else {
+            int needed = buffer.remaining();
+            int remainingLength = MQTTPackets.readRemainingLength(buffer, buffer.position());
+            if (MQTTPackets.INCOMPLETE != remainingLength) {
+                needed = 1 + MQTTPackets.remainingLengthSize(remainingLength) + remainingLength;
+            }
+            int capacity = Math.max(INITIAL_READ_BUFFER_SIZE, needed);
+            if (buffer == readBuffer && readBuffer.capacity() >= capacity) {
+                readBuffer.compact();
+                return;
+            }
+            ByteBuffer kept = ByteBuffer.allocate(capacity);
+            kept.put(buffer);
+            readBuffer = kept;
+        }
+    }
+
+    private void handlePacket(int type, int flags, ByteBuffer buffer, int remainingLength) {
+        switch (type) {
+            case MQTTPackets.CONNACK:
+                int returnCode = buffer.get(buffer.position() + 1) & 0xFF;
+                if (0 != returnCode) {
+                    fail("Connection refused with return code " + returnCode, null);
+                } else {
+                    state = State.AWAITING_SUBACK;
+                    swarm.sessionConnected();
+                    send(MQTTPackets.subscribe(SUBSCRIBE_PACKET_ID, swarm.getTopic(), swarm.getQos().getValue()));
+                }
+                break;
+            case MQTTPackets.SUBACK:
+                int grantedQos = buffer.get(buffer.position() + 2) & 0xFF;
+                if (MQTTPackets.SUBACK_FAILURE == grantedQos) {
+                    fail("Subscription refused", null);
+                } else {
+                    state = State.SUBSCRIBED;
+                    swarm.sessionSubscribed();
+                }
+                break;
+            case MQTTPackets.PUBLISH:
+                publishReceived(flags, buffer);
+                break;
+            case MQTTPackets.PUBREL:
+                acknowledge(MQTTPackets.PUBCOMP, buffer.getShort(buffer.position()) & 0xFFFF);
+                break;
+            default:
+                // PINGRESP and any other packet need no action
+                break;
+        }
+    }
+
+    private void publishReceived(int flags, ByteBuffer buffer) {
+        int qos = (flags >>> 1) & 0x03;
+        eventLoop.messageReceived();
+        if (0 < qos) {
+            int topicLength = buffer.getShort(buffer.position()) & 0xFFFF;
+            int packetId = buffer.getShort(buffer.position() + 2 + topicLength) & 0xFFFF;
+            acknowledge(1 == qos ? MQTTPackets.PUBACK : MQTTPackets.PUBREC, packetId);
+        }
+    }
+
+    private void acknowledge(int type, int packetId) {
+        ByteBuffer packet = eventLoop.packetBuffer();
+        MQTTPackets.writeAcknowledgement(packet, type, packetId);
+        packet.flip();
+        send(packet);
+    }
+
+    /**
+     * Write a packet, keeping whatever the socket does not accept until it is writable again.
+     *
+     * @param packet The packet, flipped to be read from. It is not used once this method returns.
+     */
+    private void send(ByteBuffer packet) {
+        if (State.CLOSED == state) {
+            return;
+        }
+        lastWriteTime = System.currentTimeMillis();
+        try {
+            if (null == writeBuffer) {
+                channel.write(packet);
+                if (packet.hasRemaining()) {
+                    writeBuffer = ByteBuffer.allocate(Math.max(INITIAL_READ_BUFFER_SIZE, packet.remaining()));
+                    writeBuffer.put(packet);
+                    writeBuffer.flip();
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                }
+            } else {
+                writeBuffer.compact();
+                if (writeBuffer.remaining() < packet.remaining()) {
+                    writeBuffer.flip();
+                    ByteBuffer larger = ByteBuffer.allocate(2 * (writeBuffer.remaining() + packet.remaining()));
+                    larger.put(writeBuffer);
+                    writeBuffer = larger;
+                }
+                writeBuffer.put(packet);
+                writeBuffer.flip();
+            }
+        } catch (IOException e) {
+            fail("Error writing to the broker", e);
+        }
+    }
+
+    private void flush() throws IOException {
+        if (null != writeBuffer) {
+            channel.write(writeBuffer);
+            if (!writeBuffer.hasRemaining()) {
+                writeBuffer = null;
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+            }
+        }
+    }
+
+    /**
+     * Close the connection and report the failure to the swarm.
+     *
+     * @param reason Description of the failure
+     * @param e      Cause of the failure, or null
+     */
+    void fail(String reason, Exception e) {
+        if (State.CLOSED != state) {
+            State failedState = state;
+            close();
+            swarm.sessionFailed(clientId, failedState, reason, e);
+        }
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        readBuffer = null;
+        writeBuffer = null;
+        if (null != key) {
+            key.cancel();
+        }
+        try {
+            channel.close();
+        } catch (IOException ignore) {
+            // Nothing more to be done with the connection
+        }
+    }
+}
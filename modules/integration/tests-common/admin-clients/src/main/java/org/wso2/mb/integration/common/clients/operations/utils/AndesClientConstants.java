@@ -69,6 +69,12 @@ public class AndesClientConstants {
     public static final String PUBLISH_MESSAGE_FORMAT = "Sending Message:{0} ThreadID:{1}";
     // please see usages prior editing
 
+    /**
+     * The JMS property in which publishers store the {@link System#nanoTime()} at which a message
+     * is sent, used by consumers in the same JVM to measure the latency of the message.
+     */
+    public static final String PUBLISH_NANO_TIME_PROPERTY = "AndesClientPublishNanoTime";
+
     /**
      * Default waiting time that is used to check whether the consumer has received messages.
      */
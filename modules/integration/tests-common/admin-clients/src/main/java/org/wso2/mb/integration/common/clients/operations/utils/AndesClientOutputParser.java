@@ -18,8 +18,6 @@
 
 package org.wso2.mb.integration.common.clients.operations.utils;
 
-import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.LineIterator;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
@@ -28,15 +26,25 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Collections;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
-import java.util.List;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * This class is used to get Andes Client outputs from parse file. The class provides evaluation
  * functions for testing purposes.
+ * <p/>
+ * The file is either a text file with the payload of each received message on a line, or a
+ * binary file of records written by {@link ReceivedMessageRecordWriter}, which is memory mapped
+ * and read without any text parsing. The message numbers are parsed once and kept in a primitive
+ * array, and received, duplicated and missing messages are tracked in bit sets.
  */
 public class AndesClientOutputParser {
 
@@ -46,14 +54,35 @@ public class AndesClientOutputParser {
     private static Log log = LogFactory.getLog(AndesClientOutputParser.class);
 
     /**
-     * Map that stored received messages. Used to check message duplication.
+     * The largest region of a record file mapped at once, a multiple of the record size.
      */
-    private Map<Long, Integer> mapOfReceivedMessages = new HashMap<Long, Integer>();
+    private static final long MAPPED_REGION_SIZE = (Integer.MAX_VALUE / ReceivedMessageRecordWriter
+            .RECORD_SIZE) * (long) ReceivedMessageRecordWriter.RECORD_SIZE;
 
     /**
-     * List of received messages.
+     * The received message numbers in the order they were received.
      */
-    private List<Long> messages = new ArrayList<Long>();
+    private long[] messages = new long[1024];
+
+    /**
+     * The number of received messages.
+     */
+    private int messageCount = 0;
+
+    /**
+     * Message numbers received at least once.
+     */
+    private BitSet receivedMessages = new BitSet();
+
+    /**
+     * Message numbers received more than once. Used to check message duplication.
+     */
+    private BitSet duplicatedMessages = new BitSet();
+
+    /**
+     * The number of received messages which had been received before.
+     */
+    private long duplicateCount = 0L;
 
     /**
      * File path to parse received messages
@@ -79,18 +108,10 @@ public class AndesClientOutputParser {
      */
     private void parseFile() throws IOException {
         try {
-            BufferedReader br = new BufferedReader(new FileReader(filePath));
-            try {
-                String line = br.readLine();
-                while (line != null) {
-                    String tempSendMessageString = line.substring(AndesClientConstants.PUBLISH_MESSAGE_FORMAT.indexOf("Sending Message:") + "Sending Message:".length());
-                    long messageIdentifier = Long.valueOf(tempSendMessageString.substring(0, tempSendMessageString
-                            .indexOf(" ")).replace(",",""));
-                    this.addMessage(messageIdentifier);
-                    line = br.readLine();
-                }
-            } finally {
-                br.close();
+            if (isRecordFile()) {
+                parseRecords();
+            } else {
+                parseLines();
             }
         } catch (FileNotFoundException e) {
             log.error("Error " + filePath + " the file containing received messages couldn't found", e);
@@ -101,6 +122,87 @@ public class AndesClientOutputParser {
         }
     }
 
+    /**
+     * Checks whether the file starts with the header of a record file.
+     *
+     * @return true if the file is a record file, false if it is a text file.
+     * @throws IOException
+     */
+    private boolean isRecordFile() throws IOException {
+        File file = new File(filePath);
+        if (!file.exists()) {
+            throw new FileNotFoundException(filePath);
+        }
+        if (file.length() < ReceivedMessageRecordWriter.HEADER_SIZE) {
+            return false;
+        }
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(ReceivedMessageRecordWriter.HEADER_SIZE);
+            while (header.hasRemaining() && 0 <= channel.read(header)) {
+                // Reading the complete header
+            }
+            header.flip();
+            return header.remaining() == ReceivedMessageRecordWriter.HEADER_SIZE &&
+                   ReceivedMessageRecordWriter.MAGIC == header.getLong();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Reads the message numbers of a text file with a received message on each line.
+     *
+     * @throws IOException
+     */
+    private void parseLines() throws IOException {
+        BufferedReader br = new BufferedReader(new FileReader(filePath));
+        try {
+            String line = br.readLine();
+            while (line != null) {
+                this.addMessage(getMessageIdentifier(line));
+                line = br.readLine();
+            }
+        } finally {
+            br.close();
+        }
+    }
+
+    /**
+     * Reads the message numbers of a record file through memory mapped regions of the file.
+     *
+     * @throws IOException
+     */
+    private void parseRecords() throws IOException {
+        FileChannel channel = FileChannel.open(new File(filePath).toPath(), StandardOpenOption.READ);
+        try {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                                            ReceivedMessageRecordWriter.HEADER_SIZE);
+            header.getLong();
+            int version = header.getInt();
+            int recordSize = header.getInt();
+            if (ReceivedMessageRecordWriter.VERSION != version ||
+                ReceivedMessageRecordWriter.RECORD_SIZE != recordSize) {
+                throw new IOException("Unsupported received message record format. Version: " +
+                                      version + ", record size: " + recordSize);
+            }
+            long position = ReceivedMessageRecordWriter.HEADER_SIZE;
+            long end = position + (channel.size() - position) / recordSize * recordSize;
+            while (position < end) {
+                long regionSize = Math.min(MAPPED_REGION_SIZE, end - position);
+                MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, position, regionSize);
+                ensureCapacity((int) (regionSize / recordSize));
+                for (int offset = 0; offset < regionSize; offset += recordSize) {
+                    // The message number is the first field of a record
+                    this.addMessage(region.getLong(offset));
+                }
+                position = position + regionSize;
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
     /**
      * Gets the map used for message duplication.
      *
@@ -108,9 +210,12 @@ public class AndesClientOutputParser {
      */
     public Map<Long, Integer> getDuplicatedMessages() {
         Map<Long, Integer> messagesDuplicated = new HashMap<Long, Integer>();
-        for (Long messageIdentifier : mapOfReceivedMessages.keySet()) {
-            if (mapOfReceivedMessages.get(messageIdentifier) > 1) {
-                messagesDuplicated.put(messageIdentifier, mapOfReceivedMessages.get(messageIdentifier));
+        if (!duplicatedMessages.isEmpty()) {
+            for (int i = 0; i < messageCount; i++) {
+                if (duplicatedMessages.get((int) messages[i])) {
+                    Integer count = messagesDuplicated.get(messages[i]);
+                    messagesDuplicated.put(messages[i], null == count ? 1 : count + 1);
+                }
             }
         }
         return messagesDuplicated;
@@ -123,10 +228,10 @@ public class AndesClientOutputParser {
      */
     public boolean checkIfMessagesAreInOrder() {
         boolean result = true;
-        for (int count = 0; count < messages.size(); count++) {
-            if (messages.get(count) != (count)) {
+        for (int count = 0; count < messageCount; count++) {
+            if (messages[count] != count) {
                 result = false;
-                log.warn("Message order is broken at message " + messages.get(count));
+                log.warn("Message order is broken at message " + messages[count]);
                 break;
             }
         }
@@ -142,13 +247,23 @@ public class AndesClientOutputParser {
     @SuppressWarnings("UnusedDeclaration")
     public void printMissingMessages(int numberOfSentMessages) {
         log.info("Printing Missing Messages");
-        for (long count = 0; count < numberOfSentMessages; count++) {
-            if (mapOfReceivedMessages.get(count) == null) {
-                log.info("Missing message id:" + count + 1 + "\n");
-            }
+        for (int count = receivedMessages.nextClearBit(0); count < numberOfSentMessages;
+             count = receivedMessages.nextClearBit(count + 1)) {
+            log.info("Missing message id:" + count + 1 + "\n");
         }
     }
 
+    /**
+     * Gets the number of messages, out of the given number of sent messages, which were not
+     * received.
+     *
+     * @param numberOfSentMessages The number of sent messages.
+     * @return The number of missing messages.
+     */
+    public int getMissingMessageCount(int numberOfSentMessages) {
+        return numberOfSentMessages - receivedMessages.get(0, numberOfSentMessages).cardinality();
+    }
+
     /**
      * Prints duplicated message IDs
      * Suppressing "UnusedDeclaration" as this could be used for debugging purposes
@@ -166,23 +281,47 @@ public class AndesClientOutputParser {
     @SuppressWarnings("UnusedDeclaration")
     public void printMessagesMap() {
         log.info("Printing Received Messages");
+        Map<Long, Integer> mapOfReceivedMessages = new HashMap<Long, Integer>();
+        for (int i = 0; i < messageCount; i++) {
+            Integer count = mapOfReceivedMessages.get(messages[i]);
+            mapOfReceivedMessages.put(messages[i], null == count ? 1 : count + 1);
+        }
         log.info(mapOfReceivedMessages);
     }
 
     /**
-     * Adds received message IDs to a list and a map.
+     * Adds received message IDs to the received messages and marks duplicates.
      *
      * @param messageIdentifier Received message ID.
+     * @throws IOException Thrown when the message ID cannot be tracked.
      */
-    private void addMessage(Long messageIdentifier) {
-        if (mapOfReceivedMessages.get(messageIdentifier) == null) {
-            mapOfReceivedMessages.put(messageIdentifier, 1);
+    private void addMessage(long messageIdentifier) throws IOException {
+        if (0L > messageIdentifier || Integer.MAX_VALUE < messageIdentifier) {
+            throw new IOException("Invalid message id " + messageIdentifier + " in " + filePath);
+        }
+        int index = (int) messageIdentifier;
+        if (receivedMessages.get(index)) {
+            duplicatedMessages.set(index);
+            duplicateCount++;
         } else {
-            int currentCount = mapOfReceivedMessages.get(messageIdentifier);
-            mapOfReceivedMessages.put(messageIdentifier, currentCount + 1);
+            receivedMessages.set(index);
         }
 
-        messages.add(messageIdentifier);
+        ensureCapacity(1);
+        messages[messageCount] = messageIdentifier;
+        messageCount++;
+    }
+
+    /**
+     * Grows the received messages array to hold at least the given number of additional messages.
+     *
+     * @param additionalMessages The number of messages to be added.
+     */
+    private void ensureCapacity(int additionalMessages) {
+        int required = messageCount + additionalMessages;
+        if (required > messages.length) {
+            messages = Arrays.copyOf(messages, Math.max(required, messages.length * 2));
+        }
     }
 
     /**
@@ -192,10 +331,9 @@ public class AndesClientOutputParser {
     @SuppressWarnings("UnusedDeclaration")
     public void printMessagesSorted() {
         log.info("Printing Sorted Messages");
-        List<Long> cloneOfMessages = new ArrayList<Long>();
-        cloneOfMessages.addAll(messages);
-        Collections.sort(cloneOfMessages);
-        log.info(cloneOfMessages);
+        long[] cloneOfMessages = Arrays.copyOf(messages, messageCount);
+        Arrays.sort(cloneOfMessages);
+        log.info(Arrays.toString(cloneOfMessages));
     }
 
     /**
@@ -206,40 +344,8 @@ public class AndesClientOutputParser {
      */
     public boolean transactedOperations(long operationOccurredIndex) throws FileNotFoundException {
         boolean result = false;
-        int count = 0;
-        long firstMessageIdentifier = 0;
-        try {
-            BufferedReader br = new BufferedReader(new FileReader(filePath));
-            //Needed try/finally to close the file
-            try {
-                String line = br.readLine();
-                while (line != null) {
-                    String tempSendMessageString = line.substring(AndesClientConstants.PUBLISH_MESSAGE_FORMAT.indexOf("Sending Message:") + "Sending Message:".length());
-                    long messageIdentifier = Long.parseLong(tempSendMessageString.substring(0, tempSendMessageString.indexOf(" ")));
-                    if (count == 0) {
-                        firstMessageIdentifier = messageIdentifier;
-                    }
-                    if (count == (operationOccurredIndex)) {
-                        if (messageIdentifier == firstMessageIdentifier) {
-                            result = true;
-                        }
-                    }
-                    line = br.readLine();
-                    count++;
-                }
-            } catch (IOException e) {
-                log.error("Error while parsing the file containing received messages", e);
-            } finally {
-                try {
-                    br.close();
-                } catch (IOException e) {
-                    log.error("Error while closing the file containing received messages", e);
-                }
-            }
-
-        } catch (FileNotFoundException e) {
-            log.error("Error " + filePath + " the file containing received messages couldn't found", e);
-            throw e;
+        if (0 <= operationOccurredIndex && operationOccurredIndex < messageCount) {
+            result = messages[(int) operationOccurredIndex] == messages[0];
         }
 
         AndesClientUtils.flushPrintWriters();
@@ -259,62 +365,54 @@ public class AndesClientOutputParser {
 
         boolean result = true;
         int count = 0;
-        Long messageIdentifier;
+        long messageIdentifier;
 
         int rollbackBatchIteration = 1;
         boolean isFirstMessageBatch = true;
-        LineIterator iterator = null;
 
         Map<Integer, Long> firstMessageBatch = new HashMap<Integer, Long>();
-        try {
-            iterator = FileUtils.lineIterator(new File(filePath));
-
-            String line = iterator.nextLine();
-            while (iterator.hasNext()) {
-
-                messageIdentifier = getMessageIdentifier(line);
-
-                if (firstMessageBatch.containsValue(messageIdentifier)) {
-                    isFirstMessageBatch = false;
-                    if (count != messagesPerRollback * rollbackBatchIteration) {
-                        log.error("failed to check if rollback messages are received in order" +
-                                  " to due to first duplicated message count " + count +
-                                  " not equal to messages per each rollback." +
-                                  messagesPerRollback + ".");
-                        result = false;
-                    }
-                    rollbackBatchIteration++;
+        Set<Long> firstMessageBatchIdentifiers = new HashSet<Long>();
+
+        // Index of the current message, the last message is only read as the message after another
+        int current = 0;
+        while (current + 1 < messageCount) {
+
+            messageIdentifier = messages[current];
+
+            if (firstMessageBatchIdentifiers.contains(messageIdentifier)) {
+                isFirstMessageBatch = false;
+                if (count != messagesPerRollback * rollbackBatchIteration) {
+                    log.error("failed to check if rollback messages are received in order" +
+                              " to due to first duplicated message count " + count +
+                              " not equal to messages per each rollback." +
+                              messagesPerRollback + ".");
+                    result = false;
                 }
+                rollbackBatchIteration++;
+            }
 
-                if (!isFirstMessageBatch) {
-                    for (int i = 0; i < messagesPerRollback; i++) {
-                        messageIdentifier = getMessageIdentifier(line);
-                        if (null != firstMessageBatch.get(i)) {
-                            if (!firstMessageBatch.get(i).equals(messageIdentifier)) {
-                                result = false;
-                                log.error("Error in line :" + line +
-                                          ".Rollback operation failed to keep message order.");
-                            }
-                        }
-                        if (iterator.hasNext()) {
-                            line = iterator.nextLine();
-                            count++;
+            if (!isFirstMessageBatch) {
+                for (int i = 0; i < messagesPerRollback; i++) {
+                    messageIdentifier = messages[current];
+                    Long firstBatchIdentifier = firstMessageBatch.get(i);
+                    if (null != firstBatchIdentifier) {
+                        if (firstBatchIdentifier != messageIdentifier) {
+                            result = false;
+                            log.error("Error in message :" + messageIdentifier +
+                                      ".Rollback operation failed to keep message order.");
                         }
                     }
-                } else if (isFirstMessageBatch) {
-                    firstMessageBatch.put(count, messageIdentifier);
-                    line = iterator.nextLine();
-                    count++;
+                    if (current + 1 < messageCount) {
+                        current++;
+                        count++;
+                    }
                 }
+            } else {
+                firstMessageBatch.put(count, messageIdentifier);
+                firstMessageBatchIdentifiers.add(messageIdentifier);
+                current++;
+                count++;
             }
-
-        } catch (FileNotFoundException e) {
-            log.error("Error " + filePath + " the file containing received messages couldn't found", e);
-            throw e;
-        } catch (IOException e) {
-            log.error("Error while parsing the file containing received messages", e);
-        } finally {
-            iterator.close();
         }
 
         AndesClientUtils.flushPrintWriters();
@@ -329,13 +427,15 @@ public class AndesClientOutputParser {
      * @param line string parameter which contains given line of a text file.
      * @return messageIdentifier which can identify messages uniquely.
      */
-    private Long getMessageIdentifier(String line) {
-
-        String tempSendMessageString = line.substring(AndesClientConstants.
-                PUBLISH_MESSAGE_FORMAT.indexOf("Sending Message:") + "Sending Message:".length());
-        Long messageIdentifier = Long.parseLong(tempSendMessageString.
-                substring(0, tempSendMessageString.indexOf(" ")));
-
+    private long getMessageIdentifier(String line) {
+        int start = AndesClientConstants.PUBLISH_MESSAGE_FORMAT.indexOf("Sending Message:") +
+                    "Sending Message:".length();
+        int end = line.indexOf(' ', start);
+        long messageIdentifier = ReceivedMessageRecordWriter.parseNumber(line, start,
+                                                                         0 > end ? line.length() : end);
+        if (0L > messageIdentifier) {
+            throw new NumberFormatException("Invalid received message: " + line);
+        }
         return messageIdentifier;
     }
 
@@ -346,37 +446,15 @@ public class AndesClientOutputParser {
      * @return Duplicated message ID count.
      */
     public long numberDuplicatedMessages() {
-        long duplicateCount = 0;
-        List<Long> messagesDuplicated = new ArrayList<Long>();
-        try {
-            BufferedReader br = new BufferedReader(new FileReader(filePath));
-            //Needed try/finally to close the file
-            try {
-                String line = br.readLine();
-                while (line != null) {
-                    String tempSendMessageString = line.substring(AndesClientConstants.PUBLISH_MESSAGE_FORMAT.indexOf("Sending Message:") + "Sending Message:".length());
-                    long messageIdentifier = Long.parseLong(tempSendMessageString.substring(0, tempSendMessageString.indexOf(" ")));
-                    if (messagesDuplicated.contains(messageIdentifier)) {
-                        duplicateCount++;
-                    } else {
-                        messagesDuplicated.add(messageIdentifier);
-                    }
-                    line = br.readLine();
-                }
-            } catch (IOException e) {
-                log.error("Error while parsing the file containing received messages", e);
-            } finally {
-
-                try {
-                    br.close();
-                } catch (IOException e) {
-                    log.error("Error while closing the file containing received messages", e);
-                }
-
-            }
-        } catch (FileNotFoundException e) {
-            log.error("Error " + filePath + " the file containing received messages couldn't found", e);
-        }
         return duplicateCount;
     }
+
+    /**
+     * Gets the number of received messages.
+     *
+     * @return The number of received messages, including duplicates.
+     */
+    public int getReceivedMessageCount() {
+        return messageCount;
+    }
 }
@@ -42,26 +42,30 @@ public class AndesClientUtils {
     private static Logger log = Logger.getLogger(AndesClientUtils.class);
 
     /**
-     * The print writer to print received messages to a file.
+     * The writer to write received messages to a file.
      */
-    private static PrintWriter receivedMessagePrintWriter;
+    private static volatile ResultFileWriter receivedMessagePrintWriter;
 
     /**
-     * The print writer to print statistics such as TPS for consumers and producers and also the
+     * The writer to write statistics such as TPS for consumers and producers and also the
      * average latency to a file.
      */
-    private static PrintWriter statisticsPrintWriter;
+    private static volatile ResultFileWriter statisticsPrintWriter;
 
     /**
-     * The print writer to print messages that are being sent by the publisher.
+     * The writer to write messages that are being sent by the publisher.
      */
-    private static PrintWriter publishedMessagePrintWriter;
+    private static volatile ResultFileWriter publishedMessagePrintWriter;
 
     /**
-     * Waits until no messages are received. The waiting is done by using a loop checking whether
-     * any new messages are received than the previous iteration. In each iteration it will wait for
-     * a certain time to make sure that message counter changes until no change is detected in the
-     * message counters.
+     * The writer to write binary records of received messages to a file.
+     */
+    private static volatile ReceivedMessageRecordWriter receivedMessageRecordWriter;
+
+    /**
+     * Waits until the expected number of messages are received, or until no messages are received
+     * for a certain time. The consumers of the client wake up the waiting thread, so the wait ends
+     * as soon as the expected count is reached or the idle time passes.
      *
      * @param client                            The consumer client
      * @param waitTimeTillMessageCounterChanges The amount of milliseconds to wait for new messages
@@ -72,27 +76,10 @@ public class AndesClientUtils {
     public static void waitForMessagesAndShutdown(AndesClient client,
                                                   long waitTimeTillMessageCounterChanges, long expectedMessageCount)
             throws JMSException {
-        long previousMessageCount = 0;
-        long currentMessageCount = -1;
-
-        /**
-         * At each iteration it will check whether the message count has changed than the previous
-         * iteration
-         */
-        while (currentMessageCount != previousMessageCount) {
-            try {
-                // Waits till the consumer client received more messages.
-                TimeUnit.MILLISECONDS.sleep(waitTimeTillMessageCounterChanges);
-            } catch (InterruptedException e) {
-                log.error("Error waiting for receiving messages.", e);
-            }
-            // Updating message counters
-            previousMessageCount = currentMessageCount;
-            currentMessageCount = client.getReceivedMessageCount();
-        }
+        waitForMessages(client, waitTimeTillMessageCounterChanges, expectedMessageCount);
 
-        log.info("Message count received by consumer : " + Long
-                .toString(client.getReceivedMessageCount()));
+        long currentMessageCount = client.getReceivedMessageCount();
+        log.info("Message count received by consumer : " + Long.toString(currentMessageCount));
 
         if (expectedMessageCount != currentMessageCount) {
             // Stopping the consumer client
@@ -104,10 +91,8 @@ public class AndesClientUtils {
     }
 
     /**
-     * Waits until no messages are received. The waiting is done by using a loop checking whether
-     * any new messages are received than the previous iteration. In each iteration it will wait for
-     * a certain time to make sure that message counter changes until no change is detected in the
-     * message counters.
+     * Waits until no messages are received for a certain time. The consumers of the client wake up
+     * the waiting thread, so the wait ends as soon as the idle time passes after the last message.
      *
      * @param client                            The consumer client
      * @param waitTimeTillMessageCounterChanges The amount of milliseconds to wait for new messages
@@ -117,24 +102,7 @@ public class AndesClientUtils {
     public static void waitForMessagesAndShutdown(AndesClient client,
                                                   long waitTimeTillMessageCounterChanges)
             throws JMSException {
-        long previousMessageCount = 0;
-        long currentMessageCount = -1;
-
-        /**
-         * At each iteration it will check whether the message count has changed than the previous
-         * iteration
-         */
-        while (currentMessageCount != previousMessageCount) {
-            try {
-                // Waits till the consumer client received more messages.
-                TimeUnit.MILLISECONDS.sleep(waitTimeTillMessageCounterChanges);
-            } catch (InterruptedException e) {
-                log.error("Error waiting for receiving messages.", e);
-            }
-            // Updating message counters
-            previousMessageCount = currentMessageCount;
-            currentMessageCount = client.getReceivedMessageCount();
-        }
+        waitForMessages(client, waitTimeTillMessageCounterChanges, Long.MAX_VALUE);
 
         log.info("Message count received by consumer : " + Long
                 .toString(client.getReceivedMessageCount()));
@@ -144,6 +112,26 @@ public class AndesClientUtils {
         flushPrintWriters();
     }
 
+    /**
+     * Waits until the consumers of a client receive the expected number of messages, or receive
+     * no messages for a certain time.
+     *
+     * @param client               The consumer client
+     * @param idleTimeMillis       The amount of milliseconds without new messages after which
+     *                             waiting stops.
+     * @param expectedMessageCount Number of messages expected from the consumer
+     */
+    private static void waitForMessages(AndesClient client, long idleTimeMillis,
+                                        long expectedMessageCount) {
+        try {
+            client.awaitReceivedMessages(expectedMessageCount,
+                                         TimeUnit.MILLISECONDS.toNanos(idleTimeMillis));
+        } catch (InterruptedException e) {
+            log.error("Error waiting for receiving messages.", e);
+            Thread.currentThread().interrupt();
+        }
+    }
+
     /**
      * Shutdown the client gracefully without waiting.
      *
@@ -171,111 +159,220 @@ public class AndesClientUtils {
     }
 
     /**
-     * Writes received messages to a file.
+     * Writes received messages to a file. The message is written in the background, and is in the
+     * file once {@link #flushPrintWriters()} returns.
      *
      * @param content  Message content to write.
      * @param filePath File path where the message content should be written.
      */
     public static void writeReceivedMessagesToFile(String content, String filePath)
             throws IOException {
-        if (receivedMessagePrintWriter == null) {
-            initializeReceivedMessagesPrintWriter(filePath);
+        ResultFileWriter writer = receivedMessagePrintWriter;
+        if (null == writer) {
+            synchronized (AndesClientUtils.class) {
+                if (null == receivedMessagePrintWriter) {
+                    initializeReceivedMessagesPrintWriter(filePath);
+                }
+                writer = receivedMessagePrintWriter;
+            }
+        }
+        if (null != writer) {
+            writer.println(content);
         }
-        receivedMessagePrintWriter.println(content);
-
     }
 
     /**
-     * Writes statistics to a file.
+     * Writes statistics to a file. The statistics are written in the background, and are in the
+     * file once {@link #flushPrintWriters()} returns.
      *
      * @param content  Statistic content.
      * @param filePath File path where the statistics should be written.
      */
     public static void writeStatisticsToFile(String content, String filePath) throws IOException {
-        if (statisticsPrintWriter == null) {
-            initializeStatisticsPrintWriter(filePath);
+        ResultFileWriter writer = statisticsPrintWriter;
+        if (null == writer) {
+            synchronized (AndesClientUtils.class) {
+                if (null == statisticsPrintWriter) {
+                    initializeStatisticsPrintWriter(filePath);
+                }
+                writer = statisticsPrintWriter;
+            }
+        }
+        if (null != writer) {
+            writer.println(content);
         }
-
-        statisticsPrintWriter.println(content);
-
     }
 
     /**
-     * Writes published messages to a file.
+     * Writes published messages to a file. The message is written in the background, and is in
+     * the file once {@link #flushPrintWriters()} returns.
      *
      * @param content  Statistic content.
      * @param filePath File path where the statistics should be written.
      */
     public static void writePublishedMessagesToFile(String content, String filePath) throws IOException {
-        if (publishedMessagePrintWriter == null) {
-            initializePublishedPrintWriter(filePath);
+        ResultFileWriter writer = publishedMessagePrintWriter;
+        if (null == writer) {
+            synchronized (AndesClientUtils.class) {
+                if (null == publishedMessagePrintWriter) {
+                    initializePublishedPrintWriter(filePath);
+                }
+                writer = publishedMessagePrintWriter;
+            }
         }
+        if (null != writer) {
+            writer.println(content);
+        }
+    }
 
-        publishedMessagePrintWriter.println(content);
+    /**
+     * Writes a binary record of a received message to a file. Only messages with an inbuilt text
+     * payload are recorded.
+     *
+     * @param content     The text payload of the message.
+     * @param redelivered Whether the message was redelivered.
+     * @param nanoTime    The nano time the message was received at.
+     * @param filePath    File path where the record should be written.
+     * @throws IOException
+     */
+    public static void writeReceivedMessageRecordToFile(String content, boolean redelivered,
+                                                        long nanoTime, String filePath)
+            throws IOException {
+        ReceivedMessageRecordWriter writer = receivedMessageRecordWriter;
+        if (null == writer) {
+            synchronized (AndesClientUtils.class) {
+                if (null == receivedMessageRecordWriter) {
+                    initializeReceivedMessageRecordWriter(filePath);
+                }
+                writer = receivedMessageRecordWriter;
+            }
+        }
+        if (null != writer) {
+            writer.record(content, redelivered, nanoTime);
+        }
     }
 
     /**
-     * Initialize the message content print writer. This needs to be invoked before each test case.
+     * Initialize the received message record writer. This needs to be invoked before each test
+     * case. Any writer of a previous test case is flushed and closed.
      *
      * @param filePath The file path to write to.
      */
-    public static void initializeReceivedMessagesPrintWriter(String filePath) throws IOException {
+    public static synchronized void initializeReceivedMessageRecordWriter(String filePath)
+            throws IOException {
+        ReceivedMessageRecordWriter writer = null;
         if (StringUtils.isNotEmpty(filePath)) {
             File writerFile = new File(filePath);
             if (writerFile.exists() || writerFile.createNewFile()) {
-                BufferedWriter bufferedWriter = new BufferedWriter(new FileWriter(filePath));
-                receivedMessagePrintWriter = new PrintWriter(bufferedWriter);
+                writer = new ReceivedMessageRecordWriter(writerFile);
+            }
+        }
+        if (null != receivedMessageRecordWriter) {
+            try {
+                receivedMessageRecordWriter.close();
+            } catch (IOException e) {
+                log.error("Error while closing the received message records file", e);
             }
         }
+        receivedMessageRecordWriter = writer;
+    }
+
+    /**
+     * Initialize the message content print writer. This needs to be invoked before each test case.
+     * Any writer of a previous test case is flushed and closed.
+     *
+     * @param filePath The file path to write to.
+     */
+    public static synchronized void initializeReceivedMessagesPrintWriter(String filePath)
+            throws IOException {
+        ResultFileWriter writer = createWriter(filePath);
+        close(receivedMessagePrintWriter);
+        receivedMessagePrintWriter = writer;
     }
 
     /**
      * Initialize the statistics print writer. This needs to be invoked before each test case.
+     * Any writer of a previous test case is flushed and closed.
      *
      * @param filePath The file path to write to.
      */
-    public static void initializeStatisticsPrintWriter(String filePath) throws IOException {
-        if (StringUtils.isNotEmpty(filePath)) {
-            File writerFile = new File(filePath);
-            if (writerFile.exists() || writerFile.createNewFile()) {
-                BufferedWriter bufferedWriter = new BufferedWriter(new FileWriter(filePath));
-                statisticsPrintWriter = new PrintWriter(bufferedWriter);
-                statisticsPrintWriter
-                        .println("TIMESTAMP,CONSUMER_TPS,AVERAGE_LATENCY,,TIMESTAMP,PUBLISHER_TPS");
-            }
+    public static synchronized void initializeStatisticsPrintWriter(String filePath)
+            throws IOException {
+        ResultFileWriter writer = createWriter(filePath);
+        if (null != writer) {
+            writer.println("TIMESTAMP,CONSUMER_TPS,AVERAGE_LATENCY,,TIMESTAMP,PUBLISHER_TPS");
         }
+        close(statisticsPrintWriter);
+        statisticsPrintWriter = writer;
     }
 
     /**
      * Initialize the published messages print writer. This needs to be invoked before each test
-     * case.
+     * case. Any writer of a previous test case is flushed and closed.
+     *
+     * @param filePath The file path to write to.
+     */
+    public static synchronized void initializePublishedPrintWriter(String filePath)
+            throws IOException {
+        ResultFileWriter writer = createWriter(filePath);
+        close(publishedMessagePrintWriter);
+        publishedMessagePrintWriter = writer;
+    }
+
+    /**
+     * Creates a writer for a file, replacing its content.
      *
      * @param filePath The file path to write to.
+     * @return The writer, or null if no file path is given or the file cannot be created.
+     * @throws IOException
      */
-    public static void initializePublishedPrintWriter(String filePath) throws IOException {
+    private static ResultFileWriter createWriter(String filePath) throws IOException {
         if (StringUtils.isNotEmpty(filePath)) {
             File writerFile = new File(filePath);
             if (writerFile.exists() || writerFile.createNewFile()) {
-                BufferedWriter bufferedWriter = new BufferedWriter(new FileWriter(filePath));
-                publishedMessagePrintWriter = new PrintWriter(bufferedWriter);
+                return new ResultFileWriter(writerFile);
             }
         }
+        return null;
     }
 
     /**
-     * Prints print writers to file paths.
+     * Writes the remaining content of a writer to its file and closes it.
+     *
+     * @param writer The writer, may be null.
+     */
+    private static void close(ResultFileWriter writer) {
+        if (null != writer) {
+            writer.close();
+        }
+    }
+
+    /**
+     * Prints print writers to file paths. Waits until everything written so far is in the files.
      */
     public static void flushPrintWriters() {
-        if (null != receivedMessagePrintWriter) {
-            receivedMessagePrintWriter.flush();
+        ResultFileWriter writer = receivedMessagePrintWriter;
+        if (null != writer) {
+            writer.flush();
         }
 
-        if (null != statisticsPrintWriter) {
-            statisticsPrintWriter.flush();
+        writer = statisticsPrintWriter;
+        if (null != writer) {
+            writer.flush();
         }
 
-        if (null != publishedMessagePrintWriter) {
-            publishedMessagePrintWriter.flush();
+        writer = publishedMessagePrintWriter;
+        if (null != writer) {
+            writer.flush();
+        }
+
+        ReceivedMessageRecordWriter recordWriter = receivedMessageRecordWriter;
+        if (null != recordWriter) {
+            try {
+                recordWriter.flush();
+            } catch (IOException e) {
+                log.error("Error while writing the received message records file", e);
+            }
         }
     }
 
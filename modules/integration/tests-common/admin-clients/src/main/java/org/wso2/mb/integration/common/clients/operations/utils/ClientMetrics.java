@@ -0,0 +1,312 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.mb.integration.common.clients.operations.utils;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread safe throughput and latency figures of a single publisher, consumer or MQTT client.
+ * Messages can be recorded from any thread, such as the dispatcher threads of asynchronous
+ * listeners, while other threads read the figures.
+ * <p/>
+ * The figures are read through a {@link Snapshot}, so that the throughput and average latency
+ * derived from it are calculated from the same values. Snapshots of several clients can be
+ * combined into the throughput of a whole client, calculated from the total message count over
+ * the combined time span rather than from the throughputs of the individual clients.
+ * <p/>
+ * The messages recorded in each of the last {@link #WINDOW_SECONDS} seconds are also kept, to
+ * report the throughput over a sliding window of recent seconds.
+ */
+public class ClientMetrics {
+    /**
+     * The number of seconds the message counts are kept for, which limits the length of a
+     * sliding window.
+     */
+    public static final int WINDOW_SECONDS = 16;
+
+    /**
+     * The number of messages recorded.
+     */
+    private final StripedCounter count = new StripedCounter();
+
+    /**
+     * The sum of the latencies of the recorded messages in milliseconds.
+     */
+    private final StripedCounter totalLatency = new StripedCounter();
+
+    /**
+     * The timestamp of the first recorded message, 0 if no message was recorded.
+     */
+    private final AtomicLong firstTimestamp = new AtomicLong();
+
+    /**
+     * The timestamp of the latest recorded message.
+     */
+    private final AtomicLong lastTimestamp = new AtomicLong();
+
+    /**
+     * The number of messages recorded in each of the last seconds. Each slot holds the second in
+     * its upper 32 bits and the count in its lower 32 bits, so that a slot is moved to a new
+     * second and counted in a single atomic update.
+     */
+    private final AtomicLongArray windowSlots = new AtomicLongArray(WINDOW_SECONDS);
+
+    /**
+     * Records a message without a latency.
+     *
+     * @param timestamp The time at which the message was sent or received, in milliseconds.
+     */
+    public void record(long timestamp) {
+        record(timestamp, 0L);
+    }
+
+    /**
+     * Records a message.
+     *
+     * @param timestamp The time at which the message was sent or received, in milliseconds.
+     * @param latency   The latency of the message in milliseconds.
+     */
+    public void record(long timestamp, long latency) {
+        count.increment();
+        if (0L != latency) {
+            totalLatency.add(latency);
+        }
+        if (0L == firstTimestamp.get()) {
+            firstTimestamp.compareAndSet(0L, timestamp);
+        }
+        long last = lastTimestamp.get();
+        while (timestamp > last && !lastTimestamp.compareAndSet(last, timestamp)) {
+            last = lastTimestamp.get();
+        }
+        countInWindow(timestamp / 1000L);
+    }
+
+    /**
+     * Counts a message in the slot of its second.
+     *
+     * @param second The second at which the message was recorded.
+     */
+    private void countInWindow(long second) {
+        int index = (int) (second % WINDOW_SECONDS);
+        long slotSecond = second & 0xFFFFFFFFL;
+        while (true) {
+            long slot = windowSlots.get(index);
+            long currentSecond = slot >>> 32;
+            long updated;
+            if (currentSecond == slotSecond) {
+                updated = slot + 1L;
+            } else if (currentSecond < slotSecond) {
+                updated = (slotSecond << 32) | 1L;
+            } else {
+                // The slot already holds a later second
+                return;
+            }
+            if (windowSlots.compareAndSet(index, slot, updated)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Gets the number of messages recorded.
+     *
+     * @return The message count.
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Gets the current figures of the client.
+     *
+     * @return A snapshot of the figures.
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(count.sum(), totalLatency.sum(), firstTimestamp.get(), lastTimestamp.get());
+    }
+
+    /**
+     * Gets the number of messages recorded in the complete seconds of a sliding window ending at
+     * the current second.
+     *
+     * @param seconds     The length of the window in seconds.
+     * @param currentTime The current time in milliseconds.
+     * @return The number of messages recorded in the window.
+     */
+    private long getWindowCount(int seconds, long currentTime) {
+        long currentSecond = (currentTime / 1000L) & 0xFFFFFFFFL;
+        long windowCount = 0L;
+        for (int i = 0; i < WINDOW_SECONDS; i++) {
+            long slot = windowSlots.get(i);
+            long age = currentSecond - (slot >>> 32);
+            if (0 < age && age <= seconds) {
+                windowCount = windowCount + (slot & 0xFFFFFFFFL);
+            }
+        }
+        return windowCount;
+    }
+
+    /**
+     * Gets the throughput of the client over the last complete seconds.
+     *
+     * @param seconds The length of the window in seconds, at most {@link #WINDOW_SECONDS} - 1.
+     * @return The messages per second in the window.
+     */
+    public double getWindowTPS(int seconds) {
+        return getWindowTPS(seconds, Collections.singletonList(this));
+    }
+
+    /**
+     * Gets the combined throughput of several clients over the last complete seconds.
+     *
+     * @param seconds The length of the window in seconds, at most {@link #WINDOW_SECONDS} - 1.
+     * @param metrics The figures of the clients.
+     * @return The messages per second of all clients in the window.
+     */
+    public static double getWindowTPS(int seconds, Iterable<ClientMetrics> metrics) {
+        int windowSeconds = Math.max(1, Math.min(seconds, WINDOW_SECONDS - 1));
+        long currentTime = System.currentTimeMillis();
+        long windowCount = 0L;
+        for (ClientMetrics clientMetrics : metrics) {
+            windowCount = windowCount + clientMetrics.getWindowCount(windowSeconds, currentTime);
+        }
+        return ((double) windowCount) / windowSeconds;
+    }
+
+    /**
+     * Gets the combined figures of several clients.
+     *
+     * @param metrics The figures of the clients.
+     * @return A snapshot with the total count and latency of all clients over the combined time
+     * span.
+     */
+    public static Snapshot snapshot(Iterable<ClientMetrics> metrics) {
+        Snapshot combined = new Snapshot(0L, 0L, 0L, 0L);
+        for (ClientMetrics clientMetrics : metrics) {
+            combined = combined.combine(clientMetrics.snapshot());
+        }
+        return combined;
+    }
+
+    /**
+     * The figures of one or more clients at a point in time.
+     */
+    public static class Snapshot {
+        /**
+         * The number of messages.
+         */
+        private final long count;
+
+        /**
+         * The sum of the latencies in milliseconds.
+         */
+        private final long totalLatency;
+
+        /**
+         * The timestamp of the first message, 0 if there are no messages.
+         */
+        private final long firstTimestamp;
+
+        /**
+         * The timestamp of the latest message.
+         */
+        private final long lastTimestamp;
+
+        /**
+         * Creates a snapshot.
+         *
+         * @param count          The number of messages.
+         * @param totalLatency   The sum of the latencies in milliseconds.
+         * @param firstTimestamp The timestamp of the first message.
+         * @param lastTimestamp  The timestamp of the latest message.
+         */
+        private Snapshot(long count, long totalLatency, long firstTimestamp, long lastTimestamp) {
+            this.count = count;
+            this.totalLatency = totalLatency;
+            this.firstTimestamp = firstTimestamp;
+            this.lastTimestamp = lastTimestamp;
+        }
+
+        /**
+         * Combines the figures of two clients.
+         *
+         * @param other The snapshot of the other client.
+         * @return A snapshot of both clients.
+         */
+        private Snapshot combine(Snapshot other) {
+            long first;
+            if (0L == firstTimestamp) {
+                first = other.firstTimestamp;
+            } else if (0L == other.firstTimestamp) {
+                first = firstTimestamp;
+            } else {
+                first = Math.min(firstTimestamp, other.firstTimestamp);
+            }
+            return new Snapshot(count + other.count, totalLatency + other.totalLatency, first,
+                                Math.max(lastTimestamp, other.lastTimestamp));
+        }
+
+        /**
+         * Gets the number of messages.
+         *
+         * @return The message count.
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Gets the time between the first and the latest message.
+         *
+         * @return The time span in milliseconds.
+         */
+        public long getDuration() {
+            return lastTimestamp - firstTimestamp;
+        }
+
+        /**
+         * Gets the throughput between the first and the latest message. If all messages have the
+         * same timestamp, they are treated as sent or received within a millisecond.
+         *
+         * @return The messages per second.
+         */
+        public double getTPS() {
+            if (0L == getDuration()) {
+                return ((double) count) / (1D / 1000);
+            } else {
+                return ((double) count) / (((double) getDuration()) / 1000D);
+            }
+        }
+
+        /**
+         * Gets the average latency of the messages.
+         *
+         * @return The average latency in seconds, 0 if there are no messages.
+         */
+        public double getAverageLatency() {
+            if (0L == count) {
+                return 0D;
+            } else {
+                return (((double) totalLatency) / 1000D) / count;
+            }
+        }
+    }
+}
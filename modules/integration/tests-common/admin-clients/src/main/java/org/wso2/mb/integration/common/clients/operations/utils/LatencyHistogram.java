@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.mb.integration.common.clients.operations.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock free histogram of latencies with microsecond resolution. Latencies can be recorded from
+ * any number of threads, and histograms of several consumers can be merged to get the percentiles
+ * of a whole client.
+ * <p/>
+ * Every power of two is split into 32 linear buckets, so percentiles are reported with an error of
+ * at most about 3%, while the histogram stays a fixed size array of counters whatever the range of
+ * the recorded latencies.
+ */
+public class LatencyHistogram {
+    /**
+     * Number of buckets each power of two is split into, as a power of two.
+     */
+    private static final int SUB_BUCKET_BITS = 5;
+
+    /**
+     * Number of buckets each power of two is split into.
+     */
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * The number of latencies recorded in each bucket.
+     */
+    private final AtomicLongArray buckets =
+            new AtomicLongArray((Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS);
+
+    /**
+     * The number of recorded latencies.
+     */
+    private final AtomicLong count = new AtomicLong();
+
+    /**
+     * The sum of the recorded latencies in microseconds.
+     */
+    private final AtomicLong total = new AtomicLong();
+
+    /**
+     * The highest recorded latency in microseconds.
+     */
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a latency given in nanoseconds.
+     *
+     * @param nanos The latency in nanoseconds. Negative latencies, caused by clock differences,
+     *              are recorded as 0.
+     */
+    public void recordNanos(long nanos) {
+        recordMicros(nanos / 1000L);
+    }
+
+    /**
+     * Records a latency given in microseconds.
+     *
+     * @param micros The latency in microseconds.
+     */
+    public void recordMicros(long micros) {
+        long latency = Math.max(0L, micros);
+        buckets.incrementAndGet(indexOf(latency));
+        count.incrementAndGet();
+        total.addAndGet(latency);
+        updateMax(latency);
+    }
+
+    /**
+     * Adds all latencies recorded in another histogram to this histogram.
+     *
+     * @param other The histogram to merge into this one.
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < buckets.length(); i++) {
+            long bucketCount = other.buckets.get(i);
+            if (0L != bucketCount) {
+                buckets.addAndGet(i, bucketCount);
+            }
+        }
+        count.addAndGet(other.count.get());
+        total.addAndGet(other.total.get());
+        updateMax(other.max.get());
+    }
+
+    /**
+     * Gets the number of recorded latencies.
+     *
+     * @return The number of recorded latencies.
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Gets the mean of the recorded latencies.
+     *
+     * @return The mean latency in microseconds, 0 if no latency is recorded.
+     */
+    public double getMean() {
+        long recorded = count.get();
+        return 0L == recorded ? 0D : ((double) total.get()) / recorded;
+    }
+
+    /**
+     * Gets the highest recorded latency.
+     *
+     * @return The highest latency in microseconds.
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Gets the latency below which a given percentage of the recorded latencies fall.
+     *
+     * @param percentile The percentage, between 0 and 100.
+     * @return The latency in microseconds, 0 if no latency is recorded.
+     */
+    public long getPercentile(double percentile) {
+        long recorded = count.get();
+        if (0L == recorded) {
+            return 0L;
+        }
+        long rank = Math.max(1L, (long) Math.ceil(recorded * percentile / 100D));
+        long seen = 0L;
+        for (int i = 0; i < buckets.length(); i++) {
+            seen = seen + buckets.get(i);
+            if (seen >= rank) {
+                return Math.min(highestValueOf(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Gets the percentiles of the recorded latencies in a single line.
+     *
+     * @return The count, mean, p50, p90, p99, p99.9 and maximum latencies in microseconds.
+     */
+    @Override
+    public String toString() {
+        return "count:" + getCount() + " mean:" + String.format("%.1f", getMean()) + "us p50:" +
+               getPercentile(50D) + "us p90:" + getPercentile(90D) + "us p99:" + getPercentile(99D) +
+               "us p99.9:" + getPercentile(99.9D) + "us max:" + getMax() + "us";
+    }
+
+    private void updateMax(long latency) {
+        long currentMax = max.get();
+        while (latency > currentMax && !max.compareAndSet(currentMax, latency)) {
+            currentMax = max.get();
+        }
+    }
+
+    private static int indexOf(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(micros);
+        int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long highestValueOf(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long lowest = ((long) (SUB_BUCKETS + index % SUB_BUCKETS)) << shift;
+        return lowest + (1L << shift) - 1L;
+    }
+}
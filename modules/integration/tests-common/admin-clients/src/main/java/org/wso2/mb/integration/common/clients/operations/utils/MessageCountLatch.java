@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.mb.integration.common.clients.operations.utils;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the messages received by the consumers of a client and wakes up a thread waiting for
+ * them as soon as an expected number of messages is received, or as soon as no message was
+ * received for an idle timeout.
+ * <p/>
+ * Counting a message does not take a lock until the count awaited by a waiting thread is
+ * reached, so consumers can count every message they receive.
+ */
+public class MessageCountLatch {
+    /**
+     * The number of messages received.
+     */
+    private final AtomicLong count = new AtomicLong();
+
+    /**
+     * The lowest count awaited by the waiting threads, {@link Long#MAX_VALUE} while no thread
+     * waits. Waiting threads are only notified once it is reached.
+     */
+    private final AtomicLong expectedCount = new AtomicLong(Long.MAX_VALUE);
+
+    /**
+     * The counts awaited by the waiting threads, lowest first. Guarded by the monitor.
+     */
+    private final PriorityQueue<Long> awaitedCounts = new PriorityQueue<Long>();
+
+    /**
+     * The nano time at which the last message was received.
+     */
+    private volatile long lastMessageNanoTime = System.nanoTime();
+
+    /**
+     * The lock waiting threads are notified through.
+     */
+    private final Object monitor = new Object();
+
+    /**
+     * Counts a received message.
+     *
+     * @param nanoTime The nano time at which the message was received.
+     * @return The number of messages received so far.
+     */
+    public long messageReceived(long nanoTime) {
+        lastMessageNanoTime = nanoTime;
+        long current = count.incrementAndGet();
+        if (current >= expectedCount.get()) {
+            synchronized (monitor) {
+                monitor.notifyAll();
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Gets the number of messages received.
+     *
+     * @return The message count.
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Waits until the expected number of messages is received, or until no message was received
+     * for the idle timeout. The idle time is measured from the last message received, or from the
+     * start of the wait if it is later.
+     *
+     * @param expectedMessageCount The number of messages to wait for. Use {@link Long#MAX_VALUE}
+     *                             to wait until no more messages are received.
+     * @param idleTimeoutNanos     The time in nanoseconds without receiving messages after which
+     *                             waiting stops.
+     * @return true if the expected number of messages was received, false otherwise.
+     * @throws InterruptedException Thrown when the waiting thread is interrupted.
+     */
+    public boolean await(long expectedMessageCount, long idleTimeoutNanos)
+            throws InterruptedException {
+        return await(expectedMessageCount, idleTimeoutNanos, Long.MAX_VALUE);
+    }
+
+    /**
+     * Waits until the expected number of messages is received, until no message was received for
+     * the idle timeout, or until the timeout passed, whichever comes first.
+     *
+     * @param expectedMessageCount The number of messages to wait for.
+     * @param idleTimeoutNanos     The time in nanoseconds without receiving messages after which
+     *                             waiting stops.
+     * @param timeoutNanos         The maximum time to wait in nanoseconds.
+     * @return true if the expected number of messages was received, false otherwise.
+     * @throws InterruptedException Thrown when the waiting thread is interrupted.
+     */
+    public boolean await(long expectedMessageCount, long idleTimeoutNanos, long timeoutNanos)
+            throws InterruptedException {
+        long startNanoTime = System.nanoTime();
+        synchronized (monitor) {
+            awaitedCounts.add(expectedMessageCount);
+            expectedCount.set(awaitedCounts.peek());
+            try {
+                while (count.get() < expectedMessageCount) {
+                    long nanoTime = System.nanoTime();
+                    long waitedNanos = nanoTime - startNanoTime;
+                    long idleNanos = nanoTime - Math.max(lastMessageNanoTime, startNanoTime);
+                    if (idleNanos >= idleTimeoutNanos || waitedNanos >= timeoutNanos) {
+                        return false;
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(monitor, Math.min(idleTimeoutNanos - idleNanos,
+                                                                     timeoutNanos - waitedNanos));
+                }
+            } finally {
+                // Raises the count at which threads are notified to the lowest one still awaited
+                awaitedCounts.remove(expectedMessageCount);
+                expectedCount.set(awaitedCounts.isEmpty() ? Long.MAX_VALUE : awaitedCounts.peek());
+            }
+        }
+        return true;
+    }
+}
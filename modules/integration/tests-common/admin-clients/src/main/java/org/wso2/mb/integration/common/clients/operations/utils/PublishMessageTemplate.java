@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.mb.integration.common.clients.operations.utils;
+
+/**
+ * Builds the inbuilt text payload of published messages from
+ * {@link AndesClientConstants#PUBLISH_MESSAGE_FORMAT} without formatting it for every message. The
+ * text around the message number is resolved once and only the number is appended per message.
+ * <p/>
+ * Unlike {@link java.text.MessageFormat}, numbers are written without grouping separators, which
+ * all the parsing in {@link AndesClientOutputParser} accepts. A template is not thread safe.
+ */
+public class PublishMessageTemplate {
+    /**
+     * Placeholder of the message number in the message format.
+     */
+    private static final String MESSAGE_NUMBER_PLACEHOLDER = "{0}";
+
+    /**
+     * Placeholder of the thread ID in the message format.
+     */
+    private static final String THREAD_ID_PLACEHOLDER = "{1}";
+
+    /**
+     * Builder holding the text before the message number, reused for every message.
+     */
+    private final StringBuilder payload;
+
+    /**
+     * The length of the text before the message number.
+     */
+    private final int prefixLength;
+
+    /**
+     * The text after the message number.
+     */
+    private final String suffix;
+
+    /**
+     * Creates a template for the messages published by a thread.
+     *
+     * @param threadID The ID of the publishing thread.
+     */
+    public PublishMessageTemplate(long threadID) {
+        String format = AndesClientConstants.PUBLISH_MESSAGE_FORMAT;
+        int placeholderIndex = format.indexOf(MESSAGE_NUMBER_PLACEHOLDER);
+        String threadIDString = Long.toString(threadID);
+        String prefix = format.substring(0, placeholderIndex)
+                .replace(THREAD_ID_PLACEHOLDER, threadIDString);
+        suffix = format.substring(placeholderIndex + MESSAGE_NUMBER_PLACEHOLDER.length())
+                .replace(THREAD_ID_PLACEHOLDER, threadIDString);
+        prefixLength = prefix.length();
+        payload = new StringBuilder(prefixLength + 20 + suffix.length()).append(prefix);
+    }
+
+    /**
+     * Gets the payload of a message.
+     *
+     * @param messageNumber The number of the message.
+     * @return The payload.
+     */
+    public String getPayload(long messageNumber) {
+        payload.setLength(prefixLength);
+        return payload.append(messageNumber).append(suffix).toString();
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.mb.integration.common.clients.operations.utils;
+
+import org.wso2.mb.integration.common.clients.configurations.PublishRateProfile;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Schedules the sends of an open loop publisher. The intended send time of each message follows
+ * from the rate profile alone and does not depend on how long earlier sends took, so a slow broker
+ * shows up as latency measured from the intended send time instead of as a lower send rate.
+ * <p/>
+ * Waits are parked until shortly before the intended send time and then spun, so that rates of
+ * more than a thousand messages per second can be paced precisely.
+ */
+public class PublishPacer {
+    /**
+     * Time before the intended send time from which the pacer spins instead of parking.
+     */
+    private static final long SPIN_NANOS = TimeUnit.MICROSECONDS.toNanos(50L);
+
+    /**
+     * The rate profile of the publisher.
+     */
+    private final PublishRateProfile profile;
+
+    /**
+     * The nano time at which the pacer started.
+     */
+    private long startTime;
+
+    /**
+     * The intended send time of the next message in nano time.
+     */
+    private long nextSendTime;
+
+    /**
+     * Creates a pacer for a rate profile.
+     *
+     * @param profile The rate profile.
+     */
+    public PublishPacer(PublishRateProfile profile) {
+        this.profile = profile;
+    }
+
+    /**
+     * Starts pacing. The first message is intended to be sent right away.
+     */
+    public void start() {
+        startTime = System.nanoTime();
+        nextSendTime = startTime;
+    }
+
+    /**
+     * Waits until the intended send time of the next message. If the publisher is late, returns
+     * immediately so that it catches up.
+     *
+     * @return The intended send time of the message in nano time.
+     */
+    public long awaitNextSendTime() {
+        long sendTime = nextSendTime;
+        double rate = profile.getRate(sendTime - startTime);
+        nextSendTime = sendTime + Math.max(1L, (long) (TimeUnit.SECONDS.toNanos(1L) / rate));
+
+        long remaining = sendTime - System.nanoTime();
+        while (remaining > SPIN_NANOS && !Thread.currentThread().isInterrupted()) {
+            LockSupport.parkNanos(remaining - SPIN_NANOS);
+            remaining = sendTime - System.nanoTime();
+        }
+        while (sendTime - System.nanoTime() > 0L && !Thread.currentThread().isInterrupted()) {
+            // Spinning for the last microseconds, as parking is not precise enough
+        }
+        return sendTime;
+    }
+}
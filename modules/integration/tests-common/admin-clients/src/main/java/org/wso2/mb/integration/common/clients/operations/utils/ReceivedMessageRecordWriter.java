@@ -0,0 +1,228 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.mb.integration.common.clients.operations.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes a fixed width binary record for each received message, to be read back by
+ * {@link AndesClientOutputParser}. Compared to writing the message text, records are a fraction of
+ * the size and need no text parsing to be analysed.
+ * <p/>
+ * The file starts with a header of {@link #HEADER_SIZE} bytes, holding {@link #MAGIC} followed by
+ * the format version and the record size as integers. Each record of {@link #RECORD_SIZE} bytes
+ * then holds, in big endian order,
+ * <ul>
+ * <li>the message number, as a long</li>
+ * <li>the ID of the publisher thread, as a long</li>
+ * <li>the nano time the message was received at, as a long</li>
+ * <li>the flags of the message, {@link #FLAG_REDELIVERED} if it was redelivered, as an int</li>
+ * <li>four reserved bytes</li>
+ * </ul>
+ * Records are collected in a direct buffer and written to the file when the buffer is full or
+ * the writer is flushed. A writer can be shared by any number of consumer threads.
+ */
+public class ReceivedMessageRecordWriter {
+    /**
+     * The first bytes of a record file, "ANDESREC".
+     */
+    public static final long MAGIC = 0x414E444553524543L;
+
+    /**
+     * The version of the record format.
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * The size of the file header in bytes.
+     */
+    public static final int HEADER_SIZE = 16;
+
+    /**
+     * The size of a record in bytes.
+     */
+    public static final int RECORD_SIZE = 32;
+
+    /**
+     * Flag of a redelivered message.
+     */
+    public static final int FLAG_REDELIVERED = 1;
+
+    /**
+     * The number of records collected before they are written to the file.
+     */
+    private static final int BUFFERED_RECORDS = 1 << 15;
+
+    /**
+     * Placeholder of the message number in the message format.
+     */
+    private static final String MESSAGE_NUMBER_PLACEHOLDER = "{0}";
+
+    /**
+     * Placeholder of the thread ID in the message format.
+     */
+    private static final String THREAD_ID_PLACEHOLDER = "{1}";
+
+    /**
+     * The text before the message number in an inbuilt message.
+     */
+    private static final String MESSAGE_NUMBER_PREFIX;
+
+    /**
+     * The text between the message number and the thread ID in an inbuilt message.
+     */
+    private static final String THREAD_ID_PREFIX;
+
+    static {
+        String format = AndesClientConstants.PUBLISH_MESSAGE_FORMAT;
+        int messageNumberIndex = format.indexOf(MESSAGE_NUMBER_PLACEHOLDER);
+        int threadIDIndex = format.indexOf(THREAD_ID_PLACEHOLDER);
+        MESSAGE_NUMBER_PREFIX = format.substring(0, messageNumberIndex);
+        THREAD_ID_PREFIX = format.substring(messageNumberIndex + MESSAGE_NUMBER_PLACEHOLDER.length(),
+                                            threadIDIndex);
+    }
+
+    private final FileChannel channel;
+
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFERED_RECORDS * RECORD_SIZE);
+
+    /**
+     * Creates a writer for a file, replacing any existing content of the file.
+     *
+     * @param file The file to write to.
+     * @throws IOException Thrown when the file cannot be opened or the header cannot be written.
+     */
+    public ReceivedMessageRecordWriter(File file) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                   StandardOpenOption.TRUNCATE_EXISTING);
+        buffer.putLong(MAGIC).putInt(VERSION).putInt(RECORD_SIZE);
+        writeBuffer();
+    }
+
+    /**
+     * Writes a record for a received message.
+     *
+     * @param messageNumber The number of the message.
+     * @param threadID      The ID of the thread which published the message.
+     * @param redelivered   Whether the message was redelivered.
+     * @param nanoTime      The nano time the message was received at.
+     * @throws IOException Thrown when the records cannot be written to the file.
+     */
+    public synchronized void record(long messageNumber, long threadID, boolean redelivered,
+                                    long nanoTime) throws IOException {
+        buffer.putLong(messageNumber)
+                .putLong(threadID)
+                .putLong(nanoTime)
+                .putInt(redelivered ? FLAG_REDELIVERED : 0)
+                .putInt(0);
+        if (!buffer.hasRemaining()) {
+            writeBuffer();
+        }
+    }
+
+    /**
+     * Writes a record for a received message with an inbuilt text payload, which is in the format
+     * of {@link AndesClientConstants#PUBLISH_MESSAGE_FORMAT}. Messages with other payloads are not
+     * recorded.
+     *
+     * @param content     The text payload of the message.
+     * @param redelivered Whether the message was redelivered.
+     * @param nanoTime    The nano time the message was received at.
+     * @return true if the message was recorded, false if the payload is not an inbuilt payload.
+     * @throws IOException Thrown when the records cannot be written to the file.
+     */
+    public boolean record(String content, boolean redelivered, long nanoTime) throws IOException {
+        if (null == content || !content.startsWith(MESSAGE_NUMBER_PREFIX)) {
+            return false;
+        }
+        int threadIDIndex = content.indexOf(THREAD_ID_PREFIX, MESSAGE_NUMBER_PREFIX.length());
+        if (0 > threadIDIndex) {
+            return false;
+        }
+        long messageNumber = parseNumber(content, MESSAGE_NUMBER_PREFIX.length(), threadIDIndex);
+        long threadID = parseNumber(content, threadIDIndex + THREAD_ID_PREFIX.length(),
+                                    content.length());
+        if (0L > messageNumber || 0L > threadID) {
+            return false;
+        }
+        record(messageNumber, threadID, redelivered, nanoTime);
+        return true;
+    }
+
+    /**
+     * Writes all records to the file.
+     *
+     * @throws IOException Thrown when the records cannot be written to the file.
+     */
+    public synchronized void flush() throws IOException {
+        writeBuffer();
+    }
+
+    /**
+     * Writes all records to the file and closes it.
+     *
+     * @throws IOException Thrown when the records cannot be written or the file cannot be closed.
+     */
+    public synchronized void close() throws IOException {
+        try {
+            writeBuffer();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void writeBuffer() throws IOException {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } finally {
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Parses a non negative number, which may contain grouping separators as written by
+     * {@link java.text.MessageFormat}.
+     *
+     * @param text  The text holding the number.
+     * @param start The index the number starts at.
+     * @param end   The index after the number.
+     * @return The number, or -1 if the text is not a number.
+     */
+    static long parseNumber(String text, int start, int end) {
+        long number = 0L;
+        boolean digits = false;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if ('0' <= c && '9' >= c) {
+                number = number * 10 + (c - '0');
+                digits = true;
+            } else if (',' != c) {
+                return -1L;
+            }
+        }
+        return digits ? number : -1L;
+    }
+}
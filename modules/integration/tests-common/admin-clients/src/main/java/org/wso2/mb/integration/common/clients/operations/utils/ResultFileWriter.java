@@ -0,0 +1,258 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.mb.integration.common.clients.operations.utils;
+
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Writes lines recorded by any number of consumer and publisher threads to a file in the
+ * background.
+ * <p/>
+ * Recording a line claims the next slot of a ring buffer with a single atomic increment and
+ * places the line in it, so recording threads neither lock nor wait on the file. A single writer
+ * thread takes the lines from the ring in the order the slots were claimed, encodes them into a
+ * large direct buffer and writes the buffer to a {@link FileChannel} whenever it is full or no
+ * more lines are waiting. When the ring is full, recording threads wait for the writer to catch
+ * up instead of dropping lines.
+ * <p/>
+ * Lines recorded before {@link #flush()} is called are in the file once it returns.
+ */
+public class ResultFileWriter {
+    /**
+     * The logger used in logging information, warnings, errors and etc.
+     */
+    private static Logger log = Logger.getLogger(ResultFileWriter.class);
+
+    /**
+     * Number of lines the ring buffer holds. A power of two.
+     */
+    private static final int RING_CAPACITY = 1 << 16;
+
+    /**
+     * Size of the direct buffer lines are encoded into before being written to the file.
+     */
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    /**
+     * Time the writer thread waits for lines when the ring buffer is empty.
+     */
+    private static final long IDLE_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(1L);
+
+    /**
+     * Time a thread waits before checking again whether the ring buffer has space or a flush has
+     * completed.
+     */
+    private static final long RETRY_WAIT_NANOS = TimeUnit.MICROSECONDS.toNanos(50L);
+
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+    /**
+     * Lines waiting to be written. The line with sequence number n is in slot n modulo the
+     * capacity. A slot is empty until the recording thread has placed its line.
+     */
+    private final AtomicReferenceArray<String> ring = new AtomicReferenceArray<String>(RING_CAPACITY);
+
+    /**
+     * The sequence number the next recorded line gets.
+     */
+    private final AtomicLong nextSequence = new AtomicLong();
+
+    /**
+     * The sequence number of the next line the writer thread takes from the ring.
+     */
+    private volatile long takenSequence;
+
+    /**
+     * All lines with a lower sequence number than this are written to the file.
+     */
+    private volatile long writtenSequence;
+
+    /**
+     * Whether the writer has been closed.
+     */
+    private volatile boolean closed;
+
+    private final FileChannel channel;
+
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    private final Thread writerThread;
+
+    /**
+     * Whether writing to the file has failed. Lines are then discarded so that recording threads
+     * are not blocked.
+     */
+    private volatile boolean failed;
+
+    /**
+     * Creates a writer for a file, replacing any existing content of the file, and starts its
+     * writer thread.
+     *
+     * @param file The file to write to.
+     * @throws IOException Thrown when the file cannot be opened.
+     */
+    public ResultFileWriter(File file) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                   StandardOpenOption.TRUNCATE_EXISTING);
+        writerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeLines();
+            }
+        }, "ResultFileWriter-" + file.getName());
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Records a line to be written to the file. Safe to be called from any number of threads.
+     * Lines recorded after the writer is closed are discarded.
+     *
+     * @param line The line, without a line separator.
+     */
+    public void println(String line) {
+        if (closed) {
+            return;
+        }
+        long sequence = nextSequence.getAndIncrement();
+        while (sequence - takenSequence >= RING_CAPACITY) {
+            // The ring is full, waiting for the writer thread to take lines
+            LockSupport.parkNanos(RETRY_WAIT_NANOS);
+        }
+        ring.lazySet(index(sequence), line);
+    }
+
+    /**
+     * Waits until all lines recorded before this call are written to the file.
+     */
+    public void flush() {
+        long sequence = nextSequence.get();
+        LockSupport.unpark(writerThread);
+        while (writtenSequence < sequence && writerThread.isAlive()) {
+            LockSupport.parkNanos(RETRY_WAIT_NANOS);
+        }
+    }
+
+    /**
+     * Writes all recorded lines to the file, stops the writer thread and closes the file.
+     */
+    public void close() {
+        closed = true;
+        LockSupport.unpark(writerThread);
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.error("Error while closing the result file", e);
+        }
+    }
+
+    /**
+     * Takes lines from the ring buffer and writes them to the file until the writer is closed.
+     */
+    private void writeLines() {
+        long sequence = takenSequence;
+        while (true) {
+            int index = index(sequence);
+            String line = ring.get(index);
+            if (null != line) {
+                ring.lazySet(index, null);
+                sequence++;
+                takenSequence = sequence;
+                encode(line);
+                encode(LINE_SEPARATOR);
+            } else {
+                // No more lines are waiting, writing what is buffered before waiting for more
+                writeBuffer();
+                writtenSequence = sequence;
+                if (closed && sequence == nextSequence.get()) {
+                    return;
+                }
+                LockSupport.parkNanos(IDLE_WAIT_NANOS);
+            }
+        }
+    }
+
+    /**
+     * Encodes text into the buffer, writing the buffer to the file whenever it is full.
+     *
+     * @param text The text to encode.
+     */
+    private void encode(String text) {
+        if (failed) {
+            return;
+        }
+        CharBuffer chars = CharBuffer.wrap(text);
+        while (true) {
+            CoderResult result = encoder.encode(chars, buffer, true);
+            if (result.isOverflow()) {
+                writeBuffer();
+            } else {
+                break;
+            }
+        }
+        encoder.reset();
+    }
+
+    /**
+     * Writes the content of the buffer to the file.
+     */
+    private void writeBuffer() {
+        if (0 == buffer.position()) {
+            return;
+        }
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            failed = true;
+            log.error("Error while writing to the result file. Further lines are discarded.", e);
+        }
+        buffer.clear();
+    }
+
+    private static int index(long sequence) {
+        return (int) (sequence & (RING_CAPACITY - 1));
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.mb.integration.common.clients.operations.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter which can be updated from many threads without contending on a single value. Like the
+ * LongAdder of later Java versions, it starts as a single value and once updates collide, each
+ * thread adds to one of several cells, each on a cache line of its own. The value of the counter
+ * is the sum of the cells. Counters which are only updated by one thread therefore stay small.
+ */
+public class StripedCounter {
+    /**
+     * The number of cells, a power of two of about twice the number of processors.
+     */
+    private static final int STRIPES = stripes();
+
+    /**
+     * The number of longs in a cache line, used to keep the cells apart.
+     */
+    private static final int PADDING = 8;
+
+    /**
+     * The value updated while no updates collided.
+     */
+    private final AtomicLong base = new AtomicLong();
+
+    /**
+     * The cells, each {@link #PADDING} longs apart, null until updates collide.
+     */
+    private volatile AtomicLongArray cells;
+
+    /**
+     * Adds one to the counter.
+     */
+    public void increment() {
+        add(1L);
+    }
+
+    /**
+     * Adds a value to the counter.
+     *
+     * @param value The value to add.
+     */
+    public void add(long value) {
+        AtomicLongArray currentCells = cells;
+        if (null == currentCells) {
+            long current = base.get();
+            if (base.compareAndSet(current, current + value)) {
+                return;
+            }
+            currentCells = createCells();
+        }
+        currentCells.getAndAdd(stripe() * PADDING, value);
+    }
+
+    /**
+     * Gets the value of the counter. Updates made while the cells are summed may or may not be
+     * included.
+     *
+     * @return The sum of all values added.
+     */
+    public long sum() {
+        long sum = base.get();
+        AtomicLongArray currentCells = cells;
+        if (null != currentCells) {
+            for (int i = 0; i < STRIPES; i++) {
+                sum = sum + currentCells.get(i * PADDING);
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Creates the cells once updates collide.
+     *
+     * @return The cells.
+     */
+    private synchronized AtomicLongArray createCells() {
+        if (null == cells) {
+            cells = new AtomicLongArray(STRIPES * PADDING);
+        }
+        return cells;
+    }
+
+    /**
+     * Gets the stripe the current thread updates. Threads created one after the other use
+     * different stripes.
+     *
+     * @return The index of the stripe.
+     */
+    private static int stripe() {
+        return (int) Thread.currentThread().getId() & (STRIPES - 1);
+    }
+
+    /**
+     * Calculates the number of stripes for the available processors.
+     *
+     * @return The number of stripes.
+     */
+    private static int stripes() {
+        int stripes = 1;
+        while (stripes < 2 * Runtime.getRuntime().availableProcessors() && stripes < 64) {
+            stripes = stripes << 1;
+        }
+        return stripes;
+    }
+}
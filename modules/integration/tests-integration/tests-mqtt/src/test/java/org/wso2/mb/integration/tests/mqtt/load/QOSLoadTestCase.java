@@ -26,7 +26,9 @@ import org.wso2.carbon.automation.engine.context.TestUserMode;
 import org.wso2.mb.integration.common.clients.MQTTClientEngine;
 import org.wso2.mb.integration.common.clients.AndesMQTTClient;
 import org.wso2.mb.integration.common.clients.ClientMode;
+import org.wso2.mb.integration.common.clients.MQTTClientConnectionConfiguration;
 import org.wso2.mb.integration.common.clients.MQTTConstants;
+import org.wso2.mb.integration.common.clients.PersistenceMode;
 import org.wso2.mb.integration.common.clients.QualityOfService;
 import org.wso2.mb.integration.common.utils.backend.MBIntegrationBaseTest;
 import org.wso2.mb.integration.tests.mqtt.DataProvider.QualityOfServiceDataProvider;
@@ -66,12 +68,16 @@ public class QOSLoadTestCase extends MBIntegrationBaseTest {
         MQTTClientEngine mqttClientEngine = new MQTTClientEngine();
         String topicName = "QOS0LoadTestTopic";
 
+        // Keep in flight messages in the shared log rather than creating a file for each of them
+        MQTTClientConnectionConfiguration configuration = mqttClientEngine.getConfigurations(automationContext);
+        configuration.setPersistenceMode(PersistenceMode.SHARED_LOG);
+
         //create the subscribers
         mqttClientEngine.createSubscriberConnection(topicName, qualityOfService, noOfSubscribers, false,
-                ClientMode.BLOCKING, automationContext);
+                ClientMode.BLOCKING, configuration);
 
         mqttClientEngine.createPublisherConnection(topicName, qualityOfService, MQTTConstants.TEMPLATE_PAYLOAD,
-                noOfPublishers, sendCount / noOfPublishers, ClientMode.BLOCKING, automationContext);
+                noOfPublishers, sendCount / noOfPublishers, ClientMode.BLOCKING, configuration);
 
         mqttClientEngine.waitUntilAllMessageReceivedAndShutdownClients();
 
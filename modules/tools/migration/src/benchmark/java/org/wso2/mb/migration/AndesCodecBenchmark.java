@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.mb.migration;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the transform of subscriptions and bindings by {@link Modifier}, which locates values with an
+ * {@link AndesCodec}, with the transform the tool used before, which split every row and collected its properties in a
+ * map.
+ * <p/>
+ * Each invocation transforms {@link #ROWS} rows, and the results are reported per row. Run with "-prof gc" to report
+ * the bytes allocated per row as gc.alloc.rate.norm:
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec -Dbenchmark.args="AndesCodecBenchmark -prof gc"
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class AndesCodecBenchmark {
+
+    /**
+     * Number of distinct rows transformed per invocation
+     */
+    static final int ROWS = 1024;
+
+    private String[] subscriptions;
+
+    private String[] bindings;
+
+    private Modifier modifier;
+
+    private SplitTransform splitTransform;
+
+    @Setup
+    public void setUp() {
+        subscriptions = new String[ROWS];
+        bindings = new String[ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            String queueName = "carbon:subscription" + i;
+            subscriptions[i] = MigrationTestDatabase.subscriptionData(i, queueName, 0 == i % 2 ? "AMQP" : "MQTT");
+            bindings[i] = "amq.topic|queueName=" + queueName + ",queueOwner=admin,isExclusive=false|topic" + i;
+        }
+        modifier = new Modifier();
+        splitTransform = new SplitTransform();
+
+        // Both transforms must produce the same rows for the comparison to be meaningful
+        for (int i = 0; i < ROWS; i++) {
+            if (!modifier.modifySubscription(subscriptions[i]).equals(
+                    splitTransform.modifySubscription(subscriptions[i]))
+                || !modifier.modifyDefaultBinding(bindings[i]).equals(splitTransform.modifyBinding(bindings[i]))) {
+                throw new IllegalStateException("The transforms differ on row " + i);
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void codecSubscription(Blackhole blackhole) {
+        for (String subscription : subscriptions) {
+            blackhole.consume(modifier.modifySubscription(subscription));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void splitSubscription(Blackhole blackhole) {
+        for (String subscription : subscriptions) {
+            blackhole.consume(splitTransform.modifySubscription(subscription));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void codecBinding(Blackhole blackhole) {
+        for (String binding : bindings) {
+            blackhole.consume(modifier.modifyDefaultBinding(binding));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void splitBinding(Blackhole blackhole) {
+        for (String binding : bindings) {
+            blackhole.consume(splitTransform.modifyBinding(binding));
+        }
+    }
+
+    /**
+     * The transform of subscriptions and bindings before {@link AndesCodec}, kept as the baseline of the benchmark.
+     */
+    static class SplitTransform {
+
+        private Map<String, String> subscriptionProperties;
+
+        private String destinationType;
+
+        private String protocolType;
+
+        String modifySubscription(String oldSubscription) {
+            String[] properties = oldSubscription.split(",");
+            subscriptionProperties = new HashMap<>();
+            for (String entry : properties) {
+                if (entry.trim().length() > 0) {
+                    entry = entry.trim();
+                    String[] keyValuePairs = entry.split("=");
+                    subscriptionProperties.put(keyValuePairs[0], keyValuePairs[1]);
+                }
+            }
+            if (subscriptionProperties.containsKey("protocolType")) {
+                return oldSubscription;
+            }
+            return encodeAsStr();
+        }
+
+        private String encodeAsStr() {
+            if ("true".equals(subscriptionProperties.get("isBoundToTopic"))) {
+                if ("true".equals(subscriptionProperties.get("isDurable"))) {
+                    destinationType = "DURABLE_TOPIC";
+                } else {
+                    destinationType = "TOPIC";
+                }
+            } else {
+                destinationType = "QUEUE";
+            }
+            if ("AMQP".equals(subscriptionProperties.get("subscriptionType"))) {
+                protocolType = "AMQP";
+            } else {
+                protocolType = "MQTT";
+            }
+
+            StringBuilder builder = new StringBuilder();
+            builder.append("subscriptionID=").append(subscriptionProperties.get("subscriptionID"))
+                    .append(",destination=").append(subscriptionProperties.get("destination"))
+                    .append(",isExclusive=").append(subscriptionProperties.get("isExclusive"))
+                    .append(",isDurable=").append(subscriptionProperties.get("isDurable"))
+                    .append(",targetQueue=").append(subscriptionProperties.get("targetQueue"))
+                    .append(",targetQueueOwner=")
+                    .append(subscriptionProperties.get("targetQueueOwner"))
+                    .append(",targetQueueBoundExchange=")
+                    .append(subscriptionProperties.get("targetQueueBoundExchange"))
+                    .append(",targetQueueBoundExchangeType=")
+                    .append(subscriptionProperties.get("targetQueueBoundExchangeType"))
+                    .append(",isTargetQueueBoundExchangeAutoDeletable=")
+                    .append(subscriptionProperties.get("isTargetQueueBoundExchangeAutoDeletable"))
+                    .append(",subscribedNode=").append(subscriptionProperties.get("subscribedNode"))
+                    .append(",subscribedTime=").append(subscriptionProperties.get("subscribedTime"))
+                    .append(",hasExternalSubscriptions=").append(subscriptionProperties.get("hasExternalSubscriptions"))
+                    .append(",storageQueueName=").append(subscriptionProperties.get("storageQueueName"))
+                    .append(",destinationType=").append(destinationType)
+                    .append(",protocolType=").append(protocolType);
+            return builder.toString();
+        }
+
+        String modifyBinding(String bindingInfo) {
+            String[] parts = bindingInfo.split("\\|");
+            StringBuilder builder = new StringBuilder();
+            builder.append(parts[0].trim())
+                    .append("|")
+                    .append(parts[1].trim())
+                    .append(",protocolType=")
+                    .append("AMQP")
+                    .append(",destinationType=QUEUE")
+                    .append("|")
+                    .append(parts[2]);
+            return builder.toString();
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.mb.migration;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how the detection of queues and bindings without subscriptions in the default mode scales with the number
+ * of subscriptions. The queues and bindings of the storage queues of the subscriptions and {@link #IDLE_QUEUES} idle
+ * queues with their bindings are seeded into an H2 database, and the storage queues are known to the processor, as
+ * after the subscriptions have been migrated.
+ * <p/>
+ * {@link Processor#modifyIdleQueuesAndBindings()} looks every streamed row up in a hashed set, so its time grows
+ * linearly with the number of subscriptions. The baseline reads both tables into lists and looks every row up in a
+ * list of the storage queues, as the tool did before, so its time grows with the square of the number of subscriptions
+ * and it is only run up to 40k subscriptions:
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec -Dbenchmark.args="IdleQueueScalingBenchmark"
+ * </pre>
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class IdleQueueScalingBenchmark {
+
+    /**
+     * Number of queues, each with a binding, which no subscription is bound to
+     */
+    static final int IDLE_QUEUES = 1000;
+
+    @Benchmark
+    public void hashedLookup(HashedLookup state) throws SQLException {
+        state.processor.modifyIdleQueuesAndBindings();
+    }
+
+    @Benchmark
+    public int listLookup(ListLookup state) throws SQLException {
+        DBConnector connector = state.processor.connector;
+        Modifier modifier = state.processor.modifier;
+        List<String> storageQueues = state.storageQueueNames;
+        int idleRows = 0;
+        for (Queue queue : connector.readQueues()) {
+            if (!storageQueues.contains(queue.getQueueName())) {
+                idleRows = idleRows + 1;
+                connector.writeQueue(queue.getQueueName(), modifier.modifyDefaultQueue(queue.getQueueData()));
+            }
+        }
+        for (Binding binding : connector.readBindings()) {
+            if (!storageQueues.contains(binding.getQueueName())) {
+                idleRows = idleRows + 1;
+                connector.writeBinding(binding.getQueueName(),
+                                       modifier.modifyDefaultBinding(binding.getBindingDetails()));
+            }
+        }
+        return idleRows;
+    }
+
+    /**
+     * A database seeded with the queues and bindings of a number of subscriptions and of the idle queues, and a
+     * processor which knows the storage queues of the subscriptions.
+     */
+    public abstract static class SeededDatabase {
+
+        private File directory;
+
+        private MigrationTestDatabase database;
+
+        Processor processor;
+
+        /**
+         * The storage queues of the subscriptions
+         */
+        List<String> storageQueueNames;
+
+        abstract int getSubscriptions();
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException, SQLException {
+            int subscriptions = getSubscriptions();
+            directory = Files.createTempDirectory("migration-benchmark").toFile();
+            database = new MigrationTestDatabase("subscriptions" + subscriptions, directory);
+            database.seed(subscriptions, IDLE_QUEUES, false);
+
+            processor = new Processor(database.configuration("default", directory));
+            storageQueueNames = new ArrayList<>(subscriptions);
+            for (int i = 0; i < subscriptions; i++) {
+                String storageQueueName = "carbon:subscription" + i;
+                storageQueueNames.add(storageQueueName);
+                processor.storageQueues.add(storageQueueName);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException, SQLException {
+            processor.close();
+            database.close();
+            Files.walkFileTree(directory.toPath(), new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                    Files.delete(file);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                    Files.delete(dir);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class HashedLookup extends SeededDatabase {
+
+        @Param({ "10000", "100000", "1000000" })
+        public int subscriptions;
+
+        @Override
+        int getSubscriptions() {
+            return subscriptions;
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class ListLookup extends SeededDatabase {
+
+        @Param({ "10000", "20000", "40000" })
+        public int subscriptions;
+
+        @Override
+        int getSubscriptions() {
+            return subscriptions;
+        }
+    }
+}
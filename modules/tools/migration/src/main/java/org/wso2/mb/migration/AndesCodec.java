@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.mb.migration;
+
+/**
+ * Single pass, index based codec for the encodings Andes stores subscriptions, queues and bindings in.
+ * <p/>
+ * Subscriptions and queues are stored as "key=value,key=value,...". A codec is created for a fixed set of keys and
+ * {@link #scan(String)} records where the value of each of those keys starts and ends in a string, without splitting
+ * it or creating a map. Values can then be compared or appended to a builder straight from the scanned string. A codec
+ * keeps the bounds of the last scanned string and is therefore not thread safe.
+ * <p/>
+ * Bindings are stored as "exchange|queue info|routing key" and are rewritten with {@link #rewriteBinding(String,
+ * String)}.
+ */
+public class AndesCodec {
+
+    /**
+     * Value appended for keys absent from the scanned string, matching how missing properties have always been
+     * encoded
+     */
+    private static final String ABSENT_VALUE = "null";
+
+    /**
+     * The keys whose values are located
+     */
+    private final String[] keys;
+
+    /**
+     * Start index of the value of each key in the scanned string, followed by its end index. -1 if the key is absent.
+     */
+    private final int[] bounds;
+
+    /**
+     * The last scanned string
+     */
+    private String data;
+
+    public AndesCodec(String... keys) {
+        this.keys = keys;
+        bounds = new int[keys.length * 2];
+    }
+
+    /**
+     * Locate the values of the codec's keys in a "key=value,key=value,..." string. Entries are trimmed, empty entries
+     * are ignored and when a key is present more than once, the last value is used.
+     *
+     * @param encoded the string to scan
+     */
+    public void scan(String encoded) {
+        data = encoded;
+        for (int i = 0; i < bounds.length; i++) {
+            bounds[i] = -1;
+        }
+        int length = encoded.length();
+        int entryStart = 0;
+        while (entryStart < length) {
+            int entryEnd = encoded.indexOf(',', entryStart);
+            if (entryEnd < 0) {
+                entryEnd = length;
+            }
+            int start = skipLeadingWhitespace(encoded, entryStart, entryEnd);
+            int end = skipTrailingWhitespace(encoded, start, entryEnd);
+            int separator = encoded.indexOf('=', start);
+            if (separator >= 0 && separator < end) {
+                int key = indexOfKey(encoded, start, separator);
+                if (key >= 0) {
+                    int valueEnd = encoded.indexOf('=', separator + 1);
+                    bounds[2 * key] = separator + 1;
+                    bounds[2 * key + 1] = valueEnd >= 0 && valueEnd < end ? valueEnd : end;
+                }
+            }
+            entryStart = entryEnd + 1;
+        }
+    }
+
+    /**
+     * @param key index of the key in the keys of the codec
+     * @return true if the key is present in the last scanned string
+     */
+    public boolean contains(int key) {
+        return bounds[2 * key] >= 0;
+    }
+
+    /**
+     * @param key index of the key in the keys of the codec
+     * @return the value of the key in the last scanned string, or null if it is absent
+     */
+    public String value(int key) {
+        if (!contains(key)) {
+            return null;
+        }
+        return data.substring(bounds[2 * key], bounds[2 * key + 1]);
+    }
+
+    /**
+     * Compare the value of a key with a string without extracting the value.
+     *
+     * @param key      index of the key in the keys of the codec
+     * @param expected the expected value
+     * @return true if the key is present and its value is equal to the expected value
+     */
+    public boolean valueEquals(int key, String expected) {
+        int start = bounds[2 * key];
+        int end = bounds[2 * key + 1];
+        return start >= 0 && end - start == expected.length() && data.regionMatches(start, expected, 0, end - start);
+    }
+
+    /**
+     * Append "key=value" for a key of the codec to a builder, copying the value straight from the last scanned
+     * string. Absent keys are appended with the value "null".
+     *
+     * @param builder the builder to append to
+     * @param key     index of the key in the keys of the codec
+     * @return the builder
+     */
+    public StringBuilder appendEntry(StringBuilder builder, int key) {
+        builder.append(keys[key]).append('=');
+        if (contains(key)) {
+            builder.append(data, bounds[2 * key], bounds[2 * key + 1]);
+        } else {
+            builder.append(ABSENT_VALUE);
+        }
+        return builder;
+    }
+
+    /**
+     * Insert the protocol type and the destination type into the queue info of a binding. The exchange and queue info
+     * are trimmed, and anything after the routing key is dropped.
+     *
+     * @param bindingInfo  binding stored as "exchange|queue info|routing key"
+     * @param protocolType the protocol type to insert
+     * @return the modified binding
+     */
+    public static String rewriteBinding(String bindingInfo, String protocolType) {
+        int first = bindingInfo.indexOf('|');
+        int second = first < 0 ? -1 : bindingInfo.indexOf('|', first + 1);
+        if (second < 0) {
+            throw new RuntimeException("Binding does not have an exchange, queue info and routing key: " + bindingInfo);
+        }
+        int third = bindingInfo.indexOf('|', second + 1);
+        int routingKeyEnd = third < 0 ? bindingInfo.length() : third;
+
+        StringBuilder builder = new StringBuilder(bindingInfo.length() + 48);
+        int start = skipLeadingWhitespace(bindingInfo, 0, first);
+        builder.append(bindingInfo, start, skipTrailingWhitespace(bindingInfo, start, first))
+                .append('|');
+        start = skipLeadingWhitespace(bindingInfo, first + 1, second);
+        builder.append(bindingInfo, start, skipTrailingWhitespace(bindingInfo, start, second))
+                .append(",protocolType=")
+                .append(protocolType)
+                .append(",destinationType=QUEUE")
+                .append('|')
+                .append(bindingInfo, second + 1, routingKeyEnd);
+        return builder.toString();
+    }
+
+    private int indexOfKey(String encoded, int start, int end) {
+        int length = end - start;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i].length() == length && encoded.regionMatches(start, keys[i], 0, length)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int skipLeadingWhitespace(String value, int start, int end) {
+        while (start < end && value.charAt(start) <= ' ') {
+            start++;
+        }
+        return start;
+    }
+
+    private static int skipTrailingWhitespace(String value, int start, int end) {
+        while (end > start && value.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return end;
+    }
+}
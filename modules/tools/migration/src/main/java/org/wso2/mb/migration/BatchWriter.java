@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.mb.migration;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Writes modified queues, bindings and subscriptions over a single connection using JDBC batches.
+ * <p/>
+ * The update statements are prepared once. Updates are collected with addBatch and sent to the database with
+ * executeBatch whenever the configured batch size is reached, each batch being committed as one transaction.
+ */
+public class BatchWriter implements RowWriter {
+
+    /**
+     * The connection all updates are written through. Auto commit is disabled for the life time of the writer.
+     */
+    private final Connection connection;
+
+    /**
+     * Number of updates collected before the batches are executed and committed
+     */
+    private final int batchSize;
+
+    private final PreparedStatement subscriptionStatement;
+    private final PreparedStatement queueStatement;
+    private final PreparedStatement bindingStatement;
+
+    /**
+     * Number of updates added since the last commit
+     */
+    private int pendingUpdates;
+
+    /**
+     * Number of updates committed through this writer
+     */
+    private long writtenRows;
+
+    public BatchWriter(Connection connection, int batchSize) throws SQLException {
+        this.connection = connection;
+        this.batchSize = batchSize;
+        connection.setAutoCommit(false);
+        subscriptionStatement = connection.prepareStatement(DBConnector.UPDATE_SUBSCRIPTION);
+        queueStatement = connection.prepareStatement(DBConnector.UPDATE_QUEUE);
+        bindingStatement = connection.prepareStatement(DBConnector.UPDATE_BINDING);
+    }
+
+    /**
+     * Add a subscription update to the current batch.
+     *
+     * @param subscription new subscription details
+     * @throws SQLException
+     */
+    @Override
+    public void writeSubscription(Subscription subscription) throws SQLException {
+        subscriptionStatement.setString(1, subscription.getSubscriptionData());
+        subscriptionStatement.setString(2, subscription.getDestinationType());
+        subscriptionStatement.setString(3, subscription.getIdentifier());
+        subscriptionStatement.addBatch();
+        updateAdded();
+    }
+
+    /**
+     * Add a queue update to the current batch.
+     *
+     * @param storageQueue the storage queue name
+     * @param queueData    new queue details
+     * @throws SQLException
+     */
+    @Override
+    public void writeQueue(String storageQueue, String queueData) throws SQLException {
+        queueStatement.setString(1, queueData);
+        queueStatement.setString(2, storageQueue);
+        queueStatement.addBatch();
+        updateAdded();
+    }
+
+    /**
+     * Add a binding update to the current batch.
+     *
+     * @param queueName      storage queue name
+     * @param bindingDetails new binding details
+     * @throws SQLException
+     */
+    @Override
+    public void writeBinding(String queueName, String bindingDetails) throws SQLException {
+        bindingStatement.setString(1, bindingDetails);
+        bindingStatement.setString(2, queueName);
+        bindingStatement.addBatch();
+        updateAdded();
+    }
+
+    /**
+     * Execute all pending batches and commit them. On failure the open transaction is rolled back.
+     *
+     * @throws SQLException
+     */
+    @Override
+    public void flush() throws SQLException {
+        if (pendingUpdates == 0) {
+            return;
+        }
+        try {
+            subscriptionStatement.executeBatch();
+            queueStatement.executeBatch();
+            bindingStatement.executeBatch();
+            connection.commit();
+        } catch (SQLException e) {
+            pendingUpdates = 0;
+            subscriptionStatement.clearBatch();
+            queueStatement.clearBatch();
+            bindingStatement.clearBatch();
+            connection.rollback();
+            throw e;
+        }
+        writtenRows = writtenRows + pendingUpdates;
+        pendingUpdates = 0;
+    }
+
+    /**
+     * @return the number of updates committed through this writer
+     */
+    @Override
+    public long getWrittenRows() {
+        return writtenRows;
+    }
+
+    /**
+     * Flush the pending updates and release the statements. The connection is left open for the caller to close.
+     *
+     * @throws SQLException
+     */
+    @Override
+    public void close() throws SQLException {
+        try {
+            flush();
+        } finally {
+            subscriptionStatement.close();
+            queueStatement.close();
+            bindingStatement.close();
+        }
+    }
+
+    private void updateAdded() throws SQLException {
+        pendingUpdates = pendingUpdates + 1;
+        if (pendingUpdates >= batchSize) {
+            flush();
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.mb.migration;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Records the progress of a migration run in a properties file, so that an interrupted run can be resumed.
+ * <p/>
+ * For each table the file holds the key of the last committed row of every worker, and whether the table has been
+ * completely migrated. Rows of a table are handed to each worker in key order, therefore all rows of a worker up to
+ * its recorded key have been committed.
+ */
+public class Checkpoint {
+
+    private static final String WORKERS = "workers";
+    private static final String COMPLETE = ".complete";
+    private static final String WORKER = ".worker.";
+
+    /**
+     * The file the checkpoint is stored in
+     */
+    private final File file;
+
+    private final Properties progress = new Properties();
+
+    public Checkpoint(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Load the progress recorded by a previous run. An absent file is treated as a run without progress.
+     *
+     * @throws IOException
+     */
+    public synchronized void load() throws IOException {
+        progress.clear();
+        if (file.exists()) {
+            try (Reader reader = new FileReader(file)) {
+                progress.load(reader);
+            }
+        }
+    }
+
+    /**
+     * Discard any recorded progress and start recording a new run.
+     *
+     * @param workers number of workers of the run
+     * @throws IOException
+     */
+    public synchronized void reset(int workers) throws IOException {
+        progress.clear();
+        progress.setProperty(WORKERS, String.valueOf(workers));
+        store();
+    }
+
+    /**
+     * @return the number of workers of the run that recorded the progress, or 0 if no progress is recorded
+     */
+    public synchronized int getWorkers() {
+        return Integer.parseInt(progress.getProperty(WORKERS, "0"));
+    }
+
+    /**
+     * Record the key of the last committed row of a worker.
+     *
+     * @param table  the table the row belongs to
+     * @param worker index of the worker
+     * @param key    key of the row
+     * @throws IOException
+     */
+    public synchronized void record(String table, int worker, String key) throws IOException {
+        if (null != key) {
+            progress.setProperty(table + WORKER + worker, key);
+            store();
+        }
+    }
+
+    /**
+     * Record that all rows of a table have been committed.
+     *
+     * @param table the table
+     * @throws IOException
+     */
+    public synchronized void markComplete(String table) throws IOException {
+        progress.setProperty(table + COMPLETE, Boolean.TRUE.toString());
+        store();
+    }
+
+    /**
+     * @param table the table
+     * @return true if all rows of the table have been committed
+     */
+    public synchronized boolean isComplete(String table) {
+        return Boolean.parseBoolean(progress.getProperty(table + COMPLETE));
+    }
+
+    /**
+     * Get the keys of the last committed row of every worker for a table. Rows before the smallest of these keys
+     * have been committed by all workers.
+     *
+     * @param table the table
+     * @return the recorded keys, or null if not every worker has recorded a key for the table
+     */
+    public synchronized List<String> getWorkerKeys(String table) {
+        int workers = getWorkers();
+        if (workers == 0) {
+            return null;
+        }
+        List<String> keys = new ArrayList<>(workers);
+        for (int i = 0; i < workers; i++) {
+            String key = progress.getProperty(table + WORKER + i);
+            if (null == key) {
+                return null;
+            }
+            keys.add(key);
+        }
+        return keys;
+    }
+
+    /**
+     * Write the progress to a temporary file and move it over the checkpoint file, so that an interruption never
+     * leaves a partially written checkpoint behind.
+     */
+    private void store() throws IOException {
+        File temporaryFile = new File(file.getPath() + ".tmp");
+        try (Writer writer = new FileWriter(temporaryFile)) {
+            progress.store(writer, "Progress of the WSO2 MB migration tool");
+        }
+        Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+    }
+}
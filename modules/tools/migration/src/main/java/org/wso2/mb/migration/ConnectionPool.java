@@ -0,0 +1,271 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.mb.migration;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import javax.sql.DataSource;
+
+/**
+ * A fixed size pool of connections to the database.
+ * <p/>
+ * Connections are opened when first needed and kept open until the pool is closed. Closing a connection obtained from
+ * the pool closes the statements created through it, rolls back any uncommitted work, restores auto commit and returns
+ * it to the pool.
+ */
+public class ConnectionPool implements DataSource {
+
+    /**
+     * Number of seconds to wait for a connection to be returned when all connections are in use
+     */
+    private static final int ACQUIRE_TIMEOUT_SECONDS = 60;
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int size;
+
+    /**
+     * Open connections which are not in use
+     */
+    private final BlockingQueue<Connection> idleConnections = new LinkedBlockingQueue<>();
+
+    /**
+     * All open connections, used and idle
+     */
+    private final List<Connection> connections = new CopyOnWriteArrayList<>();
+
+    /**
+     * Permits to use a connection, one per connection of the pool
+     */
+    private final Semaphore permits;
+
+    private int loginTimeout;
+    private PrintWriter logWriter;
+
+    public ConnectionPool(String url, String user, String password, int size) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.size = size;
+        permits = new Semaphore(size, true);
+    }
+
+    /**
+     * Get a connection from the pool, opening one if none is idle. Waits for a connection to be returned if all
+     * connections of the pool are in use.
+     *
+     * @return a pooled connection, returned to the pool when it is closed
+     * @throws SQLException if no connection becomes available in time or a connection cannot be opened
+     */
+    @Override
+    public Connection getConnection() throws SQLException {
+        try {
+            if (!permits.tryAcquire(ACQUIRE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                throw new SQLException("All " + size + " connections of the pool are in use. Increase the poolsize.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        }
+        try {
+            Connection connection = idleConnections.poll();
+            if (null == connection) {
+                connection = DriverManager.getConnection(url, user, password);
+                connections.add(connection);
+            }
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                                                       new Class<?>[] { Connection.class },
+                                                       new PooledConnection(connection));
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("The pool only opens connections with its configured user");
+    }
+
+    /**
+     * Close all connections of the pool.
+     */
+    public void close() {
+        for (Connection connection : connections) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+        connections.clear();
+        idleConnections.clear();
+    }
+
+    /**
+     * Close the statements created through a pooled connection and return the connection to the pool, or drop it if
+     * it cannot be reset.
+     */
+    private void release(Connection connection, List<Statement> statements) {
+        try {
+            for (Statement statement : statements) {
+                statement.close();
+            }
+            if (!connection.isClosed() && !connection.getAutoCommit()) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+            if (connection.isClosed()) {
+                connections.remove(connection);
+            } else {
+                idleConnections.offer(connection);
+            }
+        } catch (SQLException e) {
+            connections.remove(connection);
+            try {
+                connection.close();
+            } catch (SQLException closeException) {
+                e.addSuppressed(closeException);
+            }
+            e.printStackTrace();
+        } finally {
+            permits.release();
+        }
+    }
+
+    @Override
+    public PrintWriter getLogWriter() {
+        return logWriter;
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) {
+        logWriter = out;
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) {
+        loginTimeout = seconds;
+    }
+
+    @Override
+    public int getLoginTimeout() {
+        return loginTimeout;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> type) throws SQLException {
+        if (type.isInstance(this)) {
+            return type.cast(this);
+        }
+        throw new SQLException("Not a wrapper of " + type.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> type) {
+        return type.isInstance(this);
+    }
+
+    /**
+     * Passes all calls on a pooled connection to the underlying connection, except close, which returns the
+     * underlying connection to the pool.
+     */
+    private class PooledConnection implements InvocationHandler {
+
+        private final Connection connection;
+
+        /**
+         * Statements created through the pooled connection and still open when the last one was created, closed when
+         * it is returned
+         */
+        private final List<Statement> statements = new ArrayList<>();
+
+        private boolean returned;
+
+        private PooledConnection(Connection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if ("close".equals(name)) {
+                if (!returned) {
+                    returned = true;
+                    release(connection, statements);
+                }
+                return null;
+            }
+            if ("isClosed".equals(name)) {
+                return returned || connection.isClosed();
+            }
+            if (returned) {
+                throw new SQLException("The connection has been returned to the pool");
+            }
+            Object result;
+            try {
+                result = method.invoke(connection, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            if (result instanceof Statement) {
+                // Long-lived connections prepare statements as they go, so forget the ones already closed
+                removeClosedStatements();
+                statements.add((Statement) result);
+            }
+            return result;
+        }
+
+        private void removeClosedStatements() {
+            Iterator<Statement> iterator = statements.iterator();
+            while (iterator.hasNext()) {
+                try {
+                    if (iterator.next().isClosed()) {
+                        iterator.remove();
+                    }
+                } catch (SQLException e) {
+                    // Kept to be closed when the connection is returned
+                }
+            }
+        }
+    }
+}
@@ -19,7 +19,6 @@
 package org.wso2.mb.migration;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -38,6 +37,27 @@ public class DBConnector {
     String USER;
     String PASS;
 
+    /**
+     * Number of rows fetched from the database at a time when tables are streamed
+     */
+    int fetchSize;
+
+    /**
+     * The database the configured driver connects to
+     */
+    DatabaseVendor vendor;
+
+    /**
+     * Whether modified rows are written with the fastest writer available for the database rather than with
+     * standard JDBC batches
+     */
+    boolean vendorWriters;
+
+    /**
+     * The pool all connections are taken from
+     */
+    ConnectionPool dataSource;
+
     Connection conn;
 
     // String constants to store table names and column names
@@ -50,11 +70,17 @@ public class DBConnector {
     static final String MB_QUEUE = "MB_QUEUE";
     static final String QUEUE_DATA = "QUEUE_DATA";
     static final String QUEUE_NAME = "QUEUE_NAME";
+    static final String EXCHANGE_NAME = "EXCHANGE_NAME";
+
+    // Number of rows fetched at a time when no "fetchsize" property is configured
+    static final int DEFAULT_FETCH_SIZE = 1000;
 
     // Prepared statements to read and write queues, bindings and subscriptions
     static final String GET_SUBSCRIPTION = "SELECT * FROM MB_DURABLE_SUBSCRIPTION";
     static final String GET_QUEUES = "SELECT * FROM " + MB_QUEUE;
     static final String GET_BINDINGS = "SELECT * FROM " + MB_BINDING;
+    static final String ORDER_BY_QUEUE_NAME = " ORDER BY " + QUEUE_NAME;
+    static final String FROM_QUEUE_NAME = " WHERE " + QUEUE_NAME + " >=?";
     static final String UPDATE_SUBSCRIPTION = "UPDATE " + DURABLE_SUB_TABLE + " SET " + DURABLE_SUB_DATA
                                               + " =?," + DESTINATINATION_TYPE + " =? WHERE " + DURABLE_SUB_ID + "=?";
 
@@ -71,24 +97,286 @@ public class DBConnector {
         try {
 
             // Initialize the Driver and the connection parameters
-            Class.forName(properties.getProperty("driverclassname"));
-            DB_URL=properties.getProperty("dburl");
+            String driverClassName = properties.getProperty("driverclassname");
+            Class.forName(driverClassName);
+            vendor = DatabaseVendor.fromDriverClass(driverClassName);
+            vendorWriters = Boolean.parseBoolean(properties.getProperty("vendorwriters", "true"));
+            DB_URL = prepareUrl(vendor, vendorWriters, properties.getProperty("dburl"));
             USER = properties.getProperty("dbuser");
             PASS = properties.getProperty("dbpassword");
+            fetchSize = Integer.parseInt(properties.getProperty("fetchsize", String.valueOf(DEFAULT_FETCH_SIZE)));
+
+            // Parallel runs need a connection per worker and one to read through
+            int workers = Integer.parseInt(properties.getProperty(
+                    "workers", String.valueOf(Runtime.getRuntime().availableProcessors())));
+            int poolSize = Integer.parseInt(properties.getProperty("poolsize", String.valueOf(workers + 1)));
+            dataSource = new ConnectionPool(DB_URL, USER, PASS, poolSize);
         } catch (ClassNotFoundException e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * Add the connection options the database needs to stream tables, and to execute batches efficiently when vendor
+     * writers are used, to a JDBC url.
+     *
+     * @param vendor        the database the configured driver connects to
+     * @param vendorWriters whether rows are written with the writers of the database
+     * @param url           the configured JDBC url
+     * @return the url to connect with
+     */
+    static String prepareUrl(DatabaseVendor vendor, boolean vendorWriters, String url) {
+        String streamingUrl = vendor.prepareStreamingUrl(url);
+        return vendorWriters ? vendor.prepareUrl(streamingUrl) : streamingUrl;
+    }
+
     public Connection getConnection(){
         try {
-            conn = DriverManager.getConnection(DB_URL, USER, PASS);
+            conn = dataSource.getConnection();
         } catch (SQLException e) {
             e.printStackTrace();
         }
         return conn;
     }
 
+    /**
+     * Take a connection from the pool. Unlike {@link #getConnection()} the connection is not shared, the caller owns
+     * it and is responsible for closing it, which returns it to the pool.
+     *
+     * @return a pooled database connection
+     * @throws SQLException
+     */
+    public Connection createConnection() throws SQLException {
+        return dataSource.getConnection();
+    }
+
+    /**
+     * Create a writer for modified rows over a connection, using the fastest way to write to the configured database
+     * unless the "vendorwriters" property is false.
+     *
+     * @param connection the connection to write through
+     * @param batchSize  number of updates committed at a time
+     * @return a writer over the connection
+     * @throws SQLException
+     */
+    public RowWriter createWriter(Connection connection, int batchSize) throws SQLException {
+        if (vendorWriters) {
+            return vendor.createWriter(connection, batchSize);
+        }
+        return new BatchWriter(connection, batchSize);
+    }
+
+    /**
+     * Close all the connections of the pool.
+     */
+    public void close() {
+        if (null != dataSource) {
+            dataSource.close();
+        }
+    }
+
+    /**
+     * Take a connection from the pool to stream tables through. Auto commit is disabled since some drivers, such as the
+     * PostgreSQL driver, only use cursor based fetching within a transaction. The caller is responsible for closing
+     * the connection.
+     *
+     * @return a pooled database connection for reading
+     * @throws SQLException
+     */
+    public Connection createStreamingConnection() throws SQLException {
+        Connection connection = createConnection();
+        connection.setAutoCommit(false);
+        return connection;
+    }
+
+    /**
+     * Count the rows stored in a table.
+     *
+     * @param connection the connection to read through
+     * @param table      the table
+     * @return the number of rows of the table
+     * @throws SQLException
+     */
+    public long countRows(Connection connection, String table) throws SQLException {
+        try (PreparedStatement preparedStatement = connection.prepareStatement("SELECT COUNT(*) FROM " + table);
+             ResultSet resultSet = preparedStatement.executeQuery()) {
+            return resultSet.next() ? resultSet.getLong(1) : 0;
+        }
+    }
+
+    /**
+     * Stream all the subscriptions stored in the database to the given handler, fetching them in chunks of the
+     * configured fetch size over a forward only, read only result set.
+     *
+     * @param connection the connection to read through. It should not be used for writing while streaming.
+     * @param handler    the handler receiving the subscriptions
+     * @return the number of subscriptions read
+     * @throws SQLException
+     * @throws InterruptedException if the handler is interrupted
+     */
+    public int streamSubscriptions(Connection connection, RowHandler<? super Subscription> handler)
+            throws SQLException, InterruptedException {
+        int rows = 0;
+        try (PreparedStatement preparedStatement = prepareStreamingStatement(connection, GET_SUBSCRIPTION);
+             ResultSet resultSet = preparedStatement.executeQuery()) {
+            while (resultSet.next()) {
+                String subId = resultSet.getString(DURABLE_SUB_ID);
+                String destType = resultSet.getString(DESTINATINATION_TYPE);
+                String subData = resultSet.getString(DURABLE_SUB_DATA);
+                handler.handle(new Subscription(subId, destType, subData));
+                rows = rows + 1;
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Stream all queues stored in the database to the given handler.
+     *
+     * @param connection the connection to read through. It should not be used for writing while streaming.
+     * @param handler    the handler receiving the queues
+     * @return the number of queues read
+     * @throws SQLException
+     * @throws InterruptedException if the handler is interrupted
+     */
+    public int streamQueues(Connection connection, RowHandler<? super Queue> handler)
+            throws SQLException, InterruptedException {
+        try (PreparedStatement preparedStatement = prepareStreamingStatement(connection, GET_QUEUES)) {
+            return streamQueues(preparedStatement, handler);
+        }
+    }
+
+    /**
+     * Stream the queues stored in the database to the given handler in the order of their names, starting from the
+     * given queue name.
+     *
+     * @param connection    the connection to read through. It should not be used for writing while streaming.
+     * @param fromQueueName name of the first queue to be read, or null to read all queues
+     * @param handler       the handler receiving the queues
+     * @return the number of queues read
+     * @throws SQLException
+     * @throws InterruptedException if the handler is interrupted
+     */
+    public int streamQueues(Connection connection, String fromQueueName, RowHandler<? super Queue> handler)
+            throws SQLException, InterruptedException {
+        try (PreparedStatement preparedStatement = prepareOrderedStatement(connection, GET_QUEUES, fromQueueName)) {
+            return streamQueues(preparedStatement, handler);
+        }
+    }
+
+    private int streamQueues(PreparedStatement preparedStatement, RowHandler<? super Queue> handler)
+            throws SQLException, InterruptedException {
+        int rows = 0;
+        try (ResultSet resultSet = preparedStatement.executeQuery()) {
+            while (resultSet.next()) {
+                String name = resultSet.getString(QUEUE_NAME);
+                String data = resultSet.getString(QUEUE_DATA);
+                handler.handle(new Queue(name, data));
+                rows = rows + 1;
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Stream all bindings stored in the database to the given handler.
+     *
+     * @param connection the connection to read through. It should not be used for writing while streaming.
+     * @param handler    the handler receiving the bindings
+     * @return the number of bindings read
+     * @throws SQLException
+     * @throws InterruptedException if the handler is interrupted
+     */
+    public int streamBindings(Connection connection, RowHandler<? super Binding> handler)
+            throws SQLException, InterruptedException {
+        try (PreparedStatement preparedStatement = prepareStreamingStatement(connection, GET_BINDINGS)) {
+            return streamBindings(preparedStatement, handler);
+        }
+    }
+
+    /**
+     * Stream the bindings stored in the database to the given handler in the order of their queue names, starting
+     * from the given queue name.
+     *
+     * @param connection    the connection to read through. It should not be used for writing while streaming.
+     * @param fromQueueName queue name of the first binding to be read, or null to read all bindings
+     * @param handler       the handler receiving the bindings
+     * @return the number of bindings read
+     * @throws SQLException
+     * @throws InterruptedException if the handler is interrupted
+     */
+    public int streamBindings(Connection connection, String fromQueueName, RowHandler<? super Binding> handler)
+            throws SQLException, InterruptedException {
+        try (PreparedStatement preparedStatement = prepareOrderedStatement(connection, GET_BINDINGS,
+                                                                           fromQueueName)) {
+            return streamBindings(preparedStatement, handler);
+        }
+    }
+
+    private int streamBindings(PreparedStatement preparedStatement, RowHandler<? super Binding> handler)
+            throws SQLException, InterruptedException {
+        int rows = 0;
+        try (ResultSet resultSet = preparedStatement.executeQuery()) {
+            while (resultSet.next()) {
+                String queueName = resultSet.getString(QUEUE_NAME);
+                String bindingDetails = resultSet.getString(BINDING_DETAILS);
+                String exchange = resultSet.getString(EXCHANGE_NAME);
+                handler.handle(new Binding(queueName, exchange, bindingDetails));
+                rows = rows + 1;
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Find the queue name which comes first in the order the database sorts queue names in.
+     *
+     * @param connection the connection to read through
+     * @param table      {@link #MB_QUEUE} or {@link #MB_BINDING}
+     * @param queueNames the queue names to choose from
+     * @return the first of the queue names present in the table, or null if none of them is present
+     * @throws SQLException
+     */
+    public String readFirstQueueName(Connection connection, String table, List<String> queueNames)
+            throws SQLException {
+        StringBuilder query = new StringBuilder("SELECT ").append(QUEUE_NAME).append(" FROM ").append(table)
+                .append(" WHERE ").append(QUEUE_NAME).append(" IN (");
+        for (int i = 0; i < queueNames.size(); i++) {
+            query.append(i == 0 ? "?" : ",?");
+        }
+        query.append(")").append(ORDER_BY_QUEUE_NAME);
+
+        try (PreparedStatement preparedStatement = connection.prepareStatement(query.toString())) {
+            for (int i = 0; i < queueNames.size(); i++) {
+                preparedStatement.setString(i + 1, queueNames.get(i));
+            }
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                if (resultSet.next()) {
+                    return resultSet.getString(QUEUE_NAME);
+                }
+            }
+        }
+        return null;
+    }
+
+    private PreparedStatement prepareOrderedStatement(Connection connection, String query, String fromQueueName)
+            throws SQLException {
+        if (null == fromQueueName) {
+            return prepareStreamingStatement(connection, query + ORDER_BY_QUEUE_NAME);
+        }
+        PreparedStatement preparedStatement =
+                prepareStreamingStatement(connection, query + FROM_QUEUE_NAME + ORDER_BY_QUEUE_NAME);
+        preparedStatement.setString(1, fromQueueName);
+        return preparedStatement;
+    }
+
+    private PreparedStatement prepareStreamingStatement(Connection connection, String query) throws SQLException {
+        PreparedStatement preparedStatement =
+                connection.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        preparedStatement.setFetchSize(fetchSize);
+        return preparedStatement;
+    }
+
     /**
      * Receives all the subscriptions stored in the database.
      *
@@ -101,18 +389,33 @@ public class DBConnector {
         List<Subscription> subscribers = new ArrayList<>();
 
         try {
-            PreparedStatement preparedStatement = conn.prepareStatement(GET_SUBSCRIPTION);
-            ResultSet resultSet = preparedStatement.executeQuery();
+            subscribers = readSubscriptions(conn);
+        } catch (SQLException e) {
+            e.printStackTrace();
+        } finally {
+            conn.close();
+        }
+        return subscribers;
+    }
+
+    /**
+     * Receives all the subscriptions stored in the database using the given connection. The connection is not
+     * closed.
+     *
+     * @param connection the connection to read through
+     * @return the list of Subscriptions
+     * @throws SQLException
+     */
+    public List<Subscription> readSubscriptions(Connection connection) throws SQLException {
+        List<Subscription> subscribers = new ArrayList<>();
+        try (PreparedStatement preparedStatement = connection.prepareStatement(GET_SUBSCRIPTION);
+             ResultSet resultSet = preparedStatement.executeQuery()) {
             while (resultSet.next()) {
                 String subId = resultSet.getString(DURABLE_SUB_ID);
                 String destType = resultSet.getString(DESTINATINATION_TYPE);
                 String subData = resultSet.getString(DURABLE_SUB_DATA);
                 subscribers.add(new Subscription(subId, destType, subData));
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        } finally {
-            conn.close();
         }
         return subscribers;
     }
@@ -252,17 +555,31 @@ public class DBConnector {
         List<Queue> queues = new ArrayList<>();
 
         try {
-            PreparedStatement preparedStatement = conn.prepareStatement(GET_QUEUES);
-            ResultSet resultSet = preparedStatement.executeQuery();
+            queues = readQueues(conn);
+        } catch (SQLException e) {
+            e.printStackTrace();
+        } finally {
+            conn.close();
+        }
+        return queues;
+    }
+
+    /**
+     * Retrieve all queues from the database using the given connection. The connection is not closed.
+     *
+     * @param connection the connection to read through
+     * @return a list of queues
+     * @throws SQLException
+     */
+    public List<Queue> readQueues(Connection connection) throws SQLException {
+        List<Queue> queues = new ArrayList<>();
+        try (PreparedStatement preparedStatement = connection.prepareStatement(GET_QUEUES);
+             ResultSet resultSet = preparedStatement.executeQuery()) {
             while (resultSet.next()) {
                 String name = resultSet.getString(QUEUE_NAME);
                 String data = resultSet.getString(QUEUE_DATA);
                 queues.add(new Queue(name, data));
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        } finally {
-            conn.close();
         }
         return queues;
     }
@@ -277,18 +594,32 @@ public class DBConnector {
         getConnection();
         List<Binding> bindings = new ArrayList<>();
         try {
-            PreparedStatement preparedStatement = conn.prepareStatement(GET_BINDINGS);
-            ResultSet resultSet = preparedStatement.executeQuery();
+            bindings = readBindings(conn);
+        } catch (SQLException e) {
+            e.printStackTrace();
+        } finally {
+            conn.close();
+        }
+        return bindings;
+    }
+
+    /**
+     * Retrieve all the bindings from the database using the given connection. The connection is not closed.
+     *
+     * @param connection the connection to read through
+     * @return a list of bindings
+     * @throws SQLException
+     */
+    public List<Binding> readBindings(Connection connection) throws SQLException {
+        List<Binding> bindings = new ArrayList<>();
+        try (PreparedStatement preparedStatement = connection.prepareStatement(GET_BINDINGS);
+             ResultSet resultSet = preparedStatement.executeQuery()) {
             while (resultSet.next()) {
                 String queueName = resultSet.getString(QUEUE_NAME);
                 String bindingDetails = resultSet.getString(BINDING_DETAILS);
-                String exchange = resultSet.getString("EXCHANGE_NAME");
+                String exchange = resultSet.getString(EXCHANGE_NAME);
                 bindings.add(new Binding(queueName, exchange, bindingDetails));
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        } finally {
-            conn.close();
         }
         return bindings;
     }
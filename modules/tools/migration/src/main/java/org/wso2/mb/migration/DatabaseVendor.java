@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.mb.migration;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * The databases the migration tool knows how to write to most efficiently, identified by the configured JDBC driver.
+ * Databases which are not listed are written to with standard JDBC batches.
+ */
+public enum DatabaseVendor {
+
+    /**
+     * MySQL only sends a JDBC batch as one statement when the driver is asked to rewrite batched statements, and
+     * only honours the fetch size of a result set when it is asked to fetch rows with a cursor. Otherwise
+     * Connector/J reads the whole result set into memory before returning the first row.
+     */
+    MYSQL("com.mysql.jdbc.Driver", "com.mysql.cj.jdbc.Driver") {
+        @Override
+        public String prepareUrl(String url) {
+            return addOption(url, REWRITE_BATCHED_STATEMENTS);
+        }
+
+        @Override
+        public String prepareStreamingUrl(String url) {
+            return addOption(url, USE_CURSOR_FETCH);
+        }
+    },
+
+    /**
+     * PostgreSQL is written to with multi row updates
+     */
+    POSTGRESQL("org.postgresql.Driver") {
+        @Override
+        public RowWriter createWriter(Connection connection, int batchSize) throws SQLException {
+            return new PostgreSqlBatchWriter(connection, batchSize);
+        }
+    },
+
+    /**
+     * The Oracle driver already binds the parameters of a JDBC batch as arrays and sends them in one round trip
+     */
+    ORACLE("oracle.jdbc.driver.OracleDriver", "oracle.jdbc.OracleDriver"),
+
+    /**
+     * Microsoft SQL Server, through the jTDS or the Microsoft driver. Table valued parameters need driver specific
+     * classes and a table type created in the database, therefore standard JDBC batches are used.
+     */
+    MSSQL("net.sourceforge.jtds.jdbc.Driver", "com.microsoft.sqlserver.jdbc.SQLServerDriver"),
+
+    H2("org.h2.Driver"),
+
+    OTHER;
+
+    private static final String REWRITE_BATCHED_STATEMENTS = "rewriteBatchedStatements";
+
+    private static final String USE_CURSOR_FETCH = "useCursorFetch";
+
+    /**
+     * Class names of the JDBC drivers of the database
+     */
+    private final String[] driverClassNames;
+
+    DatabaseVendor(String... driverClassNames) {
+        this.driverClassNames = driverClassNames;
+    }
+
+    /**
+     * @param driverClassName class name of the configured JDBC driver
+     * @return the database the driver connects to, or OTHER if it is not known
+     */
+    public static DatabaseVendor fromDriverClass(String driverClassName) {
+        for (DatabaseVendor vendor : values()) {
+            for (String vendorDriverClassName : vendor.driverClassNames) {
+                if (vendorDriverClassName.equals(driverClassName)) {
+                    return vendor;
+                }
+            }
+        }
+        return OTHER;
+    }
+
+    /**
+     * Add the connection options the database needs to execute batches efficiently to a JDBC url.
+     *
+     * @param url the configured JDBC url
+     * @return the url to connect with
+     */
+    public String prepareUrl(String url) {
+        return url;
+    }
+
+    /**
+     * Add the connection options the database needs to stream result sets "fetchsize" rows at a time to a JDBC url.
+     *
+     * @param url the configured JDBC url
+     * @return the url to connect with
+     */
+    public String prepareStreamingUrl(String url) {
+        return url;
+    }
+
+    /**
+     * Enable a boolean connection option in a JDBC url, unless the url sets it already.
+     *
+     * @param url    the JDBC url
+     * @param option name of the option
+     * @return the url with the option
+     */
+    private static String addOption(String url, String option) {
+        if (url.contains(option)) {
+            return url;
+        }
+        return url + (url.indexOf('?') < 0 ? '?' : '&') + option + "=true";
+    }
+
+    /**
+     * Create the fastest writer available for the database.
+     *
+     * @param connection the connection to write through
+     * @param batchSize  number of updates committed at a time
+     * @return a writer over the connection
+     * @throws SQLException
+     */
+    public RowWriter createWriter(Connection connection, int batchSize) throws SQLException {
+        return new BatchWriter(connection, batchSize);
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.mb.migration;
+
+/**
+ * Writer used by dry runs. Counts the rows which would be written without writing them.
+ */
+public class DryRunWriter implements RowWriter {
+
+    private long writtenRows;
+
+    @Override
+    public void writeSubscription(Subscription subscription) {
+        writtenRows = writtenRows + 1;
+    }
+
+    @Override
+    public void writeQueue(String storageQueue, String queueData) {
+        writtenRows = writtenRows + 1;
+    }
+
+    @Override
+    public void writeBinding(String queueName, String bindingDetails) {
+        writtenRows = writtenRows + 1;
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public long getWrittenRows() {
+        return writtenRows;
+    }
+
+    @Override
+    public void close() {
+    }
+}
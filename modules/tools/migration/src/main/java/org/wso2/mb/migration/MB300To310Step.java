@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.mb.migration;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Migrates from MB 3.0.0 to MB 3.1.0, which adds the protocol type and the destination type to subscriptions, queues
+ * and bindings. Queues and bindings get the protocol type of the subscription bound to their storage queue, or the
+ * default protocol type if no subscription is bound to it.
+ */
+public class MB300To310Step implements MigrationStep {
+
+    /**
+     * Name of the shared map holding the protocol type of the subscription bound to each storage queue
+     */
+    static final String BOUND_QUEUES = "mb310.boundQueues";
+
+    private static final Map<String, List<String>> COLUMNS = new LinkedHashMap<>();
+
+    static {
+        COLUMNS.put(DBConnector.DURABLE_SUB_TABLE,
+                    Arrays.asList(DBConnector.DURABLE_SUB_DATA, DBConnector.DESTINATINATION_TYPE));
+        COLUMNS.put(DBConnector.MB_QUEUE, Arrays.asList(DBConnector.QUEUE_DATA));
+        COLUMNS.put(DBConnector.MB_BINDING, Arrays.asList(DBConnector.BINDING_DETAILS));
+    }
+
+    /**
+     * Modifiers keep the state of the last modified subscription and therefore are not shared between workers
+     */
+    private final Modifier modifier = new Modifier();
+
+    private int idleQueues;
+    private int idleBindings;
+
+    @Override
+    public String getFromVersion() {
+        return "3.0.0";
+    }
+
+    @Override
+    public String getToVersion() {
+        return "3.1.0";
+    }
+
+    @Override
+    public Map<String, List<String>> getColumns() {
+        return COLUMNS;
+    }
+
+    /**
+     * Modify a subscription, queue or binding. The protocol type of the storage queue of a subscription is recorded
+     * even if the subscription has already been modified, since its queue and bindings may not have been.
+     */
+    @Override
+    public boolean apply(Object row, MigrationContext context) {
+        Map<String, String> boundQueues = context.getMap(BOUND_QUEUES);
+        if (row instanceof Subscription) {
+            Subscription subscription = (Subscription) row;
+            boolean migrated = modifier.isMigrated(subscription.getSubscriptionData());
+            subscription.setDestinationType(modifier.modifyDestinationType(subscription.getDestinationType()));
+            subscription.setSubscriptionData(modifier.modifySubscription(subscription.getSubscriptionData()));
+            if (null != modifier.getStorageQueueName()) {
+                boundQueues.put(modifier.getStorageQueueName(), modifier.getProtocolType());
+            }
+            return !migrated;
+        } else if (row instanceof Queue) {
+            Queue queue = (Queue) row;
+            if (modifier.isMigrated(queue.getQueueData())) {
+                return false;
+            }
+            String protocolType = boundQueues.get(queue.getQueueName());
+            if (null != protocolType) {
+                queue.setQueueData(modifier.modifyQueue(queue.getQueueData(), protocolType));
+            } else {
+                idleQueues = idleQueues + 1;
+                queue.setQueueData(modifier.modifyDefaultQueue(queue.getQueueData()));
+            }
+            return true;
+        } else if (row instanceof Binding) {
+            Binding binding = (Binding) row;
+            if (modifier.isMigrated(binding.getBindingDetails())) {
+                return false;
+            }
+            String protocolType = boundQueues.get(binding.getQueueName());
+            if (null != protocolType) {
+                binding.setBindingDetails(modifier.modifyBinding(binding.getBindingDetails(), protocolType));
+            } else {
+                idleBindings = idleBindings + 1;
+                binding.setBindingDetails(modifier.modifyDefaultBinding(binding.getBindingDetails()));
+            }
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public Map<String, Integer> getCounters() {
+        Map<String, Integer> counters = new LinkedHashMap<>();
+        counters.put("queues without subscriptions", idleQueues);
+        counters.put("bindings without subscriptions", idleBindings);
+        return counters;
+    }
+}
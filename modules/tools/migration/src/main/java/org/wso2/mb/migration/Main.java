@@ -22,6 +22,19 @@ public class Main {
     public static void main(String[] args) {
 
        Processor processor =  new Processor();
-        processor.modifyTables();
+        for (String arg : args) {
+            if ("--resume".equals(arg)) {
+                processor.setResume(true);
+            } else if ("--dry-run".equals(arg)) {
+                processor.setDryRun(true);
+            } else if ("--verify".equals(arg)) {
+                processor.setVerify(true);
+            }
+        }
+        try {
+            processor.modifyTables();
+        } finally {
+            processor.close();
+        }
     }
 }
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.mb.migration;
+
+import java.sql.SQLException;
+
+/**
+ * Wraps a writer to record in the metrics of the run how many rows of each table it commits, and how long each commit
+ * takes. Writers commit on their own once a batch is full, therefore a commit is detected by the number of written
+ * rows of the wrapped writer changing during a call.
+ */
+public class MeasuredWriter implements RowWriter {
+
+    private final RowWriter writer;
+    private final MigrationMetrics metrics;
+
+    /**
+     * Number of rows of each table written since the last commit
+     */
+    private long pendingSubscriptions;
+    private long pendingQueues;
+    private long pendingBindings;
+
+    /**
+     * Number of rows committed by the wrapped writer when the last commit was recorded
+     */
+    private long committedRows;
+
+    public MeasuredWriter(RowWriter writer, MigrationMetrics metrics) {
+        this.writer = writer;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void writeSubscription(Subscription subscription) throws SQLException {
+        pendingSubscriptions = pendingSubscriptions + 1;
+        long startTime = System.nanoTime();
+        try {
+            writer.writeSubscription(subscription);
+        } catch (SQLException | RuntimeException e) {
+            // The wrapped writer rolled back and discarded its pending rows
+            clearPending();
+            throw e;
+        }
+        recordCommit(startTime);
+    }
+
+    @Override
+    public void writeQueue(String storageQueue, String queueData) throws SQLException {
+        pendingQueues = pendingQueues + 1;
+        long startTime = System.nanoTime();
+        try {
+            writer.writeQueue(storageQueue, queueData);
+        } catch (SQLException | RuntimeException e) {
+            // The wrapped writer rolled back and discarded its pending rows
+            clearPending();
+            throw e;
+        }
+        recordCommit(startTime);
+    }
+
+    @Override
+    public void writeBinding(String queueName, String bindingDetails) throws SQLException {
+        pendingBindings = pendingBindings + 1;
+        long startTime = System.nanoTime();
+        try {
+            writer.writeBinding(queueName, bindingDetails);
+        } catch (SQLException | RuntimeException e) {
+            // The wrapped writer rolled back and discarded its pending rows
+            clearPending();
+            throw e;
+        }
+        recordCommit(startTime);
+    }
+
+    @Override
+    public void flush() throws SQLException {
+        long startTime = System.nanoTime();
+        try {
+            writer.flush();
+        } catch (SQLException | RuntimeException e) {
+            // The wrapped writer rolled back and discarded its pending rows
+            clearPending();
+            throw e;
+        }
+        recordCommit(startTime);
+    }
+
+    @Override
+    public long getWrittenRows() {
+        return writer.getWrittenRows();
+    }
+
+    @Override
+    public void close() throws SQLException {
+        long startTime = System.nanoTime();
+        try {
+            writer.close();
+        } catch (SQLException | RuntimeException e) {
+            // The wrapped writer rolled back and discarded its pending rows
+            clearPending();
+            throw e;
+        }
+        recordCommit(startTime);
+    }
+
+    /**
+     * Record the pending rows as committed if the wrapped writer committed them during the call started at the given
+     * time.
+     */
+    private void recordCommit(long startTime) {
+        long writtenRows = writer.getWrittenRows();
+        if (writtenRows != committedRows) {
+            metrics.batchCommitted(System.nanoTime() - startTime, pendingSubscriptions, pendingQueues,
+                                   pendingBindings);
+            committedRows = writtenRows;
+            clearPending();
+        }
+    }
+
+    private void clearPending() {
+        pendingSubscriptions = 0;
+        pendingQueues = 0;
+        pendingBindings = 0;
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.mb.migration;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * State shared by the steps of all workers of a migration, such as what a step records from the subscriptions to
+ * modify the queues and bindings.
+ */
+public class MigrationContext {
+
+    private final ConcurrentMap<String, ConcurrentMap<?, ?>> maps = new ConcurrentHashMap<>();
+
+    /**
+     * Get a map shared by all workers, creating it on first use.
+     *
+     * @param name name of the map, unique within the migration
+     * @return the map
+     */
+    @SuppressWarnings("unchecked")
+    public <K, V> ConcurrentMap<K, V> getMap(String name) {
+        ConcurrentMap<?, ?> map = maps.get(name);
+        if (null == map) {
+            ConcurrentMap<K, V> newMap = new ConcurrentHashMap<>();
+            map = maps.putIfAbsent(name, newMap);
+            if (null == map) {
+                map = newMap;
+            }
+        }
+        return (ConcurrentMap<K, V>) map;
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.mb.migration;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the rows read, transformed and written for each table of a migration run, and the latency of the committed
+ * batches. The counters are updated by the reading thread and by the workers, and can be read at any time to report
+ * the progress of the run.
+ */
+public class MigrationMetrics {
+
+    private static final String[] TABLES =
+            { DBConnector.DURABLE_SUB_TABLE, DBConnector.MB_QUEUE, DBConnector.MB_BINDING };
+
+    private final Map<String, TableMetrics> tables = new LinkedHashMap<>();
+
+    private final LatencyHistogram commitLatency = new LatencyHistogram();
+
+    /**
+     * Value of {@link System#nanoTime()} when the run started
+     */
+    private final long startTime = System.nanoTime();
+
+    /**
+     * Wall clock time the run started at, for the report
+     */
+    private final Date startDate = new Date();
+
+    public MigrationMetrics() {
+        for (String table : TABLES) {
+            tables.put(table, new TableMetrics());
+        }
+    }
+
+    /**
+     * Get the table a row belongs to.
+     *
+     * @param row a subscription, queue or binding
+     * @return the name of the table
+     */
+    static String tableOf(Object row) {
+        if (row instanceof Subscription) {
+            return DBConnector.DURABLE_SUB_TABLE;
+        } else if (row instanceof Queue) {
+            return DBConnector.MB_QUEUE;
+        } else if (row instanceof Binding) {
+            return DBConnector.MB_BINDING;
+        }
+        return null;
+    }
+
+    /**
+     * Set the number of rows of a table, used to estimate the remaining time of the run.
+     *
+     * @param table the table
+     * @param rows  number of rows stored in the table
+     */
+    public void setTotalRows(String table, long rows) {
+        tables.get(table).total.set(rows);
+    }
+
+    /**
+     * @param row a subscription, queue or binding read from the database
+     */
+    public void rowRead(Object row) {
+        tables.get(tableOf(row)).read.incrementAndGet();
+    }
+
+    /**
+     * @param row a subscription, queue or binding which has been modified and is about to be written
+     */
+    public void rowTransformed(Object row) {
+        tables.get(tableOf(row)).transformed.incrementAndGet();
+    }
+
+    /**
+     * Record a committed batch.
+     *
+     * @param nanos         time taken to write and commit the batch in nanoseconds
+     * @param subscriptions number of subscriptions committed
+     * @param queues        number of queues committed
+     * @param bindings      number of bindings committed
+     */
+    public void batchCommitted(long nanos, long subscriptions, long queues, long bindings) {
+        commitLatency.record(nanos);
+        tables.get(DBConnector.DURABLE_SUB_TABLE).written.addAndGet(subscriptions);
+        tables.get(DBConnector.MB_QUEUE).written.addAndGet(queues);
+        tables.get(DBConnector.MB_BINDING).written.addAndGet(bindings);
+    }
+
+    public LatencyHistogram getCommitLatency() {
+        return commitLatency;
+    }
+
+    /**
+     * @return seconds elapsed since the run started
+     */
+    public double getElapsedSeconds() {
+        return (System.nanoTime() - startTime) / 1e9;
+    }
+
+    /**
+     * Estimate the time left from the rate at which rows have been read so far.
+     *
+     * @return the estimated seconds left, or -1 if it cannot be estimated yet
+     */
+    public long getEtaSeconds() {
+        long total = 0;
+        long read = 0;
+        for (TableMetrics table : tables.values()) {
+            total = total + table.total.get();
+            read = read + table.read.get();
+        }
+        double elapsedSeconds = getElapsedSeconds();
+        if (read == 0 || total == 0 || elapsedSeconds <= 0) {
+            return -1;
+        }
+        return Math.round(Math.max(0, total - read) / (read / elapsedSeconds));
+    }
+
+    /**
+     * @return a one line summary of the progress of the run
+     */
+    public String progressLine() {
+        StringBuilder builder = new StringBuilder("Progress:");
+        long written = 0;
+        for (Map.Entry<String, TableMetrics> entry : tables.entrySet()) {
+            TableMetrics table = entry.getValue();
+            written = written + table.written.get();
+            builder.append(' ').append(entry.getKey()).append(' ')
+                   .append(table.read.get()).append('/').append(table.total.get()).append(" read, ")
+                   .append(table.written.get()).append(" written;");
+        }
+        double elapsedSeconds = getElapsedSeconds();
+        builder.append(String.format(" %d rows per second, commit p99 %.1f ms", elapsedSeconds > 0
+                                     ? Math.round(written / elapsedSeconds) : written,
+                                     commitLatency.getPercentile(99) / 1000.0));
+        long eta = getEtaSeconds();
+        if (eta >= 0) {
+            builder.append(String.format(", ETA %d:%02d:%02d", eta / 3600, eta / 60 % 60, eta % 60));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Write the counters of the run to a JSON file.
+     *
+     * @param file       the file to write
+     * @param mode       the migration mode of the run
+     * @param workers    number of workers of the run
+     * @param batchSize  number of updates committed together
+     * @throws IOException
+     */
+    public void writeReport(File file, String mode, int workers, int batchSize) throws IOException {
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.ROOT);
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        double elapsedSeconds = getElapsedSeconds();
+        long written = 0;
+
+        StringBuilder json = new StringBuilder("{\n");
+        json.append("  \"mode\": \"").append(mode).append("\",\n");
+        json.append("  \"workers\": ").append(workers).append(",\n");
+        json.append("  \"batchSize\": ").append(batchSize).append(",\n");
+        json.append("  \"startTime\": \"").append(dateFormat.format(startDate)).append("\",\n");
+        json.append(String.format(Locale.ROOT, "  \"elapsedSeconds\": %.3f,\n", elapsedSeconds));
+        json.append("  \"tables\": {");
+        String separator = "\n";
+        for (Map.Entry<String, TableMetrics> entry : tables.entrySet()) {
+            TableMetrics table = entry.getValue();
+            written = written + table.written.get();
+            json.append(separator).append("    \"").append(entry.getKey()).append("\": {")
+                .append("\"total\": ").append(table.total.get())
+                .append(", \"read\": ").append(table.read.get())
+                .append(", \"transformed\": ").append(table.transformed.get())
+                .append(", \"written\": ").append(table.written.get()).append('}');
+            separator = ",\n";
+        }
+        json.append("\n  },\n");
+        json.append("  \"rowsPerSecond\": ").append(elapsedSeconds > 0 ? Math.round(written / elapsedSeconds)
+                                                                       : written).append(",\n");
+        json.append("  \"commitLatencyMicros\": {")
+            .append("\"count\": ").append(commitLatency.getCount())
+            .append(String.format(Locale.ROOT, ", \"mean\": %.1f", commitLatency.getMean()))
+            .append(", \"p50\": ").append(commitLatency.getPercentile(50))
+            .append(", \"p90\": ").append(commitLatency.getPercentile(90))
+            .append(", \"p99\": ").append(commitLatency.getPercentile(99))
+            .append(", \"p999\": ").append(commitLatency.getPercentile(99.9))
+            .append(", \"max\": ").append(commitLatency.getMax()).append("}\n");
+        json.append("}\n");
+
+        try (Writer writer = new FileWriter(file)) {
+            writer.write(json.toString());
+        }
+    }
+
+    /**
+     * Counters of a single table
+     */
+    private static class TableMetrics {
+        private final AtomicLong total = new AtomicLong();
+        private final AtomicLong read = new AtomicLong();
+        private final AtomicLong transformed = new AtomicLong();
+        private final AtomicLong written = new AtomicLong();
+    }
+}
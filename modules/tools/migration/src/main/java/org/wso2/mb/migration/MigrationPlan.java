@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.mb.migration;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The chain of steps migrating the stored data from one MB version to another.
+ * <p/>
+ * The steps of a plan are fused: every row is read once, passed through all steps in order, and written once, however
+ * many versions the migration spans.
+ */
+public class MigrationPlan {
+
+    /**
+     * All known steps, one per version change. New steps are added here.
+     */
+    private static final List<Class<? extends MigrationStep>> STEPS =
+            Collections.<Class<? extends MigrationStep>>singletonList(MB300To310Step.class);
+
+    private final List<Class<? extends MigrationStep>> steps;
+
+    /**
+     * Versions of the plan, from the version migrated from to the version migrated to
+     */
+    private final List<String> versions;
+
+    /**
+     * Columns modified by the steps of the plan, by table
+     */
+    private final Map<String, Set<String>> columns = new LinkedHashMap<>();
+
+    private MigrationPlan(List<Class<? extends MigrationStep>> steps, List<String> versions) {
+        this.steps = steps;
+        this.versions = versions;
+        for (Class<? extends MigrationStep> step : steps) {
+            for (Map.Entry<String, List<String>> table : newStep(step).getColumns().entrySet()) {
+                Set<String> tableColumns = columns.get(table.getKey());
+                if (null == tableColumns) {
+                    tableColumns = new LinkedHashSet<>();
+                    columns.put(table.getKey(), tableColumns);
+                }
+                tableColumns.addAll(table.getValue());
+            }
+        }
+    }
+
+    /**
+     * Create the plan migrating from one version to another by chaining the known steps.
+     *
+     * @param fromVersion the version the stored data is in
+     * @param toVersion   the version to migrate to
+     * @return the plan
+     * @throws IllegalArgumentException if no chain of steps leads from one version to the other
+     */
+    public static MigrationPlan create(String fromVersion, String toVersion) {
+        List<Class<? extends MigrationStep>> chain = new ArrayList<>();
+        List<String> versions = new ArrayList<>();
+        versions.add(fromVersion);
+        String version = fromVersion;
+        while (!version.equals(toVersion)) {
+            Class<? extends MigrationStep> next = null;
+            for (Class<? extends MigrationStep> step : STEPS) {
+                MigrationStep instance = newStep(step);
+                if (instance.getFromVersion().equals(version)) {
+                    next = step;
+                    version = instance.getToVersion();
+                    break;
+                }
+            }
+            if (null == next || versions.contains(version)) {
+                throw new IllegalArgumentException("No migration from " + fromVersion + " to " + toVersion);
+            }
+            chain.add(next);
+            versions.add(version);
+        }
+        return new MigrationPlan(chain, versions);
+    }
+
+    /**
+     * Create the steps of the plan for a worker.
+     *
+     * @return new instances of the steps, in the order they are applied
+     */
+    public List<MigrationStep> newSteps() {
+        List<MigrationStep> instances = new ArrayList<>(steps.size());
+        for (Class<? extends MigrationStep> step : steps) {
+            instances.add(newStep(step));
+        }
+        return instances;
+    }
+
+    /**
+     * @param table a table
+     * @return true if a step of the plan modifies the table
+     */
+    public boolean modifies(String table) {
+        return columns.containsKey(table);
+    }
+
+    /**
+     * @return the columns modified by the plan, by table
+     */
+    public Map<String, Set<String>> getColumns() {
+        return columns;
+    }
+
+    /**
+     * @return the versions of the plan, such as "3.0.0 -> 3.1.0"
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (String version : versions) {
+            if (builder.length() > 0) {
+                builder.append(" -> ");
+            }
+            builder.append(version);
+        }
+        return builder.toString();
+    }
+
+    private static MigrationStep newStep(Class<? extends MigrationStep> step) {
+        try {
+            return step.newInstance();
+        } catch (InstantiationException | IllegalAccessException e) {
+            throw new IllegalStateException("Cannot create migration step " + step.getName(), e);
+        }
+    }
+}
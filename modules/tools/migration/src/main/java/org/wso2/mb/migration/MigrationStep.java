@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.mb.migration;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A change to the stored subscriptions, queues and bindings between two consecutive MB versions.
+ * <p/>
+ * A step is created for each worker and is only used by that worker, therefore it may keep state between rows. State
+ * shared by the workers is kept in the {@link MigrationContext}. Subscriptions are always applied before queues and
+ * bindings, so that a step can record what it needs from the subscriptions before the queues and bindings are
+ * modified.
+ */
+public interface MigrationStep {
+
+    /**
+     * @return the version the step migrates from, such as "3.0.0"
+     */
+    String getFromVersion();
+
+    /**
+     * @return the version the step migrates to, such as "3.1.0"
+     */
+    String getToVersion();
+
+    /**
+     * @return the columns the step modifies, by table. Tables which no step of a migration modifies are not read.
+     */
+    Map<String, List<String>> getColumns();
+
+    /**
+     * Modify a row in place. The step is applied to every row of the tables it declares, including rows it has
+     * already modified, which it must leave unchanged.
+     *
+     * @param row     a subscription, queue or binding
+     * @param context state shared by all workers of the migration
+     * @return true if the row was modified
+     */
+    boolean apply(Object row, MigrationContext context);
+
+    /**
+     * @return counters the step keeps about the rows it modified, by description, to be summed over all workers
+     */
+    Map<String, Integer> getCounters();
+}
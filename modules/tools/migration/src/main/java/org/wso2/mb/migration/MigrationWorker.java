@@ -0,0 +1,233 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.mb.migration;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Migrates subscriptions, queues and bindings through the steps of a migration plan and writes them through its own
+ * writer, usually a batch writer over its own connection. Every row is passed through all steps before it is written,
+ * so that a migration spanning several versions writes each row once.
+ * <p/>
+ * A worker can be driven directly through {@link #migrate(Object)}, or run on a thread pool where it migrates the rows
+ * handed to it through {@link #submit(Object)} until {@link #endPhase()} is called.
+ */
+public class MigrationWorker extends RowWorker implements AutoCloseable {
+
+    /**
+     * The steps applied by this worker. Steps may keep state between rows and therefore are not shared between
+     * workers.
+     */
+    private final List<MigrationStep> steps;
+
+    /**
+     * State shared by the steps of all the workers of a migration
+     */
+    private final MigrationContext context;
+
+    private final RowWriter writer;
+
+    /**
+     * Index of the worker, identifying its progress in the checkpoint
+     */
+    private final int id;
+
+    /**
+     * Checkpoint the key of the last committed row of each table is recorded in, null if progress is not recorded
+     */
+    private final Checkpoint checkpoint;
+
+    /**
+     * Checksums the modified rows are added to, null if checksums are not computed
+     */
+    private final TableChecksums checksums;
+
+    /**
+     * Metrics of the run the modified rows are counted in, null if the rows are not counted
+     */
+    private final MigrationMetrics metrics;
+
+    /**
+     * Key of the last modified or skipped row of each table
+     */
+    private final Map<String, String> lastKeys = new HashMap<>();
+
+    /**
+     * Number of rows committed when the progress was last recorded in the checkpoint
+     */
+    private long checkpointedRows;
+
+    private int skippedRows;
+    private int subscriptions;
+    private int queues;
+    private int bindings;
+
+    /**
+     * @param id            index of the worker
+     * @param writer        the writer the modified rows are written through. It is closed along with the worker.
+     * @param plan          the plan whose steps the worker applies
+     * @param context       state shared by the steps of all workers
+     * @param checkpoint    checkpoint to record the progress of the worker in, or null to not record progress
+     * @param checksums     checksums to add the modified rows to, or null to not compute checksums
+     * @param metrics       metrics to count the modified rows in, or null to not count them
+     * @param queueCapacity maximum number of submitted rows waiting to be modified
+     */
+    public MigrationWorker(int id, RowWriter writer, MigrationPlan plan, MigrationContext context,
+                           Checkpoint checkpoint, TableChecksums checksums, MigrationMetrics metrics,
+                           int queueCapacity) {
+        super(queueCapacity);
+        this.id = id;
+        this.writer = writer;
+        this.steps = plan.newSteps();
+        this.context = context;
+        this.checkpoint = checkpoint;
+        this.checksums = checksums;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void process(Object row) throws SQLException, IOException {
+        migrate(row);
+    }
+
+    @Override
+    protected void phaseEnded() throws SQLException, IOException {
+        flush();
+    }
+
+    /**
+     * Commit all pending updates and record the progress in the checkpoint.
+     *
+     * @throws SQLException
+     * @throws IOException if the checkpoint cannot be written
+     */
+    public void flush() throws SQLException, IOException {
+        writer.flush();
+        recordProgress();
+    }
+
+    /**
+     * Pass a subscription, queue or binding through the steps which modify its table, and write it if any of them
+     * modified it. Rows which no step modified have already been migrated and are skipped. Once the row has been
+     * committed along with the rows before it, its key is recorded in the checkpoint.
+     *
+     * @param row the row to be migrated
+     * @throws SQLException
+     * @throws IOException if the checkpoint cannot be written
+     */
+    public void migrate(Object row) throws SQLException, IOException {
+        String table = MigrationMetrics.tableOf(row);
+        if (null == table) {
+            return;
+        }
+        boolean modified = false;
+        for (MigrationStep step : steps) {
+            if (step.getColumns().containsKey(table)) {
+                // Every step sees every row, since it may record state from rows it leaves unchanged
+                modified = step.apply(row, context) || modified;
+            }
+        }
+        if (modified) {
+            write(row);
+        } else {
+            skippedRows = skippedRows + 1;
+        }
+        lastKeys.put(table, Processor.keyOf(row));
+        if (null != checksums) {
+            // Once handled, the row holds the data it has after the migration, whether it was modified or skipped
+            checksums.add(row);
+        }
+        if (writer.getWrittenRows() != checkpointedRows) {
+            recordProgress();
+        }
+    }
+
+    private void write(Object row) throws SQLException {
+        if (null != metrics) {
+            metrics.rowTransformed(row);
+        }
+        if (row instanceof Subscription) {
+            writer.writeSubscription((Subscription) row);
+            subscriptions = subscriptions + 1;
+        } else if (row instanceof Queue) {
+            Queue queue = (Queue) row;
+            writer.writeQueue(queue.getQueueName(), queue.getQueueData());
+            queues = queues + 1;
+        } else if (row instanceof Binding) {
+            Binding binding = (Binding) row;
+            writer.writeBinding(binding.getQueueName(), binding.getBindingDetails());
+            bindings = bindings + 1;
+        }
+    }
+
+    /**
+     * Record the key of the last handled row of each table in the checkpoint. All handled rows are either committed
+     * or skipped, since they were already migrated.
+     */
+    private void recordProgress() throws IOException {
+        if (null == checkpoint) {
+            return;
+        }
+        for (Map.Entry<String, String> lastKey : lastKeys.entrySet()) {
+            checkpoint.record(lastKey.getKey(), id, lastKey.getValue());
+        }
+        checkpointedRows = writer.getWrittenRows();
+    }
+
+    public long getWrittenRows() {
+        return writer.getWrittenRows();
+    }
+
+    public int getSkippedRows() {
+        return skippedRows;
+    }
+
+    public int getSubscriptions() {
+        return subscriptions;
+    }
+
+    public int getQueues() {
+        return queues;
+    }
+
+    public int getBindings() {
+        return bindings;
+    }
+
+    /**
+     * @return the steps applied by this worker
+     */
+    public List<MigrationStep> getSteps() {
+        return steps;
+    }
+
+    /**
+     * Commit pending updates and close the writer.
+     *
+     * @throws SQLException
+     */
+    @Override
+    public void close() throws SQLException {
+        writer.close();
+    }
+}
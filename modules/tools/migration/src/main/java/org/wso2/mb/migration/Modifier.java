@@ -18,15 +18,36 @@
 
 package org.wso2.mb.migration;
 
-import java.util.HashMap;
-import java.util.Map;
-
 public class Modifier {
 
     /**
-     * Properties of a subscription.
+     * Part of every subscription, queue and binding that has already been modified to be compatible with MB 3.1.0
      */
-    private Map<String, String> subscriptionProperties;
+    static final String MIGRATED_MARKER = ",protocolType=";
+
+    /**
+     * Properties of a subscription located by the codec. The properties up to storageQueueName are encoded in this
+     * order in a modified subscription.
+     */
+    static final String[] SUBSCRIPTION_PROPERTIES = {
+            "subscriptionID", "destination", "isExclusive", "isDurable", "targetQueue", "targetQueueOwner",
+            "targetQueueBoundExchange", "targetQueueBoundExchangeType", "isTargetQueueBoundExchangeAutoDeletable",
+            "subscribedNode", "subscribedTime", "hasExternalSubscriptions", "storageQueueName", "isBoundToTopic",
+            "subscriptionType", "destinationType", "protocolType" };
+
+    // Indexes of properties in SUBSCRIPTION_PROPERTIES
+    static final int SUBSCRIPTION_ID = 0;
+    static final int IS_DURABLE = 3;
+    static final int STORAGE_QUEUE_NAME = 12;
+    static final int IS_BOUND_TO_TOPIC = 13;
+    static final int SUBSCRIPTION_TYPE = 14;
+    static final int DESTINATION_TYPE = 15;
+    static final int PROTOCOL_TYPE = 16;
+
+    /**
+     * Codec locating the properties of a subscription.
+     */
+    private final AndesCodec subscriptionCodec = new AndesCodec(SUBSCRIPTION_PROPERTIES);
 
     /**
      * The storage queue of the last read subscription.
@@ -36,29 +57,33 @@ public class Modifier {
     /**
      * Method to modify a subscription.
      * <p/>
-     * Removes the subscriptionType and isBoundToTopic properties and inserts destination type and the protocol type
+     * Removes the subscriptionType and isBoundToTopic properties and inserts destination type and the protocol type.
+     * A subscription which has already been modified is returned as it is.
      *
      * @param oldSubscription subscription String to be modified
      * @return String representing the modified subscription
      */
     public String modifySubscription(String oldSubscription) {
-        String newSubscription;
-
-        String[] subscriptionProperties = oldSubscription.split(",");
-
-        this.subscriptionProperties = new HashMap<>();
-
-        for (String entry : subscriptionProperties){
-            if (entry.trim().length() > 0) {
-                entry = entry.trim();
-                String[] keyValuePairs = entry.split("=");
-                this.subscriptionProperties.put(keyValuePairs[0], keyValuePairs[1]);
-            }
-
+        subscriptionCodec.scan(oldSubscription);
+        storageQueueName = subscriptionCodec.value(STORAGE_QUEUE_NAME);
+        if (subscriptionCodec.contains(PROTOCOL_TYPE)) {
+            // Already modified by a previous run
+            protocolType = subscriptionCodec.value(PROTOCOL_TYPE);
+            destinationType = subscriptionCodec.value(DESTINATION_TYPE);
+            return oldSubscription;
         }
-        storageQueueName = this.subscriptionProperties.get("storageQueueName");
-        newSubscription = encodeAsStr();
-        return newSubscription;
+        return encodeAsStr(oldSubscription.length());
+    }
+
+    /**
+     * Check whether a subscription, queue or binding has already been modified to be compatible with MB 3.1.0, for
+     * example by a previous run which was interrupted.
+     *
+     * @param data the subscription data, queue info or binding info
+     * @return true if the data is already compatible with MB 3.1.0
+     */
+    public boolean isMigrated(String data) {
+        return null != data && data.contains(MIGRATED_MARKER);
     }
 
     /**
@@ -91,14 +116,15 @@ public class Modifier {
     private String protocolType = "";
 
     /**
-     * Create new string representing the subscription using the subscription properties
+     * Create new string representing the subscription using the subscription properties located by the codec
      *
+     * @param length length of the subscription the properties were located in
      * @return String representing the new subscriptions
      */
-    private String encodeAsStr() {
+    private String encodeAsStr(int length) {
 
-        if ("true".equals(subscriptionProperties.get("isBoundToTopic"))) {
-            if ("true".equals(subscriptionProperties.get("isDurable"))) {
+        if (subscriptionCodec.valueEquals(IS_BOUND_TO_TOPIC, "true")) {
+            if (subscriptionCodec.valueEquals(IS_DURABLE, "true")) {
                 destinationType = "DURABLE_TOPIC";
             } else {
                 destinationType = "TOPIC";
@@ -107,7 +133,7 @@ public class Modifier {
             destinationType = "QUEUE";
         }
 
-        if ("AMQP".equals(subscriptionProperties.get("subscriptionType"))) {
+        if (subscriptionCodec.valueEquals(SUBSCRIPTION_TYPE, "AMQP")) {
             protocolType = "AMQP";
 
         } else {
@@ -115,25 +141,14 @@ public class Modifier {
         }
 
         // Append all the properties to get the subscription details
-        StringBuilder builder = new StringBuilder();
-        builder.append("subscriptionID=").append(subscriptionProperties.get("subscriptionID"))
-                .append(",destination=").append(subscriptionProperties.get("destination"))
-                .append(",isExclusive=").append(subscriptionProperties.get("isExclusive"))
-                .append(",isDurable=").append(subscriptionProperties.get("isDurable"))
-                .append(",targetQueue=").append(subscriptionProperties.get("targetQueue"))
-                .append(",targetQueueOwner=")
-                .append(subscriptionProperties.get("targetQueueOwner"))
-                .append(",targetQueueBoundExchange=")
-                .append(subscriptionProperties.get("targetQueueBoundExchange"))
-                .append(",targetQueueBoundExchangeType=")
-                .append(subscriptionProperties.get("targetQueueBoundExchangeType"))
-                .append(",isTargetQueueBoundExchangeAutoDeletable=")
-                .append(subscriptionProperties.get("isTargetQueueBoundExchangeAutoDeletable"))
-                .append(",subscribedNode=").append(subscriptionProperties.get("subscribedNode"))
-                .append(",subscribedTime=").append(subscriptionProperties.get("subscribedTime"))
-                .append(",hasExternalSubscriptions=").append(subscriptionProperties.get("hasExternalSubscriptions"))
-                .append(",storageQueueName=").append(subscriptionProperties.get("storageQueueName"))
-                .append(",destinationType=").append(destinationType)
+        StringBuilder builder = new StringBuilder(length + 64);
+        for (int property = SUBSCRIPTION_ID; property <= STORAGE_QUEUE_NAME; property++) {
+            if (property != SUBSCRIPTION_ID) {
+                builder.append(',');
+            }
+            subscriptionCodec.appendEntry(builder, property);
+        }
+        builder.append(",destinationType=").append(destinationType)
                 .append(",protocolType=").append(protocolType);
 
         return builder.toString();
@@ -146,15 +161,32 @@ public class Modifier {
      * @return modified queue info
      */
     public String modifyQueue(String queueInfo){
+        return modifyQueue(queueInfo, protocolType);
+    }
+
+    /**
+     * Modify queue info to be compatible with MB 3.1.0 using the protocol type of the subscription the queue is
+     * bound to, rather than the one of the last modified subscription.
+     *
+     * @param queueInfo         queue information to be modified
+     * @param queueProtocolType protocol type of the subscription bound to the queue
+     * @return modified queue info
+     */
+    public String modifyQueue(String queueInfo, String queueProtocolType){
+        if (isMigrated(queueInfo)) {
+            return queueInfo;
+        }
         if (null != queueInfo) {
-            if ("MQTT".equals(protocolType)){
-                destinationType = "TOPIC";
+            String queueDestinationType;
+            if ("MQTT".equals(queueProtocolType)){
+                queueDestinationType = "TOPIC";
             }
             else{
-                destinationType = "QUEUE";
+                queueDestinationType = "QUEUE";
             }
             StringBuilder builder = new StringBuilder();
-            builder.append(queueInfo).append(",protocolType=").append(protocolType).append(",destinationType=").append(destinationType);
+            builder.append(queueInfo).append(",protocolType=").append(queueProtocolType).append(",destinationType=")
+                    .append(queueDestinationType);
 
             return builder.toString();
         }
@@ -170,6 +202,9 @@ public class Modifier {
      * @return String representing modified queue details
      */
     public String modifyDefaultQueue(String queueInfo){
+        if (isMigrated(queueInfo)) {
+            return queueInfo;
+        }
         if (null != queueInfo) {
             StringBuilder builder = new StringBuilder();
             builder.append(queueInfo).append(",protocolType=").append("AMQP").append(",destinationType=").append("QUEUE");
@@ -187,20 +222,24 @@ public class Modifier {
      * @return modified queue info
      */
     public String modifyBinding(String bindingInfo){
+        return modifyBinding(bindingInfo, protocolType);
+    }
 
-        if (null != bindingInfo) {
-            String[] parts = bindingInfo.split("\\|");
-            StringBuilder builder = new StringBuilder();
-            builder.append(parts[0].trim())
-                    .append("|")
-                    .append(parts[1].trim())
-                    .append(",protocolType=")
-                    .append(protocolType)
-                    .append(",destinationType=QUEUE")
-                    .append("|")
-                    .append(parts[2]);
+    /**
+     * Modify binding info to be compatible with MB 3.1.0 using the protocol type of the subscription bound to the
+     * storage queue.
+     *
+     * @param bindingInfo         binding information to be modified
+     * @param bindingProtocolType protocol type of the subscription bound to the storage queue
+     * @return modified binding info
+     */
+    public String modifyBinding(String bindingInfo, String bindingProtocolType){
 
-            return builder.toString();
+        if (isMigrated(bindingInfo)) {
+            return bindingInfo;
+        }
+        if (null != bindingInfo) {
+            return AndesCodec.rewriteBinding(bindingInfo, bindingProtocolType);
         }
         else{
             throw new RuntimeException("Binding cannot be null");
@@ -214,27 +253,17 @@ public class Modifier {
      * @return String representing binding information after modification
      */
     public String modifyDefaultBinding(String bindingInfo){
-
-        if (null != bindingInfo) {
-            String[] parts = bindingInfo.split("\\|");
-            StringBuilder builder = new StringBuilder();
-            builder.append(parts[0].trim())
-                    .append("|")
-                    .append(parts[1].trim())
-                    .append(",protocolType=")
-                    .append("AMQP")
-                    .append(",destinationType=QUEUE")
-                    .append("|")
-                    .append(parts[2]);
-
-            return builder.toString();
-        }
-        else{
-            throw new RuntimeException("Binding cannot be null");
-        }
+        return modifyBinding(bindingInfo, "AMQP");
     }
 
     public String getStorageQueueName() {
         return storageQueueName;
     }
+
+    /**
+     * @return the protocol type of the last modified subscription
+     */
+    public String getProtocolType() {
+        return protocolType;
+    }
 }
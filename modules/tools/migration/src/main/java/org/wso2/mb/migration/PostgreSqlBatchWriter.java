@@ -0,0 +1,271 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.mb.migration;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes modified queues, bindings and subscriptions to a PostgreSQL database with multi row updates.
+ * <p/>
+ * The PostgreSQL driver sends every statement of a JDBC batch separately, and its reWriteBatchedInserts option only
+ * rewrites inserts. This writer instead collects the updates of a batch and sends them as a single
+ * "UPDATE ... FROM (VALUES (...), (...)) ..." statement per table, each batch being committed as one transaction.
+ */
+public class PostgreSqlBatchWriter implements RowWriter {
+
+    /**
+     * Maximum number of parameters the PostgreSQL protocol allows in a single statement
+     */
+    static final int MAX_PARAMETERS = Short.MAX_VALUE;
+
+    /**
+     * The connection all updates are written through. Auto commit is disabled for the life time of the writer.
+     */
+    private final Connection connection;
+
+    /**
+     * Number of updates collected before they are written and committed
+     */
+    private final int batchSize;
+
+    private final MultiRowUpdate subscriptionUpdate;
+    private final MultiRowUpdate queueUpdate;
+    private final MultiRowUpdate bindingUpdate;
+
+    /**
+     * Number of updates collected since the last commit
+     */
+    private int pendingUpdates;
+
+    /**
+     * Number of updates committed through this writer
+     */
+    private long writtenRows;
+
+    public PostgreSqlBatchWriter(Connection connection, int batchSize) throws SQLException {
+        this.connection = connection;
+        this.batchSize = batchSize;
+        connection.setAutoCommit(false);
+        subscriptionUpdate = new MultiRowUpdate(
+                "UPDATE " + DBConnector.DURABLE_SUB_TABLE + " SET " + DBConnector.DURABLE_SUB_DATA + " = v.data, "
+                + DBConnector.DESTINATINATION_TYPE + " = v.destination FROM (VALUES ",
+                ") AS v(id, data, destination) WHERE " + DBConnector.DURABLE_SUB_ID + " = v.id", 3);
+        queueUpdate = new MultiRowUpdate(
+                "UPDATE " + DBConnector.MB_QUEUE + " SET " + DBConnector.QUEUE_DATA + " = v.data FROM (VALUES ",
+                ") AS v(name, data) WHERE " + DBConnector.QUEUE_NAME + " = v.name", 2);
+        bindingUpdate = new MultiRowUpdate(
+                "UPDATE " + DBConnector.MB_BINDING + " SET " + DBConnector.BINDING_DETAILS + " = v.data FROM (VALUES ",
+                ") AS v(name, data) WHERE " + DBConnector.QUEUE_NAME + " = v.name", 2);
+    }
+
+    /**
+     * Add a subscription update to the current batch.
+     *
+     * @param subscription new subscription details
+     * @throws SQLException
+     */
+    @Override
+    public void writeSubscription(Subscription subscription) throws SQLException {
+        subscriptionUpdate.add(subscription.getIdentifier(), subscription.getSubscriptionData(),
+                               subscription.getDestinationType());
+        updateAdded();
+    }
+
+    /**
+     * Add a queue update to the current batch.
+     *
+     * @param storageQueue the storage queue name
+     * @param queueData    new queue details
+     * @throws SQLException
+     */
+    @Override
+    public void writeQueue(String storageQueue, String queueData) throws SQLException {
+        queueUpdate.add(storageQueue, queueData);
+        updateAdded();
+    }
+
+    /**
+     * Add a binding update to the current batch.
+     *
+     * @param queueName      storage queue name
+     * @param bindingDetails new binding details
+     * @throws SQLException
+     */
+    @Override
+    public void writeBinding(String queueName, String bindingDetails) throws SQLException {
+        bindingUpdate.add(queueName, bindingDetails);
+        updateAdded();
+    }
+
+    /**
+     * Write all pending updates and commit them. On failure the open transaction is rolled back.
+     *
+     * @throws SQLException
+     */
+    @Override
+    public void flush() throws SQLException {
+        if (pendingUpdates == 0) {
+            return;
+        }
+        try {
+            subscriptionUpdate.execute();
+            queueUpdate.execute();
+            bindingUpdate.execute();
+            connection.commit();
+        } catch (SQLException e) {
+            pendingUpdates = 0;
+            subscriptionUpdate.clear();
+            queueUpdate.clear();
+            bindingUpdate.clear();
+            connection.rollback();
+            throw e;
+        }
+        writtenRows = writtenRows + pendingUpdates;
+        pendingUpdates = 0;
+    }
+
+    /**
+     * @return the number of updates committed through this writer
+     */
+    @Override
+    public long getWrittenRows() {
+        return writtenRows;
+    }
+
+    /**
+     * Flush the pending updates and release the statements. The connection is left open for the caller to close.
+     *
+     * @throws SQLException
+     */
+    @Override
+    public void close() throws SQLException {
+        try {
+            flush();
+        } finally {
+            subscriptionUpdate.close();
+            queueUpdate.close();
+            bindingUpdate.close();
+        }
+    }
+
+    private void updateAdded() throws SQLException {
+        pendingUpdates = pendingUpdates + 1;
+        if (pendingUpdates >= batchSize) {
+            flush();
+        }
+    }
+
+    /**
+     * Collects the rows of one table and updates them with as few statements as the parameter limit allows. The
+     * statement for a full chunk of rows is prepared once and reused, shorter statements are prepared as needed.
+     */
+    private class MultiRowUpdate {
+
+        private final String prefix;
+        private final String suffix;
+        private final int columns;
+
+        /**
+         * Maximum number of rows updated by a single statement
+         */
+        private final int chunkSize;
+
+        /**
+         * Values of the collected rows, column by column
+         */
+        private final List<String> values = new ArrayList<>();
+
+        private PreparedStatement chunkStatement;
+
+        private MultiRowUpdate(String prefix, String suffix, int columns) {
+            this.prefix = prefix;
+            this.suffix = suffix;
+            this.columns = columns;
+            chunkSize = Math.min(batchSize, MAX_PARAMETERS / columns);
+        }
+
+        private void add(String... row) {
+            for (String value : row) {
+                values.add(value);
+            }
+        }
+
+        private void execute() throws SQLException {
+            int rows = values.size() / columns;
+            int row = 0;
+            while (row < rows) {
+                int count = Math.min(chunkSize, rows - row);
+                if (count == chunkSize) {
+                    if (null == chunkStatement) {
+                        chunkStatement = connection.prepareStatement(sql(chunkSize));
+                    }
+                    bind(chunkStatement, row, count);
+                    chunkStatement.executeUpdate();
+                } else {
+                    try (PreparedStatement preparedStatement = connection.prepareStatement(sql(count))) {
+                        bind(preparedStatement, row, count);
+                        preparedStatement.executeUpdate();
+                    }
+                }
+                row = row + count;
+            }
+            values.clear();
+        }
+
+        private void bind(PreparedStatement preparedStatement, int firstRow, int count) throws SQLException {
+            int first = firstRow * columns;
+            for (int i = 0; i < count * columns; i++) {
+                preparedStatement.setString(i + 1, values.get(first + i));
+            }
+        }
+
+        private String sql(int rows) {
+            StringBuilder builder = new StringBuilder(prefix.length() + suffix.length() + rows * (columns * 2 + 3));
+            builder.append(prefix);
+            for (int row = 0; row < rows; row++) {
+                if (row > 0) {
+                    builder.append(',');
+                }
+                builder.append('(');
+                for (int column = 0; column < columns; column++) {
+                    if (column > 0) {
+                        builder.append(',');
+                    }
+                    builder.append('?');
+                }
+                builder.append(')');
+            }
+            return builder.append(suffix).toString();
+        }
+
+        private void clear() {
+            values.clear();
+        }
+
+        private void close() throws SQLException {
+            if (null != chunkStatement) {
+                chunkStatement.close();
+            }
+        }
+    }
+}
@@ -22,14 +22,64 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.Properties;
+import java.util.Set;
 import java.util.logging.Logger;
 
 public class Processor {
 
+    /**
+     * Value of the "mode" property which writes all updates over a single connection in JDBC batches
+     */
+    static final String BATCHED_MODE = "batched";
+
+    /**
+     * Value of the "mode" property which modifies and writes the tables with a pool of workers
+     */
+    static final String PARALLEL_MODE = "parallel";
+
+    /**
+     * Number of updates sent in one batch when no "batchsize" property is configured
+     */
+    static final int DEFAULT_BATCH_SIZE = 500;
+
+    /**
+     * File the progress is recorded in when no "checkpointfile" property is configured
+     */
+    static final String DEFAULT_CHECKPOINT_FILE = "migration.checkpoint";
+
+    /**
+     * File the report of a run is written to when no "reportfile" property is configured
+     */
+    static final String DEFAULT_REPORT_FILE = "migration-report.json";
+
+    /**
+     * Seconds between two progress lines when no "progressinterval" property is configured
+     */
+    static final int DEFAULT_PROGRESS_INTERVAL = 10;
+
+    /**
+     * Versions migrated between when no "fromversion" and "toversion" properties are configured
+     */
+    static final String DEFAULT_FROM_VERSION = "3.0.0";
+    static final String DEFAULT_TO_VERSION = "3.1.0";
+
     /**
      * The instance of the DBConnector which reads and writes queues, bindings and subscriptions
      */
@@ -41,11 +91,92 @@ public class Processor {
     Modifier modifier;
 
     /**
-     * List of all the storage queue names for which subscriptions are bound
+     * Set of all the storage queue names for which subscriptions are bound
+     */
+    Set<String> storageQueues;
+
+    /**
+     * The migration mode, read from the "mode" property of config.properties
+     */
+    String mode;
+
+    /**
+     * The steps applied to the tables in batched and parallel mode and in dry runs
+     */
+    MigrationPlan plan;
+
+    /**
+     * Number of updates executed and committed together in batched mode
+     */
+    int batchSize;
+
+    /**
+     * Number of workers, each with its own connection, used in parallel mode
      */
-    List<String> storageQueues;
+    int workerCount;
+
+    /**
+     * Whether to continue from the progress recorded in the checkpoint by a previous run
+     */
+    boolean resume;
+
+    /**
+     * Whether to apply the modifications without writing them
+     */
+    boolean dryRun;
+
+    /**
+     * Whether to check the encoding of the migrated tables instead of modifying them
+     */
+    boolean verify;
+
+    /**
+     * The file the progress of batched and parallel runs is recorded in
+     */
+    File checkpointFile;
+
+    /**
+     * The file the JSON report of batched, parallel, dry and verification runs is written to
+     */
+    File reportFile;
+
+    /**
+     * Seconds between two progress lines, 0 to not log the progress
+     */
+    int progressInterval;
 
     public Processor() {
+        this(loadConfiguration());
+    }
+
+    /**
+     * Create a processor configured with the given properties instead of the ones of config.properties.
+     *
+     * @param prop the configuration, with the same properties as config.properties
+     */
+    public Processor(Properties prop) {
+        connector = new DBConnector(prop);
+        modifier = new Modifier();
+
+        storageQueues = new HashSet<>();
+        mode = prop.getProperty("mode", "");
+        batchSize = Integer.parseInt(prop.getProperty("batchsize", String.valueOf(DEFAULT_BATCH_SIZE)));
+        workerCount = Integer.parseInt(prop.getProperty("workers",
+                                                        String.valueOf(Runtime.getRuntime().availableProcessors())));
+        checkpointFile = new File(prop.getProperty("checkpointfile", DEFAULT_CHECKPOINT_FILE));
+        plan = MigrationPlan.create(prop.getProperty("fromversion", DEFAULT_FROM_VERSION),
+                                    prop.getProperty("toversion", DEFAULT_TO_VERSION));
+        reportFile = new File(prop.getProperty("reportfile", DEFAULT_REPORT_FILE));
+        progressInterval = Integer.parseInt(prop.getProperty("progressinterval",
+                                                             String.valueOf(DEFAULT_PROGRESS_INTERVAL)));
+    }
+
+    /**
+     * Read the configuration from config.properties in the working directory.
+     *
+     * @return the configuration, empty if the file cannot be read
+     */
+    private static Properties loadConfiguration() {
 
         Properties prop = new Properties();
         OutputStream output = null;
@@ -68,18 +199,73 @@ public class Processor {
             }
 
         }
+        return prop;
+    }
 
-        connector = new DBConnector(prop);
-        modifier = new Modifier();
+    /**
+     * Continue from the progress recorded by a previous batched or parallel run instead of starting over.
+     *
+     * @param resume true to resume the previous run
+     */
+    public void setResume(boolean resume) {
+        this.resume = resume;
+    }
 
-        storageQueues = new ArrayList<>();
+    /**
+     * Apply the modifications without writing them, and log the resulting row counts and checksums.
+     *
+     * @param dryRun true to run without writing
+     */
+    public void setDryRun(boolean dryRun) {
+        this.dryRun = dryRun;
+    }
+
+    /**
+     * Check the encoding of the migrated tables instead of modifying them.
+     *
+     * @param verify true to verify the migrated tables
+     */
+    public void setVerify(boolean verify) {
+        this.verify = verify;
+    }
+
+    /**
+     * Close all the connections to the database once the migration is done.
+     */
+    public void close() {
+        connector.close();
     }
 
     /**
      * Method to modify all queues, bindings and subscriptions
      */
     public void modifyTables() {
+        if (verify) {
+            verify();
+            return;
+        }
+        if (dryRun) {
+            dryRun();
+            return;
+        }
         Logger log = Logger.getLogger(Processor.class.getName());
+        if (BATCHED_MODE.equals(mode)) {
+            modifyTablesInBatches();
+            return;
+        }
+        if (PARALLEL_MODE.equals(mode)) {
+            modifyTablesInParallel();
+            return;
+        }
+        if (!(DEFAULT_FROM_VERSION + " -> " + DEFAULT_TO_VERSION).equals(plan.toString())) {
+            log.warning("The default mode only migrates from " + DEFAULT_FROM_VERSION + " to " + DEFAULT_TO_VERSION
+                        + ". Migrating " + plan + " in batched mode.");
+            modifyTablesInBatches();
+            return;
+        }
+        if (resume) {
+            log.warning("Progress is only recorded in batched and parallel mode. Rows already migrated are skipped.");
+        }
         try {
 
             List<Subscription> subscriptions = connector.readSubscriptions();
@@ -108,16 +294,504 @@ public class Processor {
                 }
             }
             log.info("Modified " + subscriptions.size() + " subscriptions with associated queues and bindings.");
-            int idleQueues = modifyIdleQueues();
-            log.info("Modified " + idleQueues + " queues without subscriptions.");
-            int idleBindings = modifyIdleBindings();
-            log.info("Modified " + idleBindings + " bindings without subscriptions.");
+            modifyIdleQueuesAndBindings();
         } catch (SQLException e) {
             e.printStackTrace();
         }
 
     }
 
+    /**
+     * Method to modify all queues, bindings and subscriptions over a single write connection.
+     * <p/>
+     * Each table is streamed once over a read connection, so that only the storage queues of the subscriptions are
+     * kept in memory. Queues and bindings are matched against those storage queues instead of being looked up one by
+     * one, and all updates are written in JDBC batches of the configured size over the write connection, each
+     * committed as a single transaction.
+     */
+    public void modifyTablesInBatches() {
+        Logger log = Logger.getLogger(Processor.class.getName());
+        long startTime = System.nanoTime();
+        final MigrationMetrics metrics = new MigrationMetrics();
+        ScheduledExecutorService progressLog = null;
+        try {
+            Checkpoint checkpoint = openCheckpoint(1);
+            try (Connection readConnection = connector.createStreamingConnection();
+                 Connection connection = connector.createConnection();
+                 final MigrationWorker worker = new MigrationWorker(
+                         0, new MeasuredWriter(connector.createWriter(connection, batchSize), metrics), plan,
+                         new MigrationContext(), checkpoint, null, metrics, 1)) {
+
+                log.info("Migrating " + plan + ".");
+                countRows(readConnection, metrics);
+                progressLog = startProgressLog(metrics);
+                RowHandler<Object> handler = new RowHandler<Object>() {
+                    @Override
+                    public void handle(Object row) throws SQLException {
+                        metrics.rowRead(row);
+                        try {
+                            worker.migrate(row);
+                        } catch (IOException e) {
+                            throw new SQLException("Could not record the progress in the checkpoint", e);
+                        }
+                    }
+                };
+                if (streams(plan, DBConnector.DURABLE_SUB_TABLE)) {
+                    connector.streamSubscriptions(readConnection, handler);
+                    worker.flush();
+                }
+                checkpoint.markComplete(DBConnector.DURABLE_SUB_TABLE);
+
+                streamQueuesAndBindings(readConnection, checkpoint, plan, handler);
+                worker.flush();
+                checkpoint.markComplete(DBConnector.MB_QUEUE);
+                checkpoint.markComplete(DBConnector.MB_BINDING);
+
+                logSummary(log, Collections.singletonList(worker), startTime);
+            }
+        } catch (SQLException | IOException | InterruptedException e) {
+            e.printStackTrace();
+        } finally {
+            stopProgressLog(progressLog);
+            writeReport(metrics, BATCHED_MODE, 1);
+        }
+    }
+
+    /**
+     * Method to modify all queues, bindings and subscriptions with a pool of workers.
+     * <p/>
+     * Rows are streamed over a separate connection and handed to the workers partitioned by the hash of their key, the
+     * subscription id for subscriptions and the queue name for queues and bindings. Each worker modifies and writes
+     * its partition in batches over its own connection. All subscriptions are written before queues and bindings are
+     * dispatched, so that every storage queue bound to a subscription is known when the idle queues and bindings are
+     * detected.
+     */
+    public void modifyTablesInParallel() {
+        Logger log = Logger.getLogger(Processor.class.getName());
+        long startTime = System.nanoTime();
+
+        MigrationContext context = new MigrationContext();
+        MigrationMetrics metrics = new MigrationMetrics();
+        ScheduledExecutorService progressLog = null;
+        List<Connection> connections = new ArrayList<>();
+        List<MigrationWorker> workers = new ArrayList<>();
+        try (Connection readConnection = connector.createStreamingConnection()) {
+            Checkpoint checkpoint = openCheckpoint(workerCount);
+            for (int i = 0; i < workerCount; i++) {
+                Connection connection = connector.createConnection();
+                connections.add(connection);
+                workers.add(new MigrationWorker(
+                        i, new MeasuredWriter(connector.createWriter(connection, batchSize), metrics), plan, context,
+                        checkpoint, null, metrics, batchSize * 2));
+            }
+
+            log.info("Migrating " + plan + ".");
+            countRows(readConnection, metrics);
+            progressLog = startProgressLog(metrics);
+            runPhases(readConnection, workers, checkpoint, plan, metrics);
+
+            logSummary(log, workers, startTime);
+        } catch (SQLException | IOException | InterruptedException | ExecutionException e) {
+            e.printStackTrace();
+        } finally {
+            stopProgressLog(progressLog);
+            for (MigrationWorker worker : workers) {
+                try {
+                    worker.close();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+            }
+            for (Connection connection : connections) {
+                try {
+                    connection.close();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+            }
+            writeReport(metrics, PARALLEL_MODE, workerCount);
+        }
+    }
+
+    /**
+     * Method to stream all three tables and apply the modifications without writing them.
+     * <p/>
+     * The rows are modified by a pool of workers as in parallel mode. The number of rows which would be modified and
+     * the checksum of each table after the migration are logged, so that they can be compared with a verification of
+     * the migrated tables.
+     */
+    public void dryRun() {
+        Logger log = Logger.getLogger(Processor.class.getName());
+        long startTime = System.nanoTime();
+
+        MigrationContext context = new MigrationContext();
+        TableChecksums checksums = new TableChecksums();
+        MigrationMetrics metrics = new MigrationMetrics();
+        ScheduledExecutorService progressLog = null;
+        List<MigrationWorker> workers = new ArrayList<>();
+        for (int i = 0; i < workerCount; i++) {
+            workers.add(new MigrationWorker(i, new DryRunWriter(), plan, context, null, checksums, metrics,
+                                            batchSize * 2));
+        }
+        try (Connection readConnection = connector.createStreamingConnection()) {
+            log.info("Dry run of the migration " + plan + ".");
+            countRows(readConnection, metrics);
+            progressLog = startProgressLog(metrics);
+            runPhases(readConnection, workers, null, plan, metrics);
+
+            log.info("Dry run, the rows reported as modified and written below were not written to the database.");
+            logSummary(log, workers, startTime);
+            checksums.log(log);
+        } catch (SQLException | IOException | InterruptedException | ExecutionException e) {
+            e.printStackTrace();
+        } finally {
+            stopProgressLog(progressLog);
+            writeReport(metrics, "dry-run", workerCount);
+        }
+    }
+
+    /**
+     * Method to check that all queues, bindings and subscriptions match the encoding of MB 3.1.0.
+     * <p/>
+     * The tables are streamed and the rows are checked by a pool of workers, each checking the rows of its partition.
+     * The number of rows which do not match and the checksum of each table are logged.
+     */
+    public void verify() {
+        Logger log = Logger.getLogger(Processor.class.getName());
+        long startTime = System.nanoTime();
+
+        Map<String, String> boundQueues = new ConcurrentHashMap<>();
+        AtomicInteger loggedMismatches = new AtomicInteger();
+        TableChecksums checksums = new TableChecksums();
+        List<VerificationWorker> workers = new ArrayList<>();
+        for (int i = 0; i < workerCount; i++) {
+            workers.add(new VerificationWorker(boundQueues, loggedMismatches, checksums, batchSize * 2));
+        }
+        MigrationMetrics metrics = new MigrationMetrics();
+        ScheduledExecutorService progressLog = null;
+        try (Connection readConnection = connector.createStreamingConnection()) {
+            countRows(readConnection, metrics);
+            progressLog = startProgressLog(metrics);
+            runPhases(readConnection, workers, null, null, metrics);
+
+            long verifiedRows = 0;
+            long mismatches = 0;
+            for (VerificationWorker worker : workers) {
+                verifiedRows = verifiedRows + worker.getVerifiedRows();
+                mismatches = mismatches + worker.getMismatches();
+            }
+            double elapsedSeconds = (System.nanoTime() - startTime) / 1e9;
+            log.info(String.format("Verified %d rows in %.2f seconds, %d do not match the MB 3.1.0 encoding.",
+                                   verifiedRows, elapsedSeconds, mismatches));
+            checksums.log(log);
+        } catch (SQLException | IOException | InterruptedException | ExecutionException e) {
+            e.printStackTrace();
+        } finally {
+            stopProgressLog(progressLog);
+            writeReport(metrics, "verify", workerCount);
+        }
+    }
+
+    /**
+     * Stream the tables to a pool of workers, each receiving the rows of its partition. Subscriptions are processed
+     * first. Queues and bindings are only streamed once every worker has processed its subscriptions, since their
+     * processing depends on the storage queues of the subscriptions.
+     *
+     * @param readConnection the connection to stream the tables over
+     * @param workers        the workers, one per partition
+     * @param checkpoint     checkpoint to resume from and to mark completed tables in, or null to process all rows
+     * @param plan           plan whose tables are streamed, or null to stream all tables
+     * @param metrics        metrics to count the read rows in
+     */
+    private void runPhases(Connection readConnection, final List<? extends RowWorker> workers, Checkpoint checkpoint,
+                           MigrationPlan plan, final MigrationMetrics metrics)
+            throws SQLException, IOException, InterruptedException, ExecutionException {
+        RowHandler<Object> dispatcher = new RowHandler<Object>() {
+            @Override
+            public void handle(Object row) throws InterruptedException {
+                metrics.rowRead(row);
+                workers.get(partitionOf(keyOf(row), workers.size())).submit(row);
+            }
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(workers.size());
+        try {
+            List<Future<Void>> phase = startPhase(executor, workers);
+            if (streams(plan, DBConnector.DURABLE_SUB_TABLE)) {
+                connector.streamSubscriptions(readConnection, dispatcher);
+            }
+            endPhase(workers, phase);
+            if (null != checkpoint) {
+                checkpoint.markComplete(DBConnector.DURABLE_SUB_TABLE);
+            }
+
+            phase = startPhase(executor, workers);
+            streamQueuesAndBindings(readConnection, checkpoint, plan, dispatcher);
+            endPhase(workers, phase);
+            if (null != checkpoint) {
+                checkpoint.markComplete(DBConnector.MB_QUEUE);
+                checkpoint.markComplete(DBConnector.MB_BINDING);
+            }
+        } finally {
+            executor.shutdownNow();
+            try {
+                // Workers must have stopped using their connections before they are closed
+                executor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Open the checkpoint the progress of the run is recorded in. When resuming, the progress of the previous run is
+     * kept if it was recorded with the same number of workers. Otherwise the run starts from the beginning, and only
+     * rows which have already been migrated are skipped.
+     *
+     * @param workers number of workers of the run
+     * @return the checkpoint
+     * @throws IOException
+     */
+    private Checkpoint openCheckpoint(int workers) throws IOException {
+        Checkpoint checkpoint = new Checkpoint(checkpointFile);
+        if (resume) {
+            checkpoint.load();
+            if (checkpoint.getWorkers() == workers) {
+                return checkpoint;
+            }
+            Logger.getLogger(Processor.class.getName()).warning(
+                    "No progress recorded with " + workers + " workers in " + checkpointFile
+                    + ". Resuming from the beginning, rows already migrated are skipped.");
+        }
+        checkpoint.reset(workers);
+        return checkpoint;
+    }
+
+    /**
+     * Stream the queues and the bindings which are not completely migrated to the given handler. When resuming, each
+     * table is read from the smallest queue name recorded by the workers, since all rows before it are committed.
+     * Without a checkpoint all queues and bindings are streamed. Tables the plan does not modify are not streamed.
+     */
+    private void streamQueuesAndBindings(Connection readConnection, Checkpoint checkpoint, MigrationPlan plan,
+                                         RowHandler<Object> handler) throws SQLException, InterruptedException {
+        if (streams(plan, DBConnector.MB_QUEUE)) {
+            if (null == checkpoint) {
+                connector.streamQueues(readConnection, handler);
+            } else if (!checkpoint.isComplete(DBConnector.MB_QUEUE)) {
+                connector.streamQueues(readConnection, resumeKey(readConnection, checkpoint, DBConnector.MB_QUEUE),
+                                       handler);
+            }
+        }
+        if (streams(plan, DBConnector.MB_BINDING)) {
+            if (null == checkpoint) {
+                connector.streamBindings(readConnection, handler);
+            } else if (!checkpoint.isComplete(DBConnector.MB_BINDING)) {
+                connector.streamBindings(readConnection,
+                                         resumeKey(readConnection, checkpoint, DBConnector.MB_BINDING), handler);
+            }
+        }
+    }
+
+    /**
+     * @return true if the table is streamed for the given plan, or if there is no plan
+     */
+    private static boolean streams(MigrationPlan plan, String table) {
+        return null == plan || plan.modifies(table);
+    }
+
+    private String resumeKey(Connection connection, Checkpoint checkpoint, String table) throws SQLException {
+        List<String> keys = checkpoint.getWorkerKeys(table);
+        if (!resume || null == keys) {
+            return null;
+        }
+        // The smallest key is chosen by the database, as its collation may not match the ordering of Java strings
+        return connector.readFirstQueueName(connection, table, keys);
+    }
+
+    /**
+     * Get the key rows are partitioned by: the subscription id for subscriptions and the storage queue name for
+     * queues and bindings.
+     *
+     * @param row a subscription, queue or binding
+     * @return the key of the row
+     */
+    static String keyOf(Object row) {
+        if (row instanceof Subscription) {
+            return ((Subscription) row).getIdentifier();
+        } else if (row instanceof Queue) {
+            return ((Queue) row).getQueueName();
+        } else if (row instanceof Binding) {
+            return ((Binding) row).getQueueName();
+        }
+        return null;
+    }
+
+    /**
+     * Get the partition, and therefore the worker, a row belongs to.
+     *
+     * @param key        the key of the row
+     * @param partitions number of partitions
+     * @return partition index between 0 and partitions - 1
+     */
+    static int partitionOf(String key, int partitions) {
+        if (null == key) {
+            return 0;
+        }
+        return (key.hashCode() & Integer.MAX_VALUE) % partitions;
+    }
+
+    private List<Future<Void>> startPhase(ExecutorService executor, List<? extends RowWorker> workers) {
+        List<Future<Void>> futures = new ArrayList<>(workers.size());
+        for (RowWorker worker : workers) {
+            futures.add(executor.submit(worker));
+        }
+        return futures;
+    }
+
+    /**
+     * Signal the end of the phase to all workers and wait until each of them has committed its rows.
+     */
+    private void endPhase(List<? extends RowWorker> workers, List<Future<Void>> futures)
+            throws InterruptedException, ExecutionException {
+        for (RowWorker worker : workers) {
+            worker.endPhase();
+        }
+        for (Future<Void> future : futures) {
+            future.get();
+        }
+    }
+
+    /**
+     * Count the rows of each table, so that the remaining time of the run can be estimated.
+     */
+    private void countRows(Connection readConnection, MigrationMetrics metrics) throws SQLException {
+        for (String table : new String[] { DBConnector.DURABLE_SUB_TABLE, DBConnector.MB_QUEUE,
+                                           DBConnector.MB_BINDING }) {
+            metrics.setTotalRows(table, connector.countRows(readConnection, table));
+        }
+    }
+
+    /**
+     * Log a progress line every "progressinterval" seconds until the returned executor is stopped.
+     *
+     * @param metrics the metrics of the run
+     * @return the executor logging the progress, or null if the progress is not logged
+     */
+    private ScheduledExecutorService startProgressLog(final MigrationMetrics metrics) {
+        if (progressInterval <= 0) {
+            return null;
+        }
+        final Logger log = Logger.getLogger(Processor.class.getName());
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        executor.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                log.info(metrics.progressLine());
+            }
+        }, progressInterval, progressInterval, TimeUnit.SECONDS);
+        return executor;
+    }
+
+    private void stopProgressLog(ScheduledExecutorService executor) {
+        if (null != executor) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Write the metrics of a run to the report file.
+     */
+    private void writeReport(MigrationMetrics metrics, String runMode, int workers) {
+        Logger log = Logger.getLogger(Processor.class.getName());
+        log.info(metrics.progressLine());
+        try {
+            metrics.writeReport(reportFile, runMode, workers, batchSize);
+            log.info("Wrote the report of the run to " + reportFile);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Log the number of modified rows of each table and the rate at which they were written.
+     *
+     * @param log       the logger to write to
+     * @param workers   the workers which modified the rows
+     * @param startTime value of {@link System#nanoTime()} when the migration started
+     */
+    private void logSummary(Logger log, List<MigrationWorker> workers, long startTime) {
+        long writtenRows = 0;
+        int subscriptions = 0;
+        int queues = 0;
+        int bindings = 0;
+        int skippedRows = 0;
+        Map<String, Integer> stepCounters = new LinkedHashMap<>();
+        for (MigrationWorker worker : workers) {
+            writtenRows = writtenRows + worker.getWrittenRows();
+            subscriptions = subscriptions + worker.getSubscriptions();
+            queues = queues + worker.getQueues();
+            bindings = bindings + worker.getBindings();
+            skippedRows = skippedRows + worker.getSkippedRows();
+            for (MigrationStep step : worker.getSteps()) {
+                for (Map.Entry<String, Integer> counter : step.getCounters().entrySet()) {
+                    String name = step.getFromVersion() + " -> " + step.getToVersion() + ": %d " + counter.getKey();
+                    Integer count = stepCounters.get(name);
+                    stepCounters.put(name, (null == count ? 0 : count) + counter.getValue());
+                }
+            }
+        }
+        log.info("Modified " + subscriptions + " subscriptions.");
+        log.info("Modified " + queues + " queues.");
+        log.info("Modified " + bindings + " bindings.");
+        for (Map.Entry<String, Integer> counter : stepCounters.entrySet()) {
+            log.info(String.format(counter.getKey(), counter.getValue()) + ".");
+        }
+        log.info("Skipped " + skippedRows + " rows which were already migrated.");
+        logThroughput(log, writtenRows, startTime);
+    }
+
+    /**
+     * Log the number of rows written and the rate at which they were written.
+     *
+     * @param log         the logger to write to
+     * @param writtenRows number of rows updated in the database
+     * @param startTime   value of {@link System#nanoTime()} when the migration started
+     */
+    private void logThroughput(Logger log, long writtenRows, long startTime) {
+        double elapsedSeconds = (System.nanoTime() - startTime) / 1e9;
+        long rowsPerSecond = elapsedSeconds > 0 ? Math.round(writtenRows / elapsedSeconds) : writtenRows;
+        log.info(String.format("Wrote %d rows in %.2f seconds (%d rows per second).", writtenRows,
+                               elapsedSeconds, rowsPerSecond));
+    }
+
+    /**
+     * Method to modify queues and bindings that have no subscriptions, streaming each of the two tables once over a
+     * single read connection. Queues and bindings bound to a subscription are skipped, since they have been modified
+     * along with the subscription. The modified rows are written in batches over a single write connection.
+     *
+     * @throws SQLException
+     */
+    public void modifyIdleQueuesAndBindings() throws SQLException {
+        Logger log = Logger.getLogger(Processor.class.getName());
+        try (Connection readConnection = connector.createStreamingConnection();
+             Connection connection = connector.createConnection();
+             RowWriter writer = connector.createWriter(connection, batchSize)) {
+            IdleRowHandler queueHandler = new IdleRowHandler(writer);
+            IdleRowHandler bindingHandler = new IdleRowHandler(writer);
+            connector.streamQueues(readConnection, queueHandler);
+            writer.flush();
+            long queues = writer.getWrittenRows();
+            connector.streamBindings(readConnection, bindingHandler);
+            writer.flush();
+            log.info("Modified " + queues + " queues without subscriptions, skipped " + queueHandler.skippedRows
+                     + " queues with subscriptions.");
+            log.info("Modified " + (writer.getWrittenRows() - queues) + " bindings without subscriptions, skipped "
+                     + bindingHandler.skippedRows + " bindings with subscriptions.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     /**
      * Method to modify queues that have no subscriptions.
      *
@@ -125,16 +799,16 @@ public class Processor {
      * @throws SQLException
      */
     public int modifyIdleQueues() throws SQLException {
-        List<Queue> queues = connector.readQueues();
-        int idleQueues = 0;
-        for (Queue queue : queues) {
-            if (!(storageQueues.contains(queue.getQueueName()))) {
-                idleQueues = idleQueues + 1;
-                queue.setQueueData(modifier.modifyDefaultQueue(queue.getQueueData()));
-                connector.writeQueue(queue.getQueueName(), queue.getQueueData());
-            }
+        try (Connection readConnection = connector.createStreamingConnection();
+             Connection connection = connector.createConnection();
+             RowWriter writer = connector.createWriter(connection, batchSize)) {
+            connector.streamQueues(readConnection, new IdleRowHandler(writer));
+            writer.flush();
+            return (int) writer.getWrittenRows();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0;
         }
-        return idleQueues;
     }
 
     /**
@@ -144,16 +818,51 @@ public class Processor {
      * @throws SQLException
      */
     public int modifyIdleBindings() throws SQLException {
-        List<Binding> bindings = connector.readBindings();
-        int idleBindings = 0;
-        for (Binding binding : bindings) {
-            if (!(storageQueues.contains(binding.getQueueName()))) {
-                idleBindings = idleBindings + 1;
-                binding.setBindingDetails(modifier.modifyDefaultBinding(binding.getBindingDetails()));
-                connector.writeBinding(binding.getQueueName(), binding.getBindingDetails());
+        try (Connection readConnection = connector.createStreamingConnection();
+             Connection connection = connector.createConnection();
+             RowWriter writer = connector.createWriter(connection, batchSize)) {
+            connector.streamBindings(readConnection, new IdleRowHandler(writer));
+            writer.flush();
+            return (int) writer.getWrittenRows();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0;
+        }
+    }
+
+    /**
+     * Modifies the streamed queues and bindings whose storage queue has no subscription and hands them to a writer,
+     * and counts the ones skipped. The writer counts the rows it has committed.
+     */
+    private class IdleRowHandler implements RowHandler<Object> {
+
+        private final RowWriter writer;
+        private int skippedRows;
+
+        private IdleRowHandler(RowWriter writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public void handle(Object row) throws SQLException {
+            if (row instanceof Queue) {
+                Queue queue = (Queue) row;
+                if (storageQueues.contains(queue.getQueueName())) {
+                    skippedRows = skippedRows + 1;
+                } else {
+                    queue.setQueueData(modifier.modifyDefaultQueue(queue.getQueueData()));
+                    writer.writeQueue(queue.getQueueName(), queue.getQueueData());
+                }
+            } else if (row instanceof Binding) {
+                Binding binding = (Binding) row;
+                if (storageQueues.contains(binding.getQueueName())) {
+                    skippedRows = skippedRows + 1;
+                } else {
+                    binding.setBindingDetails(modifier.modifyDefaultBinding(binding.getBindingDetails()));
+                    writer.writeBinding(binding.getQueueName(), binding.getBindingDetails());
+                }
             }
         }
-        return idleBindings;
     }
 
 }
@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.mb.migration;
+
+import java.sql.SQLException;
+
+/**
+ * Receives the rows of a table one by one while they are streamed from the database.
+ *
+ * @param <T> type of the rows
+ */
+public interface RowHandler<T> {
+
+    /**
+     * Handle a row read from the database.
+     *
+     * @param row the row
+     * @throws SQLException
+     * @throws InterruptedException
+     */
+    void handle(T row) throws SQLException, InterruptedException;
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.mb.migration;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+
+/**
+ * Processes the rows of a partition handed to it by the thread streaming the tables.
+ * <p/>
+ * Rows are handed to the worker through {@link #submit(Object)}. When run on a thread pool, the worker processes them
+ * until {@link #endPhase()} is called.
+ */
+public abstract class RowWorker implements Callable<Void> {
+
+    /**
+     * Marker placed on the row queue to indicate that no more rows will be submitted for the current phase
+     */
+    private static final Object END_OF_PHASE = new Object();
+
+    /**
+     * Rows submitted to the worker and waiting to be processed
+     */
+    private final BlockingQueue<Object> rows;
+
+    /**
+     * @param queueCapacity maximum number of submitted rows waiting to be processed
+     */
+    protected RowWorker(int queueCapacity) {
+        rows = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    /**
+     * Process a subscription, queue or binding.
+     *
+     * @param row the row
+     * @throws Exception
+     */
+    public abstract void process(Object row) throws Exception;
+
+    /**
+     * Called once all rows of a phase have been processed.
+     *
+     * @throws Exception
+     */
+    protected abstract void phaseEnded() throws Exception;
+
+    /**
+     * Hand a subscription, queue or binding to the worker. Blocks while the worker's row queue is full.
+     *
+     * @param row the row to be processed
+     * @throws InterruptedException
+     */
+    public void submit(Object row) throws InterruptedException {
+        rows.put(row);
+    }
+
+    /**
+     * Indicate that all rows of the current phase have been submitted.
+     *
+     * @throws InterruptedException
+     */
+    public void endPhase() throws InterruptedException {
+        rows.put(END_OF_PHASE);
+    }
+
+    /**
+     * Process the submitted rows until the end of the phase.
+     * <p/>
+     * After a failure the remaining rows of the phase are still taken off the queue and discarded, so that the
+     * thread submitting them is never blocked. The failure is thrown once the phase has ended.
+     *
+     * @throws Exception the first failure encountered while processing the rows of the phase
+     */
+    @Override
+    public Void call() throws Exception {
+        Exception failure = null;
+        Object row = rows.take();
+        while (END_OF_PHASE != row) {
+            if (null == failure) {
+                try {
+                    process(row);
+                } catch (InterruptedException e) {
+                    throw e;
+                } catch (Exception e) {
+                    failure = e;
+                }
+            }
+            row = rows.take();
+        }
+        if (null != failure) {
+            throw failure;
+        }
+        phaseEnded();
+        return null;
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.mb.migration;
+
+import java.sql.SQLException;
+
+/**
+ * Destination of the modified subscriptions, queues and bindings.
+ */
+public interface RowWriter extends AutoCloseable {
+
+    /**
+     * Write a subscription.
+     *
+     * @param subscription new subscription details
+     * @throws SQLException
+     */
+    void writeSubscription(Subscription subscription) throws SQLException;
+
+    /**
+     * Write the queue details of a storage queue.
+     *
+     * @param storageQueue the storage queue name
+     * @param queueData    new queue details
+     * @throws SQLException
+     */
+    void writeQueue(String storageQueue, String queueData) throws SQLException;
+
+    /**
+     * Write the binding details of a binding to a storage queue.
+     *
+     * @param queueName      storage queue name
+     * @param bindingDetails new binding details
+     * @throws SQLException
+     */
+    void writeBinding(String queueName, String bindingDetails) throws SQLException;
+
+    /**
+     * Make all rows written so far durable.
+     *
+     * @throws SQLException
+     */
+    void flush() throws SQLException;
+
+    /**
+     * @return the number of rows made durable by this writer
+     */
+    long getWrittenRows();
+
+    /**
+     * Flush the written rows and release the resources of the writer.
+     *
+     * @throws SQLException
+     */
+    @Override
+    void close() throws SQLException;
+}
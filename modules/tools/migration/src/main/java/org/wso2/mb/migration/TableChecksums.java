@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.mb.migration;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Counts the rows of each table and combines their checksums.
+ * <p/>
+ * The checksum of a row is the CRC32 of its key and data. The checksums of the rows of a table are added up, so the
+ * checksum of a table does not depend on the order the rows are read in or on how they are partitioned between
+ * workers. A dry run and a verification of the migrated tables therefore report the same checksums if the migration
+ * wrote every row as expected.
+ */
+public class TableChecksums {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final AtomicLong subscriptions = new AtomicLong();
+    private final AtomicLong subscriptionChecksum = new AtomicLong();
+    private final AtomicLong queues = new AtomicLong();
+    private final AtomicLong queueChecksum = new AtomicLong();
+    private final AtomicLong bindings = new AtomicLong();
+    private final AtomicLong bindingChecksum = new AtomicLong();
+
+    /**
+     * Add a subscription, queue or binding to the checksum of its table.
+     *
+     * @param row the row
+     */
+    public void add(Object row) {
+        if (row instanceof Subscription) {
+            Subscription subscription = (Subscription) row;
+            subscriptions.incrementAndGet();
+            subscriptionChecksum.addAndGet(checksumOf(subscription.getIdentifier(),
+                                                      subscription.getDestinationType(),
+                                                      subscription.getSubscriptionData()));
+        } else if (row instanceof Queue) {
+            Queue queue = (Queue) row;
+            queues.incrementAndGet();
+            queueChecksum.addAndGet(checksumOf(queue.getQueueName(), queue.getQueueData()));
+        } else if (row instanceof Binding) {
+            Binding binding = (Binding) row;
+            bindings.incrementAndGet();
+            bindingChecksum.addAndGet(checksumOf(binding.getExchangeName(), binding.getQueueName(),
+                                                 binding.getBindingDetails()));
+        }
+    }
+
+    /**
+     * Log the number of rows and the checksum of each table.
+     *
+     * @param log the logger to write to
+     */
+    public void log(Logger log) {
+        log.info(format(DBConnector.DURABLE_SUB_TABLE, subscriptions, subscriptionChecksum));
+        log.info(format(DBConnector.MB_QUEUE, queues, queueChecksum));
+        log.info(format(DBConnector.MB_BINDING, bindings, bindingChecksum));
+    }
+
+    private static String format(String table, AtomicLong rows, AtomicLong checksum) {
+        return String.format("%s: %d rows, checksum %016x", table, rows.get(), checksum.get());
+    }
+
+    private static long checksumOf(String... columns) {
+        CRC32 crc = new CRC32();
+        for (String column : columns) {
+            if (null != column) {
+                crc.update(column.getBytes(UTF_8));
+            }
+            // Separate the columns, so that moving characters between columns changes the checksum
+            crc.update(0);
+        }
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.mb.migration;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Checks that migrated subscriptions, queues and bindings match the encoding expected by MB 3.1.0, and adds them to
+ * the checksums of their tables.
+ * <p/>
+ * Subscriptions have to be verified before queues and bindings, since the protocol type expected for a queue or
+ * binding is the one of the subscription bound to its storage queue.
+ */
+public class VerificationWorker extends RowWorker {
+
+    private static final Logger log = Logger.getLogger(VerificationWorker.class.getName());
+
+    /**
+     * Maximum number of mismatching rows logged by all workers together
+     */
+    static final int MAX_LOGGED_MISMATCHES = 100;
+
+    private static final int QUEUE_PROTOCOL_TYPE = 0;
+    private static final int QUEUE_DESTINATION_TYPE = 1;
+
+    private final AndesCodec subscriptionCodec = new AndesCodec(Modifier.SUBSCRIPTION_PROPERTIES);
+
+    private final AndesCodec queueCodec = new AndesCodec("protocolType", "destinationType");
+
+    /**
+     * Protocol type of the subscription bound to each storage queue, shared by all the workers of a verification
+     */
+    private final Map<String, String> boundQueues;
+
+    /**
+     * Number of mismatching rows logged so far, shared by all the workers of a verification
+     */
+    private final AtomicInteger loggedMismatches;
+
+    private final TableChecksums checksums;
+
+    private long verifiedRows;
+    private long mismatches;
+
+    /**
+     * @param boundQueues      map to record and look up the protocol type of the subscription bound to a storage
+     *                         queue
+     * @param loggedMismatches counter of the mismatching rows logged by the workers of the verification
+     * @param checksums        checksums the verified rows are added to
+     * @param queueCapacity    maximum number of submitted rows waiting to be verified
+     */
+    public VerificationWorker(Map<String, String> boundQueues, AtomicInteger loggedMismatches,
+                              TableChecksums checksums, int queueCapacity) {
+        super(queueCapacity);
+        this.boundQueues = boundQueues;
+        this.loggedMismatches = loggedMismatches;
+        this.checksums = checksums;
+    }
+
+    @Override
+    public void process(Object row) {
+        boolean matches;
+        String key;
+        if (row instanceof Subscription) {
+            Subscription subscription = (Subscription) row;
+            key = subscription.getIdentifier();
+            matches = verifySubscription(subscription);
+        } else if (row instanceof Queue) {
+            Queue queue = (Queue) row;
+            key = queue.getQueueName();
+            matches = verifyQueue(queue);
+        } else if (row instanceof Binding) {
+            Binding binding = (Binding) row;
+            key = binding.getQueueName();
+            matches = verifyBinding(binding);
+        } else {
+            return;
+        }
+        checksums.add(row);
+        verifiedRows = verifiedRows + 1;
+        if (!matches) {
+            mismatches = mismatches + 1;
+            if (loggedMismatches.incrementAndGet() <= MAX_LOGGED_MISMATCHES) {
+                log.warning(row.getClass().getSimpleName() + " " + key + " does not match the MB 3.1.0 encoding.");
+            }
+        }
+    }
+
+    @Override
+    protected void phaseEnded() {
+    }
+
+    /**
+     * A migrated subscription has every property of the 3.0.0 encoding except subscriptionType and isBoundToTopic,
+     * followed by a single destination type and protocol type. Its destination identifier no longer uses the "topic."
+     * prefix.
+     */
+    private boolean verifySubscription(Subscription subscription) {
+        String data = subscription.getSubscriptionData();
+        if (null == data || occurrencesOfMarker(data) != 1) {
+            return false;
+        }
+        subscriptionCodec.scan(data);
+        String protocolType = subscriptionCodec.value(Modifier.PROTOCOL_TYPE);
+        String storageQueueName = subscriptionCodec.value(Modifier.STORAGE_QUEUE_NAME);
+        if (null != storageQueueName && null != protocolType) {
+            boundQueues.put(storageQueueName, protocolType);
+        }
+
+        for (int property = Modifier.SUBSCRIPTION_ID; property <= Modifier.STORAGE_QUEUE_NAME; property++) {
+            if (!subscriptionCodec.contains(property)) {
+                return false;
+            }
+        }
+        return !subscriptionCodec.contains(Modifier.IS_BOUND_TO_TOPIC)
+               && !subscriptionCodec.contains(Modifier.SUBSCRIPTION_TYPE)
+               && (subscriptionCodec.valueEquals(Modifier.DESTINATION_TYPE, "QUEUE")
+                   || subscriptionCodec.valueEquals(Modifier.DESTINATION_TYPE, "TOPIC")
+                   || subscriptionCodec.valueEquals(Modifier.DESTINATION_TYPE, "DURABLE_TOPIC"))
+               && (subscriptionCodec.valueEquals(Modifier.PROTOCOL_TYPE, "AMQP")
+                   || subscriptionCodec.valueEquals(Modifier.PROTOCOL_TYPE, "MQTT"))
+               && null != subscription.getDestinationType()
+               && !subscription.getDestinationType().startsWith("topic.");
+    }
+
+    /**
+     * A migrated queue has a single protocol type, which is the one of the subscription bound to it or AMQP, and the
+     * destination type matching that protocol.
+     */
+    private boolean verifyQueue(Queue queue) {
+        String data = queue.getQueueData();
+        if (null == data || occurrencesOfMarker(data) != 1) {
+            return false;
+        }
+        String protocolType = expectedProtocolType(queue.getQueueName());
+        queueCodec.scan(data);
+        return queueCodec.valueEquals(QUEUE_PROTOCOL_TYPE, protocolType)
+               && queueCodec.valueEquals(QUEUE_DESTINATION_TYPE, "MQTT".equals(protocolType) ? "TOPIC" : "QUEUE");
+    }
+
+    /**
+     * A migrated binding has an exchange, queue info and routing key, and its queue info has a single protocol type,
+     * which is the one of the subscription bound to the storage queue or AMQP, and the QUEUE destination type.
+     */
+    private boolean verifyBinding(Binding binding) {
+        String details = binding.getBindingDetails();
+        if (null == details || occurrencesOfMarker(details) != 1) {
+            return false;
+        }
+        int first = details.indexOf('|');
+        int second = first < 0 ? -1 : details.indexOf('|', first + 1);
+        if (second < 0) {
+            return false;
+        }
+        queueCodec.scan(details.substring(first + 1, second));
+        return queueCodec.valueEquals(QUEUE_PROTOCOL_TYPE, expectedProtocolType(binding.getQueueName()))
+               && queueCodec.valueEquals(QUEUE_DESTINATION_TYPE, "QUEUE");
+    }
+
+    private String expectedProtocolType(String queueName) {
+        String protocolType = null == queueName ? null : boundQueues.get(queueName);
+        return null == protocolType ? "AMQP" : protocolType;
+    }
+
+    private static int occurrencesOfMarker(String data) {
+        int occurrences = 0;
+        int index = data.indexOf(Modifier.MIGRATED_MARKER);
+        while (index >= 0) {
+            occurrences = occurrences + 1;
+            index = data.indexOf(Modifier.MIGRATED_MARKER, index + 1);
+        }
+        return occurrences;
+    }
+
+    public long getVerifiedRows() {
+        return verifiedRows;
+    }
+
+    public long getMismatches() {
+        return mismatches;
+    }
+}
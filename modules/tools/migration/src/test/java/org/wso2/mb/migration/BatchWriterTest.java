@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.mb.migration;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Tests writing modified rows in JDBC batches with the {@link BatchWriter}.
+ */
+public class BatchWriterTest {
+
+    private MigrationTestDatabase database;
+
+    private Connection connection;
+
+    @BeforeMethod
+    public void setUp() throws SQLException {
+        database = new MigrationTestDatabase("batchwriter");
+        database.seed(5, 0);
+        connection = database.openConnection();
+    }
+
+    @AfterMethod
+    public void tearDown() throws SQLException {
+        connection.close();
+        database.close();
+    }
+
+    /**
+     * Updates are committed once a batch is full, and the remaining ones when the writer is closed.
+     */
+    @Test
+    public void testCommitsFullBatches() throws SQLException {
+        BatchWriter writer = new BatchWriter(connection, 2);
+        for (int i = 0; i < 3; i++) {
+            writer.writeSubscription(new Subscription("subscription" + i, "DURABLE_TOPIC.topic" + i, "migrated" + i));
+        }
+        Assert.assertEquals(writer.getWrittenRows(), 2, "Only the full batch should be written.");
+        Assert.assertEquals(countSubscriptionsWithData("migrated"), 2, "The full batch was not committed.");
+
+        writer.close();
+        Assert.assertEquals(writer.getWrittenRows(), 3, "The remaining update was not written on close.");
+        Assert.assertEquals(countSubscriptionsWithData("migrated"), 3, "The remaining update was not committed.");
+    }
+
+    /**
+     * Subscriptions, queues and bindings are all written by one flush.
+     */
+    @Test
+    public void testWritesAllTables() throws SQLException {
+        try (BatchWriter writer = new BatchWriter(connection, 100)) {
+            writer.writeSubscription(new Subscription("subscription0", "DURABLE_TOPIC.topic0", "migrated"));
+            writer.writeQueue("carbon:subscription0", "migrated queue");
+            writer.writeBinding("carbon:subscription0", "migrated binding");
+        }
+
+        Assert.assertEquals(database.readTable(DBConnector.DURABLE_SUB_TABLE).get(0),
+                            "subscription0\tDURABLE_TOPIC.topic0\tmigrated");
+        Assert.assertEquals(database.readTable(DBConnector.MB_QUEUE).get(0), "carbon:subscription0\tmigrated queue");
+        Assert.assertEquals(database.readTable(DBConnector.MB_BINDING).get(0),
+                            "amq.topic\tcarbon:subscription0\tmigrated binding");
+    }
+
+    /**
+     * A batch which fails is rolled back as a whole, and the writer can be used for further batches.
+     */
+    @Test
+    public void testFailedBatchRolledBack() throws SQLException {
+        BatchWriter writer = new BatchWriter(connection, 2);
+        writer.writeSubscription(new Subscription("subscription0", "DURABLE_TOPIC.topic0", "migrated0"));
+        StringBuilder tooLong = new StringBuilder();
+        for (int i = 0; i < 300; i++) {
+            tooLong.append('x');
+        }
+        try {
+            writer.writeSubscription(new Subscription("subscription1", tooLong.toString(), "migrated1"));
+            Assert.fail("The batch with a too long destination was written.");
+        } catch (SQLException e) {
+            // Expected
+        }
+        Assert.assertEquals(countSubscriptionsWithData("migrated"), 0, "The failed batch was partially committed.");
+        Assert.assertEquals(writer.getWrittenRows(), 0);
+
+        writer.writeSubscription(new Subscription("subscription2", "DURABLE_TOPIC.topic2", "migrated2"));
+        writer.close();
+        Assert.assertEquals(countSubscriptionsWithData("migrated"), 1, "The writer did not recover from the failure.");
+        Assert.assertEquals(writer.getWrittenRows(), 1);
+    }
+
+    private int countSubscriptionsWithData(String prefix) throws SQLException {
+        List<String> rows = database.readTable(DBConnector.DURABLE_SUB_TABLE);
+        int count = 0;
+        for (String row : rows) {
+            if (row.substring(row.lastIndexOf('\t') + 1).startsWith(prefix)) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.mb.migration;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/**
+ * Tests recording the progress of a run in a {@link Checkpoint} and loading it again.
+ */
+public class CheckpointTest {
+
+    private File directory;
+
+    private File file;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("checkpoint-test").toFile();
+        file = new File(directory, "migration.checkpoint");
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (null != files) {
+            for (File leftOver : files) {
+                Assert.assertTrue(leftOver.delete(), "Could not delete " + leftOver);
+            }
+        }
+        Assert.assertTrue(directory.delete(), "Could not delete " + directory);
+    }
+
+    /**
+     * The progress recorded by one run is loaded by the next.
+     */
+    @Test
+    public void testProgressLoaded() throws IOException {
+        Checkpoint checkpoint = new Checkpoint(file);
+        checkpoint.reset(2);
+        checkpoint.record(DBConnector.MB_QUEUE, 0, "queue3");
+        checkpoint.record(DBConnector.MB_QUEUE, 1, "queue1");
+        checkpoint.record(DBConnector.MB_QUEUE, 0, "queue4");
+        checkpoint.markComplete(DBConnector.DURABLE_SUB_TABLE);
+
+        Checkpoint loaded = new Checkpoint(file);
+        loaded.load();
+        Assert.assertEquals(loaded.getWorkers(), 2);
+        Assert.assertEquals(loaded.getWorkerKeys(DBConnector.MB_QUEUE), Arrays.asList("queue4", "queue1"));
+        Assert.assertTrue(loaded.isComplete(DBConnector.DURABLE_SUB_TABLE));
+        Assert.assertFalse(loaded.isComplete(DBConnector.MB_QUEUE));
+        Assert.assertFalse(new File(directory, file.getName() + ".tmp").exists(), "The temporary file was left.");
+    }
+
+    /**
+     * Without a checkpoint file there is no progress to resume from.
+     */
+    @Test
+    public void testMissingFile() throws IOException {
+        Checkpoint checkpoint = new Checkpoint(file);
+        checkpoint.load();
+        Assert.assertEquals(checkpoint.getWorkers(), 0);
+        Assert.assertNull(checkpoint.getWorkerKeys(DBConnector.MB_QUEUE));
+        Assert.assertFalse(checkpoint.isComplete(DBConnector.DURABLE_SUB_TABLE));
+    }
+
+    /**
+     * A table is not resumed unless every worker recorded a key for it, since the rows of a worker without a key
+     * may not have been committed.
+     */
+    @Test
+    public void testKeyOfEveryWorkerNeeded() throws IOException {
+        Checkpoint checkpoint = new Checkpoint(file);
+        checkpoint.reset(2);
+        checkpoint.record(DBConnector.MB_BINDING, 1, "queue1");
+        checkpoint.record(DBConnector.MB_BINDING, 0, null);
+        Assert.assertNull(checkpoint.getWorkerKeys(DBConnector.MB_BINDING));
+
+        checkpoint.record(DBConnector.MB_BINDING, 0, "queue0");
+        Assert.assertEquals(checkpoint.getWorkerKeys(DBConnector.MB_BINDING), Arrays.asList("queue0", "queue1"));
+    }
+
+    /**
+     * A checkpoint file without the number of workers, as left by a partial copy, has no progress to resume from.
+     */
+    @Test
+    public void testFileWithoutWorkers() throws IOException {
+        try (Writer writer = new FileWriter(file)) {
+            writer.write(DBConnector.MB_QUEUE + ".worker.0=queue0\n");
+        }
+        Checkpoint checkpoint = new Checkpoint(file);
+        checkpoint.load();
+        Assert.assertEquals(checkpoint.getWorkers(), 0);
+        Assert.assertNull(checkpoint.getWorkerKeys(DBConnector.MB_QUEUE));
+    }
+
+    /**
+     * Resetting the checkpoint discards the progress of the previous run.
+     */
+    @Test
+    public void testResetDiscardsProgress() throws IOException {
+        Checkpoint checkpoint = new Checkpoint(file);
+        checkpoint.reset(1);
+        checkpoint.record(DBConnector.MB_QUEUE, 0, "queue0");
+        checkpoint.markComplete(DBConnector.MB_QUEUE);
+
+        checkpoint.reset(1);
+        Checkpoint loaded = new Checkpoint(file);
+        loaded.load();
+        Assert.assertEquals(loaded.getWorkers(), 1);
+        Assert.assertNull(loaded.getWorkerKeys(DBConnector.MB_QUEUE));
+        Assert.assertFalse(loaded.isComplete(DBConnector.MB_QUEUE));
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.mb.migration;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests taking connections from and returning them to the {@link ConnectionPool}.
+ */
+public class ConnectionPoolTest {
+
+    private MigrationTestDatabase database;
+
+    private ConnectionPool pool;
+
+    @BeforeMethod
+    public void setUp() throws SQLException {
+        database = new MigrationTestDatabase("pool");
+    }
+
+    @AfterMethod
+    public void tearDown() throws SQLException {
+        if (null != pool) {
+            pool.close();
+        }
+        database.close();
+    }
+
+    /**
+     * A returned connection is handed out again instead of opening a new one.
+     */
+    @Test
+    public void testReturnedConnectionIsReused() throws SQLException {
+        pool = createPool(1);
+        Connection first = pool.getConnection();
+        Connection underlying = first.unwrap(Connection.class);
+        first.close();
+
+        try (Connection second = pool.getConnection()) {
+            Assert.assertSame(second.unwrap(Connection.class), underlying, "The idle connection was not reused.");
+        }
+    }
+
+    /**
+     * A connection cannot be used once it has been returned to the pool, while its underlying connection stays open.
+     */
+    @Test
+    public void testReturnedConnectionCannotBeUsed() throws SQLException {
+        pool = createPool(1);
+        Connection connection = pool.getConnection();
+        Connection underlying = connection.unwrap(Connection.class);
+        connection.close();
+
+        Assert.assertTrue(connection.isClosed(), "The returned connection is not reported as closed.");
+        Assert.assertFalse(underlying.isClosed(), "The underlying connection was closed instead of pooled.");
+        try {
+            connection.createStatement();
+            Assert.fail("A returned connection created a statement.");
+        } catch (SQLException e) {
+            // Expected
+        }
+    }
+
+    /**
+     * Statements created through a connection are closed when it is returned to the pool.
+     */
+    @Test
+    public void testStatementsClosedOnReturn() throws SQLException {
+        pool = createPool(1);
+        Connection connection = pool.getConnection();
+        Statement statement = connection.createStatement();
+        connection.close();
+
+        Assert.assertTrue(statement.isClosed(), "The statement was not closed with the connection.");
+    }
+
+    /**
+     * An open transaction is rolled back and auto commit is restored when a connection is returned to the pool.
+     */
+    @Test
+    public void testTransactionRolledBackOnReturn() throws SQLException {
+        pool = createPool(1);
+        try (Connection connection = pool.getConnection();
+             Statement statement = connection.createStatement()) {
+            connection.setAutoCommit(false);
+            statement.executeUpdate("INSERT INTO " + DBConnector.MB_QUEUE + " VALUES ('queue','queueName=queue')");
+        }
+
+        try (Connection connection = pool.getConnection()) {
+            Assert.assertTrue(connection.getAutoCommit(), "Auto commit was not restored.");
+        }
+        Assert.assertTrue(database.readTable(DBConnector.MB_QUEUE).isEmpty(), "The transaction was not rolled back.");
+    }
+
+    /**
+     * A connection is only handed out once one is returned when all connections of the pool are in use.
+     */
+    @Test
+    public void testWaitsForReturnedConnectionWhenExhausted() throws Exception {
+        pool = createPool(2);
+        Connection first = pool.getConnection();
+        Connection second = pool.getConnection();
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Connection> third = executor.submit(new Callable<Connection>() {
+                @Override
+                public Connection call() throws SQLException {
+                    return pool.getConnection();
+                }
+            });
+            Thread.sleep(200);
+            Assert.assertFalse(third.isDone(), "A connection was handed out beyond the size of the pool.");
+
+            Connection underlying = first.unwrap(Connection.class);
+            first.close();
+            Connection connection = third.get(10, TimeUnit.SECONDS);
+            Assert.assertSame(connection.unwrap(Connection.class), underlying,
+                              "The returned connection was not handed out.");
+            connection.close();
+            second.close();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Closing the pool closes all connections it opened.
+     */
+    @Test
+    public void testCloseClosesConnections() throws SQLException {
+        pool = createPool(2);
+        Connection first = pool.getConnection();
+        Connection second = pool.getConnection();
+        Connection firstUnderlying = first.unwrap(Connection.class);
+        Connection secondUnderlying = second.unwrap(Connection.class);
+        first.close();
+
+        pool.close();
+        Assert.assertTrue(firstUnderlying.isClosed(), "The idle connection was not closed.");
+        Assert.assertTrue(secondUnderlying.isClosed(), "The connection in use was not closed.");
+    }
+
+    private ConnectionPool createPool(int size) {
+        return new ConnectionPool(database.getUrl(), MigrationTestDatabase.USER, MigrationTestDatabase.PASSWORD,
+                                  size);
+    }
+}
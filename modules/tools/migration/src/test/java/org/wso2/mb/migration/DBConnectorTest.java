@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.mb.migration;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Tests preparing the JDBC url the {@link DBConnector} connects with.
+ */
+public class DBConnectorTest {
+
+    private static final String MYSQL_URL = "jdbc:mysql://localhost:3306/mb";
+
+    /**
+     * With vendor writers MySQL is asked to both fetch with a cursor and rewrite batches.
+     */
+    @Test
+    public void testMySqlUrlWithVendorWriters() {
+        Assert.assertEquals(DBConnector.prepareUrl(DatabaseVendor.MYSQL, true, MYSQL_URL),
+                            MYSQL_URL + "?useCursorFetch=true&rewriteBatchedStatements=true");
+    }
+
+    /**
+     * Without vendor writers batches are left as they are, while tables are still streamed with a cursor.
+     */
+    @Test
+    public void testMySqlUrlWithoutVendorWriters() {
+        Assert.assertEquals(DBConnector.prepareUrl(DatabaseVendor.MYSQL, false, MYSQL_URL),
+                            MYSQL_URL + "?useCursorFetch=true");
+    }
+
+    /**
+     * Options the configured url already sets are kept as they are.
+     */
+    @Test
+    public void testConfiguredMySqlOptionsKept() {
+        String url = MYSQL_URL + "?useCursorFetch=false";
+        Assert.assertEquals(DBConnector.prepareUrl(DatabaseVendor.MYSQL, true, url),
+                            url + "&rewriteBatchedStatements=true");
+    }
+
+    /**
+     * The url of a database which needs no options is used as configured.
+     */
+    @Test
+    public void testOtherUrlUnchanged() {
+        String url = "jdbc:h2:mem:mb";
+        Assert.assertEquals(DBConnector.prepareUrl(DatabaseVendor.H2, true, url), url);
+        Assert.assertEquals(DBConnector.prepareUrl(DatabaseVendor.OTHER, false, url), url);
+    }
+}
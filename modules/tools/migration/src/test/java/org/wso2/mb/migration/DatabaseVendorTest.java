@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.mb.migration;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Tests identifying the database from the configured driver and preparing its JDBC url with {@link DatabaseVendor}.
+ */
+public class DatabaseVendorTest {
+
+    /**
+     * Every known driver, including the older and newer class names of the same driver, selects its database.
+     */
+    @Test
+    public void testFromDriverClass() {
+        Assert.assertEquals(DatabaseVendor.fromDriverClass("com.mysql.jdbc.Driver"), DatabaseVendor.MYSQL);
+        Assert.assertEquals(DatabaseVendor.fromDriverClass("com.mysql.cj.jdbc.Driver"), DatabaseVendor.MYSQL);
+        Assert.assertEquals(DatabaseVendor.fromDriverClass("org.postgresql.Driver"), DatabaseVendor.POSTGRESQL);
+        Assert.assertEquals(DatabaseVendor.fromDriverClass("oracle.jdbc.driver.OracleDriver"), DatabaseVendor.ORACLE);
+        Assert.assertEquals(DatabaseVendor.fromDriverClass("oracle.jdbc.OracleDriver"), DatabaseVendor.ORACLE);
+        Assert.assertEquals(DatabaseVendor.fromDriverClass("net.sourceforge.jtds.jdbc.Driver"), DatabaseVendor.MSSQL);
+        Assert.assertEquals(DatabaseVendor.fromDriverClass("com.microsoft.sqlserver.jdbc.SQLServerDriver"),
+                            DatabaseVendor.MSSQL);
+        Assert.assertEquals(DatabaseVendor.fromDriverClass("org.h2.Driver"), DatabaseVendor.H2);
+    }
+
+    /**
+     * Unknown and missing drivers fall back to standard JDBC.
+     */
+    @Test
+    public void testUnknownDriverClass() {
+        Assert.assertEquals(DatabaseVendor.fromDriverClass("org.apache.derby.jdbc.EmbeddedDriver"),
+                            DatabaseVendor.OTHER);
+        Assert.assertEquals(DatabaseVendor.fromDriverClass(null), DatabaseVendor.OTHER);
+    }
+
+    /**
+     * MySQL urls get the options to rewrite batches and to fetch with a cursor, appended to the existing options if
+     * there are any, and only once.
+     */
+    @Test
+    public void testMySqlUrlOptions() {
+        String url = "jdbc:mysql://localhost:3306/mb";
+        Assert.assertEquals(DatabaseVendor.MYSQL.prepareUrl(url), url + "?rewriteBatchedStatements=true");
+        Assert.assertEquals(DatabaseVendor.MYSQL.prepareStreamingUrl(url), url + "?useCursorFetch=true");
+        Assert.assertEquals(DatabaseVendor.MYSQL.prepareUrl(url + "?useSSL=false"),
+                            url + "?useSSL=false&rewriteBatchedStatements=true");
+
+        String configured = url + "?useCursorFetch=false&rewriteBatchedStatements=false";
+        Assert.assertEquals(DatabaseVendor.MYSQL.prepareUrl(configured), configured,
+                            "An option set in the configured url was overridden.");
+        Assert.assertEquals(DatabaseVendor.MYSQL.prepareStreamingUrl(configured), configured,
+                            "An option set in the configured url was overridden.");
+    }
+
+    /**
+     * Urls of the other databases are used as configured.
+     */
+    @Test
+    public void testOtherUrlsUnchanged() {
+        String url = "jdbc:postgresql://localhost:5432/mb";
+        for (DatabaseVendor vendor : DatabaseVendor.values()) {
+            if (DatabaseVendor.MYSQL != vendor) {
+                Assert.assertEquals(vendor.prepareUrl(url), url, vendor + " changed the url.");
+                Assert.assertEquals(vendor.prepareStreamingUrl(url), url, vendor + " changed the url.");
+            }
+        }
+    }
+
+    /**
+     * PostgreSQL is written with multi row updates, the other databases with JDBC batches.
+     */
+    @Test
+    public void testCreateWriter() throws SQLException {
+        MigrationTestDatabase database = new MigrationTestDatabase("vendor");
+        try (Connection connection = database.openConnection()) {
+            Assert.assertTrue(DatabaseVendor.POSTGRESQL.createWriter(connection, 10) instanceof PostgreSqlBatchWriter);
+            Assert.assertTrue(DatabaseVendor.MYSQL.createWriter(connection, 10) instanceof BatchWriter);
+            Assert.assertTrue(DatabaseVendor.H2.createWriter(connection, 10) instanceof BatchWriter);
+            Assert.assertTrue(DatabaseVendor.OTHER.createWriter(connection, 10) instanceof BatchWriter);
+        } finally {
+            database.close();
+        }
+    }
+}
@@ -0,0 +1,389 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.mb.migration;
+
+import org.h2.api.Trigger;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Interrupts batched and parallel runs of the {@link Processor} by failing the writes to the queue table after a
+ * number of updates, and repeats them with resume enabled. Every committed update is logged by a trigger, so that the
+ * tests can check that each row is migrated exactly once over all runs.
+ */
+public class MigrationResumeTest {
+
+    private static final int SUBSCRIPTIONS = 200;
+
+    private static final int IDLE_QUEUES = 300;
+
+    /**
+     * Number of queue updates after which a batched run fails, in its third batch of 100 updates
+     */
+    private static final int BATCHED_QUEUE_UPDATES = 250;
+
+    /**
+     * Number of queue updates after which a parallel run fails, once each of its 4 workers committed a batch of 100
+     * updates
+     */
+    private static final int PARALLEL_QUEUE_UPDATES = 450;
+
+    private static final String[] TABLES = {
+            DBConnector.DURABLE_SUB_TABLE, DBConnector.MB_QUEUE, DBConnector.MB_BINDING };
+
+    /**
+     * Table the trigger logs the key of every updated row in, along with the table of the row
+     */
+    private static final String UPDATE_LOG = "MIGRATION_UPDATE_LOG";
+
+    private static final Pattern QUEUE_REPORT = Pattern.compile(
+            "\"" + DBConnector.MB_QUEUE + "\": \\{\"total\": (\\d+), \"read\": (\\d+)");
+
+    private File directory;
+
+    private final List<MigrationTestDatabase> databases = new ArrayList<>();
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("migration-resume-test").toFile();
+        UpdateLogTrigger.failAfter(Integer.MAX_VALUE);
+    }
+
+    @AfterMethod
+    public void tearDown() throws SQLException {
+        UpdateLogTrigger.failAfter(Integer.MAX_VALUE);
+        for (MigrationTestDatabase database : databases) {
+            database.close();
+        }
+        databases.clear();
+        File[] files = directory.listFiles();
+        if (null != files) {
+            for (File file : files) {
+                Assert.assertTrue(file.delete(), "Could not delete " + file);
+            }
+        }
+        Assert.assertTrue(directory.delete(), "Could not delete " + directory);
+    }
+
+    /**
+     * A resumed batched run continues from the last committed queue, and migrates the remaining rows exactly once.
+     */
+    @Test
+    public void testResumeBatchedRun() throws SQLException, IOException {
+        MigrationTestDatabase database = createDatabase("resumebatched");
+        runUntilFailure(database, Processor.BATCHED_MODE, BATCHED_QUEUE_UPDATES);
+        List<String> keys = readCheckpoint().getWorkerKeys(DBConnector.MB_QUEUE);
+        Assert.assertNotNull(keys, "The committed queues were not recorded.");
+
+        run(database, Processor.BATCHED_MODE, true);
+        long read = readQueueReport()[1];
+        Assert.assertEquals(read, countQueuesFrom(database, Collections.min(keys)),
+                            "The queues were not read from the recorded key.");
+        Assert.assertTrue(read < SUBSCRIPTIONS + IDLE_QUEUES, "The run did not resume.");
+        assertMigratedOnce(database, Processor.BATCHED_MODE);
+    }
+
+    /**
+     * A resumed parallel run continues from the smallest queue name committed by its workers, and migrates the
+     * remaining rows exactly once.
+     */
+    @Test
+    public void testResumeParallelRun() throws SQLException, IOException {
+        MigrationTestDatabase database = createDatabase("resumeparallel");
+        runUntilFailure(database, Processor.PARALLEL_MODE, PARALLEL_QUEUE_UPDATES);
+        List<String> keys = readCheckpoint().getWorkerKeys(DBConnector.MB_QUEUE);
+        Assert.assertNotNull(keys, "The committed queues of every worker were not recorded.");
+        Assert.assertEquals(new HashSet<>(keys).size(), 4);
+
+        run(database, Processor.PARALLEL_MODE, true);
+        long read = readQueueReport()[1];
+        Assert.assertEquals(read, countQueuesFrom(database, firstQueue(database, keys)),
+                            "The queues were not read from the smallest recorded key.");
+        Assert.assertTrue(read < SUBSCRIPTIONS + IDLE_QUEUES, "The run did not resume.");
+        assertMigratedOnce(database, Processor.PARALLEL_MODE);
+    }
+
+    /**
+     * Rows skipped by a resumed run, since they were already migrated, still advance the recorded key of their worker,
+     * so that a run interrupted again resumes after them.
+     */
+    @Test
+    public void testResumeTwice() throws SQLException, IOException {
+        MigrationTestDatabase database = createDatabase("resumetwice");
+        runUntilFailure(database, Processor.BATCHED_MODE, BATCHED_QUEUE_UPDATES);
+        String firstKey = readCheckpoint().getWorkerKeys(DBConnector.MB_QUEUE).get(0);
+
+        UpdateLogTrigger.failAfter(BATCHED_QUEUE_UPDATES);
+        run(database, Processor.BATCHED_MODE, true);
+        Assert.assertTrue(UpdateLogTrigger.failed(), "The second run was not interrupted.");
+        String secondKey = readCheckpoint().getWorkerKeys(DBConnector.MB_QUEUE).get(0);
+        Assert.assertTrue(countQueuesFrom(database, secondKey) < countQueuesFrom(database, firstKey),
+                          "The second run did not record its progress.");
+
+        UpdateLogTrigger.failAfter(Integer.MAX_VALUE);
+        run(database, Processor.BATCHED_MODE, true);
+        Assert.assertEquals(readQueueReport()[1], countQueuesFrom(database, secondKey));
+        assertMigratedOnce(database, Processor.BATCHED_MODE);
+    }
+
+    /**
+     * Without a checkpoint file a resumed run starts from the beginning, and skips the rows already migrated.
+     */
+    @Test
+    public void testResumeWithoutCheckpoint() throws SQLException, IOException {
+        MigrationTestDatabase database = createDatabase("missingcheckpoint");
+        runUntilFailure(database, Processor.PARALLEL_MODE, PARALLEL_QUEUE_UPDATES);
+        Assert.assertTrue(checkpointFile().delete(), "Could not delete the checkpoint.");
+
+        run(database, Processor.PARALLEL_MODE, true);
+        Assert.assertEquals(readQueueReport()[1], SUBSCRIPTIONS + IDLE_QUEUES, "The run did not start over.");
+        assertMigratedOnce(database, Processor.PARALLEL_MODE);
+    }
+
+    /**
+     * A table for which one of the workers has not recorded a key is read from the beginning, since the rows of that
+     * worker may not have been committed.
+     */
+    @Test
+    public void testResumeWithPartialCheckpoint() throws SQLException, IOException {
+        MigrationTestDatabase database = createDatabase("partialcheckpoint");
+        runUntilFailure(database, Processor.PARALLEL_MODE, PARALLEL_QUEUE_UPDATES);
+        Properties progress = new Properties();
+        try (Reader reader = new FileReader(checkpointFile())) {
+            progress.load(reader);
+        }
+        progress.remove(DBConnector.MB_QUEUE + ".worker.1");
+        try (Writer writer = new FileWriter(checkpointFile())) {
+            progress.store(writer, null);
+        }
+
+        run(database, Processor.PARALLEL_MODE, true);
+        Assert.assertEquals(readQueueReport()[1], SUBSCRIPTIONS + IDLE_QUEUES, "The queue table was not read again.");
+        assertMigratedOnce(database, Processor.PARALLEL_MODE);
+    }
+
+    /**
+     * A worker records the key of the rows it skips along with the ones it writes.
+     */
+    @Test
+    public void testSkippedRowsRecorded() throws SQLException, IOException {
+        MigrationTestDatabase database = createDatabase("skippedrows");
+        Checkpoint checkpoint = new Checkpoint(checkpointFile());
+        checkpoint.reset(1);
+        try (Connection connection = database.openConnection();
+             MigrationWorker worker = new MigrationWorker(
+                     0, new BatchWriter(connection, 10), MigrationPlan.create("3.0.0", "3.1.0"),
+                     new MigrationContext(), checkpoint, null, null, 1)) {
+            worker.migrate(new Queue("queue1", "queueName=queue1,protocolType=AMQP,destinationType=QUEUE"));
+            worker.migrate(new Queue("queue2", "queueName=queue2,protocolType=AMQP,destinationType=QUEUE"));
+            worker.flush();
+            Assert.assertEquals(worker.getSkippedRows(), 2);
+            Assert.assertEquals(worker.getWrittenRows(), 0);
+        }
+        Assert.assertEquals(readCheckpoint().getWorkerKeys(DBConnector.MB_QUEUE), Collections.singletonList("queue2"));
+    }
+
+    private MigrationTestDatabase createDatabase(String name) throws SQLException {
+        MigrationTestDatabase database = new MigrationTestDatabase(name);
+        databases.add(database);
+        database.seed(SUBSCRIPTIONS, IDLE_QUEUES);
+        try (Connection connection = database.openConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE " + UPDATE_LOG + " (TABLE_NAME VARCHAR(255), ROW_KEY VARCHAR(512))");
+            for (String table : TABLES) {
+                statement.execute("CREATE TRIGGER " + table + "_UPDATE_LOG AFTER UPDATE ON " + table
+                                  + " FOR EACH ROW CALL \"" + UpdateLogTrigger.class.getName() + "\"");
+            }
+        }
+        return database;
+    }
+
+    /**
+     * Run a migration which fails once it has updated the given number of queues.
+     */
+    private void runUntilFailure(MigrationTestDatabase database, String mode, int queueUpdates) {
+        UpdateLogTrigger.failAfter(queueUpdates);
+        run(database, mode, false);
+        Assert.assertTrue(UpdateLogTrigger.failed(), "The run was not interrupted.");
+        UpdateLogTrigger.failAfter(Integer.MAX_VALUE);
+    }
+
+    private void run(MigrationTestDatabase database, String mode, boolean resume) {
+        Processor processor = new Processor(database.configuration(mode, directory));
+        processor.setResume(resume);
+        try {
+            processor.modifyTables();
+        } finally {
+            processor.close();
+        }
+    }
+
+    /**
+     * Check that the tables hold the same rows as after an uninterrupted run, that every row was updated exactly
+     * once and that no row is marked as migrated twice.
+     */
+    private void assertMigratedOnce(MigrationTestDatabase database, String mode) throws SQLException {
+        MigrationTestDatabase expected = new MigrationTestDatabase("expected");
+        databases.add(expected);
+        expected.seed(SUBSCRIPTIONS, IDLE_QUEUES);
+        run(expected, mode, false);
+
+        for (String table : TABLES) {
+            List<String> rows = database.readTable(table);
+            Assert.assertEquals(rows, expected.readTable(table), table + " was not migrated as in a single run.");
+            for (String row : rows) {
+                Assert.assertEquals(row.split(Pattern.quote(Modifier.MIGRATED_MARKER), -1).length, 2,
+                                    "The row is not marked as migrated exactly once: " + row);
+            }
+        }
+        try (Connection connection = database.openConnection();
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(
+                     "SELECT TABLE_NAME, ROW_KEY, COUNT(*) FROM " + UPDATE_LOG + " GROUP BY TABLE_NAME, ROW_KEY")) {
+            int updatedRows = 0;
+            while (resultSet.next()) {
+                Assert.assertEquals(resultSet.getInt(3), 1, "Row " + resultSet.getString(2) + " of "
+                                                             + resultSet.getString(1) + " was updated more than once.");
+                updatedRows++;
+            }
+            Assert.assertEquals(updatedRows, SUBSCRIPTIONS + 2 * (SUBSCRIPTIONS + IDLE_QUEUES),
+                                "Not every row was updated.");
+        }
+    }
+
+    private File checkpointFile() {
+        return new File(directory, "migration.checkpoint");
+    }
+
+    private Checkpoint readCheckpoint() throws IOException {
+        Checkpoint checkpoint = new Checkpoint(checkpointFile());
+        checkpoint.load();
+        return checkpoint;
+    }
+
+    /**
+     * @return the total and read number of queues in the report of the last run
+     */
+    private long[] readQueueReport() throws IOException {
+        String report = new String(Files.readAllBytes(new File(directory, "migration-report.json").toPath()),
+                                   StandardCharsets.UTF_8);
+        Matcher matcher = QUEUE_REPORT.matcher(report);
+        Assert.assertTrue(matcher.find(), "The queues are not in the report: " + report);
+        return new long[] { Long.parseLong(matcher.group(1)), Long.parseLong(matcher.group(2)) };
+    }
+
+    private static String firstQueue(MigrationTestDatabase database, List<String> queueNames) throws SQLException {
+        DBConnector connector = new DBConnector(database.configuration(Processor.BATCHED_MODE, null));
+        try (Connection connection = connector.createConnection()) {
+            return connector.readFirstQueueName(connection, DBConnector.MB_QUEUE, queueNames);
+        } finally {
+            connector.close();
+        }
+    }
+
+    private static long countQueuesFrom(MigrationTestDatabase database, String queueName) throws SQLException {
+        try (Connection connection = database.openConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(
+                     "SELECT COUNT(*) FROM " + DBConnector.MB_QUEUE + " WHERE " + DBConnector.QUEUE_NAME + " >= ?")) {
+            preparedStatement.setString(1, queueName);
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                resultSet.next();
+                return resultSet.getLong(1);
+            }
+        }
+    }
+
+    /**
+     * Logs the key of every row updated in the migrated tables, in the transaction of the update, so that only
+     * committed updates remain logged. Once the configured number of queue updates is reached, further queue
+     * updates fail as if the database had become unavailable.
+     */
+    public static class UpdateLogTrigger implements Trigger {
+
+        private static final AtomicInteger remainingQueueUpdates = new AtomicInteger(Integer.MAX_VALUE);
+
+        private static volatile boolean failed;
+
+        private String table;
+
+        private int keyColumn;
+
+        static void failAfter(int queueUpdates) {
+            remainingQueueUpdates.set(queueUpdates);
+            failed = false;
+        }
+
+        static boolean failed() {
+            return failed;
+        }
+
+        @Override
+        public void init(Connection connection, String schemaName, String triggerName, String tableName,
+                         boolean before, int type) {
+            table = tableName;
+            keyColumn = DBConnector.MB_BINDING.equals(tableName) ? 1 : 0;
+        }
+
+        @Override
+        public void fire(Connection connection, Object[] oldRow, Object[] newRow) throws SQLException {
+            if (DBConnector.MB_QUEUE.equals(table) && remainingQueueUpdates.decrementAndGet() < 0) {
+                failed = true;
+                throw new SQLException("Injected failure of the queue update");
+            }
+            try (PreparedStatement preparedStatement = connection.prepareStatement(
+                    "INSERT INTO " + UPDATE_LOG + " VALUES (?, ?)")) {
+                preparedStatement.setString(1, table);
+                preparedStatement.setString(2, (String) newRow[keyColumn]);
+                preparedStatement.executeUpdate();
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void remove() {
+        }
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.mb.migration;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Migrates MB 3.0.0 tables seeded into H2 in every mode of the {@link Processor} and checks the migrated rows.
+ */
+public class MigrationRoundTripTest {
+
+    private static final int SUBSCRIPTIONS = 250;
+
+    private static final int IDLE_QUEUES = 50;
+
+    private static final String[] TABLES = {
+            DBConnector.DURABLE_SUB_TABLE, DBConnector.MB_QUEUE, DBConnector.MB_BINDING };
+
+    private File directory;
+
+    private final List<MigrationTestDatabase> databases = new ArrayList<>();
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("migration-test").toFile();
+    }
+
+    @AfterMethod
+    public void tearDown() throws SQLException {
+        for (MigrationTestDatabase database : databases) {
+            database.close();
+        }
+        databases.clear();
+        File[] files = directory.listFiles();
+        if (null != files) {
+            for (File file : files) {
+                Assert.assertTrue(file.delete(), "Could not delete " + file);
+            }
+        }
+        Assert.assertTrue(directory.delete(), "Could not delete " + directory);
+    }
+
+    /**
+     * The default mode migrates subscriptions with the queues and bindings of their storage queues, and the idle
+     * queues and bindings as AMQP queues.
+     */
+    @Test
+    public void testDefaultMode() throws SQLException {
+        MigrationTestDatabase database = migrate("defaultmode", "default");
+
+        List<String> subscriptions = database.readTable(DBConnector.DURABLE_SUB_TABLE);
+        Assert.assertEquals(subscriptions.size(), SUBSCRIPTIONS);
+        for (String subscription : subscriptions) {
+            String[] columns = subscription.split("\t");
+            int index = Integer.parseInt(columns[0].substring("subscription".length()));
+            Assert.assertEquals(columns[1], "DURABLE_TOPIC.topic" + index);
+            String protocolType = 0 == index % 2 ? "AMQP" : "MQTT";
+            Assert.assertEquals(columns[2], MigrationTestDatabase.subscriptionData(index, "carbon:subscription" + index,
+                                                                                  protocolType)
+                    .replace(",isBoundToTopic=true,subscriptionType=" + protocolType,
+                             ",destinationType=DURABLE_TOPIC,protocolType=" + protocolType));
+        }
+
+        for (String queue : database.readTable(DBConnector.MB_QUEUE)) {
+            Assert.assertTrue(queue.endsWith(",protocolType=" + expectedProtocolType(queue) + ",destinationType="
+                                             + (queue.contains("protocolType=MQTT") ? "TOPIC" : "QUEUE")),
+                              "Unexpected queue " + queue);
+        }
+        for (String binding : database.readTable(DBConnector.MB_BINDING)) {
+            Assert.assertTrue(binding.contains(",isExclusive=false,protocolType=" + expectedProtocolType(binding)
+                                               + ",destinationType=QUEUE|"), "Unexpected binding " + binding);
+        }
+    }
+
+    /**
+     * Idle queues and bindings are written in batches, and only committed rows are counted as modified.
+     */
+    @Test
+    public void testIdleRowsCountedOnceCommitted() throws SQLException {
+        MigrationTestDatabase database = createDatabase("idlerows");
+        Properties configuration = database.configuration("default", directory);
+        configuration.setProperty("batchsize", "7");
+        Processor processor = new Processor(configuration);
+        try {
+            // No subscription has been migrated, so every queue and binding is idle
+            Assert.assertEquals(processor.modifyIdleQueues(), database.readTable(DBConnector.MB_QUEUE).size());
+            Assert.assertEquals(processor.modifyIdleBindings(), database.readTable(DBConnector.MB_BINDING).size());
+        } finally {
+            processor.close();
+        }
+        for (String queue : database.readTable(DBConnector.MB_QUEUE)) {
+            Assert.assertTrue(queue.endsWith(",protocolType=AMQP,destinationType=QUEUE"), "Unexpected queue " + queue);
+        }
+        for (String binding : database.readTable(DBConnector.MB_BINDING)) {
+            Assert.assertTrue(binding.contains(",isExclusive=false,protocolType=AMQP,destinationType=QUEUE|"),
+                              "Unexpected binding " + binding);
+        }
+    }
+
+    /**
+     * Batched and parallel runs write the same rows as the default mode.
+     */
+    @Test
+    public void testBatchedAndParallelModesMatchDefaultMode() throws SQLException {
+        MigrationTestDatabase expected = migrate("expected", "default");
+        MigrationTestDatabase batched = migrate("batched", Processor.BATCHED_MODE);
+        MigrationTestDatabase parallel = migrate("parallel", Processor.PARALLEL_MODE);
+
+        for (String table : TABLES) {
+            Assert.assertEquals(batched.readTable(table), expected.readTable(table),
+                                "Batched mode migrated " + table + " differently.");
+            Assert.assertEquals(parallel.readTable(table), expected.readTable(table),
+                                "Parallel mode migrated " + table + " differently.");
+        }
+    }
+
+    /**
+     * Rows which have already been migrated are not modified again by a second run.
+     */
+    @Test
+    public void testSecondRunLeavesTablesUnchanged() throws SQLException {
+        MigrationTestDatabase database = migrate("rerun", Processor.BATCHED_MODE);
+        List<List<String>> migrated = new ArrayList<>();
+        for (String table : TABLES) {
+            migrated.add(database.readTable(table));
+        }
+
+        run(database, Processor.PARALLEL_MODE);
+        for (int i = 0; i < TABLES.length; i++) {
+            Assert.assertEquals(database.readTable(TABLES[i]), migrated.get(i),
+                                TABLES[i] + " was modified by the second run.");
+        }
+    }
+
+    /**
+     * A dry run does not write to the database.
+     */
+    @Test
+    public void testDryRunDoesNotWrite() throws SQLException {
+        MigrationTestDatabase database = createDatabase("dryrun");
+        List<List<String>> seeded = new ArrayList<>();
+        for (String table : TABLES) {
+            seeded.add(database.readTable(table));
+        }
+
+        Processor processor = new Processor(database.configuration(Processor.BATCHED_MODE, directory));
+        processor.setDryRun(true);
+        try {
+            processor.modifyTables();
+        } finally {
+            processor.close();
+        }
+        for (int i = 0; i < TABLES.length; i++) {
+            Assert.assertEquals(database.readTable(TABLES[i]), seeded.get(i),
+                                TABLES[i] + " was modified by the dry run.");
+        }
+    }
+
+    private MigrationTestDatabase createDatabase(String name) throws SQLException {
+        MigrationTestDatabase database = new MigrationTestDatabase(name);
+        databases.add(database);
+        database.seed(SUBSCRIPTIONS, IDLE_QUEUES);
+        return database;
+    }
+
+    private MigrationTestDatabase migrate(String name, String mode) throws SQLException {
+        MigrationTestDatabase database = createDatabase(name);
+        run(database, mode);
+        return database;
+    }
+
+    private void run(MigrationTestDatabase database, String mode) {
+        Processor processor = new Processor(database.configuration(mode, directory));
+        try {
+            processor.modifyTables();
+        } finally {
+            processor.close();
+        }
+    }
+
+    /**
+     * The protocol type of the subscription bound to the storage queue of a queue or binding row, AMQP for queues
+     * without subscriptions.
+     */
+    private static String expectedProtocolType(String row) {
+        String queueName = row.split("\t")[row.startsWith("amq.topic\t") ? 1 : 0];
+        if (!queueName.startsWith("carbon:subscription")) {
+            return "AMQP";
+        }
+        return 0 == Integer.parseInt(queueName.substring("carbon:subscription".length())) % 2 ? "AMQP" : "MQTT";
+    }
+}
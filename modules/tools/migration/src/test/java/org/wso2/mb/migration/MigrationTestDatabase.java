@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.mb.migration;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * An H2 database holding the MB 3.0.0 subscription, queue and binding tables, used by the tests and the benchmarks of
+ * the migration tool.
+ */
+public class MigrationTestDatabase {
+
+    static final String DRIVER_CLASS_NAME = "org.h2.Driver";
+    static final String USER = "sa";
+    static final String PASSWORD = "";
+
+    /**
+     * Number of rows inserted in one batch when a database is seeded
+     */
+    private static final int SEED_BATCH_SIZE = 1000;
+
+    private final String url;
+
+    /**
+     * Keeps the database open until the test database is closed
+     */
+    private final Connection keepAliveConnection;
+
+    /**
+     * Create an empty in-memory database with the migrated tables.
+     *
+     * @param name name of the database, unique among the databases open at a time
+     * @throws SQLException
+     */
+    public MigrationTestDatabase(String name) throws SQLException {
+        this(name, null);
+    }
+
+    /**
+     * Create an empty database with the migrated tables, stored in a directory for tables too large to be kept in
+     * memory.
+     *
+     * @param name      name of the database, unique among the databases open at a time
+     * @param directory directory of the database files, or null to keep the database in memory
+     * @throws SQLException
+     */
+    public MigrationTestDatabase(String name, File directory) throws SQLException {
+        url = null == directory ? "jdbc:h2:mem:" + name : "jdbc:h2:file:" + new File(directory, name).getAbsolutePath();
+        keepAliveConnection = DriverManager.getConnection(url, USER, PASSWORD);
+        try (Statement statement = keepAliveConnection.createStatement()) {
+            statement.execute("CREATE TABLE " + DBConnector.DURABLE_SUB_TABLE + " ("
+                              + DBConnector.DURABLE_SUB_ID + " VARCHAR(512) NOT NULL, "
+                              + DBConnector.DESTINATINATION_TYPE + " VARCHAR(255) NOT NULL, "
+                              + DBConnector.DURABLE_SUB_DATA + " VARCHAR(2048) NOT NULL, "
+                              + "PRIMARY KEY (" + DBConnector.DURABLE_SUB_ID + "))");
+            statement.execute("CREATE TABLE " + DBConnector.MB_QUEUE + " ("
+                              + DBConnector.QUEUE_NAME + " VARCHAR(512) NOT NULL, "
+                              + DBConnector.QUEUE_DATA + " VARCHAR(2048) NOT NULL, "
+                              + "PRIMARY KEY (" + DBConnector.QUEUE_NAME + "))");
+            statement.execute("CREATE TABLE " + DBConnector.MB_BINDING + " ("
+                              + DBConnector.EXCHANGE_NAME + " VARCHAR(512) NOT NULL, "
+                              + DBConnector.QUEUE_NAME + " VARCHAR(512) NOT NULL, "
+                              + DBConnector.BINDING_DETAILS + " VARCHAR(2048) NOT NULL, "
+                              + "PRIMARY KEY (" + DBConnector.QUEUE_NAME + "))");
+        }
+    }
+
+    /**
+     * Insert durable subscriptions, each with the queue and binding of its storage queue, and queues with their
+     * bindings which no subscription is bound to, all encoded as by MB 3.0.0. Every second subscription is an MQTT
+     * subscription.
+     *
+     * @param subscriptions number of subscriptions
+     * @param idleQueues    number of queues without subscriptions
+     * @throws SQLException
+     */
+    public void seed(int subscriptions, int idleQueues) throws SQLException {
+        seed(subscriptions, idleQueues, true);
+    }
+
+    /**
+     * Insert the queues and bindings of the storage queues of subscriptions and of queues which no subscription is
+     * bound to, optionally along with the subscriptions.
+     *
+     * @param subscriptions    number of subscriptions
+     * @param idleQueues       number of queues without subscriptions
+     * @param subscriptionRows whether to insert the subscriptions, or only the queues and bindings of their storage
+     *                         queues
+     * @throws SQLException
+     */
+    public void seed(int subscriptions, int idleQueues, boolean subscriptionRows) throws SQLException {
+        try (Connection connection = openConnection();
+             PreparedStatement subscriptionStatement = connection.prepareStatement(
+                     "INSERT INTO " + DBConnector.DURABLE_SUB_TABLE + " VALUES (?,?,?)");
+             PreparedStatement queueStatement = connection.prepareStatement(
+                     "INSERT INTO " + DBConnector.MB_QUEUE + " VALUES (?,?)");
+             PreparedStatement bindingStatement = connection.prepareStatement(
+                     "INSERT INTO " + DBConnector.MB_BINDING + " VALUES (?,?,?)")) {
+            connection.setAutoCommit(false);
+            for (int i = 0; i < subscriptions + idleQueues; i++) {
+                String queueName = (i < subscriptions ? "carbon:subscription" : "queue") + i;
+                if (subscriptionRows && i < subscriptions) {
+                    subscriptionStatement.setString(1, "subscription" + i);
+                    subscriptionStatement.setString(2, "topic.topic" + i);
+                    subscriptionStatement.setString(3, subscriptionData(i, queueName, 0 == i % 2 ? "AMQP" : "MQTT"));
+                    subscriptionStatement.addBatch();
+                }
+                queueStatement.setString(1, queueName);
+                queueStatement.setString(2, "queueName=" + queueName + ",queueOwner=admin,isExclusive=false,"
+                                            + "isDurable=true,lastPurgedTime=0");
+                queueStatement.addBatch();
+                bindingStatement.setString(1, "amq.topic");
+                bindingStatement.setString(2, queueName);
+                bindingStatement.setString(3, "amq.topic|queueName=" + queueName + ",queueOwner=admin,"
+                                              + "isExclusive=false|topic" + i);
+                bindingStatement.addBatch();
+                if (0 == (i + 1) % SEED_BATCH_SIZE) {
+                    executeBatches(subscriptionStatement, queueStatement, bindingStatement);
+                    connection.commit();
+                }
+            }
+            executeBatches(subscriptionStatement, queueStatement, bindingStatement);
+            connection.commit();
+        }
+    }
+
+    /**
+     * Encode a subscription as stored by MB 3.0.0.
+     *
+     * @param index            index of the subscription
+     * @param storageQueueName the storage queue the subscription is bound to
+     * @param subscriptionType "AMQP" or "MQTT"
+     * @return the subscription data
+     */
+    static String subscriptionData(int index, String storageQueueName, String subscriptionType) {
+        return "subscriptionID=subscription" + index + ",destination=topic" + index + ",isExclusive=false,"
+               + "isDurable=true,targetQueue=" + storageQueueName + ",targetQueueOwner=admin,"
+               + "targetQueueBoundExchange=amq.topic,targetQueueBoundExchangeType=topic,"
+               + "isTargetQueueBoundExchangeAutoDeletable=false,subscribedNode=node1,subscribedTime=1460000000000,"
+               + "hasExternalSubscriptions=true,storageQueueName=" + storageQueueName + ",isBoundToTopic=true,"
+               + "subscriptionType=" + subscriptionType;
+    }
+
+    private static void executeBatches(PreparedStatement... statements) throws SQLException {
+        for (PreparedStatement statement : statements) {
+            statement.executeBatch();
+        }
+    }
+
+    /**
+     * Read all rows of a table, sorted by their first column.
+     *
+     * @param table the table
+     * @return each row with its columns separated by tabs
+     * @throws SQLException
+     */
+    public List<String> readTable(String table) throws SQLException {
+        List<String> rows = new ArrayList<>();
+        try (Connection connection = openConnection();
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT * FROM " + table + " ORDER BY 1")) {
+            int columns = resultSet.getMetaData().getColumnCount();
+            while (resultSet.next()) {
+                StringBuilder row = new StringBuilder();
+                for (int column = 1; column <= columns; column++) {
+                    if (column > 1) {
+                        row.append('\t');
+                    }
+                    row.append(resultSet.getString(column));
+                }
+                rows.add(row.toString());
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Open a connection to the database which is not pooled.
+     *
+     * @return the connection
+     * @throws SQLException
+     */
+    public Connection openConnection() throws SQLException {
+        return DriverManager.getConnection(url, USER, PASSWORD);
+    }
+
+    /**
+     * Create the configuration of a migration of the database, which writes its checkpoint and report to a
+     * directory.
+     *
+     * @param mode      value of the "mode" property
+     * @param directory directory of the checkpoint and the report
+     * @return the configuration
+     */
+    public Properties configuration(String mode, File directory) {
+        Properties properties = new Properties();
+        properties.setProperty("driverclassname", DRIVER_CLASS_NAME);
+        properties.setProperty("dburl", url);
+        properties.setProperty("dbuser", USER);
+        properties.setProperty("dbpassword", PASSWORD);
+        properties.setProperty("mode", mode);
+        properties.setProperty("workers", "4");
+        properties.setProperty("batchsize", "100");
+        properties.setProperty("progressinterval", "0");
+        properties.setProperty("checkpointfile", new File(directory, "migration.checkpoint").getPath());
+        properties.setProperty("reportfile", new File(directory, "migration-report.json").getPath());
+        return properties;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * Close the database, which drops it if it is kept in memory.
+     *
+     * @throws SQLException
+     */
+    public void close() throws SQLException {
+        keepAliveConnection.close();
+    }
+}
@@ -0,0 +1,302 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.mb.migration;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Tests the statements the {@link PostgreSqlBatchWriter} prepares and the order it binds their parameters in. The
+ * writer is run against a connection which records the statements instead of a PostgreSQL server.
+ */
+public class PostgreSqlBatchWriterTest {
+
+    private static final String SUBSCRIPTION_UPDATE_PREFIX =
+            "UPDATE MB_DURABLE_SUBSCRIPTION SET SUBSCRIPTION_DATA = v.data, DESTINATION_IDENTIFIER = v.destination "
+            + "FROM (VALUES ";
+    private static final String SUBSCRIPTION_UPDATE_SUFFIX =
+            ") AS v(id, data, destination) WHERE SUBSCRIPTION_ID = v.id";
+    private static final String QUEUE_UPDATE_PREFIX = "UPDATE MB_QUEUE SET QUEUE_DATA = v.data FROM (VALUES ";
+    private static final String BINDING_UPDATE_PREFIX = "UPDATE MB_BINDING SET BINDING_DETAILS = v.data FROM (VALUES ";
+    private static final String NAME_UPDATE_SUFFIX = ") AS v(name, data) WHERE QUEUE_NAME = v.name";
+
+    private RecordingConnection recorder;
+
+    @BeforeMethod
+    public void setUp() {
+        recorder = new RecordingConnection();
+    }
+
+    /**
+     * The rows of each table are updated by one statement, with the values bound row by row in the order of the
+     * VALUES columns, and the batch is committed once.
+     */
+    @Test
+    public void testOneStatementPerTable() throws SQLException {
+        PostgreSqlBatchWriter writer = new PostgreSqlBatchWriter(recorder.getConnection(), 100);
+        writer.writeQueue("queue0", "data0");
+        writer.writeSubscription(new Subscription("subscription0", "DURABLE_TOPIC.topic0", "subscription data0"));
+        writer.writeBinding("queue0", "binding0");
+        writer.writeQueue("queue1", "data1");
+        Assert.assertTrue(recorder.executedUpdates.isEmpty(), "Updates were written before the batch was full.");
+        writer.close();
+
+        Assert.assertFalse(recorder.autoCommit, "Auto commit was not disabled.");
+        Assert.assertEquals(recorder.executedUpdates, Arrays.asList(
+                new ExecutedUpdate(SUBSCRIPTION_UPDATE_PREFIX + "(?,?,?)" + SUBSCRIPTION_UPDATE_SUFFIX,
+                                   "subscription0", "subscription data0", "DURABLE_TOPIC.topic0"),
+                new ExecutedUpdate(QUEUE_UPDATE_PREFIX + "(?,?),(?,?)" + NAME_UPDATE_SUFFIX,
+                                   "queue0", "data0", "queue1", "data1"),
+                new ExecutedUpdate(BINDING_UPDATE_PREFIX + "(?,?)" + NAME_UPDATE_SUFFIX, "queue0", "binding0")));
+        Assert.assertEquals(recorder.commits, 1);
+        Assert.assertEquals(writer.getWrittenRows(), 4);
+        Assert.assertEquals(recorder.openStatements, 0, "The writer left statements open.");
+    }
+
+    /**
+     * A full batch is written and committed without waiting for the writer to be closed, and the next batch only
+     * updates its own rows.
+     */
+    @Test
+    public void testFullBatchFlushed() throws SQLException {
+        PostgreSqlBatchWriter writer = new PostgreSqlBatchWriter(recorder.getConnection(), 2);
+        writer.writeQueue("queue0", "data0");
+        writer.writeQueue("queue1", "data1");
+        writer.writeQueue("queue2", "data2");
+        Assert.assertEquals(recorder.executedUpdates, Arrays.asList(
+                new ExecutedUpdate(QUEUE_UPDATE_PREFIX + "(?,?),(?,?)" + NAME_UPDATE_SUFFIX,
+                                   "queue0", "data0", "queue1", "data1")));
+        Assert.assertEquals(recorder.commits, 1);
+        Assert.assertEquals(writer.getWrittenRows(), 2);
+
+        writer.close();
+        Assert.assertEquals(recorder.executedUpdates.get(1),
+                            new ExecutedUpdate(QUEUE_UPDATE_PREFIX + "(?,?)" + NAME_UPDATE_SUFFIX, "queue2", "data2"));
+        Assert.assertEquals(recorder.commits, 2);
+        Assert.assertEquals(writer.getWrittenRows(), 3);
+    }
+
+    /**
+     * A batch with more parameters than a statement may have is split into chunks of as many rows as fit. The
+     * statement of a full chunk is prepared once and reused, and the remaining rows are updated by a shorter one.
+     */
+    @Test
+    public void testChunkedAtParameterLimit() throws SQLException {
+        int chunkRows = PostgreSqlBatchWriter.MAX_PARAMETERS / 2;
+        int rows = 2 * chunkRows + 3;
+        PostgreSqlBatchWriter writer = new PostgreSqlBatchWriter(recorder.getConnection(), rows);
+        for (int i = 0; i < rows - 1; i++) {
+            writer.writeBinding("queue" + i, "binding" + i);
+        }
+        Assert.assertTrue(recorder.executedUpdates.isEmpty(), "Updates were written before the batch was full.");
+        writer.writeBinding("queue" + (rows - 1), "binding" + (rows - 1));
+
+        Assert.assertEquals(recorder.executedUpdates.size(), 3);
+        Assert.assertEquals(recorder.preparedStatements, 2, "The statement of a full chunk was not reused.");
+        Assert.assertEquals(recorder.commits, 1, "The chunks were not committed together.");
+        int row = 0;
+        for (int i = 0; i < recorder.executedUpdates.size(); i++) {
+            ExecutedUpdate update = recorder.executedUpdates.get(i);
+            int chunk = i < 2 ? chunkRows : 3;
+            Assert.assertEquals(update.sql, BINDING_UPDATE_PREFIX + placeholders(chunk, 2) + NAME_UPDATE_SUFFIX);
+            Assert.assertTrue(update.parameters.size() <= PostgreSqlBatchWriter.MAX_PARAMETERS);
+            Assert.assertEquals(update.parameters.size(), chunk * 2);
+            for (int j = 0; j < chunk; j++, row++) {
+                Assert.assertEquals(update.parameters.get(2 * j), "queue" + row);
+                Assert.assertEquals(update.parameters.get(2 * j + 1), "binding" + row);
+            }
+        }
+        Assert.assertEquals(row, rows);
+        Assert.assertEquals(writer.getWrittenRows(), rows);
+
+        writer.close();
+        Assert.assertEquals(recorder.openStatements, 0, "The writer left statements open.");
+    }
+
+    /**
+     * A batch which fails is rolled back and dropped, and the writer goes on with the next batch.
+     */
+    @Test
+    public void testFailedBatchRolledBack() throws SQLException {
+        PostgreSqlBatchWriter writer = new PostgreSqlBatchWriter(recorder.getConnection(), 10);
+        writer.writeQueue("queue0", "data0");
+        recorder.failUpdates = true;
+        try {
+            writer.flush();
+            Assert.fail("The failed update was not reported.");
+        } catch (SQLException e) {
+            // Expected
+        }
+        Assert.assertEquals(recorder.rollbacks, 1);
+        Assert.assertEquals(recorder.commits, 0);
+        Assert.assertEquals(writer.getWrittenRows(), 0);
+
+        recorder.failUpdates = false;
+        writer.writeQueue("queue1", "data1");
+        writer.close();
+        Assert.assertEquals(recorder.executedUpdates.get(recorder.executedUpdates.size() - 1),
+                            new ExecutedUpdate(QUEUE_UPDATE_PREFIX + "(?,?)" + NAME_UPDATE_SUFFIX, "queue1", "data1"));
+        Assert.assertEquals(writer.getWrittenRows(), 1);
+    }
+
+    private static String placeholders(int rows, int columns) {
+        StringBuilder builder = new StringBuilder();
+        for (int row = 0; row < rows; row++) {
+            builder.append(row > 0 ? ",(" : "(");
+            for (int column = 0; column < columns; column++) {
+                builder.append(column > 0 ? ",?" : "?");
+            }
+            builder.append(')');
+        }
+        return builder.toString();
+    }
+
+    /**
+     * An update executed through the recording connection, with its parameters in the order of their indexes.
+     */
+    private static class ExecutedUpdate {
+
+        private final String sql;
+        private final List<String> parameters;
+
+        private ExecutedUpdate(String sql, String... parameters) {
+            this(sql, Arrays.asList(parameters));
+        }
+
+        private ExecutedUpdate(String sql, List<String> parameters) {
+            this.sql = sql;
+            this.parameters = parameters;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof ExecutedUpdate && sql.equals(((ExecutedUpdate) other).sql)
+                   && parameters.equals(((ExecutedUpdate) other).parameters);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * sql.hashCode() + parameters.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return sql + " " + parameters;
+        }
+    }
+
+    /**
+     * A connection which records the statements prepared and executed through it, the commits and the rollbacks.
+     */
+    private static class RecordingConnection implements InvocationHandler {
+
+        private final List<ExecutedUpdate> executedUpdates = new ArrayList<>();
+        private int preparedStatements;
+        private int openStatements;
+        private int commits;
+        private int rollbacks;
+        private boolean autoCommit = true;
+        private boolean failUpdates;
+
+        private Connection getConnection() {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                                                       new Class<?>[] { Connection.class }, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws SQLException {
+            switch (method.getName()) {
+                case "prepareStatement":
+                    preparedStatements++;
+                    openStatements++;
+                    return new RecordingStatement((String) args[0]).getStatement();
+                case "setAutoCommit":
+                    autoCommit = (Boolean) args[0];
+                    return null;
+                case "commit":
+                    commits++;
+                    return null;
+                case "rollback":
+                    rollbacks++;
+                    return null;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        }
+
+        /**
+         * A prepared statement which records its parameters and reports them once it is executed.
+         */
+        private class RecordingStatement implements InvocationHandler {
+
+            private final String sql;
+            private final Map<Integer, String> parameters = new TreeMap<>();
+            private boolean closed;
+
+            private RecordingStatement(String sql) {
+                this.sql = sql;
+            }
+
+            private PreparedStatement getStatement() {
+                return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                                                                  new Class<?>[] { PreparedStatement.class }, this);
+            }
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws SQLException {
+                switch (method.getName()) {
+                    case "setString":
+                        parameters.put((Integer) args[0], (String) args[1]);
+                        return null;
+                    case "executeUpdate":
+                        if (failUpdates) {
+                            throw new SQLException("Update failed");
+                        }
+                        Assert.assertEquals(parameters.size(), sql.length() - sql.replace("?", "").length(),
+                                            "Not all parameters of the statement were bound.");
+                        executedUpdates.add(new ExecutedUpdate(sql, new ArrayList<>(parameters.values())));
+                        return parameters.size();
+                    case "isClosed":
+                        return closed;
+                    case "close":
+                        if (!closed) {
+                            closed = true;
+                            openStatements--;
+                        }
+                        return null;
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                }
+            }
+        }
+    }
+}
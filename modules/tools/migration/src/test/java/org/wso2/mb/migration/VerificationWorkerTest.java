@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2016, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.mb.migration;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+/**
+ * Tests logging the rows a {@link VerificationWorker} finds not to match the migrated encoding.
+ */
+public class VerificationWorkerTest {
+
+    private final Logger log = Logger.getLogger(VerificationWorker.class.getName());
+
+    private final AtomicInteger loggedWarnings = new AtomicInteger();
+
+    private final Handler warningCounter = new Handler() {
+        @Override
+        public void publish(LogRecord record) {
+            if (Level.WARNING.equals(record.getLevel())) {
+                loggedWarnings.incrementAndGet();
+            }
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    @BeforeMethod
+    public void setUp() {
+        log.addHandler(warningCounter);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        log.removeHandler(warningCounter);
+    }
+
+    /**
+     * The workers of a verification log at most {@link VerificationWorker#MAX_LOGGED_MISMATCHES} mismatching rows
+     * together, and every verification logs its own mismatches.
+     */
+    @Test
+    public void testMismatchesLoggedPerVerification() {
+        for (int verification = 0; verification < 2; verification++) {
+            loggedWarnings.set(0);
+            AtomicInteger loggedMismatches = new AtomicInteger();
+            List<VerificationWorker> workers = Arrays.asList(
+                    createWorker(loggedMismatches), createWorker(loggedMismatches));
+            for (int i = 0; i < VerificationWorker.MAX_LOGGED_MISMATCHES; i++) {
+                for (VerificationWorker worker : workers) {
+                    worker.process(new Queue("queue" + i, "not migrated"));
+                }
+            }
+            for (VerificationWorker worker : workers) {
+                Assert.assertEquals(worker.getMismatches(), VerificationWorker.MAX_LOGGED_MISMATCHES);
+            }
+            Assert.assertEquals(loggedWarnings.get(), VerificationWorker.MAX_LOGGED_MISMATCHES,
+                                "Verification " + verification + " logged an unexpected number of mismatches.");
+        }
+    }
+
+    private static VerificationWorker createWorker(AtomicInteger loggedMismatches) {
+        return new VerificationWorker(new ConcurrentHashMap<String, String>(), loggedMismatches, new TableChecksums(),
+                                      1);
+    }
+}